@@ -0,0 +1,55 @@
+package com.example.excel.benchmark;
+
+import com.example.excel.impl.ExcelReaderImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelReaderImpl.getCellValue基准：每次操作读取一行的全部单元格，吞吐量即每秒读取的行数
+ * @author yinfelix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ReaderBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"NARROW", "WIDE"})
+    public WorkbookGenerator.Width width;
+
+    @Param({"NUMERIC", "TEXT", "FORMULA"})
+    public WorkbookGenerator.Content content;
+
+    private ExcelReaderImpl reader;
+    private int sheetIndex;
+    private int columnCount;
+    private int rowCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        reader = new ExcelReaderImpl(WorkbookGenerator.getWorkbook(rows, width, content).getPath());
+        sheetIndex = reader.getSheetIndexFromName(WorkbookGenerator.SHEET_NAME);
+        columnCount = width.getColumnCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Benchmark
+    public void getCellValue(Blackhole blackhole) {
+        rowCursor = rowCursor % rows + 1;
+        for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
+            blackhole.consume(reader.getCellValue(sheetIndex, rowCursor + 1, columnIndex));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.excel.benchmark;
+
+import com.example.excel.impl.ExcelSplitByRowProcessorImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelSplitByRowProcessorImpl.doExcelRowSplit基准：每次操作完整执行一次拆分（解析源报表、筛选、恢复公式、重算与写出），
+ * 保留4个分组中的1组
+ * @author yinfelix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SplitBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"NARROW", "WIDE"})
+    public WorkbookGenerator.Width width;
+
+    @Param({"NUMERIC", "TEXT", "FORMULA"})
+    public WorkbookGenerator.Content content;
+
+    private File sourceFile;
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sourceFile = WorkbookGenerator.getWorkbook(rows, width, content);
+        outputFile = File.createTempFile("split-benchmark", ".xlsx");
+        outputFile.deleteOnExit();
+    }
+
+    @Benchmark
+    public File doExcelRowSplit() {
+        new ExcelSplitByRowProcessorImpl(sourceFile.getPath(), outputFile.getPath(), WorkbookGenerator.SHEET_NAME, 2)
+                .doExcelRowSplit("U1", WorkbookGenerator.SPLIT_COLUMN_LABEL);
+        return outputFile;
+    }
+}
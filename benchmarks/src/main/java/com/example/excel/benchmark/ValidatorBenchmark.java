@@ -0,0 +1,65 @@
+package com.example.excel.benchmark;
+
+import com.example.excel.impl.ExcelCellValidatorImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelCellValidatorImpl规则写入基准：每次操作解析源报表，批量添加阈值、列表、区间与自定义公式规则后统一写出
+ * @author yinfelix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ValidatorBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"4", "100"})
+    public int ruleCount;
+
+    private File sourceFile;
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sourceFile = WorkbookGenerator.getWorkbook(rows, WorkbookGenerator.Width.NARROW, WorkbookGenerator.Content.NUMERIC);
+        outputFile = File.createTempFile("validator-benchmark", ".xlsx");
+        outputFile.deleteOnExit();
+    }
+
+    @Benchmark
+    public File commitValidations() {
+        ExcelCellValidatorImpl validator = new ExcelCellValidatorImpl(sourceFile.getPath(), outputFile.getPath(), WorkbookGenerator.SHEET_NAME);
+        int columnCount = WorkbookGenerator.Width.NARROW.getColumnCount();
+        for (int i = 0; i < ruleCount; i++) {
+            int columnIndex = 1 + i % (columnCount - 1);
+            int firstRow = 1 + (i / (columnCount - 1)) * 100 % rows;
+            switch (i % 4) {
+                case 0:
+                    validator.addThresholdRule(2, WorkbookGenerator.getColumnLabel(columnIndex), 100000, "101", "超额", "合计超过阈值");
+                    break;
+                case 1:
+                    validator.addListRule(firstRow, firstRow + 99, columnIndex, columnIndex, Arrays.asList("Y", "N"), "100", "列表", "取值不在列表中");
+                    break;
+                case 2:
+                    validator.addRangeRule(firstRow, firstRow + 99, columnIndex, columnIndex, 0, 1000, "102", "区间", "取值超出区间");
+                    break;
+                default:
+                    validator.addCustomFormulaRule(firstRow, firstRow + 99, columnIndex, columnIndex,
+                            WorkbookGenerator.getColumnLabel(columnIndex) + (firstRow + 1) + ">0", "100", "公式", "公式校验失败");
+                    break;
+            }
+        }
+        validator.commitValidations();
+        return outputFile;
+    }
+}
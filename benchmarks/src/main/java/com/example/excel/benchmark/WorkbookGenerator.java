@@ -0,0 +1,136 @@
+package com.example.excel.benchmark;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * 基准测试用合成报表生成工具类：sheet页"data"首行为表头，A列为拆分键（U1~U4循环），其余各列按数据类型填充
+ * @apiNote 生成结果按参数缓存于java.io.tmpdir/ps-excel-benchmarks，同一参数只生成一次；以流式写入生成，1M行报表同样适用
+ * @author yinfelix
+ */
+public class WorkbookGenerator {
+
+    public static final String SHEET_NAME = "data";
+    public static final String SPLIT_COLUMN_LABEL = "A";
+    public static final int GROUP_COUNT = 4;
+
+    private static final int WINDOW_SIZE = 1000;
+    private static final int DISTINCT_TEXT_COUNT = 1000;
+
+    /**
+     * 报表列数
+     */
+    public enum Width {
+        NARROW(5), WIDE(50);
+
+        private final int columnCount;
+
+        Width(int columnCount) {
+            this.columnCount = columnCount;
+        }
+
+        public int getColumnCount() {
+            return columnCount;
+        }
+    }
+
+    /**
+     * 数据列的内容类型
+     */
+    public enum Content {
+        /**
+         * 全部为数值
+         */
+        NUMERIC,
+        /**
+         * 全部为文本（取自有限取值集合，共享字符串表规模固定）
+         */
+        TEXT,
+        /**
+         * 数值列与引用同行数值的公式列交替
+         */
+        FORMULA
+    }
+
+    private WorkbookGenerator() {
+    }
+
+    /**
+     * 获取（必要时生成）指定参数的合成报表
+     * @param rows 数据行数（不含表头）
+     * @param width 列数
+     * @param content 内容类型
+     * @return 报表文件
+     * @throws IOException IO操作
+     */
+    public static synchronized File getWorkbook(int rows, Width width, Content content) throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "ps-excel-benchmarks");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录：" + directory);
+        }
+        File file = new File(directory, rows + "_" + width + "_" + content + ".xlsx");
+        if (!file.isFile()) {
+            File tempFile = new File(directory, file.getName() + ".tmp");
+            generate(tempFile, rows, width.getColumnCount(), content);
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("无法生成文件：" + file);
+            }
+        }
+        return file;
+    }
+
+    private static void generate(File file, int rows, int columnCount, Content content) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, WINDOW_SIZE, true);
+        Sheet sheet = workbook.createSheet(SHEET_NAME);
+        Random random = new Random(rows * 31L + columnCount);
+
+        Row header = sheet.createRow(0);
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            header.createCell(columnIndex).setCellValue("col" + columnIndex);
+        }
+        for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+            Row row = sheet.createRow(rowIndex);
+            row.createCell(0).setCellValue("U" + (rowIndex % GROUP_COUNT + 1));
+            for (int columnIndex = 1; columnIndex < columnCount; columnIndex++) {
+                Cell cell = row.createCell(columnIndex);
+                switch (content) {
+                    case TEXT:
+                        cell.setCellValue("text" + random.nextInt(DISTINCT_TEXT_COUNT));
+                        break;
+                    case FORMULA:
+                        if (columnIndex % 2 == 0) {
+                            cell.setCellFormula(getColumnLabel(columnIndex - 1) + (rowIndex + 1) + "*2");
+                            break;
+                        }
+                        cell.setCellValue(Math.round(random.nextDouble() * 100000) / 100.0);
+                        break;
+                    default:
+                        cell.setCellValue(Math.round(random.nextDouble() * 100000) / 100.0);
+                        break;
+                }
+            }
+        }
+
+        FileOutputStream outStream = new FileOutputStream(file);
+        try {
+            workbook.write(outStream);
+        } finally {
+            outStream.close();
+        }
+    }
+
+    static String getColumnLabel(int columnIndex) {
+        StringBuilder label = new StringBuilder();
+        for (int i = columnIndex + 1; i > 0; i = (i - 1) / 26) {
+            label.insert(0, (char) ('A' + (i - 1) % 26));
+        }
+        return label.toString();
+    }
+}
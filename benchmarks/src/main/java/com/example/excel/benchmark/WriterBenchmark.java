@@ -0,0 +1,84 @@
+package com.example.excel.benchmark;
+
+import com.example.excel.impl.ExcelWriterImpl;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExcelWriterImpl.createCellWithValue基准（带样式与不带样式）：每次操作写入一行，吞吐量即每秒写入的行数
+ * @apiNote 写满MAX_ROWS行后回到首行覆盖写入，内存占用与测试时长无关；样式取自另一workbook，模拟按模板写出
+ * @author yinfelix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class WriterBenchmark {
+
+    private static final int MAX_ROWS = 10000;
+
+    @Param({"NARROW", "WIDE"})
+    public WorkbookGenerator.Width width;
+
+    @Param({"false", "true"})
+    public boolean styled;
+
+    private XSSFWorkbook templateWorkbook;
+    private CellStyle[] templateStyles;
+
+    private File outputFile;
+    private ExcelWriterImpl writer;
+    private Sheet sheet;
+    private int rowCursor;
+
+    @Setup(Level.Trial)
+    public void setUpTemplate() throws IOException {
+        templateWorkbook = new XSSFWorkbook();
+        templateStyles = new CellStyle[4];
+        for (int i = 0; i < templateStyles.length; i++) {
+            Font font = templateWorkbook.createFont();
+            font.setBoldweight(i % 2 == 0 ? Font.BOLDWEIGHT_BOLD : Font.BOLDWEIGHT_NORMAL);
+            font.setFontHeightInPoints((short) (10 + i));
+            CellStyle style = templateWorkbook.createCellStyle();
+            style.setFont(font);
+            style.setBorderBottom(CellStyle.BORDER_THIN);
+            style.setFillForegroundColor(IndexedColors.values()[i + 10].getIndex());
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            templateStyles[i] = style;
+        }
+        outputFile = File.createTempFile("writer-benchmark", ".xlsx");
+        outputFile.deleteOnExit();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        writer = new ExcelWriterImpl(outputFile.getPath());
+        sheet = writer.getSheet();
+        rowCursor = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Benchmark
+    public void createCellWithValue() {
+        int rowIndex = rowCursor++ % MAX_ROWS;
+        for (int columnIndex = 0; columnIndex < width.getColumnCount(); columnIndex++) {
+            Object value = columnIndex % 2 == 0 ? (Object) (rowIndex * 1.5 + columnIndex) : "text" + columnIndex;
+            if (styled) {
+                writer.createCellWithValue(sheet, rowIndex, columnIndex, value, templateStyles[columnIndex % templateStyles.length]);
+            } else {
+                writer.createCellWithValue(sheet, rowIndex, columnIndex, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.excel.impl;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 批处理任务：一个拆分或数据验证任务，对应清单文件中的一行
+ * @apiNote 清单文件为UTF-8编码的制表符分隔文本，空行与#开头的行忽略，各行格式如下（rowStart从1开始）：
+ * <pre>
+ * SPLIT     source  dest  sheet  rowStart  splitCondition  columnLabel
+ * SPLIT     source  dest  sheet  rowStart  expression（见ExcelSplitPredicate.parse）
+ * VALIDATE  source  dest  sheet  rowStart  columnLabel  threshold|formula  [alertStyle  alertTitle  alertContent]
+ * </pre>
+ * @author yinfelix
+ */
+public class ExcelBatchJob {
+
+    /**
+     * 任务类型
+     */
+    public enum Type {
+        SPLIT, VALIDATE
+    }
+
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String COMMENT_PREFIX = "#";
+
+    private final Type type;
+    private final String sourceFile;
+    private final String destFile;
+    private final String sheetName;
+    private final int rowStart;
+    private final List<String> rules;
+
+    private ExcelBatchJob(Type type, String sourceFile, String destFile, String sheetName, int rowStart, String... rules) {
+        this.type = type;
+        this.sourceFile = sourceFile;
+        this.destFile = destFile;
+        this.sheetName = sheetName;
+        this.rowStart = rowStart;
+        this.rules = Arrays.asList(rules.clone());
+    }
+
+    /**
+     * 按单列取值拆分的任务
+     * @param sourceFile 源报表路径
+     * @param destFile 目标报表路径
+     * @param sheetName 拆分sheet页名称
+     * @param rowStart 拆分区域行首（从1开始）
+     * @param splitCondition 拆分条件
+     * @param columnLabel 拆分列号（字母）
+     * @return 批处理任务
+     */
+    public static ExcelBatchJob split(String sourceFile, String destFile, String sheetName, int rowStart, String splitCondition, String columnLabel) {
+        return new ExcelBatchJob(Type.SPLIT, sourceFile, destFile, sheetName, rowStart, splitCondition, columnLabel);
+    }
+
+    /**
+     * 按条件表达式拆分的任务
+     * @param sourceFile 源报表路径
+     * @param destFile 目标报表路径
+     * @param sheetName 拆分sheet页名称
+     * @param rowStart 拆分区域行首（从1开始）
+     * @param expression 行筛选条件表达式（见ExcelSplitPredicate.parse）
+     * @return 批处理任务
+     */
+    public static ExcelBatchJob split(String sourceFile, String destFile, String sheetName, int rowStart, String expression) {
+        ExcelSplitPredicate.parse(expression);
+        return new ExcelBatchJob(Type.SPLIT, sourceFile, destFile, sheetName, rowStart, expression);
+    }
+
+    /**
+     * 总额控制数据验证任务
+     * @param sourceFile 源报表路径
+     * @param destFile 目标报表路径
+     * @param sheetName sheet页名称
+     * @param rowStart 总额控制圈注区域行首
+     * @param columnLabel 总额控制列号（字母）
+     * @param thresholdOrFormula 总额控制阈值（整数）或总额控制公式
+     * @param alertRules 出错警告样式、标题与错误信息（可省略，省略时取默认值）
+     * @return 批处理任务
+     */
+    public static ExcelBatchJob validate(String sourceFile, String destFile, String sheetName, int rowStart, String columnLabel, String thresholdOrFormula, String... alertRules) {
+        if (alertRules.length != 0 && alertRules.length != 3) {
+            throw new IllegalArgumentException("出错警告须同时指定样式、标题与错误信息");
+        }
+        String[] rules = new String[2 + alertRules.length];
+        rules[0] = columnLabel;
+        rules[1] = thresholdOrFormula;
+        System.arraycopy(alertRules, 0, rules, 2, alertRules.length);
+        return new ExcelBatchJob(Type.VALIDATE, sourceFile, destFile, sheetName, rowStart, rules);
+    }
+
+    /**
+     * 解析清单文件中的一行
+     * @param line 清单行
+     * @return 批处理任务
+     */
+    public static ExcelBatchJob parse(String line) {
+        String[] fields = line.split(FIELD_SEPARATOR, -1);
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("清单行格式错误：" + line);
+        }
+        Type type;
+        int rowStart;
+        try {
+            type = Type.valueOf(fields[0].trim().toUpperCase());
+            rowStart = Integer.parseInt(fields[4].trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("清单行格式错误：" + line, e);
+        }
+        String[] rules = Arrays.copyOfRange(fields, 5, fields.length);
+        if (type == Type.SPLIT) {
+            if (rules.length == 1) {
+                return split(fields[1], fields[2], fields[3], rowStart, rules[0]);
+            } else if (rules.length == 2) {
+                return split(fields[1], fields[2], fields[3], rowStart, rules[0], rules[1]);
+            }
+        } else if (rules.length == 2 || rules.length == 5) {
+            return validate(fields[1], fields[2], fields[3], rowStart, rules[0], rules[1], Arrays.copyOfRange(rules, 2, rules.length));
+        }
+        throw new IllegalArgumentException("清单行格式错误：" + line);
+    }
+
+    /**
+     * 读取清单文件
+     * @param manifestFile 清单文件路径
+     * @return 批处理任务（按清单顺序）
+     * @throws IOException IO操作
+     */
+    public static List<ExcelBatchJob> readManifest(String manifestFile) throws IOException {
+        List<ExcelBatchJob> jobs = new ArrayList<ExcelBatchJob>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.trim().startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                jobs.add(parse(line));
+            }
+        } finally {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    public String getDestFile() {
+        return destFile;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public int getRowStart() {
+        return rowStart;
+    }
+
+    /**
+     * 获取任务规则（清单行第6列起的各列）
+     * @return 任务规则
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + sourceFile + " -> " + destFile + " [" + sheetName + "]";
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.excel.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批处理任务的执行结果
+ * @author yinfelix
+ */
+public class ExcelBatchResult {
+
+    private final ExcelBatchJob job;
+    private final boolean streaming;
+    private final long estimatedBytes;
+    private final long elapsedNanos;
+    private final Throwable error;
+
+    ExcelBatchResult(ExcelBatchJob job, boolean streaming, long estimatedBytes, long elapsedNanos, Throwable error) {
+        this.job = job;
+        this.streaming = streaming;
+        this.estimatedBytes = estimatedBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+    }
+
+    public ExcelBatchJob getJob() {
+        return job;
+    }
+
+    /**
+     * 任务是否成功（未抛出异常且已生成目标报表）
+     * @return 是否成功
+     */
+    public boolean isSucceeded() {
+        return error == null;
+    }
+
+    /**
+     * 任务是否以流式模式执行（源报表超出内存预算时）
+     * @return 是否以流式模式执行
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * 获取以整体加载方式处理源报表的估算堆内存占用（字节）
+     * @return 估算堆内存占用
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * 获取执行耗时（纳秒，不含等待内存准入的时间）
+     * @return 执行耗时
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 获取失败原因
+     * @return 失败原因，成功时返回null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return (isSucceeded() ? "OK     " : "FAILED ") + job
+                + (streaming ? " streaming" : "")
+                + " estimated=" + estimatedBytes / (1024 * 1024) + "MB"
+                + " elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                + (error == null ? "" : " error=" + error);
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.excel.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 批处理工具类：在同一JVM内以固定大小的线程池并行执行清单中的拆分与数据验证任务，
+ * 按源报表的估算内存占用控制同时执行的任务，避免多个大报表同时整体加载导致OOM
+ * @apiNote 估算内存占用 = sheet页、共享字符串表与样式表XML的解压后大小 × heapBytesPerXmlByte + 固定开销；
+ * 任务按清单顺序准入，估算值超出内存预算的拆分任务改用ExcelStreamingSplitProcessorImpl流式执行，
+ * 超出预算的数据验证任务（须整体加载）独占全部预算执行
+ * @author yinfelix
+ */
+public class ExcelBatchRunner {
+
+    /**
+     * 内存预算的计量单位（1MB），预算与估算值均向上取整至该单位
+     */
+    private static final long PERMIT_BYTES = 1024 * 1024;
+    /**
+     * 整体加载时每字节XML的堆内存占用（实测约13~16倍）
+     */
+    private static final int DEFAULT_HEAP_BYTES_PER_XML_BYTE = 20;
+    /**
+     * 每个任务的固定开销（文件包、样式与写出缓冲）
+     */
+    private static final long BASE_BYTES_PER_JOB = 8 * 1024 * 1024;
+    /**
+     * 流式拆分的固定开销（写入窗口与样式），另加共享字符串表的紧凑存储
+     */
+    private static final long STREAMING_BASE_BYTES = 32 * 1024 * 1024;
+
+    private static final String WORKSHEET_ENTRY_PREFIX = "xl/worksheets/";
+    private static final String SHARED_STRINGS_ENTRY = "xl/sharedStrings.xml";
+    private static final String STYLES_ENTRY = "xl/styles.xml";
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private int heapBytesPerXmlByte = DEFAULT_HEAP_BYTES_PER_XML_BYTE;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * 设置并行执行的线程数，默认为可用处理器数
+     * @param threadCount 线程数（不小于1）
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * 设置同时执行的任务可占用的内存预算，默认为最大堆内存的一半
+     * @param memoryBudget 内存预算（字节）
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = Math.max(PERMIT_BYTES, memoryBudget);
+    }
+
+    public int getHeapBytesPerXmlByte() {
+        return heapBytesPerXmlByte;
+    }
+
+    /**
+     * 设置估算内存占用的放大系数（整体加载时每字节XML的堆内存占用），默认为20
+     * @param heapBytesPerXmlByte 放大系数（不小于1）
+     */
+    public void setHeapBytesPerXmlByte(int heapBytesPerXmlByte) {
+        this.heapBytesPerXmlByte = Math.max(1, heapBytesPerXmlByte);
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()），作用于各任务的读取、拆分与写出
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 估算整体加载源报表的堆内存占用（只读取zip目录中的解压后大小，不解压文件）
+     * @param sourceFile 源报表路径
+     * @return 估算堆内存占用（字节）
+     * @throws IOException IO操作
+     */
+    public long estimateMemory(String sourceFile) throws IOException {
+        return BASE_BYTES_PER_JOB + getXmlSize(sourceFile, false) * heapBytesPerXmlByte;
+    }
+
+    /**
+     * 执行清单文件中的全部任务
+     * @param manifestFile 清单文件路径（格式见ExcelBatchJob）
+     * @return 各任务的执行结果（按清单顺序）
+     * @throws IOException IO操作
+     */
+    public List<ExcelBatchResult> run(String manifestFile) throws IOException {
+        return run(ExcelBatchJob.readManifest(manifestFile));
+    }
+
+    /**
+     * 执行全部任务：按顺序申请内存预算，预算不足时等待先前任务完成；单个任务失败不影响其他任务
+     * @param jobs 批处理任务
+     * @return 各任务的执行结果（按任务顺序）
+     */
+    public List<ExcelBatchResult> run(List<ExcelBatchJob> jobs) {
+        List<ExcelBatchResult> results = new ArrayList<ExcelBatchResult>();
+        if (jobs.isEmpty()) {
+            return results;
+        }
+        final int budgetPermits = (int) Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_BYTES);
+        final Semaphore budget = new Semaphore(budgetPermits);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, jobs.size()));
+        List<Future<ExcelBatchResult>> jobTasks = new ArrayList<Future<ExcelBatchResult>>();
+        try {
+            for (final ExcelBatchJob job : jobs) {
+                long estimatedBytes;
+                long streamingBytes;
+                try {
+                    estimatedBytes = estimateMemory(job.getSourceFile());
+                    streamingBytes = STREAMING_BASE_BYTES + getXmlSize(job.getSourceFile(), true);
+                } catch (IOException e) {
+                    results.add(new ExcelBatchResult(job, false, 0, 0, e));
+                    jobTasks.add(null);
+                    continue;
+                }
+                final boolean streaming = estimatedBytes > memoryBudget && job.getType() == ExcelBatchJob.Type.SPLIT;
+                final long admittedEstimate = estimatedBytes;
+                final int permits = (int) Math.max(1, Math.min(budgetPermits, toPermits(streaming ? streamingBytes : estimatedBytes)));
+                budget.acquire(permits);
+                try {
+                    jobTasks.add(executor.submit(new Callable<ExcelBatchResult>() {
+                        @Override
+                        public ExcelBatchResult call() {
+                            try {
+                                return execute(job, streaming, admittedEstimate);
+                            } finally {
+                                budget.release(permits);
+                            }
+                        }
+                    }));
+                    results.add(null);
+                } catch (RejectedExecutionException e) {
+                    budget.release(permits);
+                    throw e;
+                }
+            }
+            for (int i = 0; i < jobTasks.size(); i++) {
+                if (jobTasks.get(i) == null) {
+                    continue;
+                }
+                try {
+                    results.set(i, jobTasks.get(i).get());
+                } catch (ExecutionException e) {
+                    results.set(i, new ExcelBatchResult(jobs.get(i), false, 0, 0, e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * 执行单个任务；各处理类内部捕获IO异常，因此以目标报表是否写出判定成功与否
+     */
+    private ExcelBatchResult execute(ExcelBatchJob job, boolean streaming, long estimatedBytes) {
+        File destFile = new File(job.getDestFile());
+        long previousModified = destFile.lastModified();
+        long previousLength = destFile.length();
+        long startNanos = System.nanoTime();
+        Throwable error = null;
+        try {
+            List<String> rules = job.getRules();
+            if (job.getType() == ExcelBatchJob.Type.SPLIT) {
+                doSplit(job, rules, streaming);
+            } else {
+                doValidate(job, rules);
+            }
+            if (!destFile.isFile() || destFile.length() == 0
+                    || (destFile.lastModified() == previousModified && destFile.length() == previousLength)) {
+                error = new IOException("目标报表未生成：" + job.getDestFile());
+            }
+        } catch (Exception e) {
+            error = e;
+        } catch (OutOfMemoryError e) {
+            error = e;
+        }
+        return new ExcelBatchResult(job, streaming, estimatedBytes, System.nanoTime() - startNanos, error);
+    }
+
+    private void doSplit(ExcelBatchJob job, List<String> rules, boolean streaming) throws IOException {
+        if (streaming) {
+            ExcelStreamingSplitProcessorImpl processor = new ExcelStreamingSplitProcessorImpl(job.getSourceFile(), job.getDestFile(), job.getSheetName(), job.getRowStart());
+            processor.setMetricsListener(metricsListener);
+            if (rules.size() == 1) {
+                processor.doExcelRowSplit(ExcelSplitPredicate.parse(rules.get(0)));
+            } else {
+                processor.doExcelRowSplit(rules.get(0), rules.get(1));
+            }
+        } else {
+            ExcelSplitByRowProcessorImpl processor = new ExcelSplitByRowProcessorImpl(job.getSourceFile(), job.getDestFile(), job.getSheetName(), job.getRowStart());
+            processor.setMetricsListener(metricsListener);
+            if (rules.size() == 1) {
+                processor.doExcelRowSplit(ExcelSplitPredicate.parse(rules.get(0)));
+            } else {
+                processor.doExcelRowSplit(rules.get(0), rules.get(1));
+            }
+        }
+    }
+
+    private void doValidate(ExcelBatchJob job, List<String> rules) {
+        ExcelCellValidatorImpl validator = new ExcelCellValidatorImpl(job.getSourceFile(), job.getDestFile(), job.getSheetName());
+        validator.setMetricsListener(metricsListener);
+        String columnLabel = rules.get(0);
+        String thresholdOrFormula = rules.get(1).trim();
+        boolean isThreshold = thresholdOrFormula.matches("-?[0-9]+");
+        if (rules.size() == 2) {
+            if (isThreshold) {
+                validator.doAddCellValidation(job.getRowStart(), columnLabel, Integer.parseInt(thresholdOrFormula), "100", "数据验证失败！", "数据验证失败！");
+            } else {
+                validator.doAddCellValidation(job.getRowStart(), columnLabel, thresholdOrFormula);
+            }
+        } else if (isThreshold) {
+            validator.doAddCellValidation(job.getRowStart(), columnLabel, Integer.parseInt(thresholdOrFormula), rules.get(2), rules.get(3), rules.get(4));
+        } else {
+            validator.doAddCellValidation(job.getRowStart(), columnLabel, thresholdOrFormula, rules.get(2), rules.get(3), rules.get(4));
+        }
+    }
+
+    /**
+     * 获取源报表中XML部件的解压后大小
+     * @param sourceFile 源报表路径
+     * @param sharedStringsOnly 是否只统计共享字符串表
+     * @return 解压后大小（字节），zip目录中缺少大小时按压缩后大小计
+     * @throws IOException IO操作
+     */
+    private long getXmlSize(String sourceFile, boolean sharedStringsOnly) throws IOException {
+        ZipFile zipFile = new ZipFile(sourceFile);
+        try {
+            long size = 0;
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (SHARED_STRINGS_ENTRY.equals(name)
+                        || (!sharedStringsOnly && (STYLES_ENTRY.equals(name) || (name.startsWith(WORKSHEET_ENTRY_PREFIX) && name.endsWith(".xml"))))) {
+                    size += entry.getSize() >= 0 ? entry.getSize() : Math.max(0, entry.getCompressedSize());
+                }
+            }
+            return size;
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static long toPermits(long bytes) {
+        return (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES;
+    }
+
+    /**
+     * 命令行入口：java ExcelBatchRunner 清单文件 [线程数] [内存预算MB]，任一任务失败时以状态码1退出
+     * @param args 命令行参数
+     * @throws IOException IO操作
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法：ExcelBatchRunner 清单文件 [线程数] [内存预算MB]");
+            System.exit(2);
+        }
+        ExcelBatchRunner runner = new ExcelBatchRunner();
+        if (args.length > 1) {
+            runner.setThreadCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            runner.setMemoryBudget(Long.parseLong(args[2]) * PERMIT_BYTES);
+        }
+        boolean failed = false;
+        for (ExcelBatchResult result : runner.run(args[0])) {
+            System.out.println(result);
+            failed |= !result.isSucceeded();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
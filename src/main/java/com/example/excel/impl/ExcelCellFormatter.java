@@ -0,0 +1,207 @@
+package com.example.excel.impl;
+
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+
+/**
+ * 单元格数值格式化工具类：统一DOM读取与流式读取两条路径的日期与小数格式化规则
+ * @apiNote 格式化器按线程复用，可在多线程间共享；日期格式判定按样式ID缓存，一个实例只应服务于同一workbook
+ * @author yinfelix
+ */
+public class ExcelCellFormatter {
+
+    private static final char DOT_CHAR = '.';
+    private static final double MAX_PLAIN_INTEGER = 1e15;
+    private static final double MIN_PLAIN_DECIMAL = 1e-3;
+    private static final double MAX_PLAIN_DECIMAL = 1e7;
+
+    private static final byte UNKNOWN_FORMAT = 0;
+    private static final byte DATE_FORMAT = 1;
+    private static final byte NUMERIC_FORMAT = 2;
+
+    private final String dateFormat;
+    private final String doubleFormat;
+
+    private final ThreadLocal<SimpleDateFormat> dateFormatter;
+    private final ThreadLocal<DecimalFormat> doubleFormatter;
+    private final ThreadLocal<StringBuffer> formatBuffer;
+    /**
+     * 小数格式为不含分组与前后缀的"0.000000"形式且格式符号为ASCII时为其小数位数，否则为-1（见formatPlain）
+     */
+    private final int plainFractionDigits;
+
+    /**
+     * 各样式ID的日期格式判定结果，下标为样式ID；并发更新时至多重复判定，不影响结果
+     */
+    private volatile byte[] dateFormatCache = new byte[64];
+
+    public ExcelCellFormatter() {
+        this("yyyy-MM-dd HH:mm:ss", "0.000000");
+    }
+
+    public ExcelCellFormatter(String dateFormat, String doubleFormat) {
+        this.dateFormat = dateFormat;
+        this.doubleFormat = doubleFormat;
+        this.dateFormatter = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                return new SimpleDateFormat(ExcelCellFormatter.this.dateFormat);
+            }
+        };
+        this.doubleFormatter = new ThreadLocal<DecimalFormat>() {
+            @Override
+            protected DecimalFormat initialValue() {
+                return new DecimalFormat(ExcelCellFormatter.this.doubleFormat);
+            }
+        };
+        this.formatBuffer = new ThreadLocal<StringBuffer>() {
+            @Override
+            protected StringBuffer initialValue() {
+                return new StringBuffer(32);
+            }
+        };
+        DecimalFormatSymbols symbols = new DecimalFormat(doubleFormat).getDecimalFormatSymbols();
+        boolean asciiSymbols = symbols.getZeroDigit() == '0' && symbols.getMinusSign() == '-' && symbols.getDecimalSeparator() == DOT_CHAR;
+        this.plainFractionDigits = asciiSymbols && doubleFormat.matches("0(\\.0+)?") ? Math.max(0, doubleFormat.length() - 2) : -1;
+    }
+
+    /**
+     * 判断数值单元格是否应按日期格式化，规则与HSSFDateUtil.isCellDateFormatted一致
+     * @param value 单元格数值
+     * @param formatIndex 单元格样式的数据格式ID
+     * @param formatString 单元格样式的数据格式字符串
+     * @return 是否按日期格式化
+     */
+    public boolean isDateFormatted(double value, int formatIndex, String formatString) {
+        return HSSFDateUtil.isValidExcelDate(value) && HSSFDateUtil.isADateFormat(formatIndex, formatString);
+    }
+
+    /**
+     * 判断数值单元格是否应按日期格式化，规则与HSSFDateUtil.isCellDateFormatted一致，
+     * 判定结果按样式ID缓存，同一样式的数据格式字符串只解析一次
+     * @param value 单元格数值
+     * @param cellStyle 单元格样式
+     * @return 是否按日期格式化
+     */
+    public boolean isDateFormatted(double value, CellStyle cellStyle) {
+        if (cellStyle == null || !HSSFDateUtil.isValidExcelDate(value)) {
+            return false;
+        }
+        int styleIndex = cellStyle.getIndex() & 0xFFFF;
+        byte cached = getCachedDateFormat(styleIndex);
+        if (cached == UNKNOWN_FORMAT) {
+            boolean dateFormatted = HSSFDateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+            cacheDateFormat(styleIndex, dateFormatted);
+            return dateFormatted;
+        }
+        return cached == DATE_FORMAT;
+    }
+
+    /**
+     * 查询样式ID的日期格式判定缓存
+     * @param styleIndex 样式ID
+     * @return 缓存的判定结果，未缓存时返回null
+     */
+    Boolean getCachedDateFormatted(int styleIndex) {
+        byte cached = getCachedDateFormat(styleIndex);
+        return cached == UNKNOWN_FORMAT ? null : Boolean.valueOf(cached == DATE_FORMAT);
+    }
+
+    private byte getCachedDateFormat(int styleIndex) {
+        byte[] cache = dateFormatCache;
+        return styleIndex < cache.length ? cache[styleIndex] : UNKNOWN_FORMAT;
+    }
+
+    private void cacheDateFormat(int styleIndex, boolean dateFormatted) {
+        byte[] cache = dateFormatCache;
+        if (styleIndex >= cache.length) {
+            cache = Arrays.copyOf(cache, Math.max(styleIndex + 1, cache.length * 2));
+        }
+        cache[styleIndex] = dateFormatted ? DATE_FORMAT : NUMERIC_FORMAT;
+        dateFormatCache = cache;
+    }
+
+    /**
+     * 格式化数值单元格
+     * @param value 单元格数值
+     * @param dateFormatted 是否按日期格式化
+     * @return 格式化后的字符串
+     */
+    public String formatNumeric(double value, boolean dateFormatted) {
+        if (dateFormatted) {
+            return dateFormatter.get().format(HSSFDateUtil.getJavaDate(value));
+        }
+        String plain = plainFractionDigits < 0 ? null : formatPlain(value);
+        if (plain != null) {
+            return plain;
+        }
+        StringBuffer buffer = formatBuffer.get();
+        buffer.setLength(0);
+        doubleFormatter.get().format(value, buffer, new FieldPosition(0));
+        buffer.setLength(getTrimmedLength(buffer));
+        return buffer.toString();
+    }
+
+    /**
+     * 按最短十进制表示格式化整数与小数位数不超过格式小数位数的数值：此时DecimalFormat无需舍入，
+     * 其结果剔除末尾的零后与最短十进制表示相同，不经DecimalFormat逐位格式化（导出时数值格式化的主要开销）
+     * @return 格式化后的字符串，不适用时返回null（由DecimalFormat格式化）
+     */
+    private String formatPlain(double value) {
+        if (value == (long) value && Math.abs(value) < MAX_PLAIN_INTEGER) {
+//            负零经DecimalFormat格式化为"-0"，不走此路径
+            return value == 0 && Double.doubleToRawLongBits(value) != 0 ? null : Long.toString((long) value);
+        }
+        double magnitude = Math.abs(value);
+        if (plainFractionDigits == 0 || magnitude < MIN_PLAIN_DECIMAL || magnitude >= MAX_PLAIN_DECIMAL) {
+            return null;
+        }
+//        此范围内Double.toString不使用科学计数法
+        String s = Double.toString(value);
+        int length = getTrimmedLength(s);
+        if (length - s.indexOf(DOT_CHAR) - 1 > plainFractionDigits) {
+            return null;
+        }
+        return length == s.length() ? s : s.substring(0, length);
+    }
+
+    /**
+     * 剔除字符串内的零和小数点
+     * @param s 待处理的字符串
+     * @return 处理过后的字符串
+     */
+    public String subZeroAndDot(String s) {
+        int length = getTrimmedLength(s);
+        return length == s.length() ? s : s.substring(0, length);
+    }
+
+    /**
+     * 计算剔除小数部分末尾的零与小数点后的长度（含小数点时才剔除，与正则"0+?$"、"[.]$"的处理结果一致）
+     */
+    private int getTrimmedLength(CharSequence s) {
+        int length = s.length();
+        int dotIndex = -1;
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) == DOT_CHAR) {
+                dotIndex = i;
+                break;
+            }
+        }
+        if (dotIndex <= 0) {
+            return length;
+        }
+        while (length > 0 && s.charAt(length - 1) == '0') {
+            --length;
+        }
+        if (length > 0 && s.charAt(length - 1) == DOT_CHAR) {
+            --length;
+        }
+        return length;
+    }
+}
@@ -4,14 +4,21 @@ import org.apache.poi.ss.usermodel.DataValidation;
 import org.apache.poi.ss.usermodel.DataValidationConstraint;
 import org.apache.poi.ss.usermodel.DataValidationHelper;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellRangeAddressList;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
+ * @apiNote 每个实例对应一个数据验证任务，不同实例可在不同线程中并发执行，同一实例不得由多个线程同时调用
  * @author yinfelix
  */
 public class ExcelCellValidatorImpl {
@@ -27,12 +34,24 @@ public class ExcelCellValidatorImpl {
     private String validationFormula;
     private Map<String, Integer> errorStyleMap;
 
+    /**
+     * 待写入的数据验证规则，键为约束与警告样式，约束相同的规则合并为一个数据验证对象
+     */
+    private Map<String, List<ValidationRule>> pendingRules = new LinkedHashMap<String, List<ValidationRule>>();
+
+    /**
+     * 相对单元格引用（行号或列号不带$，含整行整列引用），含相对引用的公式以所在区域左上角为基准，不能跨区域合并
+     */
+    private static final Pattern RELATIVE_REFERENCE_PATTERN = Pattern.compile(
+            "(?<![$A-Za-z])[A-Za-z]{1,3}\\$?[0-9]+|(?<![A-Za-z])\\$[A-Za-z]{1,3}[0-9]+"
+            + "|(?<![$A-Za-z])[A-Za-z]{1,3}:|:[A-Za-z]{1,3}(?![A-Za-z0-9(])|(?<![$A-Za-z0-9])[0-9]+:|:[0-9]+");
+
     ExcelCellValidatorImpl() {
     }
 
     public ExcelCellValidatorImpl(String sourceFile, String destFile, String sheetName) {
         this.utils = new ExcelUtils();
-        this.excelReader = new ExcelReaderImpl(sourceFile);
+        this.excelReader = new ExcelReaderImpl(sourceFile, Collections.singleton(sheetName));
         this.excelCellValidator = new ExcelCellValidatorImpl();
         this.sheetName = sheetName;
         this.destFile = destFile;
@@ -44,6 +63,14 @@ public class ExcelCellValidatorImpl {
         errorStyleMap.put("102", DataValidation.ErrorStyle.STOP);
     }
 
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()），作用于源报表的读取与写出
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        excelReader.setMetricsListener(metricsListener);
+    }
+
     /**
      * 总额控制入口方法（在指定Sheet页指定列内插入数据验证规则）
      * @param rowStart 总额控制圈注区域行首
@@ -54,23 +81,8 @@ public class ExcelCellValidatorImpl {
      * @param alertContent 出错警告错误信息
      */
     public void doAddCellValidation(int rowStart, String colLabel, String validationFormula, String alertStyle, String alertTitle, String alertContent) {
-        try {
-            Sheet currentSheet = excelReader.getWorkbook().getSheet(sheetName);
-            int colIndex = utils.getColIndexFromColLabel(colLabel.toUpperCase());
-
-            DataValidation dataValidation = excelCellValidator
-                    .getRegionalDataValidationWithCustomFormula(currentSheet, (short) (rowStart - 1), (short) colIndex, (short) currentSheet.getLastRowNum(), (short) colIndex, validationFormula);
-
-            if (dataValidation != null) {
-                excelCellValidator.setDataValidationStyle
-                        (dataValidation, false, errorStyleMap.get(alertStyle), alertTitle, alertContent);
-                currentSheet.addValidationData(dataValidation);
-            }
-            excelReader.exportWorkbook(this.destFile);
-            excelReader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        addTotalControlRule(rowStart, colLabel, validationFormula, alertStyle, alertTitle, alertContent);
+        commitValidations();
     }
 
     /**
@@ -114,7 +126,6 @@ public class ExcelCellValidatorImpl {
         DataValidationHelper helper = sheet.getDataValidationHelper();
         DataValidationConstraint constraint = helper.createCustomConstraint(formula);
         CellRangeAddressList addressList = new CellRangeAddressList(firstRowIndex, endRowIndex, firstColIndex, endColIndex);
-        System.out.println("已添加数据校验");
 
         return helper.createValidation(constraint, addressList);
     }
@@ -139,7 +150,6 @@ public class ExcelCellValidatorImpl {
         validation.setShowErrorBox(true);
         validation.setErrorStyle(alertStyle);
         validation.createErrorBox(alertTitle, alertContent);
-        System.out.println("已设置" + alertStyle + "数据校验样式");
     }
 
     private DataValidation getDataValidationList(Sheet sheet, short firstRowIndex, short firstColIndex, short endRowIndex, short endColIndex, List<String> strList) {
@@ -163,16 +173,126 @@ public class ExcelCellValidatorImpl {
      * @param alertContent 出错警告错误信息
      */
     public void addCellValidation(int rowStart, int rowEnd, int colStart, int colEnd, String formula, String alertStyle, String alertTitle, String alertContent) {
+        addCustomFormulaRule(rowStart, rowEnd, colStart, colEnd, formula, alertStyle, alertTitle, alertContent);
+        commitValidations();
+    }
+
+    /**
+     * 批量添加总额控制规则（在指定列内自指定行至最后一行插入数据验证规则），调用commitValidations后统一写入
+     * @param rowStart 总额控制圈注区域行首（从1开始）
+     * @param colLabel 总额控制列号（字母列号）
+     * @param validationFormula 总额控制公式
+     * @param alertStyle 出错警告样式
+     * @param alertTitle 出错警告标题
+     * @param alertContent 出错警告错误信息
+     */
+    public void addTotalControlRule(int rowStart, String colLabel, String validationFormula, String alertStyle, String alertTitle, String alertContent) {
+        Sheet currentSheet = excelReader.getWorkbook().getSheet(sheetName);
+        int colIndex = utils.getColIndexFromColLabel(colLabel.toUpperCase());
+        addCustomFormulaRule(rowStart - 1, currentSheet.getLastRowNum(), colIndex, colIndex, validationFormula, alertStyle, alertTitle, alertContent);
+    }
+
+    /**
+     * 批量添加阈值规则（指定列合计不超过阈值），调用commitValidations后统一写入
+     * @param rowStart 总额控制圈注区域行首（从1开始）
+     * @param colLabel 总额控制列号（字母列号）
+     * @param thresholdValue 总额控制阈值
+     * @param alertStyle 出错警告样式
+     * @param alertTitle 出错警告标题
+     * @param alertContent 出错警告错误信息
+     */
+    public void addThresholdRule(int rowStart, String colLabel, int thresholdValue, String alertStyle, String alertTitle, String alertContent) {
+        String formula = "=SUM($" + colLabel  + ":$" + colLabel + ") <=  " + thresholdValue;
+        addTotalControlRule(rowStart, colLabel, formula, alertStyle, alertTitle, alertContent);
+    }
+
+    /**
+     * 批量添加自定义公式规则，调用commitValidations后统一写入
+     * @param rowStart 指定区域行首（从0开始）
+     * @param rowEnd 指定区域行尾（从0开始）
+     * @param colStart 指定区域列首（从0开始）
+     * @param colEnd 指定区域列尾（从0开始）
+     * @param formula 数据验证规则公式
+     * @param alertStyle 出错警告样式
+     * @param alertTitle 出错警告标题
+     * @param alertContent 出错警告错误信息
+     */
+    public void addCustomFormulaRule(int rowStart, int rowEnd, int colStart, int colEnd, String formula, String alertStyle, String alertTitle, String alertContent) {
+        CellRangeAddress region = new CellRangeAddress(rowStart, rowEnd, colStart, colEnd);
+        String constraintKey = "CUSTOM|" + formula;
+        if (RELATIVE_REFERENCE_PATTERN.matcher(formula).find()) {
+            // 相对引用以区域左上角为基准，仅与左上角相同的规则合并
+            constraintKey += "|" + region.getFirstRow() + "," + region.getFirstColumn();
+        }
+        addRule(new ValidationRule(ValidationRule.CUSTOM, new String[]{formula}, region, alertStyle, alertTitle, alertContent), constraintKey);
+    }
+
+    /**
+     * 批量添加下拉列表规则，调用commitValidations后统一写入
+     * @param rowStart 指定区域行首（从0开始）
+     * @param rowEnd 指定区域行尾（从0开始）
+     * @param colStart 指定区域列首（从0开始）
+     * @param colEnd 指定区域列尾（从0开始）
+     * @param values 可选值
+     * @param alertStyle 出错警告样式
+     * @param alertTitle 出错警告标题
+     * @param alertContent 出错警告错误信息
+     */
+    public void addListRule(int rowStart, int rowEnd, int colStart, int colEnd, List<String> values, String alertStyle, String alertTitle, String alertContent) {
+        String[] data = values.toArray(new String[0]);
+        StringBuilder constraintKey = new StringBuilder("LIST");
+        for (String value : data) {
+            constraintKey.append('|').append(value.length()).append(':').append(value);
+        }
+        addRule(new ValidationRule(ValidationRule.LIST, data, new CellRangeAddress(rowStart, rowEnd, colStart, colEnd),
+                alertStyle, alertTitle, alertContent), constraintKey.toString());
+    }
+
+    /**
+     * 批量添加数值区间规则（单元格数值须介于最小值与最大值之间，含边界），调用commitValidations后统一写入
+     * @param rowStart 指定区域行首（从0开始）
+     * @param rowEnd 指定区域行尾（从0开始）
+     * @param colStart 指定区域列首（从0开始）
+     * @param colEnd 指定区域列尾（从0开始）
+     * @param minValue 最小值
+     * @param maxValue 最大值
+     * @param alertStyle 出错警告样式
+     * @param alertTitle 出错警告标题
+     * @param alertContent 出错警告错误信息
+     */
+    public void addRangeRule(int rowStart, int rowEnd, int colStart, int colEnd, double minValue, double maxValue, String alertStyle, String alertTitle, String alertContent) {
+        String[] bounds = new String[]{String.valueOf(minValue), String.valueOf(maxValue)};
+        addRule(new ValidationRule(ValidationRule.RANGE, bounds, new CellRangeAddress(rowStart, rowEnd, colStart, colEnd),
+                alertStyle, alertTitle, alertContent), "RANGE|" + bounds[0] + "|" + bounds[1]);
+    }
+
+    private void addRule(ValidationRule rule, String constraintKey) {
+        String ruleKey = constraintKey + "|" + rule.alertStyle + "|" + rule.alertTitle + "|" + rule.alertContent;
+        List<ValidationRule> rules = pendingRules.get(ruleKey);
+        if (rules == null) {
+            rules = new ArrayList<ValidationRule>();
+            pendingRules.put(ruleKey, rules);
+        }
+        rules.add(rule);
+    }
+
+    /**
+     * 将已添加的全部规则写入报表：约束与警告样式相同的规则合并为一个数据验证对象（相邻区域合并），
+     * 工作簿只导出一次并关闭
+     */
+    public void commitValidations() {
         try {
             Sheet currentSheet = excelReader.getWorkbook().getSheet(sheetName);
-            DataValidation dataValidation = excelCellValidator
-                    .getRegionalDataValidationWithCustomFormula(currentSheet, (short) rowStart, (short) colStart, (short) rowEnd, (short) colEnd, formula);
-
-            if (dataValidation != null) {
-                excelCellValidator.setDataValidationStyle
-                        (dataValidation, false, errorStyleMap.get(alertStyle), alertTitle, alertContent);
-                currentSheet.addValidationData(dataValidation);
+            for (List<ValidationRule> rules : pendingRules.values()) {
+                ValidationRule rule = rules.get(0);
+                DataValidation dataValidation = getDataValidation(currentSheet, rule, getCoalescedAddressList(rules));
+                if (dataValidation != null) {
+                    excelCellValidator.setDataValidationStyle
+                            (dataValidation, false, errorStyleMap.get(rule.alertStyle), rule.alertTitle, rule.alertContent);
+                    currentSheet.addValidationData(dataValidation);
+                }
             }
+            pendingRules.clear();
             excelReader.exportWorkbook(this.destFile);
             excelReader.close();
         } catch (IOException e) {
@@ -180,5 +300,88 @@ public class ExcelCellValidatorImpl {
         }
     }
 
+    private DataValidation getDataValidation(Sheet sheet, ValidationRule rule, CellRangeAddressList addressList) {
+        DataValidationHelper helper = sheet.getDataValidationHelper();
+        DataValidationConstraint constraint;
+        switch (rule.type) {
+            case ValidationRule.LIST:
+                constraint = helper.createExplicitListConstraint(rule.constraintValues);
+                break;
+            case ValidationRule.RANGE:
+                constraint = helper.createDecimalConstraint(DataValidationConstraint.OperatorType.BETWEEN,
+                        rule.constraintValues[0], rule.constraintValues[1]);
+                break;
+            default:
+                constraint = helper.createCustomConstraint(rule.constraintValues[0]);
+                break;
+        }
+        return helper.createValidation(constraint, addressList);
+    }
+
+    /**
+     * 合并同一约束下的各区域：列区间相同且行区间相接或重叠的区域合并为一个区域
+     */
+    private CellRangeAddressList getCoalescedAddressList(List<ValidationRule> rules) {
+        List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+        for (ValidationRule rule : rules) {
+            regions.add(rule.region);
+        }
+        Collections.sort(regions, new Comparator<CellRangeAddress>() {
+            @Override
+            public int compare(CellRangeAddress o1, CellRangeAddress o2) {
+                if (o1.getFirstColumn() != o2.getFirstColumn()) {
+                    return o1.getFirstColumn() - o2.getFirstColumn();
+                }
+                if (o1.getLastColumn() != o2.getLastColumn()) {
+                    return o1.getLastColumn() - o2.getLastColumn();
+                }
+                return o1.getFirstRow() - o2.getFirstRow();
+            }
+        });
+
+        CellRangeAddressList addressList = new CellRangeAddressList();
+        CellRangeAddress current = null;
+        for (CellRangeAddress region : regions) {
+            if (current != null && current.getFirstColumn() == region.getFirstColumn() && current.getLastColumn() == region.getLastColumn()
+                    && region.getFirstRow() <= current.getLastRow() + 1) {
+                current.setLastRow(Math.max(current.getLastRow(), region.getLastRow()));
+                continue;
+            }
+            if (current != null) {
+                addressList.addCellRangeAddress(current);
+            }
+            current = region.copy();
+        }
+        if (current != null) {
+            addressList.addCellRangeAddress(current);
+        }
+        return addressList;
+    }
+
+    /**
+     * 待写入的数据验证规则
+     */
+    private static class ValidationRule {
+        private static final int CUSTOM = 0;
+        private static final int LIST = 1;
+        private static final int RANGE = 2;
+
+        private final int type;
+        private final String[] constraintValues;
+        private final CellRangeAddress region;
+        private final String alertStyle;
+        private final String alertTitle;
+        private final String alertContent;
+
+        private ValidationRule(int type, String[] constraintValues, CellRangeAddress region, String alertStyle, String alertTitle, String alertContent) {
+            this.type = type;
+            this.constraintValues = constraintValues;
+            this.region = region;
+            this.alertStyle = alertStyle;
+            this.alertTitle = alertTitle;
+            this.alertContent = alertContent;
+        }
+    }
+
     public static void main(String[] args) {}
 }
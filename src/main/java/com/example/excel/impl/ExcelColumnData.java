@@ -0,0 +1,241 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单列数据的列式缓冲区：数值保存于double数组，文本按字典编码保存，空单元格以位图标记
+ * @apiNote 下标为相对于读取区域首行的偏移（从0开始）；公式单元格取缓存的计算结果；
+ * 读取方法返回之后内容不再变化，可在线程间共享（getNumbers等返回的数组不得修改）
+ * @author yinfelix
+ */
+public class ExcelColumnData {
+
+    /**
+     * 单元格不存在时的类型标识
+     */
+    public static final int CELL_TYPE_NONE = -1;
+
+    private final int columnIndex;
+    private final int firstRowIndex;
+    private final int rowCount;
+    private final ExcelCellFormatter formatter;
+
+    private final byte[] types;
+    private final double[] numbers;
+    private final int[] stringCodes;
+    private final BitSet blanks;
+    private final BitSet dates;
+
+    private final List<String> dictionary = new ArrayList<String>();
+    private final Map<String, Integer> dictionaryCodes = new HashMap<String, Integer>();
+    /**
+     * 共享字符串索引到字典编码的映射（编码加1，0表示尚未出现），同一共享字符串只生成一次String对象
+     */
+    private int[] sharedStringCodes = new int[0];
+
+    ExcelColumnData(int columnIndex, int firstRowIndex, int rowCount, ExcelCellFormatter formatter) {
+        this.columnIndex = columnIndex;
+        this.firstRowIndex = firstRowIndex;
+        this.rowCount = rowCount;
+        this.formatter = formatter;
+        this.types = new byte[rowCount];
+        this.numbers = new double[rowCount];
+        this.stringCodes = new int[rowCount];
+        this.blanks = new BitSet(rowCount);
+        this.dates = new BitSet(rowCount);
+        Arrays.fill(types, (byte) CELL_TYPE_NONE);
+        Arrays.fill(numbers, Double.NaN);
+        Arrays.fill(stringCodes, -1);
+        blanks.set(0, rowCount);
+    }
+
+    /**
+     * 获取列号（从1开始）
+     * @return 列号（从1开始）
+     */
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * 获取读取区域首行的行号（从1开始）
+     * @return 首行行号（从1开始）
+     */
+    public int getFirstRowIndex() {
+        return firstRowIndex;
+    }
+
+    /**
+     * 获取读取区域的行数
+     * @return 行数
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 获取指定行的单元格类型（公式单元格为缓存结果的类型）
+     * @param offset 行偏移（从0开始）
+     * @return Cell.CELL_TYPE_*常量，单元格不存在时返回CELL_TYPE_NONE
+     */
+    public int getCellType(int offset) {
+        return types[offset];
+    }
+
+    /**
+     * 指定行是否为空（单元格不存在或为空白单元格）
+     * @param offset 行偏移（从0开始）
+     * @return 是否为空
+     */
+    public boolean isBlank(int offset) {
+        return blanks.get(offset);
+    }
+
+    /**
+     * 指定行是否为日期格式的数值单元格
+     * @param offset 行偏移（从0开始）
+     * @return 是否为日期格式
+     */
+    public boolean isDateFormatted(int offset) {
+        return dates.get(offset);
+    }
+
+    /**
+     * 获取指定行的数值（布尔值以1/0表示），非数值单元格返回NaN
+     * @param offset 行偏移（从0开始）
+     * @return 数值
+     */
+    public double getNumericValue(int offset) {
+        return numbers[offset];
+    }
+
+    /**
+     * 获取指定行文本的字典编码，非文本单元格返回-1
+     * @param offset 行偏移（从0开始）
+     * @return 字典编码
+     */
+    public int getStringCode(int offset) {
+        return stringCodes[offset];
+    }
+
+    /**
+     * 获取指定行的文本，非文本单元格返回null
+     * @param offset 行偏移（从0开始）
+     * @return 文本
+     */
+    public String getStringValue(int offset) {
+        int code = stringCodes[offset];
+        return code < 0 ? null : dictionary.get(code);
+    }
+
+    /**
+     * 获取指定行的格式化数值，格式化规则与ExcelReaderImpl.getCellValue一致（公式单元格取计算结果）
+     * @param offset 行偏移（从0开始）
+     * @return 格式化数值
+     */
+    public String getFormattedValue(int offset) {
+        switch (types[offset]) {
+            case Cell.CELL_TYPE_NUMERIC:
+                return formatter.formatNumeric(numbers[offset], dates.get(offset));
+            case Cell.CELL_TYPE_STRING:
+                return dictionary.get(stringCodes[offset]);
+            case Cell.CELL_TYPE_BLANK:
+                return " ";
+            case Cell.CELL_TYPE_BOOLEAN:
+                return String.valueOf(numbers[offset] != 0);
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * 获取数值数组（只读视图，不得修改），非数值单元格为NaN
+     * @return 数值数组
+     */
+    public double[] getNumbers() {
+        return numbers;
+    }
+
+    /**
+     * 获取文本字典编码数组（只读视图，不得修改），非文本单元格为-1
+     * @return 字典编码数组
+     */
+    public int[] getStringCodes() {
+        return stringCodes;
+    }
+
+    /**
+     * 获取文本字典，编码即下标，按首次出现的顺序排列
+     * @return 文本字典
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * 获取空单元格位图的副本
+     * @return 空单元格位图
+     */
+    public BitSet getBlanks() {
+        return (BitSet) blanks.clone();
+    }
+
+    void setNumeric(int offset, double value, boolean dateFormatted) {
+        types[offset] = Cell.CELL_TYPE_NUMERIC;
+        numbers[offset] = value;
+        blanks.clear(offset);
+        if (dateFormatted) {
+            dates.set(offset);
+        }
+    }
+
+    void setString(int offset, String value) {
+        Integer code = dictionaryCodes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+        }
+        types[offset] = Cell.CELL_TYPE_STRING;
+        stringCodes[offset] = code;
+        blanks.clear(offset);
+    }
+
+    void setSharedString(int offset, int sharedStringIndex, ExcelRowMatcher.SharedStringLookup sharedStrings) {
+        if (sharedStringIndex >= sharedStringCodes.length) {
+            sharedStringCodes = Arrays.copyOf(sharedStringCodes, Math.max(sharedStringIndex + 1, sharedStringCodes.length * 2));
+        }
+        int code = sharedStringCodes[sharedStringIndex] - 1;
+        if (code < 0) {
+            setString(offset, sharedStrings.getString(sharedStringIndex));
+            sharedStringCodes[sharedStringIndex] = stringCodes[offset] + 1;
+            return;
+        }
+        types[offset] = Cell.CELL_TYPE_STRING;
+        stringCodes[offset] = code;
+        blanks.clear(offset);
+    }
+
+    void setBoolean(int offset, boolean value) {
+        types[offset] = Cell.CELL_TYPE_BOOLEAN;
+        numbers[offset] = value ? 1 : 0;
+        blanks.clear(offset);
+    }
+
+    void setBlank(int offset) {
+        types[offset] = Cell.CELL_TYPE_BLANK;
+    }
+
+    void setError(int offset) {
+        types[offset] = Cell.CELL_TYPE_ERROR;
+        blanks.clear(offset);
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 流式导出sheet页为分隔文本（CSV/TSV）：逐行流式读取源报表，单元格按ExcelReaderImpl.getCellValue的规则格式化后
+ * 经定长的字符与字节缓冲区编码，直接写入文件通道，不生成整行或整个文件的字符串，堆内存占用与行数无关（只保留共享字符串表）
+ * @apiNote CSV按RFC 4180处理：含逗号、双引号或换行的字段整体加双引号，字段内的双引号写为两个双引号，默认行分隔符为CRLF；
+ * TSV按PostgreSQL/MySQL文本格式转义：字段内的反斜杠、制表符与换行写为\\、\t、\n、\r，默认行分隔符为LF。
+ * 每行的字段数为该行最后一个单元格的列号；源文件中不存在的行写为空行（与ExcelStreamingSplitProcessorImpl一致），
+ * 空白单元格为" "，错误单元格为空字段，公式单元格默认为公式字符串（见setFormulaResults）
+ * @author yinfelix
+ */
+public class ExcelDelimitedExporter {
+
+    /**
+     * 分隔文本格式
+     */
+    public enum Format {
+        /**
+         * 逗号分隔，字段按需加双引号
+         */
+        CSV(',', "\r\n"),
+        /**
+         * 制表符分隔，字段内的特殊字符以反斜杠转义
+         */
+        TSV('\t', "\n");
+
+        private final char delimiter;
+        private final String lineSeparator;
+
+        Format(char delimiter, String lineSeparator) {
+            this.delimiter = delimiter;
+            this.lineSeparator = lineSeparator;
+        }
+    }
+
+    private static final String METRICS_OPERATION = "delimitedExport";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private String sourceFile;
+    private String destFile;
+    private String sheetName;
+    private Format format;
+
+    private Charset charset = Charset.forName("UTF-8");
+    private String lineSeparator;
+    private boolean formulaResults = false;
+    private boolean offHeapSharedStrings = false;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    private ExcelUtils utils;
+
+    public ExcelDelimitedExporter(String sourceFile, String destFile, String sheetName, Format format) {
+        this.sourceFile = sourceFile;
+        this.destFile = destFile;
+        this.sheetName = sheetName;
+        this.format = format;
+        this.lineSeparator = format.lineSeparator;
+        this.utils = new ExcelUtils();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * 设置输出文件的字符集（默认UTF-8，不写BOM），字符集无法表示的字符替换为该字符集的替换字符
+     * @param charset 字符集
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    public void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+    }
+
+    public boolean isFormulaResults() {
+        return formulaResults;
+    }
+
+    /**
+     * 设置公式单元格是否导出缓存的计算结果（按其结果类型格式化，与ExcelColumnData一致），默认导出公式字符串（与getCellValue一致）
+     * @param formulaResults 是否导出计算结果
+     */
+    public void setFormulaResults(boolean formulaResults) {
+        this.formulaResults = formulaResults;
+    }
+
+    public boolean isOffHeapSharedStrings() {
+        return offHeapSharedStrings;
+    }
+
+    /**
+     * 设置源报表的共享字符串表是否保存于堆外
+     * @param offHeapSharedStrings 是否保存于堆外
+     */
+    public void setOffHeapSharedStrings(boolean offHeapSharedStrings) {
+        this.offHeapSharedStrings = offHeapSharedStrings;
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 导出整个sheet页
+     * @return 写出的行数（含空行）
+     * @throws IOException IO操作
+     */
+    public long export() throws IOException {
+        return exportRows(null, 0);
+    }
+
+    /**
+     * 导出拆分结果（列号为字母），判定规则与ExcelSplitByRowProcessorImpl.doExcelRowSplit一致
+     * @param splitCondition 拆分条件
+     * @param targetColumnLabel 拆分列号（字母）
+     * @param rowStart 数据区域首行行号（从1开始），之前的行始终导出
+     * @return 写出的行数（含空行）
+     * @throws IOException IO操作
+     */
+    public long export(final String splitCondition, String targetColumnLabel, int rowStart) throws IOException {
+        final int targetColumnIndex = utils.getColIndexFromColLabel(targetColumnLabel) + 1;
+        return exportRows(new RowFilter() {
+            @Override
+            boolean accept(ExcelStreamRow row) {
+                return splitCondition.equals(row.getCellValue(targetColumnIndex));
+            }
+        }, rowStart);
+    }
+
+    /**
+     * 导出拆分结果（多列组合条件），只导出满足条件的数据行，保留行依次上移（与ExcelStreamingSplitProcessorImpl一致）
+     * @param predicate 行筛选条件
+     * @param rowStart 数据区域首行行号（从1开始），之前的行始终导出
+     * @return 写出的行数（含空行）
+     * @throws IOException IO操作
+     */
+    public long export(final ExcelSplitPredicate predicate, int rowStart) throws IOException {
+        return exportRows(new RowFilter() {
+            private ExcelRowMatcher matcher;
+
+            @Override
+            boolean accept(ExcelStreamRow row) {
+                return matcher.matches(row);
+            }
+
+            @Override
+            void init(ExcelStreamReaderImpl streamReader) {
+                matcher = predicate.compile(streamReader);
+            }
+        }, rowStart);
+    }
+
+    /**
+     * 数据行保留判定
+     */
+    private abstract static class RowFilter {
+        abstract boolean accept(ExcelStreamRow row);
+
+        void init(ExcelStreamReaderImpl streamReader) {
+        }
+    }
+
+    private long exportRows(RowFilter rowFilter, int rowStart) throws IOException {
+        ExcelStreamReaderImpl streamReader = new ExcelStreamReaderImpl(sourceFile, offHeapSharedStrings);
+        streamReader.setMetricsListener(metricsListener);
+        try {
+            if (rowFilter != null) {
+                rowFilter.init(streamReader);
+            }
+            ChannelWriter writer = new ChannelWriter(new File(destFile), charset);
+            boolean completed = false;
+            try {
+                long startNanos = System.nanoTime();
+                RowWriter rowWriter = new RowWriter(writer, rowFilter, rowStart);
+                try {
+                    streamReader.readSheet(sheetName, rowWriter);
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException && e == rowWriter.writeFailure) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw e;
+                }
+                writer.close();
+                completed = true;
+                ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SERIALIZE, startNanos, rowWriter.writtenRowCount, rowWriter.writtenCellCount);
+                return rowWriter.writtenRowCount;
+            } finally {
+                if (!completed) {
+                    writer.abort();
+                }
+            }
+        } finally {
+            streamReader.close();
+        }
+    }
+
+    /**
+     * 逐行写出；rowFilter不为null时按条件筛选数据行（rowStart之前的行与空行始终保留）
+     */
+    private class RowWriter implements ExcelRowHandler {
+
+        private final ChannelWriter writer;
+        private final RowFilter rowFilter;
+        private final int rowStart;
+
+        private int lastSourceRowIndex = 0;
+
+        private long writtenRowCount;
+        private long writtenCellCount;
+        private RuntimeException writeFailure;
+
+        RowWriter(ChannelWriter writer, RowFilter rowFilter, int rowStart) {
+            this.writer = writer;
+            this.rowFilter = rowFilter;
+            this.rowStart = rowStart;
+        }
+
+        @Override
+        public void handleRow(ExcelStreamRow row) {
+            int sourceRowIndex = row.getRowIndex();
+            try {
+                for (int rowIndex = lastSourceRowIndex + 1; rowIndex < sourceRowIndex; rowIndex++) {
+                    writer.write(lineSeparator);
+                    ++writtenRowCount;
+                }
+                lastSourceRowIndex = sourceRowIndex;
+                if (rowFilter != null && sourceRowIndex >= rowStart && !rowFilter.accept(row)) {
+                    return;
+                }
+                for (int columnIndex = 1; columnIndex <= row.getLastColumnIndex(); columnIndex++) {
+                    if (columnIndex > 1) {
+                        writer.write(format.delimiter);
+                    }
+                    writeField(getValue(row, columnIndex));
+                }
+                writer.write(lineSeparator);
+                ++writtenRowCount;
+                writtenCellCount += row.getLastColumnIndex();
+            } catch (IOException e) {
+//                行回调不能抛出受检异常，由exportRows解包
+                writeFailure = new RuntimeException(e);
+                throw writeFailure;
+            }
+        }
+
+        private String getValue(ExcelStreamRow row, int columnIndex) {
+            if (!formulaResults || row.getCellType(columnIndex) != Cell.CELL_TYPE_FORMULA) {
+                return row.getCellValue(columnIndex);
+            }
+            switch (row.getCachedFormulaResultType(columnIndex)) {
+                case Cell.CELL_TYPE_STRING:
+                    return row.getCachedFormulaStringValue(columnIndex);
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return String.valueOf(row.getNumericCellValue(columnIndex) != 0);
+                case Cell.CELL_TYPE_ERROR:
+                    return "";
+                default:
+//                    尚未计算（无缓存值）的公式与XSSFCell一致，按数值0处理
+                    return row.formatNumber(columnIndex, row.getNumericCellValue(columnIndex));
+            }
+        }
+
+        private void writeField(String value) throws IOException {
+            int length = value.length();
+            int special = 0;
+            while (special < length && !isSpecial(value.charAt(special))) {
+                special++;
+            }
+            if (special == length) {
+                writer.write(value, 0, length);
+            } else if (format == Format.CSV) {
+                writer.write('"');
+                int start = 0;
+                for (int i = special; i < length; i++) {
+                    if (value.charAt(i) == '"') {
+                        writer.write(value, start, i + 1);
+                        start = i;
+                    }
+                }
+                writer.write(value, start, length);
+                writer.write('"');
+            } else {
+                writer.write(value, 0, special);
+                for (int i = special; i < length; i++) {
+                    char c = value.charAt(i);
+                    switch (c) {
+                        case '\\':
+                            writer.write("\\\\");
+                            break;
+                        case '\t':
+                            writer.write("\\t");
+                            break;
+                        case '\n':
+                            writer.write("\\n");
+                            break;
+                        case '\r':
+                            writer.write("\\r");
+                            break;
+                        default:
+                            writer.write(c);
+                            break;
+                    }
+                }
+            }
+        }
+
+        private boolean isSpecial(char c) {
+            if (format == Format.CSV) {
+                return c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            return c == '\t' || c == '\\' || c == '\n' || c == '\r';
+        }
+    }
+
+    /**
+     * 经定长缓冲区编码并写入文件通道
+     */
+    private static class ChannelWriter {
+        private final File file;
+        private final FileChannel channel;
+        private final CharsetEncoder encoder;
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(2 * BUFFER_SIZE);
+
+        ChannelWriter(File file, Charset charset) throws IOException {
+            this.file = file;
+            this.channel = new FileOutputStream(file).getChannel();
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        void write(char c) throws IOException {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            chars.put(c);
+        }
+
+        void write(String s) throws IOException {
+            write(s, 0, s.length());
+        }
+
+        void write(String s, int start, int end) throws IOException {
+            while (start < end) {
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+                int count = Math.min(end - start, chars.remaining());
+                chars.put(s, start, start + count);
+                start += count;
+            }
+        }
+
+        /**
+         * 编码字符缓冲区中的字符（末尾不完整的代理对留待下次编码）
+         */
+        private void encode(boolean endOfInput) throws IOException {
+            chars.flip();
+            CoderResult result;
+            while ((result = encoder.encode(chars, bytes, endOfInput)).isOverflow()) {
+                flushBytes();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            chars.compact();
+        }
+
+        private void flushBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        void close() throws IOException {
+            try {
+                encode(true);
+                while (encoder.flush(bytes).isOverflow()) {
+                    flushBytes();
+                }
+                flushBytes();
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * 放弃写出：关闭通道并删除不完整的目标文件
+         *
+         * @apiNote 在异常处理路径上调用，不抛出异常，以免掩盖原始异常
+         */
+        void abort() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+//                原始异常优先
+            }
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.*;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.*;
+
+/**
+ * 增量公式重算工具类：整个workbook共用一个公式计算器（已计算的单元格结果在计算器内缓存复用），
+ * 只重算直接或间接引用了变动区域的公式单元格，并按依赖层级由近及远依次计算
+ * @author yinfelix
+ */
+public class ExcelFormulaRecalculator {
+
+    private final XSSFWorkbook workbook;
+    private final XSSFFormulaEvaluator evaluator;
+
+    public ExcelFormulaRecalculator(XSSFWorkbook workbook) {
+        this.workbook = workbook;
+        this.evaluator = new XSSFFormulaEvaluator(workbook);
+    }
+
+    /**
+     * 重算受指定sheet页行变动影响的公式单元格：位于变动区域内的公式、引用了变动区域的公式、
+     * 以及引用了上述公式单元格的公式（无法解析、引用名称或没有缓存结果的公式按受影响处理）
+     * @param sheetIndex 发生行变动的sheet页ID（从0开始）
+     * @param firstChangedRowIndex 首个内容发生变动的行号（从0开始），其后各行均视为已变动
+     * @return 重算的公式单元格数量
+     */
+    public int recalculate(int sheetIndex, int firstChangedRowIndex) {
+        XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+        List<FormulaNode> pendingNodes = new ArrayList<FormulaNode>();
+        List<FormulaNode> dirtyNodes = new ArrayList<FormulaNode>();
+        Map<Integer, TreeMap<Integer, BitSet>> dirtyCells = new HashMap<Integer, TreeMap<Integer, BitSet>>();
+
+        for (int formulaSheetIndex = 0; formulaSheetIndex < workbook.getNumberOfSheets(); formulaSheetIndex++) {
+            Sheet sheet = workbook.getSheetAt(formulaSheetIndex);
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+                        continue;
+                    }
+                    FormulaNode node = new FormulaNode(cell, formulaSheetIndex);
+                    boolean dirty = (formulaSheetIndex == sheetIndex && cell.getRowIndex() >= firstChangedRowIndex)
+                            || !((XSSFCell) cell).getCTCell().isSetV();
+                    if (!parseReferences(evaluationWorkbook, node)) {
+                        dirty = true;
+                    }
+                    for (int i = 0; !dirty && i < node.references.length; i += 5) {
+                        dirty = node.references[i] == sheetIndex && node.references[i + 3] >= firstChangedRowIndex;
+                    }
+                    if (dirty) {
+                        markDirty(node, 0, dirtyNodes, dirtyCells);
+                    } else {
+                        pendingNodes.add(node);
+                    }
+                }
+            }
+        }
+
+//        逐层传播：引用了上一层受影响公式单元格的公式属于下一层，直至不再新增
+        int level = 0;
+        boolean changed = !dirtyNodes.isEmpty();
+        while (changed && !pendingNodes.isEmpty()) {
+            level++;
+            changed = false;
+            List<FormulaNode> newlyDirty = new ArrayList<FormulaNode>();
+            for (Iterator<FormulaNode> iterator = pendingNodes.iterator(); iterator.hasNext(); ) {
+                FormulaNode node = iterator.next();
+                if (referencesDirtyCell(node, dirtyCells)) {
+                    newlyDirty.add(node);
+                    iterator.remove();
+                }
+            }
+            for (FormulaNode node : newlyDirty) {
+                markDirty(node, level, dirtyNodes, dirtyCells);
+                changed = true;
+            }
+        }
+
+        evaluate(dirtyNodes);
+        return dirtyNodes.size();
+    }
+
+    /**
+     * 按给定顺序计算公式单元格（共用同一计算器）
+     * @param cells 公式单元格
+     */
+    public void recalculate(Collection<? extends Cell> cells) {
+        for (Cell cell : cells) {
+            evaluate(cell);
+        }
+    }
+
+    private void evaluate(List<FormulaNode> dirtyNodes) {
+        Collections.sort(dirtyNodes);
+        for (FormulaNode node : dirtyNodes) {
+            evaluate(node.cell);
+        }
+    }
+
+    private void evaluate(Cell cell) {
+        try {
+            evaluator.evaluateFormulaCell(cell);
+        } catch (RuntimeException e) {
+            // 公式中存在计算器不支持的函数或引用，交由Excel打开时重新计算
+            workbook.setForceFormulaRecalculation(true);
+        }
+    }
+
+    private void markDirty(FormulaNode node, int level, List<FormulaNode> dirtyNodes, Map<Integer, TreeMap<Integer, BitSet>> dirtyCells) {
+        node.level = level;
+        dirtyNodes.add(node);
+        TreeMap<Integer, BitSet> sheetCells = dirtyCells.get(node.sheetIndex);
+        if (sheetCells == null) {
+            sheetCells = new TreeMap<Integer, BitSet>();
+            dirtyCells.put(node.sheetIndex, sheetCells);
+        }
+        BitSet rowCells = sheetCells.get(node.cell.getRowIndex());
+        if (rowCells == null) {
+            rowCells = new BitSet();
+            sheetCells.put(node.cell.getRowIndex(), rowCells);
+        }
+        rowCells.set(node.cell.getColumnIndex());
+    }
+
+    private boolean referencesDirtyCell(FormulaNode node, Map<Integer, TreeMap<Integer, BitSet>> dirtyCells) {
+        int[] references = node.references;
+        for (int i = 0; i < references.length; i += 5) {
+            TreeMap<Integer, BitSet> sheetCells = dirtyCells.get(references[i]);
+            if (sheetCells == null) {
+                continue;
+            }
+            for (BitSet rowCells : sheetCells.subMap(references[i + 1], true, references[i + 3], true).values()) {
+                int column = rowCells.nextSetBit(references[i + 2]);
+                if (column >= 0 && column <= references[i + 4]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析公式引用的单元格区域，依次记录为（sheet页ID，首行，首列，末行，末列）
+     * @return 是否解析成功（公式无法解析或引用了名称时返回false）
+     */
+    private boolean parseReferences(XSSFEvaluationWorkbook evaluationWorkbook, FormulaNode node) {
+        Ptg[] ptgs;
+        try {
+            ptgs = FormulaParser.parse(node.cell.getCellFormula(), evaluationWorkbook, FormulaType.CELL, node.sheetIndex);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        int[] references = new int[ptgs.length * 5];
+        int count = 0;
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof NamePtg || ptg instanceof NameXPtg) {
+                return false;
+            }
+            int referencedSheetIndex = node.sheetIndex;
+            if (ptg instanceof Ref3DPtg) {
+                referencedSheetIndex = evaluationWorkbook.convertFromExternSheetIndex(((Ref3DPtg) ptg).getExternSheetIndex());
+            } else if (ptg instanceof Area3DPtg) {
+                referencedSheetIndex = evaluationWorkbook.convertFromExternSheetIndex(((Area3DPtg) ptg).getExternSheetIndex());
+            }
+            if (ptg instanceof RefPtgBase) {
+                RefPtgBase ref = (RefPtgBase) ptg;
+                count = addReference(references, count, referencedSheetIndex, ref.getRow(), ref.getColumn(), ref.getRow(), ref.getColumn());
+            } else if (ptg instanceof AreaPtgBase) {
+                AreaPtgBase area = (AreaPtgBase) ptg;
+                count = addReference(references, count, referencedSheetIndex, area.getFirstRow(), area.getFirstColumn(), area.getLastRow(), area.getLastColumn());
+            }
+        }
+        node.references = Arrays.copyOf(references, count);
+        return true;
+    }
+
+    private int addReference(int[] references, int count, int sheetIndex, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        references[count++] = sheetIndex;
+        references[count++] = Math.min(firstRow, lastRow);
+        references[count++] = Math.min(firstColumn, lastColumn);
+        references[count++] = Math.max(firstRow, lastRow);
+        references[count++] = Math.max(firstColumn, lastColumn);
+        return count;
+    }
+
+    private static class FormulaNode implements Comparable<FormulaNode> {
+        private final Cell cell;
+        private final int sheetIndex;
+        private int[] references = new int[0];
+        private int level;
+
+        private FormulaNode(Cell cell, int sheetIndex) {
+            this.cell = cell;
+            this.sheetIndex = sheetIndex;
+        }
+
+        @Override
+        public int compareTo(FormulaNode other) {
+            if (level != other.level) {
+                return level < other.level ? -1 : 1;
+            }
+            if (sheetIndex != other.sheetIndex) {
+                return sheetIndex < other.sheetIndex ? -1 : 1;
+            }
+            if (cell.getRowIndex() != other.cell.getRowIndex()) {
+                return cell.getRowIndex() < other.cell.getRowIndex() ? -1 : 1;
+            }
+            return cell.getColumnIndex() < other.cell.getColumnIndex() ? -1 : (cell.getColumnIndex() == other.cell.getColumnIndex() ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.excel.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 内存中的指标汇总实现：按处理阶段累计耗时、行数与单元格数，并记录观测到的堆内存占用峰值
+ * @apiNote 堆内存峰值为各阶段结束时采样值的最大值，并非精确峰值
+ * @author yinfelix
+ */
+public class ExcelInMemoryMetricsReporter implements ExcelMetricsListener {
+
+    private final Map<ExcelMetricsPhase, long[]> totals = new EnumMap<ExcelMetricsPhase, long[]>(ExcelMetricsPhase.class);
+    private long peakHeapBytes;
+
+    private static final int COUNT = 0;
+    private static final int ELAPSED_NANOS = 1;
+    private static final int ROW_COUNT = 2;
+    private static final int CELL_COUNT = 3;
+
+    @Override
+    public synchronized void onPhase(ExcelPhaseMetrics metrics) {
+        long[] total = totals.get(metrics.getPhase());
+        if (total == null) {
+            total = new long[4];
+            totals.put(metrics.getPhase(), total);
+        }
+        total[COUNT]++;
+        total[ELAPSED_NANOS] += metrics.getElapsedNanos();
+        total[ROW_COUNT] += metrics.getRowCount();
+        total[CELL_COUNT] += metrics.getCellCount();
+        peakHeapBytes = Math.max(peakHeapBytes, metrics.getHeapUsedBytes());
+    }
+
+    /**
+     * 获取指定阶段的执行次数
+     * @param phase 处理阶段
+     * @return 执行次数
+     */
+    public synchronized long getCount(ExcelMetricsPhase phase) {
+        return get(phase, COUNT);
+    }
+
+    /**
+     * 获取指定阶段的累计耗时（纳秒）
+     * @param phase 处理阶段
+     * @return 累计耗时
+     */
+    public synchronized long getElapsedNanos(ExcelMetricsPhase phase) {
+        return get(phase, ELAPSED_NANOS);
+    }
+
+    /**
+     * 获取指定阶段累计处理的行数
+     * @param phase 处理阶段
+     * @return 行数
+     */
+    public synchronized long getRowCount(ExcelMetricsPhase phase) {
+        return get(phase, ROW_COUNT);
+    }
+
+    /**
+     * 获取指定阶段累计处理的单元格数
+     * @param phase 处理阶段
+     * @return 单元格数
+     */
+    public synchronized long getCellCount(ExcelMetricsPhase phase) {
+        return get(phase, CELL_COUNT);
+    }
+
+    /**
+     * 获取指定阶段每秒处理的行数
+     * @param phase 处理阶段
+     * @return 每秒行数，耗时为0时返回0
+     */
+    public synchronized double getRowsPerSecond(ExcelMetricsPhase phase) {
+        long elapsedNanos = get(phase, ELAPSED_NANOS);
+        return elapsedNanos <= 0 ? 0 : get(phase, ROW_COUNT) * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 获取观测到的堆内存占用峰值（字节）
+     * @return 堆内存占用峰值
+     */
+    public synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * 清空已汇总的指标
+     */
+    public synchronized void reset() {
+        totals.clear();
+        peakHeapBytes = 0;
+    }
+
+    private long get(ExcelMetricsPhase phase, int field) {
+        long[] total = totals.get(phase);
+        return total == null ? 0 : total[field];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<ExcelMetricsPhase, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            report.append(entry.getKey()).append("：").append(total[COUNT]).append("次，")
+                    .append(String.format("%.1f", total[ELAPSED_NANOS] / 1e6)).append("毫秒，")
+                    .append(total[ROW_COUNT]).append("行，").append(total[CELL_COUNT]).append("个单元格，")
+                    .append(String.format("%.0f", getRowsPerSecond(entry.getKey()))).append("行/秒\n");
+        }
+        report.append("堆内存峰值：").append(peakHeapBytes / (1024 * 1024)).append("MB");
+        return report.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.excel.impl;
+
+/**
+ * 报表处理指标的全局配置：各处理类创建时取当前的默认回调，也可通过各自的setMetricsListener单独指定
+ * @author yinfelix
+ */
+public class ExcelMetrics {
+
+    private static volatile ExcelMetricsListener defaultListener = ExcelMetricsListener.NO_OP;
+
+    private ExcelMetrics() {
+    }
+
+    public static ExcelMetricsListener getDefaultListener() {
+        return defaultListener;
+    }
+
+    /**
+     * 设置默认指标回调，只对此后创建的处理类生效
+     * @param listener 指标回调，为null时恢复为不做任何处理
+     */
+    public static void setDefaultListener(ExcelMetricsListener listener) {
+        defaultListener = listener == null ? ExcelMetricsListener.NO_OP : listener;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.excel.impl;
+
+/**
+ * 报表处理指标回调接口：各处理阶段结束时推送一次该阶段的耗时、行数、单元格数与堆内存占用
+ * @apiNote 并行处理（如分区拆分）时可能由多个线程同时回调，实现类须自行保证线程安全
+ * @author yinfelix
+ */
+public interface ExcelMetricsListener {
+
+    /**
+     * 不做任何处理的默认实现
+     */
+    ExcelMetricsListener NO_OP = new ExcelMetricsListener() {
+        @Override
+        public void onPhase(ExcelPhaseMetrics metrics) {
+        }
+    };
+
+    /**
+     * 处理一个阶段的指标
+     * @param metrics 阶段指标
+     */
+    void onPhase(ExcelPhaseMetrics metrics);
+}
@@ -0,0 +1,38 @@
+package com.example.excel.impl;
+
+/**
+ * 报表处理阶段，用于按阶段统计耗时与吞吐量
+ * @author yinfelix
+ */
+public enum ExcelMetricsPhase {
+
+    /**
+     * 打开并解析报表文件
+     */
+    OPEN,
+
+    /**
+     * 遍历sheet页读取数据（含流式读取）
+     */
+    SCAN,
+
+    /**
+     * 按拆分条件筛选并压缩数据行
+     */
+    FILTER,
+
+    /**
+     * 恢复公式、批注并重映射公式引用
+     */
+    FORMULA_RESTORE,
+
+    /**
+     * 重新计算公式缓存结果
+     */
+    RECALC,
+
+    /**
+     * 将工作簿写出至文件
+     */
+    SERIALIZE
+}
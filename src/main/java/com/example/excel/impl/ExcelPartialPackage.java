@@ -0,0 +1,546 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+/**
+ * 按sheet页部分加载的文件包：只保留操作所需的sheet页，其余sheet页在供POI打开的精简文件包中替换为空的占位sheet页，
+ * 写出时由ExcelZipOutputStream从源文件原样复制（不解压、不解析、不重新压缩）
+ * @apiNote 所需的sheet页为指定的sheet页、公式（含条件格式与数据验证公式）直接或经定义名称、表名间接引用指定sheet页的sheet页，
+ * 以及上述sheet页的公式所引用的sheet页；含跨sheet页的三维引用（如Sheet1:Sheet3!A1）时不能确定引用关系，按整体加载处理。
+ * 共享字符串表、样式表等工作簿级部件仍整体解析；占位sheet页的修改在写出时被丢弃
+ * @author yinfelix
+ */
+class ExcelPartialPackage {
+
+    private static final String TEMP_FILE_PREFIX = "excel-partial";
+    private static final String XSSF_SUFFIX = ".xlsx";
+    private static final String TABLE_TYPE_SUFFIX = "/table";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] PLACEHOLDER_SHEET = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+            + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheetData/></worksheet>").getBytes(UTF_8);
+
+    /**
+     * 三维引用：sheet页范围之后紧跟!（带引号时sheet页范围整体位于引号内）
+     */
+    private static final Pattern THREE_D_REFERENCE_PATTERN = Pattern.compile(
+            "'(?:[^']|'')*:(?:[^']|'')*'!|[^\\s'!(),:;=+\\-*/&^<>{}\"\\[\\]]+:[^\\s'!(),:;=+\\-*/&^<>{}\"\\[\\]]+!");
+
+    private static final String[] FORMULA_ELEMENTS = {"f", "formula", "formula1", "formula2"};
+    private static final int SCAN_TEXT = 0;
+    private static final int SCAN_TAG_NAME = 1;
+    private static final int SCAN_TAG_REST = 2;
+    private static final int SCAN_FORMULA = 3;
+
+    private final ExcelRawZipFile source;
+    private final File reducedFile;
+    private final Set<String> loadedSheetNames;
+    /**
+     * 未加载的sheet页部件与其关系部件（无关系部件时为null）
+     */
+    private final Map<String, String> unloadedParts;
+
+    private ExcelPartialPackage(ExcelRawZipFile source, File reducedFile, Set<String> loadedSheetNames, Map<String, String> unloadedParts) {
+        this.source = source;
+        this.reducedFile = reducedFile;
+        this.loadedSheetNames = loadedSheetNames;
+        this.unloadedParts = unloadedParts;
+    }
+
+    /**
+     * 生成部分加载的精简文件包
+     * @param file 报表文件路径
+     * @param sheetNames 操作所需的sheet页名称
+     * @return 精简文件包，须加载全部sheet页（或指定的sheet页不存在、含三维引用）时返回null
+     * @throws IOException IO操作
+     */
+    static ExcelPartialPackage open(String file, Collection<String> sheetNames) throws IOException {
+        ExcelWorkbookProbe probe = ExcelWorkbookProbe.probe(file, false);
+        List<ExcelSheetInfo> sheets = probe.getSheets();
+        Set<Integer> requested = new HashSet<Integer>();
+        for (String sheetName : sheetNames) {
+            int sheetIndex = probe.getSheetIndexFromName(sheetName);
+            if (sheetIndex < 0) {
+                return null;
+            }
+            requested.add(sheetIndex - 1);
+        }
+        if (requested.size() == sheets.size()) {
+            return null;
+        }
+
+        ExcelRawZipFile source = new ExcelRawZipFile(file);
+        boolean completed = false;
+        try {
+            List<Set<Integer>> references = readReferences(source, probe);
+            if (references == null) {
+                return null;
+            }
+            Set<Integer> loaded = getRequiredSheets(requested, references);
+            if (loaded.size() == sheets.size()) {
+                return null;
+            }
+
+            Set<String> loadedSheetNames = new LinkedHashSet<String>();
+            Map<String, String> unloadedParts = new LinkedHashMap<String, String>();
+            for (int sheetIndex = 0; sheetIndex < sheets.size(); sheetIndex++) {
+                ExcelSheetInfo sheet = sheets.get(sheetIndex);
+                if (loaded.contains(sheetIndex)) {
+                    loadedSheetNames.add(sheet.getSheetName());
+                } else {
+                    String relationshipsPart = getRelationshipsPart(sheet.getPartName());
+                    unloadedParts.put(sheet.getPartName(), source.getEntry(relationshipsPart) == null ? null : relationshipsPart);
+                }
+            }
+            File reducedFile = writeReducedFile(source, unloadedParts);
+            completed = true;
+            return new ExcelPartialPackage(source, reducedFile, loadedSheetNames, unloadedParts);
+        } finally {
+            if (!completed) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * 读取各sheet页的公式所引用的sheet页
+     * @return 各sheet页引用的sheet页序号（从0开始），含三维引用时返回null
+     */
+    private static List<Set<Integer>> readReferences(ExcelRawZipFile source, ExcelWorkbookProbe probe) throws IOException {
+        List<ExcelSheetInfo> sheets = probe.getSheets();
+        Map<String, Set<Integer>> nameReferences = new HashMap<String, Set<Integer>>();
+        try {
+//            表名（结构化引用）指向表所在的sheet页
+            for (int sheetIndex = 0; sheetIndex < sheets.size(); sheetIndex++) {
+                String partName = sheets.get(sheetIndex).getPartName();
+                ExcelRawZipFile.Entry relationshipsEntry = source.getEntry(getRelationshipsPart(partName));
+                if (relationshipsEntry == null) {
+                    continue;
+                }
+                String directory = partName.substring(0, partName.lastIndexOf('/') + 1);
+                for (String[] relationship : ExcelWorkbookProbe.readRelationships(source.getInputStream(relationshipsEntry))) {
+                    ExcelRawZipFile.Entry tableEntry = relationship[1].endsWith(TABLE_TYPE_SUFFIX)
+                            ? source.getEntry(ExcelWorkbookProbe.resolveTarget(directory, relationship[2])) : null;
+                    if (tableEntry != null) {
+                        for (String tableName : readTableNames(source, tableEntry)) {
+                            addReference(nameReferences, tableName, sheetIndex);
+                        }
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+
+//        定义名称可引用其他定义名称，反复展开至不再变化
+        List<String[]> definedNames = probe.getDefinedNames();
+        Map<String, String> definedFormulas = new HashMap<String, String>();
+        for (String[] definedName : definedNames) {
+            String formula = definedName[1].toLowerCase(Locale.ROOT);
+            if (THREE_D_REFERENCE_PATTERN.matcher(formula).find()) {
+                return null;
+            }
+            String name = definedName[0].toLowerCase(Locale.ROOT);
+            definedFormulas.put(name, definedFormulas.containsKey(name) ? definedFormulas.get(name) + "\n" + formula : formula);
+            for (int sheetIndex = 0; sheetIndex < sheets.size(); sheetIndex++) {
+                if (containsSheetName(formula, sheets.get(sheetIndex).getSheetName().toLowerCase(Locale.ROOT))) {
+                    addReference(nameReferences, name, sheetIndex);
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, String> definedFormula : definedFormulas.entrySet()) {
+                for (Map.Entry<String, Set<Integer>> nameReference : new ArrayList<Map.Entry<String, Set<Integer>>>(nameReferences.entrySet())) {
+                    if (!nameReference.getKey().equals(definedFormula.getKey()) && containsName(definedFormula.getValue(), nameReference.getKey())) {
+                        changed |= addReferences(nameReferences, definedFormula.getKey(), nameReference.getValue());
+                    }
+                }
+            }
+        }
+
+        String[] sheetNames = new String[sheets.size()];
+        for (int sheetIndex = 0; sheetIndex < sheets.size(); sheetIndex++) {
+            sheetNames[sheetIndex] = sheets.get(sheetIndex).getSheetName().toLowerCase(Locale.ROOT);
+        }
+        List<Set<Integer>> references = new ArrayList<Set<Integer>>();
+        for (ExcelSheetInfo sheet : sheets) {
+            FormulaReferences sheetReferences = new FormulaReferences(sheetNames, nameReferences);
+            InputStream inStream = source.getInputStream(source.getEntry(sheet.getPartName()));
+            try {
+                scanFormulas(inStream, sheetReferences);
+            } finally {
+                inStream.close();
+            }
+            if (sheetReferences.threeDimensional) {
+                return null;
+            }
+            references.add(sheetReferences.sheetIndices);
+        }
+        return references;
+    }
+
+    /**
+     * 获取须加载的sheet页：指定的sheet页与（直接或间接）引用它们的sheet页，再加上这些sheet页（直接或间接）引用的sheet页
+     */
+    private static Set<Integer> getRequiredSheets(Set<Integer> requested, List<Set<Integer>> references) {
+        Set<Integer> dependents = new HashSet<Integer>(requested);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int sheetIndex = 0; sheetIndex < references.size(); sheetIndex++) {
+                if (!dependents.contains(sheetIndex) && intersects(references.get(sheetIndex), dependents)) {
+                    changed |= dependents.add(sheetIndex);
+                }
+            }
+        }
+        Set<Integer> loaded = new HashSet<Integer>(dependents);
+        List<Integer> pending = new ArrayList<Integer>(dependents);
+        while (!pending.isEmpty()) {
+            for (Integer referenced : references.get(pending.remove(pending.size() - 1))) {
+                if (loaded.add(referenced)) {
+                    pending.add(referenced);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static boolean intersects(Set<Integer> sheetIndices, Set<Integer> otherSheetIndices) {
+        for (Integer sheetIndex : sheetIndices) {
+            if (otherSheetIndices.contains(sheetIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写出精简文件包：未加载的sheet页替换为占位sheet页并去掉其关系部件，其余条目原样复制
+     */
+    private static File writeReducedFile(ExcelRawZipFile source, Map<String, String> unloadedParts) throws IOException {
+        File reducedFile = File.createTempFile(TEMP_FILE_PREFIX, XSSF_SUFFIX);
+        boolean completed = false;
+        try {
+            Set<String> removedParts = new HashSet<String>(unloadedParts.values());
+            ExcelZipOutputStream zipOut = new ExcelZipOutputStream(new FileOutputStream(reducedFile), ExcelZipOutputStream.FASTEST, 1);
+            try {
+                for (ExcelRawZipFile.Entry entry : source.getEntries()) {
+                    if (unloadedParts.containsKey(entry.name)) {
+                        zipOut.putNextEntry(new ZipEntry(entry.name));
+                        zipOut.write(PLACEHOLDER_SHEET);
+                        zipOut.closeEntry();
+                    } else if (!removedParts.contains(entry.name)) {
+                        zipOut.putRawEntry(source, entry);
+                    }
+                }
+                completed = true;
+            } finally {
+                if (completed) {
+                    zipOut.close();
+                } else {
+                    zipOut.abort();
+                }
+            }
+            return reducedFile;
+        } finally {
+            if (!completed) {
+                reducedFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 扫描sheet页XML中的公式元素（f、formula、formula1、formula2，含带命名空间前缀的元素），
+     * 按字节识别标签，不构建DOM也不经StAX解析属性
+     */
+    private static void scanFormulas(InputStream inStream, FormulaReferences references) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        byte[] name = new byte[16];
+        int nameLength = 0;
+        boolean formulaTag = false;
+        int previous = 0;
+        ByteArrayOutputStream formulaText = new ByteArrayOutputStream();
+        int state = SCAN_TEXT;
+        int length;
+        while ((length = inStream.read(buffer)) >= 0) {
+            for (int i = 0; i < length; i++) {
+                int b = buffer[i];
+                switch (state) {
+                    case SCAN_TEXT:
+                        if (b == '<') {
+                            state = SCAN_TAG_NAME;
+                            nameLength = 0;
+                        }
+                        break;
+                    case SCAN_FORMULA:
+                        if (b == '<') {
+                            references.add(formulaText.toByteArray());
+                            formulaText.reset();
+                            state = SCAN_TAG_NAME;
+                            nameLength = 0;
+                        } else {
+                            formulaText.write(b);
+                        }
+                        break;
+                    case SCAN_TAG_NAME:
+                        if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                            formulaTag = nameLength > 0 && isFormulaElement(name, nameLength);
+                            state = b == '>' ? (formulaTag ? SCAN_FORMULA : SCAN_TEXT) : SCAN_TAG_REST;
+                        } else if (nameLength < name.length) {
+                            name[nameLength++] = (byte) b;
+                        } else {
+                            nameLength = name.length + 1;
+                        }
+                        break;
+                    default:
+                        if (b == '>') {
+                            state = formulaTag && previous != '/' ? SCAN_FORMULA : SCAN_TEXT;
+                        }
+                        break;
+                }
+                previous = b;
+            }
+        }
+    }
+
+    private static boolean isFormulaElement(byte[] name, int nameLength) {
+        if (nameLength > name.length) {
+            return false;
+        }
+        int localNameStart = 0;
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] == ':') {
+                localNameStart = i + 1;
+            }
+        }
+        String localName = new String(name, localNameStart, nameLength - localNameStart, UTF_8);
+        for (String formulaElement : FORMULA_ELEMENTS) {
+            if (formulaElement.equals(localName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> readTableNames(ExcelRawZipFile source, ExcelRawZipFile.Entry tableEntry) throws IOException {
+        List<String> tableNames = new ArrayList<String>();
+        InputStream inStream = source.getInputStream(tableEntry);
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while (header.size() < 64 * 1024 && (length = inStream.read(buffer)) >= 0) {
+                header.write(buffer, 0, length);
+            }
+            String xml = new String(header.toByteArray(), UTF_8);
+            for (String attribute : new String[]{" name=\"", " displayName=\""}) {
+                int start = xml.indexOf(attribute);
+                if (start >= 0) {
+                    int end = xml.indexOf('"', start + attribute.length());
+                    if (end > 0) {
+                        tableNames.add(unescape(xml.substring(start + attribute.length(), end)).toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        } finally {
+            inStream.close();
+        }
+        return tableNames;
+    }
+
+    private static void addReference(Map<String, Set<Integer>> nameReferences, String name, int sheetIndex) {
+        Set<Integer> sheetIndices = nameReferences.get(name);
+        if (sheetIndices == null) {
+            sheetIndices = new HashSet<Integer>();
+            nameReferences.put(name, sheetIndices);
+        }
+        sheetIndices.add(sheetIndex);
+    }
+
+    private static boolean addReferences(Map<String, Set<Integer>> nameReferences, String name, Set<Integer> sheetIndices) {
+        Set<Integer> current = nameReferences.get(name);
+        if (current == null) {
+            nameReferences.put(name, new HashSet<Integer>(sheetIndices));
+            return !sheetIndices.isEmpty();
+        }
+        return current.addAll(sheetIndices);
+    }
+
+    /**
+     * 公式是否引用sheet页（sheetName!或'sheetName'!，引号内的'写作''）
+     */
+    private static boolean containsSheetName(String formula, String sheetName) {
+        return formula.contains(sheetName + "!") || formula.contains("'" + sheetName.replace("'", "''") + "'!");
+    }
+
+    /**
+     * 公式是否含名称（名称前后不是名称可用的字符）
+     */
+    private static boolean containsName(String formula, String name) {
+        int start = formula.indexOf(name);
+        while (start >= 0) {
+            int end = start + name.length();
+            if ((start == 0 || !isNameCharacter(formula.charAt(start - 1)))
+                    && (end == formula.length() || !isNameCharacter(formula.charAt(end)))) {
+                return true;
+            }
+            start = formula.indexOf(name, start + 1);
+        }
+        return false;
+    }
+
+    private static boolean isNameCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '\\';
+    }
+
+    private static String unescape(String xml) {
+        if (xml.indexOf('&') < 0) {
+            return xml;
+        }
+        StringBuilder text = new StringBuilder(xml.length());
+        int i = 0;
+        while (i < xml.length()) {
+            char c = xml.charAt(i);
+            int end = c == '&' ? xml.indexOf(';', i) : -1;
+            if (end < 0) {
+                text.append(c);
+                i++;
+                continue;
+            }
+            String entity = xml.substring(i + 1, end);
+            if ("amp".equals(entity)) {
+                text.append('&');
+            } else if ("lt".equals(entity)) {
+                text.append('<');
+            } else if ("gt".equals(entity)) {
+                text.append('>');
+            } else if ("quot".equals(entity)) {
+                text.append('"');
+            } else if ("apos".equals(entity)) {
+                text.append('\'');
+            } else if (entity.startsWith("#x")) {
+                text.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+            } else if (entity.startsWith("#")) {
+                text.appendCodePoint(Integer.parseInt(entity.substring(1)));
+            } else {
+                text.append(xml, i, end + 1);
+            }
+            i = end + 1;
+        }
+        return text.toString();
+    }
+
+    private static String getRelationshipsPart(String partName) {
+        int separator = partName.lastIndexOf('/') + 1;
+        return partName.substring(0, separator) + "_rels/" + partName.substring(separator) + ".rels";
+    }
+
+    /**
+     * 汇总一个sheet页的公式所引用的sheet页
+     */
+    private static class FormulaReferences {
+        final String[] sheetNames;
+        final Map<String, Set<Integer>> nameReferences;
+        final Set<Integer> sheetIndices = new HashSet<Integer>();
+        boolean threeDimensional;
+        private String lastFormula;
+
+        FormulaReferences(String[] sheetNames, Map<String, Set<Integer>> nameReferences) {
+            this.sheetNames = sheetNames;
+            this.nameReferences = nameReferences;
+        }
+
+        void add(byte[] formulaBytes) {
+            if (formulaBytes.length == 0) {
+                return;
+            }
+            String formula = unescape(new String(formulaBytes, UTF_8)).toLowerCase(Locale.ROOT);
+//            相邻单元格的公式多相同（如整列的同一公式），跳过重复的匹配
+            if (formula.equals(lastFormula)) {
+                return;
+            }
+            lastFormula = formula;
+            if (formula.indexOf('!') >= 0) {
+                for (int sheetIndex = 0; sheetIndex < sheetNames.length; sheetIndex++) {
+                    if (containsSheetName(formula, sheetNames[sheetIndex])) {
+                        sheetIndices.add(sheetIndex);
+                    }
+                }
+                if (formula.indexOf(':') >= 0 && THREE_D_REFERENCE_PATTERN.matcher(formula).find()) {
+                    threeDimensional = true;
+                }
+            }
+            for (Map.Entry<String, Set<Integer>> nameReference : nameReferences.entrySet()) {
+                if (containsName(formula, nameReference.getKey())) {
+                    sheetIndices.addAll(nameReference.getValue());
+                }
+            }
+        }
+    }
+
+    String getReducedFile() {
+        return reducedFile.getPath();
+    }
+
+    ExcelRawZipFile getSource() {
+        return source;
+    }
+
+    /**
+     * 获取已加载的sheet页名称（按sheet页顺序）
+     * @return sheet页名称
+     */
+    Set<String> getLoadedSheetNames() {
+        return loadedSheetNames;
+    }
+
+    /**
+     * 获取写出时须从源文件原样复制的条目：工作簿中仍存在的未加载sheet页部件及其关系部件
+     * @param workbook 由精简文件包加载的工作簿
+     * @return 条目名
+     */
+    Collection<String> getRawEntries(Workbook workbook) {
+        List<String> rawEntries = new ArrayList<String>();
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            String partName = ((XSSFSheet) workbook.getSheetAt(sheetIndex)).getPackagePart().getPartName().getName().substring(1);
+            if (unloadedParts.containsKey(partName)) {
+                rawEntries.add(partName);
+                if (unloadedParts.get(partName) != null) {
+                    rawEntries.add(unloadedParts.get(partName));
+                }
+            }
+        }
+        return rawEntries;
+    }
+
+    void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            reducedFile.delete();
+        }
+    }
+}
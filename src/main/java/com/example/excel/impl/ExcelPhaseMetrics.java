@@ -0,0 +1,100 @@
+package com.example.excel.impl;
+
+/**
+ * 单个处理阶段的指标：耗时、处理的行数与单元格数、阶段结束时的堆内存占用
+ * @author yinfelix
+ */
+public class ExcelPhaseMetrics {
+
+    private final String operation;
+    private final ExcelMetricsPhase phase;
+    private final long elapsedNanos;
+    private final long rowCount;
+    private final long cellCount;
+    private final long heapUsedBytes;
+
+    public ExcelPhaseMetrics(String operation, ExcelMetricsPhase phase, long elapsedNanos, long rowCount, long cellCount, long heapUsedBytes) {
+        this.operation = operation;
+        this.phase = phase;
+        this.elapsedNanos = elapsedNanos;
+        this.rowCount = rowCount;
+        this.cellCount = cellCount;
+        this.heapUsedBytes = heapUsedBytes;
+    }
+
+    /**
+     * 记录并推送一个阶段的指标
+     * @param listener 指标回调
+     * @param operation 操作名称
+     * @param phase 处理阶段
+     * @param startNanos 阶段开始时的System.nanoTime()
+     * @param rowCount 处理的行数
+     * @param cellCount 处理的单元格数
+     */
+    static void report(ExcelMetricsListener listener, String operation, ExcelMetricsPhase phase, long startNanos, long rowCount, long cellCount) {
+        if (listener == ExcelMetricsListener.NO_OP) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Runtime runtime = Runtime.getRuntime();
+        listener.onPhase(new ExcelPhaseMetrics(operation, phase, elapsedNanos, rowCount, cellCount, runtime.totalMemory() - runtime.freeMemory()));
+    }
+
+    /**
+     * 获取操作名称（reader、streamReader、writer、split、partition等）
+     * @return 操作名称
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public ExcelMetricsPhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * 获取阶段耗时（纳秒）
+     * @return 耗时
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 获取处理的行数，不适用时为0
+     * @return 行数
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 获取处理的单元格数，不适用时为0
+     * @return 单元格数
+     */
+    public long getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * 获取阶段结束时的堆内存占用（字节）
+     * @return 堆内存占用
+     */
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    /**
+     * 获取每秒处理的行数
+     * @return 每秒行数，耗时为0时返回0
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos <= 0 ? 0 : rowCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return operation + "." + phase + "：" + String.format("%.1f", elapsedNanos / 1e6) + "毫秒，" + rowCount + "行，"
+                + cellCount + "个单元格，" + String.format("%.0f", getRowsPerSecond()) + "行/秒，堆内存" + heapUsedBytes / (1024 * 1024) + "MB";
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.excel.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 只读zip文件：解析中央目录，可按原始（压缩后）字节读取条目，供ExcelZipOutputStream不经解压与重新压缩直接复制条目
+ * @apiNote 不支持Zip64与加密条目；各条目的读取流可在同一线程内交替使用，实例不能在线程间共享
+ * @author yinfelix
+ */
+class ExcelRawZipFile {
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_RECORD_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    ExcelRawZipFile(String path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        try {
+            readCentralDirectory();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * zip条目（中央目录记录）
+     */
+    static class Entry {
+        final String name;
+        final int flags;
+        final int method;
+        final int dosTime;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(String name, int flags, int method, int dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    /**
+     * 获取全部条目（按中央目录顺序）
+     * @return 条目
+     */
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+    }
+
+    Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * 读取条目的原始（压缩后）字节
+     * @param entry 条目
+     * @return 原始字节流
+     * @throws IOException IO操作
+     */
+    InputStream getRawInputStream(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        return new RangeInputStream(dataOffset, entry.compressedSize);
+    }
+
+    /**
+     * 读取条目解压后的字节
+     * @param entry 条目
+     * @return 解压后的字节流
+     * @throws IOException IO操作
+     */
+    InputStream getInputStream(Entry entry) throws IOException {
+        InputStream rawStream = getRawInputStream(entry);
+        if (entry.method == METHOD_STORED) {
+            return rawStream;
+        }
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(rawStream, inflater, 64 * 1024) {
+            private boolean eof;
+
+            @Override
+            protected void fill() throws IOException {
+//                原始DEFLATE数据末尾须补一个空字节，否则Inflater可能无法判定结束
+                if (eof) {
+                    throw new ZipException("zip条目数据不完整");
+                }
+                len = in.read(buf, 0, buf.length);
+                if (len == -1) {
+                    buf[0] = 0;
+                    len = 1;
+                    eof = true;
+                }
+                inf.setInput(buf, 0, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    void close() throws IOException {
+        file.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long fileLength = channel.size();
+        int searchLength = (int) Math.min(fileLength, END_RECORD_SIZE + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(fileLength - searchLength, searchLength);
+        int endOffset = -1;
+        for (int i = searchLength - END_RECORD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                endOffset = i;
+                break;
+            }
+        }
+        if (endOffset < 0) {
+            throw new ZipException("文件格式错误！");
+        }
+        int entryCount = tail.getShort(endOffset + 10) & 0xFFFF;
+        long directorySize = tail.getInt(endOffset + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endOffset + 16) & ZIP64_MAGIC;
+        if (directoryOffset == ZIP64_MAGIC || directorySize == ZIP64_MAGIC || entryCount == 0xFFFF) {
+            throw new ZipException("不支持Zip64");
+        }
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("文件格式错误！");
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int dosTime = directory.getInt(position + 12);
+            long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+            if (compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                throw new ZipException("不支持Zip64");
+            }
+            if ((flags & FLAG_ENCRYPTED) != 0 || (method != METHOD_STORED && method != METHOD_DEFLATED)) {
+                throw new ZipException("不支持的zip条目压缩方法或加密条目");
+            }
+            byte[] name = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(name);
+            String entryName = new String(name, UTF_8);
+            entries.put(entryName, new Entry(entryName, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new ZipException("文件格式错误！");
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 文件中指定区间的输入流（按位置读取，不改变文件通道的当前位置）
+     */
+    private class RangeInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        RangeInputStream(long position, long length) {
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (count < 0) {
+                throw new ZipException("zip条目数据不完整");
+            }
+            position += count;
+            return count;
+        }
+    }
+}
@@ -1,62 +1,209 @@
 package com.example.excel.impl;
 
-import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
+ * @apiNote 线程安全约定：全部状态均属于实例（不含可变的静态成员），不同实例可在不同线程中并发使用；
+ * 读取方法（getCell、getCellValue、getRowCount、getColumns等）不修改实例及工作簿，
+ * 经ExcelWorkbookCache获取的只读快照可由多个线程并发读取；loadFileAsWorkbook、exportWorkbook、close
+ * 以及对getWorkbook()返回的工作簿的修改须由单一线程执行，其间不得有其他线程读取同一实例
  * @author yinfelix
  */
 public class ExcelReaderImpl {
     private String dateFormat;
     private String doubleFormat;
-    private long startTimeMillis;
 
     private Workbook workbook;
-    private Sheet sheet;
-    private Row row;
 
-    private static final String XSSF_SUFFIX = ".xlsx";
-    private static final String DOT_STRING = ".";
+    private ExcelCellFormatter formatter;
+
+    private String sourceFile;
+    private OPCPackage opcPackage;
+    private ExcelPartialPackage partialPackage;
 
-    private static InputStream inStream = null;
-    private static int colCountResult = 0;
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    private int compressionLevel = ExcelZipOutputStream.DEFAULT;
+    private int compressionThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private static final String XSSF_SUFFIX = ".xlsx";
+    private static final String METRICS_OPERATION = "reader";
 
     public ExcelReaderImpl(String inputFile) {
         try {
             this.loadFileAsWorkbook(inputFile);
             this.dateFormat = "yyyy-MM-dd HH:mm:ss";
             this.doubleFormat = "0.000000";
+            this.formatter = new ExcelCellFormatter(this.dateFormat, this.doubleFormat);
+        } catch (IOException e) {}
+    }
+
+    /**
+     * 只加载操作所需的sheet页：指定的sheet页、公式与之相互引用的sheet页，其余sheet页以空的占位sheet页代替，
+     * 写出时从源文件原样复制，不解析也不重新压缩
+     * @apiNote 未加载的sheet页读取结果为空且不得修改（修改在写出时被丢弃），可由getLoadedSheetNames判断；
+     * 所需的sheet页的确定规则见ExcelPartialPackage，无法确定或须加载全部sheet页时整体加载
+     * @param inputFile 报表文件路径
+     * @param sheetNames 操作所需的sheet页名称
+     */
+    public ExcelReaderImpl(String inputFile, Collection<String> sheetNames) {
+        try {
+            this.loadFileAsWorkbook(inputFile, sheetNames);
+            this.dateFormat = "yyyy-MM-dd HH:mm:ss";
+            this.doubleFormat = "0.000000";
+            this.formatter = new ExcelCellFormatter(this.dateFormat, this.doubleFormat);
         } catch (IOException e) {}
     }
 
-    public ExcelReaderImpl() {}
+    /**
+     * 从工作簿缓存获取只读快照，同一文件未被修改时不再重新解析（只读操作适用，不得修改工作簿）
+     * @param inputFile 报表文件路径
+     * @param workbookCache 工作簿缓存
+     */
+    public ExcelReaderImpl(String inputFile, ExcelWorkbookCache workbookCache) {
+        try {
+            long startNanos = System.nanoTime();
+            this.workbook = workbookCache.getWorkbook(inputFile);
+            ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.OPEN, startNanos, getTotalRowCount(), 0);
+            this.dateFormat = "yyyy-MM-dd HH:mm:ss";
+            this.doubleFormat = "0.000000";
+            this.formatter = new ExcelCellFormatter(this.dateFormat, this.doubleFormat);
+        } catch (IOException e) {}
+    }
+
+    public ExcelReaderImpl() {
+        this.formatter = new ExcelCellFormatter();
+    }
 
     public Workbook getWorkbook() {
         return workbook;
     }
 
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 设置exportWorkbook写出文件的压缩级别，默认为ExcelZipOutputStream.DEFAULT；只在本机或内网间传递的中间文件可取STORED或FASTEST
+     * @param compressionLevel 压缩级别（0~9或ExcelZipOutputStream.DEFAULT）
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = ExcelZipOutputStream.checkLevel(compressionLevel);
+    }
+
+    public int getCompressionThreadCount() {
+        return compressionThreadCount;
+    }
+
+    /**
+     * 设置exportWorkbook写出文件时的并行压缩线程数，默认为可用处理器数
+     * @param compressionThreadCount 线程数（不小于1）
+     */
+    public void setCompressionThreadCount(int compressionThreadCount) {
+        this.compressionThreadCount = Math.max(1, compressionThreadCount);
+    }
+
     /**
-     * 通过指定文件初始化工作簿
+     * 通过指定文件初始化工作簿：直接以随机访问方式打开文件包，各部件按需从文件中解压，
+     * 未被解析的部件（图片、打印设置等）不会整体缓冲至内存
+     * @apiNote 文件包在close之前保持打开，其间不得修改源文件；close时放弃对文件包的修改，源文件保持不变
      * @param file 报表文件路径
      * @throws IOException IO操作
      */
     public void loadFileAsWorkbook(String file) throws IOException {
-        inStream = new FileInputStream(file);
-        if (file.endsWith(XSSF_SUFFIX)) {
-            this.workbook = new XSSFWorkbook(inStream);
-            this.startTimeMillis = System.currentTimeMillis();
-        } else {
+        loadFileAsWorkbook(file, null);
+    }
+
+    /**
+     * 通过指定文件初始化工作簿，只加载操作所需的sheet页（见ExcelReaderImpl(String, Collection)）
+     * @param file 报表文件路径
+     * @param sheetNames 操作所需的sheet页名称，为null时整体加载
+     * @throws IOException IO操作
+     */
+    public void loadFileAsWorkbook(String file, Collection<String> sheetNames) throws IOException {
+        if (!file.endsWith(XSSF_SUFFIX)) {
             throw new RuntimeException("文件格式错误！");
         }
+        long startNanos = System.nanoTime();
+        ExcelPartialPackage partial = sheetNames == null ? null : ExcelPartialPackage.open(file, sheetNames);
+        try {
+            this.opcPackage = OPCPackage.open(partial == null ? file : partial.getReducedFile(), PackageAccess.READ_WRITE);
+        } catch (InvalidFormatException e) {
+            closePartialPackage(partial);
+            throw new IOException(e);
+        }
+        try {
+            this.workbook = new XSSFWorkbook(opcPackage);
+        } catch (IOException e) {
+            opcPackage.revert();
+            closePartialPackage(partial);
+            throw e;
+        } catch (RuntimeException e) {
+            opcPackage.revert();
+            closePartialPackage(partial);
+            throw e;
+        }
+        this.sourceFile = file;
+        this.partialPackage = partial;
+        ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.OPEN, startNanos, getTotalRowCount(), 0);
+    }
+
+    private static void closePartialPackage(ExcelPartialPackage partial) throws IOException {
+        if (partial != null) {
+            partial.close();
+        }
+    }
+
+    /**
+     * 获取已加载的sheet页名称
+     * @return sheet页名称（按sheet页顺序），整体加载时为全部sheet页
+     */
+    public List<String> getLoadedSheetNames() {
+        if (partialPackage != null) {
+            return new ArrayList<String>(partialPackage.getLoadedSheetNames());
+        }
+        List<String> sheetNames = new ArrayList<String>();
+        for (int sheetIndex = 0; sheetIndex < getWorkbook().getNumberOfSheets(); sheetIndex++) {
+            sheetNames.add(getWorkbook().getSheetName(sheetIndex));
+        }
+        return sheetNames;
+    }
+
+    /**
+     * 获取工作簿各sheet页的行数合计（用于指标统计）
+     */
+    private long getTotalRowCount() {
+        long rowCount = 0;
+        for (int sheetIndex = 0; sheetIndex < getWorkbook().getNumberOfSheets(); sheetIndex++) {
+            rowCount += getWorkbook().getSheetAt(sheetIndex).getPhysicalNumberOfRows();
+        }
+        return rowCount;
     }
 
     /**
@@ -99,13 +246,13 @@ public class ExcelReaderImpl {
     public int getRowCount(int sheetIndex) {
         --sheetIndex;
         int nullRow = 0;
-        this.sheet = getWorkbook().getSheetAt(sheetIndex);
-        int firstRowIndex = this.sheet.getFirstRowNum();
-        int lastRowIndex = this.sheet.getLastRowNum();
+        Sheet sheet = getWorkbook().getSheetAt(sheetIndex);
+        int firstRowIndex = sheet.getFirstRowNum();
+        int lastRowIndex = sheet.getLastRowNum();
         int rowCount = firstRowIndex + 1;
 
         for(int i = firstRowIndex; i <= lastRowIndex; ++i) {
-            if (this.sheet.getRow(i) == null) {
+            if (sheet.getRow(i) == null) {
                 ++nullRow;
             } else {
                 if (nullRow != 0) {
@@ -126,16 +273,9 @@ public class ExcelReaderImpl {
      * @return 指定sheet页指定行的有效列数
      */
     public int getColCount(int sheetIndex, int rowIndex) {
-        if (colCountResult == 0) {
-            --sheetIndex;
-            this.sheet = getWorkbook().getSheetAt(sheetIndex);
-            this.row = this.sheet.getRow(rowIndex);
-            while (this.row != null) {
-                colCountResult = this.row.getPhysicalNumberOfCells();
-                break;
-            }
-        }
-        return colCountResult;
+        --sheetIndex;
+        Row row = getWorkbook().getSheetAt(sheetIndex).getRow(rowIndex);
+        return row == null ? 0 : row.getPhysicalNumberOfCells();
     }
 
     /**
@@ -149,13 +289,13 @@ public class ExcelReaderImpl {
         --sheetIndex;
         --rowIndex;
         --columnIndex;
-        this.sheet = getWorkbook().getSheetAt(sheetIndex);
-        if (this.sheet == null) {
+        Sheet sheet = getWorkbook().getSheetAt(sheetIndex);
+        if (sheet == null) {
             return null;
         } else {
-            this.row = this.sheet.getRow(rowIndex);
-            if (this.row != null) {
-                return this.row.getCell(columnIndex);
+            Row row = sheet.getRow(rowIndex);
+            if (row != null) {
+                return row.getCell(columnIndex);
             } else {
                 return null;
             }
@@ -173,30 +313,23 @@ public class ExcelReaderImpl {
         --sheetIndex;
         --rowIndex;
         --columnIndex;
-        this.sheet = getWorkbook().getSheetAt(sheetIndex);
-        if (this.sheet == null) {
+        Sheet sheet = getWorkbook().getSheetAt(sheetIndex);
+        if (sheet == null) {
             return "";
         } else {
-            this.row = this.sheet.getRow(rowIndex);
-            if (this.row == null) {
+            Row row = sheet.getRow(rowIndex);
+            if (row == null) {
                 return "";
             } else {
-                Cell cell = this.row.getCell(columnIndex);
+                Cell cell = row.getCell(columnIndex);
                 if (cell == null) {
                     return "";
                 } else {
                     String value = "";
                     switch(cell.getCellType()) {
                         case Cell.CELL_TYPE_NUMERIC:
-                            if (HSSFDateUtil.isCellDateFormatted(cell)) {
-                                SimpleDateFormat d = new SimpleDateFormat(this.dateFormat);
-                                Date dt = HSSFDateUtil.getJavaDate(cell.getNumericCellValue());
-                                value = d.format(dt);
-                            } else {
-                                double d1 = cell.getNumericCellValue();
-                                DecimalFormat f = new DecimalFormat(this.doubleFormat);
-                                value = this.subZeroAndDot(f.format(d1));
-                            }
+                            double numericValue = cell.getNumericCellValue();
+                            value = formatter.formatNumeric(numericValue, formatter.isDateFormatted(numericValue, cell.getCellStyle()));
                             break;
                         case Cell.CELL_TYPE_STRING:
                             value = cell.getStringCellValue();
@@ -220,17 +353,103 @@ public class ExcelReaderImpl {
         }
     }
 
+    /**
+     * 一次遍历读取指定sheet页的矩形区域，按列返回列式缓冲区（数值、字典编码文本与空单元格位图）
+     * @param sheetIndex sheet页ID（从1开始）
+     * @param firstRowIndex 首行行号（从1开始）
+     * @param lastRowIndex 末行行号（从1开始，含）
+     * @param firstColumnIndex 首列列号（从1开始）
+     * @param lastColumnIndex 末列列号（从1开始，含）
+     * @return 各列的列式缓冲区，下标为相对于首列的偏移
+     */
+    public ExcelColumnData[] getColumnRange(int sheetIndex, int firstRowIndex, int lastRowIndex, int firstColumnIndex, int lastColumnIndex) {
+        int[] columnIndices = new int[Math.max(0, lastColumnIndex - firstColumnIndex + 1)];
+        for (int i = 0; i < columnIndices.length; i++) {
+            columnIndices[i] = firstColumnIndex + i;
+        }
+        return getColumns(sheetIndex, firstRowIndex, lastRowIndex, columnIndices);
+    }
+
+    /**
+     * 一次遍历读取指定sheet页的若干整列（自第1行至最后一行）
+     * @param sheetIndex sheet页ID（从1开始）
+     * @param columnIndices 列号（从1开始）
+     * @return 各列的列式缓冲区，顺序与columnIndices一致
+     */
+    public ExcelColumnData[] getColumns(int sheetIndex, int... columnIndices) {
+        return getColumns(sheetIndex, 1, getWorkbook().getSheetAt(sheetIndex - 1).getLastRowNum() + 1, columnIndices);
+    }
+
+    /**
+     * 一次遍历读取指定sheet页指定行区间内的若干列
+     * @param sheetIndex sheet页ID（从1开始）
+     * @param firstRowIndex 首行行号（从1开始）
+     * @param lastRowIndex 末行行号（从1开始，含）
+     * @param columnIndices 列号（从1开始）
+     * @return 各列的列式缓冲区，顺序与columnIndices一致
+     */
+    public ExcelColumnData[] getColumns(int sheetIndex, int firstRowIndex, int lastRowIndex, int... columnIndices) {
+        long startNanos = System.nanoTime();
+        Sheet currentSheet = getWorkbook().getSheetAt(sheetIndex - 1);
+        int rowCount = Math.max(0, lastRowIndex - firstRowIndex + 1);
+        ExcelColumnData[] columns = new ExcelColumnData[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; i++) {
+            columns[i] = new ExcelColumnData(columnIndices[i], firstRowIndex, rowCount, formatter);
+        }
+
+        ExcelRowMatcher.SharedStringLookup sharedStrings = ExcelSharedStrings.getLookup(getWorkbook());
+
+        for (int offset = 0; offset < rowCount; offset++) {
+            Row currentRow = currentSheet.getRow(firstRowIndex - 1 + offset);
+            if (currentRow == null) {
+                continue;
+            }
+            for (int i = 0; i < columnIndices.length; i++) {
+                Cell cell = currentRow.getCell(columnIndices[i] - 1);
+                if (cell == null) {
+                    continue;
+                }
+                int cellType = cell.getCellType();
+                if (cellType == Cell.CELL_TYPE_FORMULA) {
+                    cellType = cell.getCachedFormulaResultType();
+                }
+                switch (cellType) {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        double numericValue = cell.getNumericCellValue();
+                        columns[i].setNumeric(offset, numericValue, formatter.isDateFormatted(numericValue, cell.getCellStyle()));
+                        break;
+                    case Cell.CELL_TYPE_STRING:
+                        CTCell ctCell = cell instanceof XSSFCell ? ((XSSFCell) cell).getCTCell() : null;
+                        if (sharedStrings != null && ctCell != null && ctCell.getT() == STCellType.S && ctCell.isSetV()) {
+                            columns[i].setSharedString(offset, Integer.parseInt(ctCell.getV()), sharedStrings);
+                        } else {
+                            columns[i].setString(offset, cell.getStringCellValue());
+                        }
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        columns[i].setBoolean(offset, cell.getBooleanCellValue());
+                        break;
+                    case Cell.CELL_TYPE_BLANK:
+                        columns[i].setBlank(offset);
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        columns[i].setError(offset);
+                        break;
+                    default:break;
+                }
+            }
+        }
+        ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SCAN, startNanos, rowCount, (long) rowCount * columnIndices.length);
+        return columns;
+    }
+
     /**
      * 剔除字符串内的零和小数点
      * @param s 待处理的字符串
      * @return 处理过后的字符串
      */
     public String subZeroAndDot(String s) {
-        if (s.indexOf(DOT_STRING) > 0) {
-            s = s.replaceAll("0+?$", "");
-            s = s.replaceAll("[.]$", "");
-        }
-        return s;
+        return formatter.subZeroAndDot(s);
     }
 
     /**
@@ -248,22 +467,50 @@ public class ExcelReaderImpl {
     }
 
     /**
-     * 将工作簿另存为新文件
+     * 将工作簿另存为新文件（经ExcelZipOutputStream分块并行压缩）
      * @param outputFilePath 新文件所在路径
      * @throws IOException IO操作
      */
     public void exportWorkbook(String outputFilePath) throws IOException {
-        FileOutputStream outStream = new FileOutputStream(outputFilePath);
-        getWorkbook().write(outStream);
+        File outputFile = new File(outputFilePath);
+//        源文件包仍在从文件中读取未解析的部件，另存为源文件时先写入临时文件再替换
+        boolean overwriteSource = sourceFile != null && opcPackage != null
+                && outputFile.getCanonicalPath().equals(new File(sourceFile).getCanonicalPath());
+        File targetFile = overwriteSource ? new File(outputFilePath + ".tmp") : outputFile;
+        long startNanos = System.nanoTime();
+        FileOutputStream outStream = new FileOutputStream(targetFile);
+        try {
+            if (partialPackage != null) {
+                ExcelZipOutputStream.write(getWorkbook(), outStream, compressionLevel, compressionThreadCount,
+                        partialPackage.getSource(), partialPackage.getRawEntries(getWorkbook()));
+            } else {
+                ExcelZipOutputStream.write(getWorkbook(), outStream, compressionLevel, compressionThreadCount);
+            }
+        } finally {
+            outStream.close();
+        }
+        if (overwriteSource) {
+            close();
+            if (!outputFile.delete() || !targetFile.renameTo(outputFile)) {
+                throw new IOException("文件替换失败：" + outputFilePath);
+            }
+        }
+        ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SERIALIZE, startNanos, getTotalRowCount(), 0);
     }
 
     /**
-     * 关闭输出流成员
+     * 关闭文件包（放弃对文件包的修改，源文件保持不变）
      * @throws IOException IO操作
      */
     public void close() throws IOException {
-        inStream.close();
-        System.out.println("文件读取时间：" + (System.currentTimeMillis() - this.startTimeMillis) + "毫秒，约等于" + String.format("%.1f", (System.currentTimeMillis() - this.startTimeMillis) / 1000.0f) + "秒");
+        if (opcPackage != null) {
+            opcPackage.revert();
+            opcPackage = null;
+        }
+        if (partialPackage != null) {
+            partialPackage.close();
+            partialPackage = null;
+        }
     }
 
     public static void main(String[] args) throws IOException {}
@@ -0,0 +1,686 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.util.CellReference;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+/**
+ * 向已有报表的sheet页末尾追加数据行：不创建XSSFWorkbook，追加的行在写出时插入sheet页XML的sheetData末尾，
+ * 原有的行按字节原样流式复制，dimension与共享字符串表按追加的行增量更新，其余zip条目不解压、不重新压缩直接复制，
+ * 耗时与追加的行数及一次顺序复制成正比，与原有行数的DOM解析无关
+ * @apiNote 追加的行自sheet页末行（文件记录的dimension，未记录时扫描得出）的下一行开始；
+ * 新字符串追加至共享字符串表末尾（只在本次追加的字符串间去重，与已有字符串重复时Excel打开并保存后合并），
+ * 报表不含共享字符串表时以内联字符串写入；单元格样式为cellXfs中的序号（见setColumnStyle），默认为常规样式。
+ * 不扩展表格（Table）、自动筛选与条件格式的区域，不支持带命名空间前缀的sheet页XML；
+ * 输出文件可与源文件相同（先写出至同目录的临时文件，提交后替换）。同一实例不得由多个线程同时调用
+ * @author yinfelix
+ */
+public class ExcelRowAppender {
+
+    private static final String METRICS_OPERATION = "append";
+    private static final String TEMP_FILE_PREFIX = "excel-append";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int COPY_TEXT = 0;
+    private static final int COPY_TAG = 1;
+    private static final int COPY_COMMENT = 2;
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("(\\s%s\\s*=\\s*)([\"'])[^\"']*\\2");
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final String sourceFile;
+    private final String outputFile;
+    private final ExcelRawZipFile source;
+    private final String sheetPart;
+    private final String sharedStringsPart;
+    private final ExcelSheetInfo sheetInfo;
+
+    /**
+     * 追加的第一行的行号（从0开始）
+     */
+    private final int firstRowIndex;
+    private int appendedRowCount = 0;
+    private long appendedCellCount = 0;
+    private int firstColumnIndex = Integer.MAX_VALUE;
+    private int lastColumnIndex = -1;
+
+    /**
+     * 共享字符串表原有的字符串数量，新字符串的序号自此开始
+     */
+    private int sharedStringBase = 0;
+    private final Map<String, Integer> newSharedStrings = new LinkedHashMap<String, Integer>();
+    private long sharedStringCellCount = 0;
+
+    private final Map<Integer, Integer> columnStyles = new HashMap<Integer, Integer>();
+
+    private final File rowsFile;
+    private Writer rowsWriter;
+    private boolean closed = false;
+
+    private int compressionLevel = ExcelZipOutputStream.DEFAULT;
+    private int compressionThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    /**
+     * @param sourceFile 源报表文件路径
+     * @param outputFile 输出文件路径（可与源文件相同）
+     * @param sheetName 追加数据行的sheet页名称
+     * @throws IOException IO操作
+     */
+    public ExcelRowAppender(String sourceFile, String outputFile, String sheetName) throws IOException {
+        long startNanos = System.nanoTime();
+        this.sourceFile = sourceFile;
+        this.outputFile = outputFile;
+        ExcelWorkbookProbe probe = ExcelWorkbookProbe.probe(sourceFile, false);
+        ExcelSheetInfo probedSheetInfo = probe.getSheet(sheetName);
+        if (probedSheetInfo == null) {
+            throw new RuntimeException("sheet页不存在！");
+        }
+        this.sheetInfo = probedSheetInfo.isExtentKnown() ? probedSheetInfo : probe.scanSheet(probedSheetInfo);
+        this.sheetPart = sheetInfo.getPartName();
+        this.sharedStringsPart = probe.getSharedStringsPart();
+        this.firstRowIndex = sheetInfo.getLastRow();
+        this.source = new ExcelRawZipFile(sourceFile);
+        File tempFile = null;
+        boolean completed = false;
+        try {
+            if (sharedStringsPart != null) {
+                this.sharedStringBase = readSharedStringCount(source, source.getEntry(sharedStringsPart));
+            }
+            tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".xml");
+            this.rowsWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8), 64 * 1024);
+            completed = true;
+        } finally {
+            if (!completed) {
+                source.close();
+                if (tempFile != null) {
+                    tempFile.delete();
+                }
+            }
+        }
+        this.rowsFile = tempFile;
+        ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.OPEN, startNanos, 0, 0);
+    }
+
+    /**
+     * 读取共享字符串表原有的字符串数量（逐个计数si元素；uniqueCount属性可选且可能与实际不符，不作为依据）
+     */
+    private static int readSharedStringCount(ExcelRawZipFile source, ExcelRawZipFile.Entry entry) throws IOException {
+        InputStream inStream = source.getInputStream(entry);
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inStream);
+            try {
+                int count = 0;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    if ("si".equals(reader.getLocalName())) {
+                        ++count;
+                    }
+                }
+                return count;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            inStream.close();
+        }
+    }
+
+    public ExcelSheetInfo getSheetInfo() {
+        return sheetInfo;
+    }
+
+    /**
+     * 获取追加的第一行的行号
+     * @return 行号（从0开始，与POI一致）
+     */
+    public int getFirstRowIndex() {
+        return firstRowIndex;
+    }
+
+    public int getAppendedRowCount() {
+        return appendedRowCount;
+    }
+
+    /**
+     * 设置追加的行中指定列的单元格样式
+     * @param columnIndex 列号（从0开始）
+     * @param styleIndex 样式在styles.xml的cellXfs中的序号（即XSSFCellStyle.getIndex()），0为常规样式
+     */
+    public void setColumnStyle(int columnIndex, int styleIndex) {
+        if (styleIndex < 0) {
+            throw new IllegalArgumentException("样式序号无效：" + styleIndex);
+        }
+        columnStyles.put(columnIndex, styleIndex);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 设置重新压缩的条目（追加行的sheet页与共享字符串表）的压缩级别，其余条目原样复制
+     * @param compressionLevel 压缩级别（0~9或ExcelZipOutputStream.DEFAULT）
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = ExcelZipOutputStream.checkLevel(compressionLevel);
+    }
+
+    public int getCompressionThreadCount() {
+        return compressionThreadCount;
+    }
+
+    public void setCompressionThreadCount(int compressionThreadCount) {
+        this.compressionThreadCount = Math.max(1, compressionThreadCount);
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 追加一行
+     * @param values 各列的值（自A列起），支持String、Number、Boolean、Date、Calendar与RichTextString，null为空单元格
+     * @return 追加的行的行号（从0开始）
+     * @throws IOException IO操作
+     */
+    public int appendRow(Object... values) throws IOException {
+        return appendRow(Arrays.asList(values));
+    }
+
+    /**
+     * 追加一行
+     * @param values 各列的值（自A列起），支持String、Number、Boolean、Date、Calendar与RichTextString，null为空单元格
+     * @return 追加的行的行号（从0开始）
+     * @throws IOException IO操作
+     */
+    public int appendRow(List<?> values) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("已提交或关闭");
+        }
+        int rowIndex = firstRowIndex + appendedRowCount;
+        String rowNumber = String.valueOf(rowIndex + 1);
+        StringBuilder row = new StringBuilder(64 + values.size() * 32);
+        row.append("<row r=\"").append(rowNumber).append("\">");
+        for (int columnIndex = 0; columnIndex < values.size(); columnIndex++) {
+            Object value = values.get(columnIndex);
+            Integer styleIndex = columnStyles.get(columnIndex);
+            if (value == null && (styleIndex == null || styleIndex == 0)) {
+                continue;
+            }
+            row.append("<c r=\"").append(CellReference.convertNumToColString(columnIndex)).append(rowNumber).append('"');
+            if (styleIndex != null && styleIndex != 0) {
+                row.append(" s=\"").append(styleIndex).append('"');
+            }
+            appendCellValue(row, value);
+            firstColumnIndex = Math.min(firstColumnIndex, columnIndex);
+            lastColumnIndex = Math.max(lastColumnIndex, columnIndex);
+            ++appendedCellCount;
+        }
+        row.append("</row>");
+        rowsWriter.write(row.toString());
+        ++appendedRowCount;
+        return rowIndex;
+    }
+
+    /**
+     * 写出单元格的类型属性与值（起始标签的结尾及之后的部分）
+     */
+    private void appendCellValue(StringBuilder row, Object value) {
+        if (value instanceof Number || value instanceof Date || value instanceof Calendar) {
+            double numericValue = value instanceof Number ? ((Number) value).doubleValue()
+                    : value instanceof Date ? DateUtil.getExcelDate((Date) value) : DateUtil.getExcelDate((Calendar) value, false);
+            if (Double.isNaN(numericValue) || Double.isInfinite(numericValue)) {
+//                与XSSFCell.setCellValue(double)一致，无穷大与NaN写为错误值
+                row.append(" t=\"e\"><v>").append(Double.isNaN(numericValue) ? "#NUM!" : "#DIV/0!").append("</v></c>");
+            } else {
+                row.append("><v>").append(String.valueOf(numericValue)).append("</v></c>");
+            }
+        } else if (value instanceof Boolean) {
+            row.append(" t=\"b\"><v>").append((Boolean) value ? '1' : '0').append("</v></c>");
+        } else if (value != null) {
+            String stringValue = value instanceof RichTextString ? ((RichTextString) value).getString() : value.toString();
+            if (sharedStringsPart == null) {
+                row.append(" t=\"inlineStr\"><is>");
+                appendText(row, stringValue);
+                row.append("</is></c>");
+            } else {
+                Integer sharedStringIndex = newSharedStrings.get(stringValue);
+                if (sharedStringIndex == null) {
+                    sharedStringIndex = sharedStringBase + newSharedStrings.size();
+                    newSharedStrings.put(stringValue, sharedStringIndex);
+                }
+                ++sharedStringCellCount;
+                row.append(" t=\"s\"><v>").append(sharedStringIndex).append("</v></c>");
+            }
+        } else {
+            row.append("/>");
+        }
+    }
+
+    /**
+     * 写出t元素（首尾空白保留，XML 1.0不允许的控制字符按Excel的_xHHHH_形式转义）
+     */
+    private static void appendText(StringBuilder xml, String text) {
+        boolean preserveSpace = !text.isEmpty() && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+        xml.append(preserveSpace ? "<t xml:space=\"preserve\">" : "<t>");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    xml.append("&amp;");
+                    break;
+                case '<':
+                    xml.append("&lt;");
+                    break;
+                case '>':
+                    xml.append("&gt;");
+                    break;
+                default:
+                    if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF) {
+                        xml.append(String.format("_x%04X_", (int) c));
+                    } else {
+                        xml.append(c);
+                    }
+                    break;
+            }
+        }
+        xml.append("</t>");
+    }
+
+    /**
+     * 写出报表：追加行的sheet页与（有新字符串时的）共享字符串表重新压缩，其余条目原样复制；完成后（含失败时）即关闭
+     * @throws IOException IO操作
+     */
+    public void commit() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("已提交或关闭");
+        }
+        long startNanos = System.nanoTime();
+        File output = new File(outputFile);
+        boolean inPlace = output.getCanonicalFile().equals(new File(sourceFile).getCanonicalFile());
+        File target = inPlace ? File.createTempFile(TEMP_FILE_PREFIX, ".xlsx", output.getCanonicalFile().getParentFile()) : output;
+        boolean completed = false;
+        try {
+            rowsWriter.close();
+            writeOutput(target);
+//            替换源文件前须先关闭
+            close();
+            if (inPlace) {
+                Files.move(target.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            completed = true;
+        } finally {
+            close();
+            if (!completed) {
+                target.delete();
+            }
+        }
+        ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SERIALIZE, startNanos, appendedRowCount, appendedCellCount);
+    }
+
+    private void writeOutput(File target) throws IOException {
+        ExcelZipOutputStream zipOut = new ExcelZipOutputStream(new FileOutputStream(target), compressionLevel, compressionThreadCount);
+        boolean completed = false;
+        try {
+            for (ExcelRawZipFile.Entry entry : source.getEntries()) {
+                if (entry.name.equals(sheetPart) && appendedRowCount > 0) {
+                    zipOut.putNextEntry(new ZipEntry(entry.name));
+                    copyEntry(entry, new SheetCopier(), zipOut);
+                    zipOut.closeEntry();
+                } else if (entry.name.equals(sharedStringsPart) && !newSharedStrings.isEmpty()) {
+                    zipOut.putNextEntry(new ZipEntry(entry.name));
+                    copyEntry(entry, new SharedStringsCopier(), zipOut);
+                    zipOut.closeEntry();
+                } else {
+                    zipOut.putRawEntry(source, entry);
+                }
+            }
+            completed = true;
+        } finally {
+            if (completed) {
+                zipOut.close();
+            } else {
+                zipOut.abort();
+            }
+        }
+    }
+
+    /**
+     * 关闭源文件并删除暂存追加行的临时文件（未提交时放弃追加的行）
+     * @throws IOException IO操作
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rowsWriter.close();
+            source.close();
+        } finally {
+            rowsFile.delete();
+        }
+    }
+
+    private void copyEntry(ExcelRawZipFile.Entry entry, XmlTagCopier copier, OutputStream out) throws IOException {
+        InputStream inStream = source.getInputStream(entry);
+        try {
+            copier.copy(inStream, out);
+        } finally {
+            inStream.close();
+        }
+    }
+
+    /**
+     * 按字节复制XML，逐个识别标签（属性值中的>与注释不视为标签结束），由子类改写所需的标签，文本原样复制
+     */
+    private abstract static class XmlTagCopier {
+        private byte[] tag = new byte[256];
+        private int tagLength;
+
+        void copy(InputStream inStream, OutputStream out) throws IOException {
+            byte[] buffer = new byte[64 * 1024];
+            int state = COPY_TEXT;
+            int quote = 0;
+            int length;
+            while ((length = inStream.read(buffer)) >= 0) {
+                int segmentStart = 0;
+                for (int i = 0; i < length; i++) {
+                    byte b = buffer[i];
+                    if (state == COPY_TEXT) {
+                        if (b == '<') {
+                            out.write(buffer, segmentStart, i - segmentStart);
+                            tagLength = 0;
+                            appendTag(b);
+                            state = COPY_TAG;
+                        }
+                        continue;
+                    }
+                    appendTag(b);
+                    if (state == COPY_COMMENT) {
+                        if (b == '>' && tag[tagLength - 2] == '-' && tag[tagLength - 3] == '-') {
+                            out.write(tag, 0, tagLength);
+                            state = COPY_TEXT;
+                            segmentStart = i + 1;
+                        }
+                    } else if (quote != 0) {
+                        if (b == quote) {
+                            quote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '-' && tagLength == 4 && tag[1] == '!' && tag[2] == '-') {
+                        state = COPY_COMMENT;
+                    } else if (b == '>') {
+                        writeTag(tag, tagLength, out);
+                        state = COPY_TEXT;
+                        segmentStart = i + 1;
+                    }
+                }
+                if (state == COPY_TEXT) {
+                    out.write(buffer, segmentStart, length - segmentStart);
+                }
+            }
+            if (state != COPY_TEXT) {
+                throw new RuntimeException("文件格式错误！");
+            }
+            finish();
+        }
+
+        private void appendTag(byte b) {
+            if (tagLength == tag.length) {
+                tag = Arrays.copyOf(tag, tag.length * 2);
+            }
+            tag[tagLength++] = b;
+        }
+
+        /**
+         * 写出一个完整的标签（自<至>）
+         */
+        abstract void writeTag(byte[] tag, int tagLength, OutputStream out) throws IOException;
+
+        /**
+         * 复制结束后校验改写是否完成
+         */
+        abstract void finish();
+
+        /**
+         * 判断标签名（结束标签含/，不含命名空间前缀时才匹配）
+         */
+        static boolean isTag(byte[] tag, int tagLength, String name) {
+            int length = name.length();
+            if (tagLength < length + 2) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (tag[i + 1] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            byte next = tag[length + 1];
+            return next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\r' || next == '\n';
+        }
+
+        static boolean isEmptyElement(byte[] tag, int tagLength) {
+            return tag[tagLength - 2] == '/';
+        }
+
+        /**
+         * 读取行的r属性
+         * @return 行号（从1开始），未记录时返回-1
+         */
+        static int parseRowNumber(byte[] tag, int tagLength) {
+            for (int i = 5; i < tagLength - 3; i++) {
+                if (tag[i] != 'r' || (tag[i - 1] != ' ' && tag[i - 1] != '\t' && tag[i - 1] != '\r' && tag[i - 1] != '\n')) {
+                    continue;
+                }
+                int position = i + 1;
+                while (position < tagLength && (tag[position] == ' ' || tag[position] == '\t' || tag[position] == '\r' || tag[position] == '\n')) {
+                    position++;
+                }
+                if (position >= tagLength || tag[position] != '=') {
+                    continue;
+                }
+                position++;
+                while (position < tagLength && tag[position] != '"' && tag[position] != '\'') {
+                    position++;
+                }
+                int rowNumber = 0;
+                for (position++; position < tagLength && tag[position] >= '0' && tag[position] <= '9'; position++) {
+                    rowNumber = rowNumber * 10 + (tag[position] - '0');
+                }
+                return rowNumber;
+            }
+            return -1;
+        }
+
+        /**
+         * 设置标签的属性值（标签不含该属性时原样返回）
+         */
+        static String setAttribute(String tag, String name, String value) {
+            Matcher matcher = Pattern.compile(String.format(ATTRIBUTE_PATTERN.pattern(), name)).matcher(tag);
+            return matcher.find() ? tag.substring(0, matcher.start()) + matcher.group(1) + '"' + value + '"' + tag.substring(matcher.end()) : tag;
+        }
+
+        static String getAttribute(String tag, String name) {
+            Matcher matcher = Pattern.compile(String.format(ATTRIBUTE_PATTERN.pattern(), name)).matcher(tag);
+            if (!matcher.find()) {
+                return null;
+            }
+            String attribute = matcher.group();
+            return attribute.substring(matcher.group(1).length() + 1, attribute.length() - 1);
+        }
+    }
+
+    /**
+     * 复制追加行的sheet页：更新dimension，校验原有的行均位于追加的行之前，在sheetData末尾插入追加的行
+     */
+    private class SheetCopier extends XmlTagCopier {
+        private int rowNumber = 0;
+        private boolean inserted = false;
+
+        @Override
+        void writeTag(byte[] tag, int tagLength, OutputStream out) throws IOException {
+            if (isTag(tag, tagLength, "row")) {
+                int recordedRowNumber = parseRowNumber(tag, tagLength);
+                rowNumber = recordedRowNumber < 0 ? rowNumber + 1 : recordedRowNumber;
+                if (rowNumber > firstRowIndex) {
+                    throw new RuntimeException("sheet页记录的数据区域（dimension）小于实际数据区域，无法追加行！");
+                }
+                out.write(tag, 0, tagLength);
+            } else if (isTag(tag, tagLength, "dimension")) {
+                out.write(setAttribute(new String(tag, 0, tagLength, UTF_8), "ref", getDimension()).getBytes(UTF_8));
+            } else if (isTag(tag, tagLength, "sheetData") && isEmptyElement(tag, tagLength)) {
+                out.write("<sheetData>".getBytes(UTF_8));
+                writeRows(out);
+                out.write("</sheetData>".getBytes(UTF_8));
+            } else if (isTag(tag, tagLength, "/sheetData")) {
+                writeRows(out);
+                out.write(tag, 0, tagLength);
+            } else {
+                out.write(tag, 0, tagLength);
+            }
+        }
+
+        private void writeRows(OutputStream out) throws IOException {
+            InputStream rowsStream = new FileInputStream(rowsFile);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = rowsStream.read(buffer)) >= 0) {
+                    out.write(buffer, 0, length);
+                }
+            } finally {
+                rowsStream.close();
+            }
+            inserted = true;
+        }
+
+        @Override
+        void finish() {
+            if (!inserted) {
+                throw new RuntimeException("文件格式错误！");
+            }
+        }
+
+        private String getDimension() {
+            int firstRow = sheetInfo.getLastRow() > 0 ? sheetInfo.getFirstRow() : firstRowIndex + 1;
+            int lastRow = firstRowIndex + appendedRowCount;
+            int firstColumn = sheetInfo.getLastColumn() > 0 ? Math.min(sheetInfo.getFirstColumn() - 1, firstColumnIndex) : firstColumnIndex;
+            int lastColumn = Math.max(sheetInfo.getLastColumn() - 1, lastColumnIndex);
+            if (lastColumn < 0) {
+                firstColumn = 0;
+                lastColumn = 0;
+            }
+            String first = CellReference.convertNumToColString(firstColumn) + firstRow;
+            String last = CellReference.convertNumToColString(lastColumn) + lastRow;
+            return first.equals(last) ? first : first + ":" + last;
+        }
+    }
+
+    /**
+     * 复制共享字符串表：更新sst元素的count与uniqueCount属性，在末尾追加新字符串
+     */
+    private class SharedStringsCopier extends XmlTagCopier {
+        private boolean inserted = false;
+        private int copiedCount = 0;
+
+        @Override
+        void writeTag(byte[] tag, int tagLength, OutputStream out) throws IOException {
+            if (isTag(tag, tagLength, "sst")) {
+                String sst = new String(tag, 0, tagLength, UTF_8);
+                String count = getAttribute(sst, "count");
+                if (count != null) {
+                    sst = setAttribute(sst, "count", String.valueOf(Long.parseLong(count) + sharedStringCellCount));
+                }
+                sst = setAttribute(sst, "uniqueCount", String.valueOf(sharedStringBase + newSharedStrings.size()));
+                if (isEmptyElement(tag, tagLength)) {
+                    out.write((sst.substring(0, sst.lastIndexOf('/')) + ">").getBytes(UTF_8));
+                    writeSharedStrings(out);
+                    out.write("</sst>".getBytes(UTF_8));
+                } else {
+                    out.write(sst.getBytes(UTF_8));
+                }
+            } else if (isTag(tag, tagLength, "/sst")) {
+                writeSharedStrings(out);
+                out.write(tag, 0, tagLength);
+            } else {
+                if (isTag(tag, tagLength, "si")) {
+                    ++copiedCount;
+                }
+                out.write(tag, 0, tagLength);
+            }
+        }
+
+        private void writeSharedStrings(OutputStream out) throws IOException {
+            OutputStream bufferedOut = new BufferedOutputStream(out, 64 * 1024);
+            StringBuilder si = new StringBuilder();
+            for (String value : newSharedStrings.keySet()) {
+                si.setLength(0);
+                si.append("<si>");
+                appendText(si, value);
+                si.append("</si>");
+                bufferedOut.write(si.toString().getBytes(UTF_8));
+            }
+            bufferedOut.flush();
+            inserted = true;
+        }
+
+        @Override
+        void finish() {
+            if (!inserted) {
+                throw new RuntimeException("文件格式错误！");
+            }
+            if (copiedCount != sharedStringBase) {
+//                新字符串的索引自sharedStringBase起编号，与原有字符串数量不符时追加的单元格将引用错误的字符串
+                throw new RuntimeException("共享字符串表的字符串数量与读取时不一致！");
+            }
+        }
+    }
+}
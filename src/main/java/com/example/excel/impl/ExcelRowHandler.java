@@ -0,0 +1,14 @@
+package com.example.excel.impl;
+
+/**
+ * 流式读取行回调接口，由ExcelStreamReaderImpl逐行推送sheet页数据
+ * @author yinfelix
+ */
+public interface ExcelRowHandler {
+
+    /**
+     * 处理一行数据
+     * @param row 当前行对象；该对象在各行之间复用，回调返回后不得继续持有
+     */
+    void handleRow(ExcelStreamRow row);
+}
@@ -0,0 +1,240 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 已编译的行筛选条件：直接以单元格原始值（数值、共享字符串索引）求值，不将单元格格式化为字符串
+ * @apiNote 由ExcelSplitPredicate.compile针对具体的workbook（或流式读取的文件）生成；
+ * 共享字符串的匹配结果按索引缓存，每个共享字符串至多判定一次，因此实例不能在线程间共享
+ * @author yinfelix
+ */
+public class ExcelRowMatcher {
+
+    private final Node root;
+
+    ExcelRowMatcher(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * 判断行是否满足条件
+     * @param row 行对象，为null时按各列均为空处理
+     * @return 是否满足条件
+     */
+    public boolean matches(Row row) {
+        return root.test(row);
+    }
+
+    /**
+     * 判断流式读取的当前行是否满足条件
+     * @param row 流式读取的行游标
+     * @return 是否满足条件
+     */
+    public boolean matches(ExcelStreamRow row) {
+        return root.test(row);
+    }
+
+    /**
+     * 由共享字符串索引获取字符串
+     */
+    interface SharedStringLookup {
+        String getString(int index);
+    }
+
+    abstract static class Node {
+        abstract boolean test(Row row);
+
+        abstract boolean test(ExcelStreamRow row);
+    }
+
+    static class AndNode extends Node {
+        private final Node[] nodes;
+
+        AndNode(List<Node> nodes) {
+            this.nodes = nodes.toArray(new Node[0]);
+        }
+
+        @Override
+        boolean test(Row row) {
+            for (Node node : nodes) {
+                if (!node.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean test(ExcelStreamRow row) {
+            for (Node node : nodes) {
+                if (!node.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class OrNode extends Node {
+        private final Node[] nodes;
+
+        OrNode(List<Node> nodes) {
+            this.nodes = nodes.toArray(new Node[0]);
+        }
+
+        @Override
+        boolean test(Row row) {
+            for (Node node : nodes) {
+                if (node.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean test(ExcelStreamRow row) {
+            for (Node node : nodes) {
+                if (node.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class NotNode extends Node {
+        private final Node node;
+
+        NotNode(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        boolean test(Row row) {
+            return !node.test(row);
+        }
+
+        @Override
+        boolean test(ExcelStreamRow row) {
+            return !node.test(row);
+        }
+    }
+
+    /**
+     * 单列条件：数值条件只作用于数值单元格（含公式的数值结果），文本条件作用于文本单元格，
+     * 文本条件遇到数值单元格时按ExcelReaderImpl.getCellValue的规则格式化后比较；
+     * 空单元格与不存在的单元格按空字符串处理，错误值不满足任何条件
+     */
+    static class ColumnNode extends Node {
+        private final int columnIndex;
+        private final ExcelSplitPredicate.ColumnCondition condition;
+        private final SharedStringLookup sharedStrings;
+        private final ExcelCellFormatter formatter;
+
+        private final BitSet evaluatedStrings = new BitSet();
+        private final BitSet matchedStrings = new BitSet();
+
+        ColumnNode(int columnIndex, ExcelSplitPredicate.ColumnCondition condition, SharedStringLookup sharedStrings, ExcelCellFormatter formatter) {
+            this.columnIndex = columnIndex;
+            this.condition = condition;
+            this.sharedStrings = sharedStrings;
+            this.formatter = formatter;
+        }
+
+        @Override
+        boolean test(Row row) {
+            Cell cell = row == null ? null : row.getCell(columnIndex - 1);
+            if (cell == null) {
+                return testText("");
+            }
+            int cellType = cell.getCellType();
+            if (cellType == Cell.CELL_TYPE_FORMULA) {
+//                尚未计算（无缓存值）的公式按空单元格处理，与流式读取一致
+                cellType = cell instanceof XSSFCell && !((XSSFCell) cell).getCTCell().isSetV()
+                        ? Cell.CELL_TYPE_BLANK : cell.getCachedFormulaResultType();
+            }
+            switch (cellType) {
+                case Cell.CELL_TYPE_NUMERIC:
+                    double numericValue = cell.getNumericCellValue();
+                    if (condition.isNumeric()) {
+                        return condition.testNumber(numericValue);
+                    }
+                    return testText(formatter.formatNumeric(numericValue, formatter.isDateFormatted(numericValue, cell.getCellStyle())));
+                case Cell.CELL_TYPE_STRING:
+                    if (cell instanceof XSSFCell) {
+                        CTCell ctCell = ((XSSFCell) cell).getCTCell();
+                        if (ctCell.getT() == STCellType.S && ctCell.isSetV()) {
+                            return testSharedString(Integer.parseInt(ctCell.getV()));
+                        }
+                    }
+                    return testText(cell.getStringCellValue());
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return testText(String.valueOf(cell.getBooleanCellValue()));
+                case Cell.CELL_TYPE_BLANK:
+                    return testText("");
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        boolean test(ExcelStreamRow row) {
+            switch (row.getCellType(columnIndex)) {
+                case ExcelStreamRow.CELL_TYPE_NONE:
+                case Cell.CELL_TYPE_BLANK:
+                    return testText("");
+                case Cell.CELL_TYPE_NUMERIC:
+                    return testNumber(row, row.getNumericCellValue(columnIndex));
+                case Cell.CELL_TYPE_STRING:
+                    int sharedStringIndex = row.getSharedStringIndex(columnIndex);
+                    return sharedStringIndex >= 0 ? testSharedString(sharedStringIndex) : testText(row.getStringCellValue(columnIndex));
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return testText(String.valueOf(row.getNumericCellValue(columnIndex) != 0));
+                case Cell.CELL_TYPE_FORMULA:
+                    switch (row.getCachedFormulaResultType(columnIndex)) {
+                        case Cell.CELL_TYPE_NUMERIC:
+                            return testNumber(row, row.getNumericCellValue(columnIndex));
+                        case Cell.CELL_TYPE_STRING:
+                            return testText(row.getCachedFormulaStringValue(columnIndex));
+                        case Cell.CELL_TYPE_BOOLEAN:
+                            return testText(String.valueOf(row.getNumericCellValue(columnIndex) != 0));
+                        case Cell.CELL_TYPE_BLANK:
+                            return testText("");
+                        default:
+                            return false;
+                    }
+                default:
+                    return false;
+            }
+        }
+
+        private boolean testNumber(ExcelStreamRow row, double value) {
+            return condition.isNumeric() ? condition.testNumber(value) : testText(row.formatNumber(columnIndex, value));
+        }
+
+        private boolean testText(String value) {
+            return !condition.isNumeric() && condition.testText(value);
+        }
+
+        private boolean testSharedString(int index) {
+            if (condition.isNumeric()) {
+                return false;
+            }
+            if (!evaluatedStrings.get(index)) {
+                evaluatedStrings.set(index);
+                if (condition.testSharedString(sharedStrings, index)) {
+                    matchedStrings.set(index);
+                }
+            }
+            return matchedStrings.get(index);
+        }
+    }
+}
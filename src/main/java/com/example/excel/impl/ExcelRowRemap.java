@@ -0,0 +1,123 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * 拆分的行号映射（原行号→新行号），每次拆分按行依次建立一次，供公式引用、批注、合并单元格、超链接与数据验证区域统一换算
+ * @apiNote 以int数组按原行号存储（每行4字节，不装箱）：保留行为其新行号，剔除行为-(其后首个保留行的新行号)-1；
+ * 映射范围之后的行整体上移剔除的行数。行号均从0开始
+ * @author yinfelix
+ */
+final class ExcelRowRemap {
+
+    static final int REMOVED = -1;
+
+    private final int[] mapping;
+    private int size;
+    private int retainedRowCount;
+
+    ExcelRowRemap(int rowCount) {
+        this.mapping = new int[rowCount];
+    }
+
+    /**
+     * 按原行号顺序追加下一行
+     * @param retained 是否保留
+     */
+    void add(boolean retained) {
+        mapping[size++] = retained ? retainedRowCount++ : -retainedRowCount - 1;
+    }
+
+    /**
+     * 获取映射范围的行数（原sheet页数据区域的行数）
+     * @return 行数
+     */
+    int size() {
+        return size;
+    }
+
+    int getRetainedRowCount() {
+        return retainedRowCount;
+    }
+
+    int getRemovedRowCount() {
+        return size - retainedRowCount;
+    }
+
+    boolean isRetained(int rowIndex) {
+        return rowIndex >= size || mapping[rowIndex] >= 0;
+    }
+
+    /**
+     * 获取新行号
+     * @param rowIndex 原行号
+     * @return 新行号，剔除行返回REMOVED
+     */
+    int getRow(int rowIndex) {
+        if (rowIndex >= size) {
+            return rowIndex - getRemovedRowCount();
+        }
+        return mapping[rowIndex] >= 0 ? mapping[rowIndex] : REMOVED;
+    }
+
+    /**
+     * 获取区域首行的新行号：剔除行取其后首个保留行
+     * @param rowIndex 原行号
+     * @return 新行号
+     */
+    int getFirstRow(int rowIndex) {
+        if (rowIndex >= size) {
+            return rowIndex - getRemovedRowCount();
+        }
+        return mapping[rowIndex] >= 0 ? mapping[rowIndex] : -mapping[rowIndex] - 1;
+    }
+
+    /**
+     * 获取区域末行的新行号：剔除行取其前最后一个保留行
+     * @param rowIndex 原行号
+     * @return 新行号，其前没有保留行时为-1
+     */
+    int getLastRow(int rowIndex) {
+        if (rowIndex >= size) {
+            return rowIndex - getRemovedRowCount();
+        }
+        return mapping[rowIndex] >= 0 ? mapping[rowIndex] : -mapping[rowIndex] - 2;
+    }
+
+    /**
+     * 获取首个行号发生变化的原行号（其前各行均保留且行号不变）
+     * @return 原行号，没有剔除行时为映射范围的行数
+     */
+    int getFirstChangedRow() {
+        int rowIndex = 0;
+        while (rowIndex < size && mapping[rowIndex] == rowIndex) {
+            rowIndex++;
+        }
+        return rowIndex;
+    }
+
+    /**
+     * 按映射收缩区域（首末行分别取其后、其前的保留行）
+     * @param range 原区域
+     * @return 新区域，区域内的行全部被剔除时返回null
+     */
+    CellRangeAddress getRange(CellRangeAddress range) {
+        int firstRow = getFirstRow(range.getFirstRow());
+        int lastRow = getLastRow(range.getLastRow());
+        return firstRow > lastRow ? null : new CellRangeAddress(firstRow, lastRow, range.getFirstColumn(), range.getLastColumn());
+    }
+
+    /**
+     * 按映射平移区域：区域内的行须全部保留且仍然连续（用于合并单元格等不可收缩的区域）
+     * @param range 原区域
+     * @return 新区域，不满足条件时返回null
+     */
+    CellRangeAddress getContiguousRange(CellRangeAddress range) {
+        int firstRow = getRow(range.getFirstRow());
+        int lastRow = getRow(range.getLastRow());
+        if (firstRow == REMOVED || lastRow - firstRow != range.getLastRow() - range.getFirstRow()) {
+            return null;
+        }
+        return new CellRangeAddress(firstRow, lastRow, range.getFirstColumn(), range.getLastColumn());
+    }
+}
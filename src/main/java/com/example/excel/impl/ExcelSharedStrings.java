@@ -0,0 +1,326 @@
+package com.example.excel.impl;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 紧凑的只读共享字符串表：全部字符串以UTF-8编码连续保存于一块缓冲区（可位于堆外），另以偏移数组索引，
+ * 按索引或字节比较，只在调用getString时才生成String对象
+ * @apiNote 取代ReadOnlySharedStringsTable（每个字符串一个String对象）供流式读取使用；
+ * 字符串内容与XSSFRichTextString.getString一致（拼接各文本段，不含注音rPh）；加载完成后只读，可在线程间共享
+ * @author yinfelix
+ */
+public class ExcelSharedStrings implements ExcelRowMatcher.SharedStringLookup {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MIN_CAPACITY = 64 * 1024;
+    private static final int ESTIMATED_BYTES_PER_STRING = 16;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final boolean offHeap;
+    private ByteBuffer buffer;
+    private int[] offsets;
+    private int size;
+
+    ExcelSharedStrings(boolean offHeap, int expectedCount) {
+        this.offHeap = offHeap;
+        this.buffer = allocate((int) Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, (long) expectedCount * ESTIMATED_BYTES_PER_STRING)));
+        this.offsets = new int[Math.max(16, expectedCount + 1)];
+    }
+
+    /**
+     * 以SAX方式加载文件包中的共享字符串表（不经CTRst对象）
+     * @param opcPackage 文件包
+     * @param offHeap 字符串缓冲区是否分配于堆外（直接内存）
+     * @return 共享字符串表，文件不含共享字符串时为空表
+     * @throws IOException IO操作
+     */
+    public static ExcelSharedStrings load(OPCPackage opcPackage, boolean offHeap) throws IOException {
+        List<PackagePart> parts = opcPackage.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty()) {
+            ExcelSharedStrings sharedStrings = new ExcelSharedStrings(offHeap, 0);
+            sharedStrings.trimToSize();
+            return sharedStrings;
+        }
+        InputStream inStream = parts.get(0).getInputStream();
+        try {
+            XMLReader xmlReader = ExcelStreamReaderImpl.newSaxParserFactory().newSAXParser().getXMLReader();
+            SharedStringsHandler handler = new SharedStringsHandler(offHeap);
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(inStream));
+            ExcelSharedStrings sharedStrings = handler.getSharedStrings();
+            sharedStrings.trimToSize();
+            return sharedStrings;
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } finally {
+            inStream.close();
+        }
+    }
+
+    /**
+     * 获取已加载workbook的共享字符串查找（经XSSFWorkbook自身的共享字符串表，结果与XSSFCell.getStringCellValue一致）
+     * @param workbook 已加载的workbook
+     * @return 共享字符串查找，非XSSF文件返回null
+     */
+    static ExcelRowMatcher.SharedStringLookup getLookup(Workbook workbook) {
+        if (!(workbook instanceof XSSFWorkbook)) {
+            return null;
+        }
+        final SharedStringsTable sharedStringsTable = ((XSSFWorkbook) workbook).getSharedStringSource();
+        return new ExcelRowMatcher.SharedStringLookup() {
+            @Override
+            public String getString(int index) {
+                return new XSSFRichTextString(sharedStringsTable.getEntryAt(index)).getString();
+            }
+        };
+    }
+
+    /**
+     * 获取字符串个数
+     * @return 字符串个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 字符串缓冲区是否位于堆外
+     * @return 是否位于堆外
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * 获取占用的内存字节数（字符串缓冲区与偏移数组）
+     * @return 字节数
+     */
+    public long getMemorySize() {
+        return buffer.capacity() + 4L * offsets.length;
+    }
+
+    /**
+     * 获取指定索引的字符串（每次调用均生成新的String对象）
+     * @param index 共享字符串索引（从0开始）
+     * @return 字符串
+     */
+    @Override
+    public String getString(int index) {
+        checkIndex(index);
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, UTF_8);
+        }
+        return new String(getBytes(index), UTF_8);
+    }
+
+    /**
+     * 获取指定索引字符串的UTF-8编码
+     * @param index 共享字符串索引（从0开始）
+     * @return UTF-8编码
+     */
+    public byte[] getBytes(int index) {
+        checkIndex(index);
+        byte[] bytes = new byte[offsets[index + 1] - offsets[index]];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offsets[index]);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 获取指定索引字符串的UTF-8编码长度
+     * @param index 共享字符串索引（从0开始）
+     * @return 字节数
+     */
+    public int getByteLength(int index) {
+        checkIndex(index);
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * 按字节判断指定索引的字符串是否与给定值相等
+     * @param index 共享字符串索引（从0开始）
+     * @param utf8Value 给定值的UTF-8编码
+     * @return 是否相等
+     */
+    public boolean equalsAt(int index, byte[] utf8Value) {
+        return getByteLength(index) == utf8Value.length && regionMatches(offsets[index], utf8Value);
+    }
+
+    /**
+     * 按字节判断指定索引的字符串是否以给定前缀开头
+     * @param index 共享字符串索引（从0开始）
+     * @param utf8Prefix 前缀的UTF-8编码
+     * @return 是否以前缀开头
+     */
+    public boolean startsWith(int index, byte[] utf8Prefix) {
+        return getByteLength(index) >= utf8Prefix.length && regionMatches(offsets[index], utf8Prefix);
+    }
+
+    /**
+     * 判断指定索引的字符串去除首尾空白后是否为空（与String.trim().isEmpty()一致）
+     * @param index 共享字符串索引（从0开始）
+     * @return 是否为空
+     */
+    public boolean isBlank(int index) {
+        checkIndex(index);
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找与给定值相等的全部字符串索引（共享字符串表不保证去重）
+     * @param value 给定值
+     * @return 索引位图
+     */
+    public BitSet findAll(String value) {
+        byte[] utf8Value = value.getBytes(UTF_8);
+        BitSet indices = new BitSet();
+        for (int index = 0; index < size; index++) {
+            if (offsets[index + 1] - offsets[index] == utf8Value.length && regionMatches(offsets[index], utf8Value)) {
+                indices.set(index);
+            }
+        }
+        return indices;
+    }
+
+    static byte[] encode(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    void add(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        if ((long) buffer.position() + bytes.length > MAX_CAPACITY) {
+            throw new RuntimeException("共享字符串表超出2GB！");
+        }
+        if (buffer.remaining() < bytes.length) {
+            ByteBuffer grown = allocate((int) Math.min(MAX_CAPACITY, Math.max((long) buffer.capacity() * 2, (long) buffer.position() + bytes.length)));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.put(bytes);
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++size] = buffer.position();
+    }
+
+    /**
+     * 加载完成后释放缓冲区与偏移数组的空余容量
+     */
+    void trimToSize() {
+        if (buffer.position() < buffer.capacity()) {
+            ByteBuffer trimmed = allocate(buffer.position());
+            buffer.flip();
+            trimmed.put(buffer);
+            buffer = trimmed;
+        }
+        if (offsets.length > size + 1) {
+            offsets = Arrays.copyOf(offsets, size + 1);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private boolean regionMatches(int start, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("共享字符串索引越界：" + index);
+        }
+    }
+
+    /**
+     * sharedStrings.xml的SAX解析器：拼接&lt;si&gt;下各&lt;t&gt;的文本（跳过注音&lt;rPh&gt;）
+     */
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private final boolean offHeap;
+        private final StringBuilder text = new StringBuilder();
+        private ExcelSharedStrings sharedStrings;
+
+        private boolean inText;
+        private boolean inPhonetic;
+
+        SharedStringsHandler(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        ExcelSharedStrings getSharedStrings() {
+            return sharedStrings == null ? new ExcelSharedStrings(offHeap, 0) : sharedStrings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("sst".equals(localName)) {
+                String uniqueCount = attributes.getValue("uniqueCount");
+                sharedStrings = new ExcelSharedStrings(offHeap, uniqueCount == null ? 0 : Integer.parseInt(uniqueCount));
+            } else if ("si".equals(localName)) {
+                text.setLength(0);
+            } else if ("t".equals(localName)) {
+                inText = !inPhonetic;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("si".equals(localName)) {
+                if (sharedStrings == null) {
+                    sharedStrings = new ExcelSharedStrings(offHeap, 0);
+                }
+                sharedStrings.add(text.toString());
+            } else if ("t".equals(localName)) {
+                inText = false;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = false;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.excel.impl;
+
+/**
+ * sheet页元数据：名称、可见性、数据区域与部件大小（由ExcelWorkbookProbe读取，不解析单元格）
+ * @apiNote 行号与列号均从1开始，空sheet页的行列范围为0；未扫描且文件未记录有效数据区域时行列范围为-1
+ * @author yinfelix
+ */
+public class ExcelSheetInfo {
+
+    public static final int UNKNOWN = -1;
+
+    private final int sheetIndex;
+    private final String sheetName;
+    private final String state;
+    private final String partName;
+    private final long size;
+    private final long compressedSize;
+
+    private String dimension;
+    private boolean scanned;
+    private int firstRow = UNKNOWN;
+    private int lastRow = UNKNOWN;
+    private int firstColumn = UNKNOWN;
+    private int lastColumn = UNKNOWN;
+
+    ExcelSheetInfo(int sheetIndex, String sheetName, String state, String partName, long size, long compressedSize) {
+        this.sheetIndex = sheetIndex;
+        this.sheetName = sheetName;
+        this.state = state;
+        this.partName = partName;
+        this.size = size;
+        this.compressedSize = compressedSize;
+    }
+
+    void setDimension(String dimension) {
+        this.dimension = dimension;
+    }
+
+    void setExtent(int firstRow, int lastRow, int firstColumn, int lastColumn, boolean scanned) {
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.firstColumn = firstColumn;
+        this.lastColumn = lastColumn;
+        this.scanned = scanned;
+    }
+
+    /**
+     * 获取sheet页ID
+     * @return sheet页ID（从1开始，与ExcelReaderImpl一致）
+     */
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * 获取sheet页可见性
+     * @return visible、hidden或veryHidden
+     */
+    public String getState() {
+        return state;
+    }
+
+    public boolean isHidden() {
+        return !"visible".equals(state);
+    }
+
+    /**
+     * 获取sheet页部件在文件包中的路径（如xl/worksheets/sheet1.xml）
+     * @return 部件路径
+     */
+    public String getPartName() {
+        return partName;
+    }
+
+    /**
+     * 获取sheet页XML解压后的大小
+     * @return 字节数，zip目录未记录时为-1
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 获取sheet页XML压缩后的大小
+     * @return 字节数，zip目录未记录时为-1
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * 获取文件记录的数据区域（dimension元素的ref属性）
+     * @return 数据区域（如A1:K20），文件未记录时返回null
+     */
+    public String getDimension() {
+        return dimension;
+    }
+
+    /**
+     * 行列范围是否经扫描sheet页XML得出（文件未记录有效数据区域时）
+     * @return 是否经扫描得出
+     */
+    public boolean isScanned() {
+        return scanned;
+    }
+
+    /**
+     * 行列范围是否已知
+     * @return 是否已知
+     */
+    public boolean isExtentKnown() {
+        return lastRow != UNKNOWN;
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    /**
+     * 获取行数（末行行号；ExcelReaderImpl.getRowCount的返回值为末行行号+1）
+     * @return 行数
+     */
+    public int getRowCount() {
+        return lastRow;
+    }
+
+    /**
+     * 获取列数（末列列号）
+     * @return 列数
+     */
+    public int getColumnCount() {
+        return lastColumn;
+    }
+
+    @Override
+    public String toString() {
+        return sheetIndex + ":" + sheetName + (isHidden() ? "(" + state + ")" : "")
+                + " rows=" + firstRow + ".." + lastRow + " columns=" + firstColumn + ".." + lastColumn
+                + (scanned ? " scanned" : "") + " size=" + size;
+    }
+}
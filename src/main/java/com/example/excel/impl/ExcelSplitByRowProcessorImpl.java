@@ -1,23 +1,58 @@
 package com.example.excel.impl;
 
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.openxml4j.util.Nullable;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.*;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.*;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.xmlbeans.XmlCursor;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.*;
 
+import javax.xml.namespace.QName;
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * @apiNote 报表拆分工具类：指定列号并按列对报表进行分类拆分（携带样式信息）
+ * @apiNote 报表拆分工具类：指定列号并按列对报表进行分类拆分（携带样式信息）；
+ * 每个实例对应一个拆分任务，不同实例可在不同线程中并发执行，同一实例不得由多个线程同时调用
  * @author yinfelix
  */
 public class ExcelSplitByRowProcessorImpl {
 
+    private static final String XSSF_SUFFIX = ".xlsx";
+
+    /**
+     * 分区报表在内存中单个单元格的估算占用（字节），用于按内存预算限制同时在建的分区报表数量
+     */
+    private static final long ESTIMATED_BYTES_PER_CELL = 1024L;
+
+    private static final String SPLIT_OPERATION = "split";
+    private static final String PARTITION_OPERATION = "partition";
+
     private String destFile;
     private String sheetName;
     private int rowStart;
 
+    private int partitionThreadCount = Runtime.getRuntime().availableProcessors();
+    private long partitionMemoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private boolean deferFormulaRecalculation = false;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
     private ExcelUtils utils;
     private ExcelReaderImpl excelReader = null;
     private ExcelWriterImpl excelWriter = null;
@@ -28,7 +63,7 @@ public class ExcelSplitByRowProcessorImpl {
         this.rowStart = rowStart - 1;
 
         this.utils = new ExcelUtils();
-        this.excelWriter = new ExcelWriterImpl(sourceFile, destFile);
+        this.excelWriter = new ExcelWriterImpl(sourceFile, destFile, Collections.singleton(sheetName));
         this.excelReader = excelWriter.getExcelReader();
     }
 
@@ -43,6 +78,59 @@ public class ExcelSplitByRowProcessorImpl {
         return excelReader;
     }
 
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()），同时作用于源报表的读取与写出
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+        if (excelWriter != null) {
+            excelWriter.setMetricsListener(this.metricsListener);
+        }
+    }
+
+    public boolean isDeferFormulaRecalculation() {
+        return deferFormulaRecalculation;
+    }
+
+    /**
+     * 设置是否将公式重算推迟至Excel打开报表时进行：启用后拆分结果中受影响的公式不再计算，
+     * 仅设置打开时强制重算的标记
+     * @param deferFormulaRecalculation 是否推迟公式重算
+     */
+    public void setDeferFormulaRecalculation(boolean deferFormulaRecalculation) {
+        this.deferFormulaRecalculation = deferFormulaRecalculation;
+    }
+
+    public int getPartitionThreadCount() {
+        return partitionThreadCount;
+    }
+
+    /**
+     * 设置分区报表的并行生成线程数，默认为可用处理器数
+     * @param partitionThreadCount 线程数（不小于1）
+     */
+    public void setPartitionThreadCount(int partitionThreadCount) {
+        this.partitionThreadCount = Math.max(1, partitionThreadCount);
+    }
+
+    public long getPartitionMemoryBudget() {
+        return partitionMemoryBudget;
+    }
+
+    /**
+     * 设置同时在建的分区报表可占用的内存预算，默认为最大堆内存的一半；
+     * 超出预算的分区等待已提交分区写出后再开始生成，单个分区超出预算时独占全部预算
+     * @param partitionMemoryBudget 内存预算（字节）
+     */
+    public void setPartitionMemoryBudget(long partitionMemoryBudget) {
+        this.partitionMemoryBudget = Math.max(ESTIMATED_BYTES_PER_CELL, partitionMemoryBudget);
+    }
+
     /**
      * 报表拆分入口方法（列号为字母）
      * @param splitCondition 拆分条件
@@ -57,141 +145,1265 @@ public class ExcelSplitByRowProcessorImpl {
      * @param splitCondition 拆分条件
      * @param targetColumnIndex 拆分列号（数字）
      */
-    public void doExcelRowSplit(String splitCondition, int targetColumnIndex) {
-        int sheetNumber = excelReader.getSheetIndexFromName(sheetName);
+    public void doExcelRowSplit(final String splitCondition, final int targetColumnIndex) {
+        final int sheetNumber = excelReader.getSheetIndexFromName(sheetName);
+        doExcelRowSplit(sheetNumber, new RowFilter() {
+            @Override
+            public boolean accept(Row row, int rowIndex) {
+                return splitCondition.equals(excelReader.getCellValue(sheetNumber, rowIndex + 1, targetColumnIndex));
+            }
+        });
+    }
+
+    /**
+     * 报表拆分入口方法（多列组合条件），保留满足条件的数据行
+     * @param predicate 行筛选条件，可由ExcelSplitPredicate的静态方法构造或由ExcelSplitPredicate.parse解析文本表达式
+     */
+    public void doExcelRowSplit(ExcelSplitPredicate predicate) {
+        final ExcelRowMatcher matcher = predicate.compile(excelReader.getWorkbook());
+        doExcelRowSplit(excelReader.getSheetIndexFromName(sheetName), new RowFilter() {
+            @Override
+            public boolean accept(Row row, int rowIndex) {
+                return matcher.matches(row);
+            }
+        });
+    }
 
+    /**
+     * 数据行保留判定
+     */
+    private interface RowFilter {
+        boolean accept(Row row, int rowIndex);
+    }
+
+    private void doExcelRowSplit(int sheetNumber, RowFilter rowFilter) {
         try {
             Workbook currentWorkbook = excelReader.getWorkbook();
             Sheet currentSheet = currentWorkbook.getSheetAt(sheetNumber - 1);
 
             int sourceRowCount = excelReader.getRowCount(sheetNumber) - 1;
 //            int sourceColCount = excelReader.getColCount(sheetNumber, sourceRowCount);
-            int tempRowCount = sourceRowCount;
 
-            Map<Integer, Map<Integer, String>> formula = getFormula(currentWorkbook, currentSheet, rowStart, tempRowCount);
-//            Map<Integer, Map<Integer, Comment>> comment = getComment(currentWorkbook, currentSheet, rowStart, tempRowCount);
-            Map<Integer, Map<Integer, Comment>> comment = getComment(currentWorkbook, currentSheet, 0, tempRowCount);
+            long phaseStartNanos = System.nanoTime();
+//            一次遍历判定数据区域中各行的保留与否，建立行号映射
+            ExcelRowRemap rowRemap = new ExcelRowRemap(sourceRowCount + 1);
+            for (int rowIndex = 0; rowIndex <= sourceRowCount; rowIndex++) {
+                Row row = currentSheet.getRow(rowIndex);
+                rowRemap.add(rowIndex < rowStart || null == row || rowFilter.accept(row, rowIndex));
+            }
+//            首个剔除行之前的各行内容不变，其后各行均视为已变动
+            int firstChangedRowIndex = rowRemap.getFirstChangedRow();
+            ExcelPhaseMetrics.report(metricsListener, SPLIT_OPERATION, ExcelMetricsPhase.SCAN, phaseStartNanos, sourceRowCount + 1, 0);
+
+            phaseStartNanos = System.nanoTime();
+            XSSFSheet resultSheet = createResultSheet(currentWorkbook, currentSheet, rowRemap);
+            long restoredCellCount = compactRows((XSSFSheet) currentSheet, resultSheet, rowRemap);
+            ExcelPhaseMetrics.report(metricsListener, SPLIT_OPERATION, ExcelMetricsPhase.FILTER, phaseStartNanos, sourceRowCount + 1, 0);
+
+            phaseStartNanos = System.nanoTime();
+            replaceSheet((XSSFWorkbook) currentWorkbook, (XSSFSheet) currentSheet, resultSheet);
+            remapFormulaReferences((XSSFWorkbook) currentWorkbook, sheetNumber - 1, rowRemap);
+            ExcelPhaseMetrics.report(metricsListener, SPLIT_OPERATION, ExcelMetricsPhase.FORMULA_RESTORE, phaseStartNanos, rowRemap.getRetainedRowCount(), restoredCellCount);
+
+            if (deferFormulaRecalculation) {
+                currentWorkbook.setForceFormulaRecalculation(true);
+            } else {
+                phaseStartNanos = System.nanoTime();
+                int recalculatedCellCount = new ExcelFormulaRecalculator((XSSFWorkbook) currentWorkbook).recalculate(sheetNumber - 1, firstChangedRowIndex);
+                ExcelPhaseMetrics.report(metricsListener, SPLIT_OPERATION, ExcelMetricsPhase.RECALC, phaseStartNanos, 0, recalculatedCellCount);
+            }
+
+            excelReader.exportWorkbook(destFile);
+            excelReader.close();
+        } catch (IOException e) {}
+    }
 
-//            从后向前剔除数据区域中特定行
-            for (int rowIndex = sourceRowCount; rowIndex >= rowStart; rowIndex--) {
-                if (null != currentSheet.getRow(rowIndex)) {
-                    if (!splitCondition.equals(excelReader.getCellValue(sheetNumber, rowIndex + 1, targetColumnIndex))) {
-                        removeRow(currentSheet, rowIndex, tempRowCount--);
+    /**
+     * 报表分区拆分入口方法（列号为字母）
+     * @param targetColumnLabel 拆分列号（字母）
+     * @return 拆分列取值与对应报表文件路径的映射，按取值首次出现的顺序排列
+     */
+    public Map<String, String> doExcelRowPartition(String targetColumnLabel) {
+        return doExcelRowPartition(utils.getColIndexFromColLabel(targetColumnLabel) + 1);
+    }
+
+    /**
+     * 报表分区拆分入口方法（列号为数字）：只读取一次源报表，一次遍历拆分列得到全部取值，
+     * 再按取值将数据行分发至各自的报表文件（均保留rowStart之上的表头行），
+     * 等价于对每个取值分别调用doExcelRowSplit，但源报表只解析一次
+     * @apiNote 生成文件路径为destFile去掉扩展名后追加"_取值"，生成的报表仅包含拆分sheet页；
+     * 各分区报表在线程池中并行生成与写出（见setPartitionThreadCount、setPartitionMemoryBudget），
+     * 生成结果与线程数无关；任一分区生成失败或等待中被中断时，待正在生成的分区结束后删除全部分区报表，并抛出RuntimeException（cause为失败原因）
+     * @param targetColumnIndex 拆分列号（数字）
+     * @return 拆分列取值与对应报表文件路径的映射，按取值首次出现的顺序排列
+     */
+    public Map<String, String> doExcelRowPartition(int targetColumnIndex) {
+        int sheetNumber = excelReader.getSheetIndexFromName(sheetName);
+        Map<String, String> partitionFiles = new LinkedHashMap<String, String>();
+
+        try {
+            final XSSFWorkbook currentWorkbook = (XSSFWorkbook) excelReader.getWorkbook();
+            final Sheet currentSheet = currentWorkbook.getSheetAt(sheetNumber - 1);
+            int sourceRowCount = excelReader.getRowCount(sheetNumber) - 1;
+
+            long phaseStartNanos = System.nanoTime();
+            long sourceCellCount = 0;
+//            一次遍历拆分列，按取值归集数据行；空行与doExcelRowSplit一致，在各分区中均保留
+            Map<String, List<Integer>> partitions = new LinkedHashMap<String, List<Integer>>();
+            boolean[] sharedRows = new boolean[sourceRowCount + 1];
+            int[] rowCellCounts = new int[sourceRowCount + 1];
+            for (int rowIndex = 0; rowIndex <= sourceRowCount; rowIndex++) {
+                Row row = currentSheet.getRow(rowIndex);
+                if (null != row) {
+                    rowCellCounts[rowIndex] = row.getPhysicalNumberOfCells();
+                    sourceCellCount += rowCellCounts[rowIndex];
+                }
+                if (rowIndex < rowStart || null == row) {
+                    sharedRows[rowIndex] = true;
+                    continue;
+                }
+                String value = excelReader.getCellValue(sheetNumber, rowIndex + 1, targetColumnIndex);
+                List<Integer> partitionRows = partitions.get(value);
+                if (partitionRows == null) {
+                    partitionRows = new ArrayList<Integer>();
+                    partitions.put(value, partitionRows);
+                }
+                partitionRows.add(rowIndex);
+            }
+//            预先建立源sheet页的批注索引（首次查询批注时延迟创建），此后各线程对源报表只读
+            currentSheet.getCellComment(0, 0);
+            ExcelPhaseMetrics.report(metricsListener, PARTITION_OPERATION, ExcelMetricsPhase.SCAN, phaseStartNanos, sourceRowCount + 1, sourceCellCount);
+
+//            文件名在提交前按取值顺序确定，生成结果与线程调度顺序无关
+            Map<String, String> outputFiles = new LinkedHashMap<String, String>();
+            for (String value : partitions.keySet()) {
+                outputFiles.put(value, getPartitionFile(value, outputFiles.values()));
+            }
+
+            int budgetPermits = (int) Math.min(Integer.MAX_VALUE, partitionMemoryBudget / ESTIMATED_BYTES_PER_CELL);
+            final Semaphore memoryBudget = new Semaphore(budgetPermits);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(partitionThreadCount, Math.max(1, partitions.size())));
+            Map<String, Future<?>> partitionTasks = new LinkedHashMap<String, Future<?>>();
+            RuntimeException failure = null;
+            try {
+                for (Map.Entry<String, List<Integer>> partition : partitions.entrySet()) {
+                    final ExcelRowRemap rowRemap = getPartitionRowRemap(sharedRows, partition.getValue());
+                    final String outputFile = outputFiles.get(partition.getKey());
+                    long estimatedCells = 0;
+                    for (int rowIndex = 0; rowIndex < rowRemap.size(); rowIndex++) {
+                        if (rowRemap.isRetained(rowIndex)) {
+                            estimatedCells += rowCellCounts[rowIndex];
+                        }
+                    }
+                    final int permits = (int) Math.max(1, Math.min(budgetPermits, estimatedCells));
+                    memoryBudget.acquire(permits);
+                    try {
+                        partitionTasks.put(partition.getKey(), executor.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws IOException {
+                                try {
+                                    writePartition(currentWorkbook, (XSSFSheet) currentSheet, rowRemap, outputFile);
+                                } finally {
+                                    memoryBudget.release(permits);
+                                }
+                                return null;
+                            }
+                        }));
+                    } catch (RejectedExecutionException e) {
+                        memoryBudget.release(permits);
+                        throw e;
+                    }
+                }
+                for (Map.Entry<String, Future<?>> partitionTask : partitionTasks.entrySet()) {
+                    try {
+                        partitionTask.getValue().get();
+                        partitionFiles.put(partitionTask.getKey(), outputFiles.get(partitionTask.getKey()));
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = new RuntimeException("分区报表生成失败：" + partitionTask.getKey(), e.getCause());
+                        } else {
+                            failure.addSuppressed(e.getCause());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new RuntimeException("分区报表生成被中断", e);
+            } finally {
+                shutdownAndAwait(executor);
+            }
+            excelReader.close();
+            if (failure != null) {
+//                不返回部分结果：已生成（含写出中途失败）的分区报表一并删除
+                for (String outputFile : outputFiles.values()) {
+                    File file = new File(outputFile);
+                    if (file.isFile()) {
+                        file.delete();
                     }
                 }
+                throw failure;
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return partitionFiles;
+    }
+
+    /**
+     * 关闭线程池并等待正在生成的分区结束：POI的写出不响应中断，未等待其结束即删除分区报表时，仍在写出的分区会重新创建文件；
+     * 等待期间收到的中断在等待结束后恢复
+     * @param executor 分区线程池
+     */
+    private void shutdownAndAwait(ExecutorService executor) {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            for (int rowIndex = rowStart; rowIndex < tempRowCount; rowIndex++) {
-                for (Integer columnIndex : formula.get(rowIndex).keySet()) {
-                    currentSheet.getRow(rowIndex).getCell(columnIndex).setCellFormula(formula.get(rowIndex).get(columnIndex));
+    /**
+     * 生成分区的行号映射
+     * @param sharedRows 各分区共有的行（表头行与空行）
+     * @param partitionRows 分区数据行的行号（从0开始，升序）
+     * @return 行号映射
+     */
+    private ExcelRowRemap getPartitionRowRemap(boolean[] sharedRows, List<Integer> partitionRows) {
+        ExcelRowRemap rowRemap = new ExcelRowRemap(sharedRows.length);
+        int partitionCursor = 0;
+        for (int rowIndex = 0; rowIndex < sharedRows.length; rowIndex++) {
+            boolean partitionRow = partitionCursor < partitionRows.size() && partitionRows.get(partitionCursor) == rowIndex;
+            if (partitionRow) {
+                partitionCursor++;
+            }
+            rowRemap.add(partitionRow || sharedRows[rowIndex]);
+        }
+        return rowRemap;
+    }
+
+    /**
+     * 生成分区报表文件路径，取值中不能用于文件名的字符替换为下划线
+     * @param value 拆分列取值
+     * @param existingFiles 已生成的分区报表文件路径
+     * @return 分区报表文件路径
+     */
+    private String getPartitionFile(String value, Collection<String> existingFiles) {
+        String baseName = destFile.endsWith(XSSF_SUFFIX) ? destFile.substring(0, destFile.length() - XSSF_SUFFIX.length()) : destFile;
+        String suffix = value.trim().isEmpty() ? "BLANK" : value.trim().replaceAll("[\\\\/:*?\"<>|\\s]", "_");
+        String partitionFile = baseName + "_" + suffix + XSSF_SUFFIX;
+        for (int i = 2; existingFiles.contains(partitionFile); i++) {
+            partitionFile = baseName + "_" + suffix + "_" + i + XSSF_SUFFIX;
+        }
+        return partitionFile;
+    }
+
+    /**
+     * 将单个分区写入新的报表文件：表头行与分区数据行按行号映射依次写入，样式在目标workbook内按源样式ID复用，
+     * 数据区域公式随所在行移动、批注、合并单元格、超链接与数据验证区域按行号映射更新（与doExcelRowSplit一致），表头公式按行号映射更新引用；
+     * 引用其他sheet页或名称定义的公式写入缓存的计算结果（见getPartitionFormula）
+     * @param sourceWorkbook 源workbook
+     * @param sourceSheet 拆分sheet页
+     * @param rowRemap 行号映射
+     * @param outputFile 分区报表文件路径
+     * @throws IOException IO操作
+     */
+    private void writePartition(XSSFWorkbook sourceWorkbook, XSSFSheet sourceSheet, ExcelRowRemap rowRemap, String outputFile) throws IOException {
+        long phaseStartNanos = System.nanoTime();
+        ExcelWriterImpl partitionWriter = new ExcelWriterImpl(outputFile);
+        partitionWriter.setMetricsListener(metricsListener);
+//        各分区已并行生成，压缩线程按分区线程数均分处理器
+        partitionWriter.setCompressionThreadCount(Runtime.getRuntime().availableProcessors() / partitionThreadCount);
+        XSSFWorkbook targetWorkbook = (XSSFWorkbook) partitionWriter.getWorkbook();
+        XSSFSheet targetSheet = (XSSFSheet) partitionWriter.getSheet();
+        targetWorkbook.setSheetName(0, sheetName);
+        // 创建时间沿用源报表，避免文档属性随分区的生成时刻变化
+        targetWorkbook.getProperties().getCoreProperties().setCreated(
+                new Nullable<Date>(sourceWorkbook.getProperties().getCoreProperties().getCreated()));
+        copySheetProperties(sourceSheet.getCTWorksheet(), targetSheet.getCTWorksheet(), false);
+        remapDataValidations(targetSheet.getCTWorksheet(), rowRemap);
+        remapAutoFilter(targetSheet.getCTWorksheet(), rowRemap);
+
+        XSSFEvaluationWorkbook sourceEvaluationWorkbook = XSSFEvaluationWorkbook.create(sourceWorkbook);
+        int sourceSheetIndex = sourceWorkbook.getSheetIndex(sourceSheet);
+        FormulaMover formulaMover = new FormulaMover(sourceWorkbook, sourceSheetIndex, rowRemap);
+        Map<Short, CellStyle> styleMapping = new HashMap<Short, CellStyle>();
+        List<XSSFCell> formulaCells = new ArrayList<XSSFCell>();
+        long partitionRowCount = 0;
+        long partitionCellCount = 0;
+
+        for (int rowIndex = 0; rowIndex < rowRemap.size(); rowIndex++) {
+            Row sourceRow = sourceSheet.getRow(rowIndex);
+            int targetRowIndex = rowRemap.getRow(rowIndex);
+            if (targetRowIndex == ExcelRowRemap.REMOVED || null == sourceRow) {
+                continue;
+            }
+            ++partitionRowCount;
+            partitionCellCount += sourceRow.getPhysicalNumberOfCells();
+            XSSFRow targetRow = targetSheet.createRow(targetRowIndex);
+            if (((XSSFRow) sourceRow).getCTRow().getCustomHeight()) {
+                targetRow.setHeight(sourceRow.getHeight());
+            }
+            boolean isDataRow = rowIndex >= rowStart;
+            for (Cell sourceCell : sourceRow) {
+                int columnIndex = sourceCell.getColumnIndex();
+                int cellType = sourceCell.getCellType();
+                String formula = null;
+                if (cellType == Cell.CELL_TYPE_FORMULA) {
+                    formula = getPartitionFormula(sourceEvaluationWorkbook, formulaMover, (XSSFCell) sourceCell, isDataRow, sourceSheetIndex, rowRemap);
+                    if (formula == null) {
+                        cellType = sourceCell.getCachedFormulaResultType();
+                    }
                 }
+                switch (cellType) {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        partitionWriter.createCellWithValue(targetSheet, targetRowIndex, columnIndex, sourceCell.getNumericCellValue());
+                        break;
+                    case Cell.CELL_TYPE_STRING:
+                        partitionWriter.createCellWithValue(targetSheet, targetRowIndex, columnIndex, sourceCell.getStringCellValue());
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        partitionWriter.createCellWithValue(targetSheet, targetRowIndex, columnIndex, sourceCell.getBooleanCellValue());
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        targetRow.createCell(columnIndex).setCellErrorValue(sourceCell.getErrorCellValue());
+                        break;
+                    case Cell.CELL_TYPE_FORMULA:
+                        formulaCells.add(setCellFormula(targetRow.createCell(columnIndex), formula));
+                        break;
+                    default:
+                        targetRow.createCell(columnIndex);
+                        break;
+                }
+                targetRow.getCell(columnIndex).setCellStyle(getPartitionStyle(partitionWriter, sourceCell.getCellStyle(), styleMapping));
             }
+        }
+        copyComments(sourceSheet, targetSheet, rowRemap);
+        copyHyperlinks(sourceSheet, targetSheet, rowRemap);
+        copyMergedRegions(sourceSheet, targetSheet, rowRemap);
+        ExcelPhaseMetrics.report(metricsListener, PARTITION_OPERATION, ExcelMetricsPhase.FILTER, phaseStartNanos, partitionRowCount, partitionCellCount);
 
-            for (int rowIndex = 0; rowIndex < tempRowCount; rowIndex++) {
-                for (Integer columnIndex : comment.get(rowIndex).keySet()) {
-                    currentSheet.getRow(rowIndex).getCell(columnIndex).setCellComment(comment.get(rowIndex).get(columnIndex));
+        if (deferFormulaRecalculation) {
+            targetWorkbook.setForceFormulaRecalculation(true);
+        } else {
+            phaseStartNanos = System.nanoTime();
+            new ExcelFormulaRecalculator(targetWorkbook).recalculate(formulaCells);
+            ExcelPhaseMetrics.report(metricsListener, PARTITION_OPERATION, ExcelMetricsPhase.RECALC, phaseStartNanos, 0, formulaCells.size());
+        }
+
+        partitionWriter.commitWorkbook();
+        partitionWriter.close();
+    }
+
+    /**
+     * 获取分区报表中公式单元格的公式：数据区域的公式随所在行移动，表头公式按行号映射更新引用
+     * @apiNote 分区报表仅包含拆分sheet页，引用其他sheet页、名称定义或外部workbook的公式（及无法解析的公式）在分区报表中无法计算，
+     * 返回null，由调用方写入原单元格缓存的计算结果
+     * @return 公式；需写入缓存的计算结果时返回null
+     */
+    private String getPartitionFormula(XSSFEvaluationWorkbook evaluationWorkbook, FormulaMover formulaMover, XSSFCell sourceCell,
+                                       boolean isDataRow, int sheetIndex, ExcelRowRemap rowRemap) {
+        String formula;
+        if (isDataRow) {
+            if (!formulaMover.isSheetLocal(sourceCell)) {
+                return null;
+            }
+            formula = formulaMover.move(sourceCell);
+        } else {
+            Ptg[] ptgs = parseFormula(evaluationWorkbook, sourceCell.getCellFormula(), sheetIndex);
+            if (!isSheetLocalFormula(evaluationWorkbook, ptgs, sheetIndex)) {
+                return null;
+            }
+            formula = rewriteFormula(evaluationWorkbook, ptgs, sheetIndex, sheetIndex, rowRemap, 0);
+        }
+        return formula == null ? sourceCell.getCellFormula() : formula;
+    }
+
+    /**
+     * @return 公式是否只引用所在sheet页（不含其他sheet页、名称定义与外部workbook的引用），无法解析的公式视为否
+     */
+    private boolean isSheetLocalFormula(XSSFEvaluationWorkbook evaluationWorkbook, Ptg[] ptgs, int sheetIndex) {
+        if (ptgs == null) {
+            return false;
+        }
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof NamePtg || ptg instanceof NameXPtg || ptg instanceof DeletedRef3DPtg || ptg instanceof DeletedArea3DPtg) {
+                return false;
+            }
+            if (ptg instanceof Ref3DPtg && evaluationWorkbook.convertFromExternSheetIndex(((Ref3DPtg) ptg).getExternSheetIndex()) != sheetIndex
+                    || ptg instanceof Area3DPtg && evaluationWorkbook.convertFromExternSheetIndex(((Area3DPtg) ptg).getExternSheetIndex()) != sheetIndex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 以普通公式替换单元格公式（展开共享公式），保留缓存的计算结果
+     */
+    private void replaceCellFormula(XSSFCell cell, String formula) {
+        setFormulaElement(cell.getCTCell(), formula);
+    }
+
+    /**
+     * 写入公式字符串而不在目标workbook内解析（公式可能引用分区报表中不存在的sheet页）
+     */
+    private XSSFCell setCellFormula(XSSFCell cell, String formula) {
+        CTCell ctCell = cell.getCTCell();
+        if (ctCell.isSetT()) {
+            ctCell.unsetT();
+        }
+        if (ctCell.isSetV()) {
+            ctCell.unsetV();
+        }
+        setFormulaElement(ctCell, formula);
+        return cell;
+    }
+
+    /**
+     * 在原有的公式元素上写入普通公式（去掉共享公式属性），不另建元素再整体复制
+     */
+    private void setFormulaElement(CTCell ctCell, String formula) {
+        CTCellFormula ctFormula = ctCell.isSetF() ? ctCell.getF() : ctCell.addNewF();
+        ctFormula.setStringValue(formula);
+        if (ctFormula.isSetT()) {
+            ctFormula.unsetT();
+        }
+        if (ctFormula.isSetRef()) {
+            ctFormula.unsetRef();
+        }
+        if (ctFormula.isSetSi()) {
+            ctFormula.unsetSi();
+        }
+    }
+
+    /**
+     * 获取分区报表中与源样式等价的样式，同一源样式ID只查询一次写入器的样式缓存
+     */
+    private CellStyle getPartitionStyle(ExcelWriterImpl partitionWriter, CellStyle sourceCellStyle, Map<Short, CellStyle> styleMapping) {
+        CellStyle targetCellStyle = styleMapping.get(sourceCellStyle.getIndex());
+        if (targetCellStyle == null) {
+            targetCellStyle = partitionWriter.getCellStyle(partitionWriter.getWorkbook(), sourceCellStyle);
+            styleMapping.put(sourceCellStyle.getIndex(), targetCellStyle);
+        }
+        return targetCellStyle;
+    }
+
+    /**
+     * 创建结果sheet页，复制原sheet页的列宽、视图、页面设置与数据验证等属性，并承接原sheet页的绘图、表格与打印机设置等关联部件
+     * @param workbook 原sheet页所在workbook
+     * @param sheet 原sheet页
+     * @param rowRemap 行号映射
+     * @return 结果sheet页
+     */
+    private XSSFSheet createResultSheet(Workbook workbook, Sheet sheet, ExcelRowRemap rowRemap) throws IOException {
+        String resultSheetName = sheetName + "_";
+        while (workbook.getSheet(resultSheetName) != null) {
+            resultSheetName += "_";
+        }
+        XSSFSheet resultSheet = (XSSFSheet) workbook.createSheet(resultSheetName);
+        copySheetProperties(((XSSFSheet) sheet).getCTWorksheet(), resultSheet.getCTWorksheet(), true);
+        copySheetRelations((XSSFSheet) sheet, resultSheet, rowRemap);
+        return resultSheet;
+    }
+
+    /**
+     * 将原sheet页的关联部件（绘图、图片、表格、打印机设置、控件等）以原关系ID关联至结果sheet页，
+     * 工作表中引用这些关系ID的元素随之复制；表格区域按行号映射收缩，区域内的行全部被剔除的表格随之删除。
+     * 批注表及批注所用的VML绘图不承接（批注由copyComments按行号重新创建），超链接的外部关系由copyHyperlinks重新建立
+     * @apiNote 须在结果sheet页创建批注、超链接之前调用：其后新建的关系自动选用未占用的关系ID。
+     * 绘图部件的父部件为原sheet页，在其上创建批注会写入原sheet页，因此结果sheet页新建绘图部件，承接原绘图的内容与关联部件（图片、图表）。
+     * 原sheet页删除时未承接的部件由replaceSheet一并删除
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页（与原sheet页位于同一workbook）
+     * @param rowRemap 行号映射
+     */
+    private void copySheetRelations(XSSFSheet sheet, XSSFSheet resultSheet, ExcelRowRemap rowRemap) throws IOException {
+        CTWorksheet source = sheet.getCTWorksheet();
+        CTWorksheet target = resultSheet.getCTWorksheet();
+        boolean hasComments = getCommentsTable(sheet) != null;
+        String commentsDrawingId = hasComments && source.isSetLegacyDrawing() ? source.getLegacyDrawing().getId() : null;
+        XSSFDrawing drawing = null;
+        Set<String> tableIds = new HashSet<String>();
+        for (PackageRelationship relationship : getRelationships(sheet.getPackagePart())) {
+            String id = relationship.getId();
+            if (relationship.getTargetMode() == TargetMode.EXTERNAL) {
+                if (!XSSFRelation.SHEET_HYPERLINKS.getRelation().equals(relationship.getRelationshipType())) {
+                    resultSheet.getPackagePart().addExternalRelationship(relationship.getTargetURI().toString(), relationship.getRelationshipType(), id);
+                }
+                continue;
+            }
+            POIXMLDocumentPart part = sheet.getRelationById(id);
+            if (null == part || part instanceof CommentsTable || id.equals(commentsDrawingId)) {
+                continue;
+            }
+            if (part instanceof XSSFDrawing) {
+                drawing = (XSSFDrawing) part;
+                continue;
+            }
+            if (part instanceof XSSFTable) {
+                if (!remapTable(((XSSFTable) part).getCTTable(), rowRemap)) {
+                    continue;
                 }
-                updateFormula(currentWorkbook, currentSheet, rowIndex);
+                tableIds.add(id);
             }
-//            currentWorkbook.setForceFormulaRecalculation(true);
+            addRelation(resultSheet, relationship, part);
+        }
 
-            excelReader.exportWorkbook(destFile);
-            excelReader.close();
-        } catch (IOException e) {}
+        if (source.isSetLegacyDrawing() && null == commentsDrawingId) {
+            target.setLegacyDrawing(source.getLegacyDrawing());
+        }
+        if (source.isSetLegacyDrawingHF()) {
+            target.setLegacyDrawingHF(source.getLegacyDrawingHF());
+        }
+//        背景图片、OLE对象与控件的XMLBeans类型不在精简的schemas包中，按XML复制（依次追加于末尾即符合schema中的元素顺序）
+        for (String elementName : new String[] {"picture", "oleObjects", "controls"}) {
+            XmlCursor sourceCursor = source.newCursor();
+            if (sourceCursor.toChild(new QName(CTWorksheet.type.getName().getNamespaceURI(), elementName))) {
+                XmlCursor targetCursor = target.newCursor();
+                targetCursor.toEndToken();
+                sourceCursor.copyXml(targetCursor);
+                targetCursor.dispose();
+            }
+            sourceCursor.dispose();
+        }
+        if (source.isSetTableParts() && !tableIds.isEmpty()) {
+            CTTableParts tableParts = target.addNewTableParts();
+            for (int partIndex = 0; partIndex < source.getTableParts().sizeOfTablePartArray(); partIndex++) {
+                CTTablePart tablePart = source.getTableParts().getTablePartArray(partIndex);
+                if (tableIds.contains(tablePart.getId())) {
+                    tableParts.addNewTablePart().setId(tablePart.getId());
+                }
+            }
+            tableParts.setCount(tableParts.sizeOfTablePartArray());
+        }
+
+        if (drawing != null) {
+            XSSFDrawing resultDrawing = resultSheet.createDrawingPatriarch();
+            resultDrawing.getCTDrawing().set(drawing.getCTDrawing());
+            for (PackageRelationship relationship : getRelationships(drawing.getPackagePart())) {
+                if (relationship.getTargetMode() == TargetMode.EXTERNAL) {
+                    resultDrawing.getPackagePart().addExternalRelationship(relationship.getTargetURI().toString(), relationship.getRelationshipType(), relationship.getId());
+                } else if (drawing.getRelationById(relationship.getId()) != null) {
+                    addRelation(resultDrawing, relationship, drawing.getRelationById(relationship.getId()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 以原关系ID建立部件关联（包关系与POIXMLDocumentPart关系同时建立，写出时随结果部件一并保存）
+     * @param parent 结果部件
+     * @param relationship 原部件的关系
+     * @param part 被关联的部件
+     */
+    private void addRelation(POIXMLDocumentPart parent, PackageRelationship relationship, POIXMLDocumentPart part) {
+        parent.getPackagePart().addRelationship(part.getPackagePart().getPartName(), TargetMode.INTERNAL, relationship.getRelationshipType(), relationship.getId());
+        parent.addRelation(relationship.getId(), part);
+    }
+
+    private PackageRelationshipCollection getRelationships(PackagePart packagePart) throws IOException {
+        try {
+            return packagePart.getRelationships();
+        } catch (InvalidFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 按行号映射收缩表格区域（含表格的筛选区域）；表格的数据行全部被剔除时保留一个空数据行（与Excel删除行一致）
+     * @param table 表格
+     * @param rowRemap 行号映射
+     * @return 表格是否保留（区域内的行全部被剔除时返回false）
+     */
+    private boolean remapTable(CTTable table, ExcelRowRemap rowRemap) {
+        CellRangeAddress range = rowRemap.getRange(CellRangeAddress.valueOf(table.getRef()));
+        if (range == null) {
+            return false;
+        }
+        int minLastRow = range.getFirstRow() + (int) table.getHeaderRowCount();
+        if (range.getLastRow() < minLastRow) {
+            range.setLastRow(minLastRow);
+        }
+        table.setRef(range.formatAsString());
+        if (table.isSetAutoFilter()) {
+            String filterRange = remapRange(table.getAutoFilter().getRef(), rowRemap);
+            table.getAutoFilter().setRef(filterRange == null ? table.getRef() : filterRange);
+        }
+        return true;
+    }
+
+    /**
+     * 按行号映射压缩报表：保留行依次追加至结果sheet页，整体耗时与行数呈线性关系
+     * （逐行调用removeRow/shiftRows时每次删除均需移动其后全部行，耗时与行数呈平方关系）；
+     * 数据区域的公式随所在行移动（见FormulaMover），批注、合并单元格、超链接与数据验证区域按行号映射更新，
+     * 均在同一次遍历中完成，不再先剥离公式再按行号恢复
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页
+     * @param rowRemap 行号映射
+     * @return 更新了公式或批注的单元格数量
+     */
+    private long compactRows(XSSFSheet sheet, XSSFSheet resultSheet, ExcelRowRemap rowRemap) {
+        XSSFWorkbook workbook = sheet.getWorkbook();
+        FormulaMover formulaMover = new FormulaMover(workbook, workbook.getSheetIndex(sheet), rowRemap);
+        int firstChangedRowIndex = rowRemap.getFirstChangedRow();
+        long restoredCellCount = 0;
+
+        for (int rowIndex = 0; rowIndex < rowRemap.size(); rowIndex++) {
+            XSSFRow sourceRow = sheet.getRow(rowIndex);
+            int targetRowIndex = rowRemap.getRow(rowIndex);
+            if (targetRowIndex == ExcelRowRemap.REMOVED || null == sourceRow) {
+                continue;
+            }
+            XSSFRow targetRow = resultSheet.createRow(targetRowIndex);
+            copyRow(sourceRow, targetRow);
+            for (Cell sourceCell : sourceRow) {
+                if (sourceCell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+                    continue;
+                }
+                XSSFCell targetCell = targetRow.getCell(sourceCell.getColumnIndex());
+                if (rowIndex < rowStart) {
+//                    表头公式在替换sheet页后按行号映射更新（见remapFormulaReferences），此处只展开共享公式
+                    if (targetCell.getCTCell().getF().getT() == STCellFormulaType.SHARED) {
+                        replaceCellFormula(targetCell, sourceCell.getCellFormula());
+                        ++restoredCellCount;
+                    }
+                    continue;
+                }
+                String movedFormula = formulaMover.move((XSSFCell) sourceCell);
+                if (targetRowIndex >= firstChangedRowIndex) {
+                    setCellFormula(targetCell, movedFormula == null ? sourceCell.getCellFormula() : movedFormula);
+                    ++restoredCellCount;
+                } else if (movedFormula != null) {
+                    replaceCellFormula(targetCell, movedFormula);
+                    ++restoredCellCount;
+                }
+            }
+        }
+        restoredCellCount += copyComments(sheet, resultSheet, rowRemap);
+        copyHyperlinks(sheet, resultSheet, rowRemap);
+        copyMergedRegions(sheet, resultSheet, rowRemap);
+        remapDataValidations(resultSheet.getCTWorksheet(), rowRemap);
+        remapAutoFilter(resultSheet.getCTWorksheet(), rowRemap);
+        remapConditionalFormattings(resultSheet.getCTWorksheet(), rowRemap);
+        return restoredCellCount;
+    }
+
+    /**
+     * 按行号映射复制合并单元格，仅保留所含行全部保留且仍然连续的合并区域
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页
+     * @param rowRemap 行号映射
+     */
+    private void copyMergedRegions(Sheet sheet, Sheet resultSheet, ExcelRowRemap rowRemap) {
+        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
+            CellRangeAddress region = rowRemap.getContiguousRange(sheet.getMergedRegion(i));
+            if (region != null) {
+                resultSheet.addMergedRegion(region);
+            }
+        }
+    }
+
+    /**
+     * 按行号映射复制批注：批注随所在行移动，被剔除行的批注不复制（遍历批注表，不逐个单元格查询）
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页（可位于其他workbook）
+     * @param rowRemap 行号映射
+     * @return 复制的批注数量
+     */
+    private int copyComments(XSSFSheet sheet, Sheet resultSheet, ExcelRowRemap rowRemap) {
+        CommentsTable comments = getCommentsTable(sheet);
+        if (comments == null) {
+            return 0;
+        }
+        Drawing patriarch = null;
+        int commentCount = 0;
+        CTCommentList commentList = comments.getCTComments().getCommentList();
+        for (int commentIndex = 0; commentIndex < commentList.sizeOfCommentArray(); commentIndex++) {
+            CTComment ctComment = commentList.getCommentArray(commentIndex);
+            CellReference reference = new CellReference(ctComment.getRef());
+            int targetRowIndex = rowRemap.getRow(reference.getRow());
+            Comment sourceComment = sheet.getCellComment(reference.getRow(), reference.getCol());
+            if (targetRowIndex == ExcelRowRemap.REMOVED || null == sourceComment) {
+                continue;
+            }
+            if (patriarch == null) {
+                patriarch = resultSheet.createDrawingPatriarch();
+            }
+            copyComment(resultSheet.getWorkbook(), patriarch, sourceComment, getOrCreateCell(getOrCreateRow(resultSheet, targetRowIndex), reference.getCol()));
+            ++commentCount;
+        }
+        return commentCount;
+    }
+
+    private CommentsTable getCommentsTable(XSSFSheet sheet) {
+        for (POIXMLDocumentPart relation : sheet.getRelations()) {
+            if (relation instanceof CommentsTable) {
+                return (CommentsTable) relation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按行号映射复制超链接：超链接随首个单元格所在行移动，首行被剔除的超链接不复制；
+     * 外部链接的地址取自原sheet页的关系部件，写出时在结果sheet页重新建立关系
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页（可位于其他workbook）
+     * @param rowRemap 行号映射
+     */
+    private void copyHyperlinks(XSSFSheet sheet, Sheet resultSheet, ExcelRowRemap rowRemap) {
+        CTWorksheet worksheet = sheet.getCTWorksheet();
+        if (!worksheet.isSetHyperlinks()) {
+            return;
+        }
+        CreationHelper creationHelper = resultSheet.getWorkbook().getCreationHelper();
+        CTHyperlinks hyperlinks = worksheet.getHyperlinks();
+        for (int hyperlinkIndex = 0; hyperlinkIndex < hyperlinks.sizeOfHyperlinkArray(); hyperlinkIndex++) {
+            CTHyperlink ctHyperlink = hyperlinks.getHyperlinkArray(hyperlinkIndex);
+            CellReference reference = new CellReference(ctHyperlink.getRef().split(":")[0]);
+            int targetRowIndex = rowRemap.getRow(reference.getRow());
+            if (targetRowIndex == ExcelRowRemap.REMOVED) {
+                continue;
+            }
+            XSSFHyperlink hyperlink;
+            if (ctHyperlink.isSetId()) {
+                PackageRelationship relationship = sheet.getPackagePart().getRelationship(ctHyperlink.getId());
+                if (relationship == null) {
+                    continue;
+                }
+                hyperlink = (XSSFHyperlink) creationHelper.createHyperlink(Hyperlink.LINK_URL);
+                hyperlink.setAddress(relationship.getTargetURI().toString());
+            } else {
+                hyperlink = (XSSFHyperlink) creationHelper.createHyperlink(Hyperlink.LINK_DOCUMENT);
+                hyperlink.setAddress(ctHyperlink.getLocation());
+            }
+            if (ctHyperlink.isSetDisplay()) {
+                hyperlink.setLabel(ctHyperlink.getDisplay());
+            }
+            if (ctHyperlink.isSetTooltip()) {
+                hyperlink.setTooltip(ctHyperlink.getTooltip());
+            }
+            getOrCreateCell(getOrCreateRow(resultSheet, targetRowIndex), reference.getCol()).setHyperlink(hyperlink);
+        }
     }
 
     /**
-     * 剔除报表中的特定行
-     * @param sheet 待剔除行所在的sheet页
-     * @param rowIndex 待剔除行所在的行号
-     * @param rowEnd 待剔除行所在sheet页的末行，通过进行自减的参数传入，而非每次反复获取
+     * 按行号映射收缩数据验证的适用区域，区域内的行全部被剔除的数据验证随之删除
+     * @param worksheet 结果sheet页（数据验证已由copySheetProperties复制）
+     * @param rowRemap 行号映射
      */
-    private void removeRow(Sheet sheet, int rowIndex, int rowEnd) {
-        if (rowIndex >= 0 && rowIndex < rowEnd) {
-            sheet.removeRow(sheet.getRow(rowIndex));
-            // 将行号为rowIndex+1一直到行号为lastRowNum的单元格全部上移一行，以便删除rowIndex行
-            sheet.shiftRows(rowIndex + 1, rowEnd, -1);
+    private void remapDataValidations(CTWorksheet worksheet, ExcelRowRemap rowRemap) {
+        if (!worksheet.isSetDataValidations()) {
+            return;
         }
-        if (rowIndex == rowEnd) {
-            Row removingRow = sheet.getRow(rowIndex);
-            if (removingRow != null) {
-                sheet.removeRow(removingRow);
+        CTDataValidations dataValidations = worksheet.getDataValidations();
+        for (int i = dataValidations.sizeOfDataValidationArray() - 1; i >= 0; i--) {
+            CTDataValidation dataValidation = dataValidations.getDataValidationArray(i);
+            List<String> ranges = new ArrayList<String>();
+            for (Object sqref : dataValidation.getSqref()) {
+                String range = remapRange((String) sqref, rowRemap);
+                if (range != null) {
+                    ranges.add(range);
+                }
+            }
+            if (ranges.isEmpty()) {
+                dataValidations.removeDataValidation(i);
+            } else {
+                dataValidation.setSqref(ranges);
             }
         }
+        if (dataValidations.sizeOfDataValidationArray() == 0) {
+            worksheet.unsetDataValidations();
+        } else {
+            dataValidations.setCount(dataValidations.sizeOfDataValidationArray());
+        }
     }
 
     /**
-     * 提取报表中所有公式字符串
-     * @param workbook 待提取公式所在workbook
-     * @param sheet 待提取公式所在sheet页
-     * @param rowStart 待提取公式区域的首行索引
-     * @param rowEnd 待提取公式区域的末行索引
-     * @return 包含每行公式信息Map的二维Map，K-V分别为行号和对应行公式信息Map；其中每行公式信息Map的K-V分别为列号和对应列的公式字符串
+     * 按行号映射收缩筛选区域，区域内的行全部被剔除时删除筛选
+     * @param worksheet 结果sheet页（筛选已由copySheetProperties复制）
+     * @param rowRemap 行号映射
      */
-    private Map<Integer, Map<Integer, String>> getFormula(Workbook workbook, Sheet sheet, int rowStart, int rowEnd) {
-        Map<Integer, Map<Integer, String>> formulaMap = new HashMap<Integer, Map<Integer, String>>();
-        HashMap<Integer, String> formulaMapInsideRow;
-        for (int rowIndex = rowStart; rowIndex <= rowEnd; rowIndex++) {
-            formulaMapInsideRow = new HashMap<Integer, String>();
-            Row row = sheet.getRow(rowIndex);
-            Cell cell;
-            CellStyle cellStyle;
-            if (null != row) {
-                for (int columnIndex = row.getFirstCellNum(); columnIndex < row.getLastCellNum(); columnIndex++) {
-                    cell = row.getCell(columnIndex);
-                    if (null != cell && cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-                        formulaMapInsideRow.put(columnIndex, cell.getCellFormula());
-                        cellStyle = cell.getCellStyle();
-                        row.removeCell(cell);
-                        row.createCell(columnIndex);
-                        row.getCell(columnIndex).setCellStyle(cellStyle);
+    private void remapAutoFilter(CTWorksheet worksheet, ExcelRowRemap rowRemap) {
+        if (!worksheet.isSetAutoFilter()) {
+            return;
+        }
+        String range = remapRange(worksheet.getAutoFilter().getRef(), rowRemap);
+        if (range == null) {
+            worksheet.unsetAutoFilter();
+        } else {
+            worksheet.getAutoFilter().setRef(range);
+        }
+    }
+
+    /**
+     * 按行号映射收缩条件格式的适用区域，区域内的行全部被剔除的条件格式随之删除
+     * （规则公式中的相对引用以适用区域的左上角为基准，随区域一并移动，不需更新）
+     * @param worksheet 结果sheet页（条件格式已由copySheetProperties复制）
+     * @param rowRemap 行号映射
+     */
+    private void remapConditionalFormattings(CTWorksheet worksheet, ExcelRowRemap rowRemap) {
+        for (int i = worksheet.sizeOfConditionalFormattingArray() - 1; i >= 0; i--) {
+            CTConditionalFormatting conditionalFormatting = worksheet.getConditionalFormattingArray(i);
+            List<String> ranges = new ArrayList<String>();
+            for (Object sqref : conditionalFormatting.getSqref()) {
+                String range = remapRange((String) sqref, rowRemap);
+                if (range != null) {
+                    ranges.add(range);
+                }
+            }
+            if (ranges.isEmpty()) {
+                worksheet.removeConditionalFormatting(i);
+            } else {
+                conditionalFormatting.setSqref(ranges);
+            }
+        }
+    }
+
+    /**
+     * 按行号映射收缩区域引用（如A2:C100），整列引用保持不变
+     * @return 新区域引用，区域内的行全部被剔除时返回null
+     */
+    private String remapRange(String range, ExcelRowRemap rowRemap) {
+        if (!range.matches(".*[0-9].*")) {
+            return range;
+        }
+        CellRangeAddress remapped = rowRemap.getRange(CellRangeAddress.valueOf(range));
+        if (remapped == null) {
+            return null;
+        }
+        return remapped.getFirstRow() == remapped.getLastRow() && remapped.getFirstColumn() == remapped.getLastColumn()
+                ? new CellReference(remapped.getFirstRow(), remapped.getFirstColumn()).formatAsString() : remapped.formatAsString();
+    }
+
+    /**
+     * 复制sheet页级别的属性（不含行数据、合并单元格、批注与关联部件）；筛选、条件格式与数据验证按原区域复制，由调用方按行号映射收缩
+     * @param source 原sheet页
+     * @param target 结果sheet页
+     * @param sameWorkbook 结果sheet页是否与原sheet页位于同一workbook（条件格式引用workbook内的样式ID，不跨workbook复制；
+     *                     打印机设置为原sheet页的关联部件，仅在同一workbook内由copySheetRelations承接）
+     */
+    private void copySheetProperties(CTWorksheet source, CTWorksheet target, boolean sameWorkbook) {
+        if (source.isSetSheetPr()) {
+            target.setSheetPr(source.getSheetPr());
+        }
+        if (source.isSetSheetViews()) {
+            target.setSheetViews(source.getSheetViews());
+        }
+        if (source.isSetSheetFormatPr()) {
+            target.setSheetFormatPr(source.getSheetFormatPr());
+        }
+        CTCols[] cols = new CTCols[source.sizeOfColsArray()];
+        for (int colsIndex = 0; colsIndex < cols.length; colsIndex++) {
+            cols[colsIndex] = source.getColsArray(colsIndex);
+        }
+        target.setColsArray(cols);
+        if (source.isSetSheetProtection()) {
+            target.setSheetProtection(source.getSheetProtection());
+        }
+        if (source.isSetAutoFilter()) {
+            target.setAutoFilter(source.getAutoFilter());
+        }
+        if (sameWorkbook) {
+            CTConditionalFormatting[] conditionalFormattings = new CTConditionalFormatting[source.sizeOfConditionalFormattingArray()];
+            for (int formattingIndex = 0; formattingIndex < conditionalFormattings.length; formattingIndex++) {
+                conditionalFormattings[formattingIndex] = source.getConditionalFormattingArray(formattingIndex);
+            }
+            target.setConditionalFormattingArray(conditionalFormattings);
+        }
+        if (source.isSetDataValidations()) {
+            target.setDataValidations(source.getDataValidations());
+        }
+        if (source.isSetPrintOptions()) {
+            target.setPrintOptions(source.getPrintOptions());
+        }
+        if (source.isSetPageMargins()) {
+            target.setPageMargins(source.getPageMargins());
+        }
+        if (source.isSetPageSetup()) {
+            target.setPageSetup(source.getPageSetup());
+            if (!sameWorkbook && target.getPageSetup().isSetId()) {
+                target.getPageSetup().unsetId();
+            }
+        }
+        if (source.isSetHeaderFooter()) {
+            target.setHeaderFooter(source.getHeaderFooter());
+        }
+        if (source.isSetRowBreaks()) {
+            target.setRowBreaks(source.getRowBreaks());
+        }
+        if (source.isSetColBreaks()) {
+            target.setColBreaks(source.getColBreaks());
+        }
+    }
+
+    /**
+     * 复制整行数据：行属性与单元格XML直接复制（同一workbook内共享字符串与样式ID保持不变）
+     * @param sourceRow 原行
+     * @param targetRow 结果行
+     */
+    private void copyRow(XSSFRow sourceRow, XSSFRow targetRow) {
+        CTRow targetCTRow = targetRow.getCTRow();
+        long targetRowNumber = targetCTRow.getR();
+        targetCTRow.set(sourceRow.getCTRow());
+        targetCTRow.setCArray(new CTCell[0]);
+        targetCTRow.setR(targetRowNumber);
+
+        for (Cell sourceCell : sourceRow) {
+            XSSFCell targetCell = targetRow.createCell(sourceCell.getColumnIndex());
+            targetCell.getCTCell().set(((XSSFCell) sourceCell).getCTCell());
+            targetCell.getCTCell().setR(new CellReference(targetRow.getRowNum(), sourceCell.getColumnIndex()).formatAsString());
+        }
+    }
+
+    /**
+     * 按行号映射更新引用了拆分sheet页的公式：拆分sheet页的表头公式、其他sheet页的公式以及名称定义
+     * （数据区域的公式在压缩时随所在行移动，不在此处理）
+     * @param workbook 公式所在workbook
+     * @param sheetIndex 拆分sheet页ID（从0开始）
+     * @param rowRemap 行号映射
+     */
+    private void remapFormulaReferences(XSSFWorkbook workbook, int sheetIndex, ExcelRowRemap rowRemap) {
+        XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+        for (int formulaSheetIndex = 0; formulaSheetIndex < workbook.getNumberOfSheets(); formulaSheetIndex++) {
+            Sheet sheet = workbook.getSheetAt(formulaSheetIndex);
+            for (Row row : sheet) {
+                if (formulaSheetIndex == sheetIndex && row.getRowNum() >= rowStart) {
+                    break;
+                }
+                for (Cell cell : row) {
+                    if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                        String formula = remapFormula(evaluationWorkbook, cell.getCellFormula(), formulaSheetIndex, sheetIndex, rowRemap);
+                        if (formula != null) {
+                            cell.setCellFormula(formula);
+                        }
                     }
                 }
-                formulaMap.put(rowIndex, formulaMapInsideRow);
             }
         }
-        return formulaMap;
+        for (int nameIndex = 0; nameIndex < workbook.getNumberOfNames(); nameIndex++) {
+            Name name = workbook.getNameAt(nameIndex);
+            if (name.getRefersToFormula() == null || name.isFunctionName()) {
+                continue;
+            }
+            int nameSheetIndex = name.getSheetIndex() < 0 ? sheetIndex : name.getSheetIndex();
+            String formula = remapFormula(evaluationWorkbook, name.getRefersToFormula(), nameSheetIndex, sheetIndex, rowRemap);
+            if (formula != null) {
+                name.setRefersToFormula(formula);
+            }
+        }
     }
 
-    private Map<Integer, Map<Integer, Comment>> getComment(Workbook workbook, Sheet sheet, int rowStart, int rowEnd) {
-        Map<Integer, Map<Integer, Comment>> commentMap = new HashMap<Integer, Map<Integer, Comment>>();
-        HashMap<Integer, Comment> commentMapInsideRow = null;
-        for (int rowIndex = rowStart; rowIndex <= rowEnd; rowIndex++) {
-            commentMapInsideRow = new HashMap<Integer, Comment>();
-            Row row = sheet.getRow(rowIndex);
-            Cell cell;
-            if (null != row) {
-                for (int columnIndex = row.getFirstCellNum(); columnIndex < row.getLastCellNum(); columnIndex++) {
-                    cell = row.getCell(columnIndex);
-                    if (null != cell && null != cell.getCellComment()) {
-                        commentMapInsideRow.put(columnIndex, cell.getCellComment());
+    /**
+     * 按行号映射更新公式中引用拆分sheet页的单元格引用：引用被剔除行的单元格引用变为#REF!，区域引用收缩至保留行
+     * @return 更新后的公式；公式未变化或无法解析时返回null
+     */
+    private String remapFormula(XSSFEvaluationWorkbook evaluationWorkbook, String formula, int formulaSheetIndex, int sheetIndex, ExcelRowRemap rowRemap) {
+        Ptg[] ptgs = parseFormula(evaluationWorkbook, formula, formulaSheetIndex);
+        return ptgs == null ? null : rewriteFormula(evaluationWorkbook, ptgs, formulaSheetIndex, sheetIndex, rowRemap, 0);
+    }
+
+    /**
+     * 数据区域的公式随所在行移动（与Excel删除行一致）：引用拆分sheet页的单元格与区域引用按行号映射更新（与remapFormula相同），
+     * 引用其他sheet页的引用保持不变，公式的计算结果不随行的移动而变化（引用了被剔除行的除外）
+     * @apiNote 解析结果在单元格间复用：普通公式按公式文本缓存（含相对行引用的除外，其文本各行不同），更新结果只生成一次；
+     * 共享公式按共享公式ID与列号缓存（以首个读取到的单元格的公式为模板，其余单元格先按在原sheet页中与模板的行距展开，再按行号映射更新），
+     * 不含行引用的公式不再重新生成；每个实例只在一个线程中使用
+     */
+    private final class FormulaMover {
+
+        private static final int MAX_CACHED_FORMULAS = 4096;
+
+        private final XSSFEvaluationWorkbook evaluationWorkbook;
+        private final int sheetIndex;
+        private final ExcelRowRemap rowRemap;
+
+        private final Map<String, FormulaTemplate> formulaTemplates = new LinkedHashMap<String, FormulaTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FormulaTemplate> eldest) {
+                return size() > MAX_CACHED_FORMULAS;
+            }
+        };
+        private final Map<Long, FormulaTemplate> sharedFormulaTemplates = new HashMap<Long, FormulaTemplate>();
+
+        FormulaMover(XSSFWorkbook workbook, int sheetIndex, ExcelRowRemap rowRemap) {
+            this.evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+            this.sheetIndex = sheetIndex;
+            this.rowRemap = rowRemap;
+        }
+
+        /**
+         * 移动数据区域的公式单元格
+         * @param sourceCell 原单元格
+         * @return 更新后的公式；普通公式未变化或无法解析时返回null，共享公式总是返回展开后的公式
+         */
+        String move(XSSFCell sourceCell) {
+            FormulaTemplate template = getTemplate(sourceCell);
+            if (template.rowIndex < 0) {
+                if (!template.moved) {
+                    template.movedFormula = template.ptgs == null || !template.rowReferenced
+                            ? null : rewriteFormula(evaluationWorkbook, template.ptgs, sheetIndex, sheetIndex, rowRemap, 0);
+                    template.moved = true;
+                }
+                return template.movedFormula;
+            }
+            if (template.ptgs == null) {
+                return sourceCell.getCellFormula();
+            }
+            int rowOffset = sourceCell.getRowIndex() - template.rowIndex;
+            String movedFormula = template.rowReferenced
+                    ? rewriteFormula(evaluationWorkbook, template.ptgs, sheetIndex, sheetIndex, rowRemap, rowOffset) : null;
+            return movedFormula == null ? template.formula : movedFormula;
+        }
+
+        /**
+         * @param sourceCell 原单元格
+         * @return 公式是否只引用所在sheet页（见isSheetLocalFormula）
+         */
+        boolean isSheetLocal(XSSFCell sourceCell) {
+            return getTemplate(sourceCell).sheetLocal;
+        }
+
+        private FormulaTemplate getTemplate(XSSFCell sourceCell) {
+            CTCellFormula ctFormula = sourceCell.getCTCell().getF();
+            FormulaTemplate template;
+            if (ctFormula.getT() == STCellFormulaType.SHARED) {
+                Long key = ctFormula.getSi() << 14 | sourceCell.getColumnIndex();
+                template = sharedFormulaTemplates.get(key);
+                if (template == null) {
+                    template = createTemplate(sourceCell.getCellFormula(), sourceCell.getRowIndex());
+                    sharedFormulaTemplates.put(key, template);
+                }
+            } else {
+                String formula = ctFormula.getStringValue();
+                template = formulaTemplates.get(formula);
+                if (template == null) {
+                    template = createTemplate(formula, -1);
+//                    含相对行引用的普通公式在各行的文本各不相同，不缓存
+                    if (!template.rowRelative) {
+                        formulaTemplates.put(formula, template);
                     }
                 }
-                commentMap.put(rowIndex, commentMapInsideRow);
             }
+            return template;
+        }
+
+        private FormulaTemplate createTemplate(String formula, int rowIndex) {
+            Ptg[] ptgs = parseFormula(evaluationWorkbook, formula, sheetIndex);
+            boolean rowReferenced = false;
+            boolean rowRelative = false;
+            for (int i = 0; ptgs != null && i < ptgs.length; i++) {
+                if (ptgs[i] instanceof RefPtgBase) {
+                    rowReferenced = true;
+                    rowRelative |= ((RefPtgBase) ptgs[i]).isRowRelative();
+                } else if (ptgs[i] instanceof AreaPtgBase) {
+                    AreaPtgBase area = (AreaPtgBase) ptgs[i];
+                    if (area.getFirstRow() != 0 || area.getLastRow() != SpreadsheetVersion.EXCEL2007.getLastRowIndex()) {
+                        rowReferenced = true;
+                        rowRelative |= area.isFirstRowRelative() || area.isLastRowRelative();
+                    }
+                }
+            }
+            return new FormulaTemplate(formula, ptgs, rowIndex, rowReferenced, rowRelative, isSheetLocalFormula(evaluationWorkbook, ptgs, sheetIndex));
         }
-        return commentMap;
     }
 
     /**
-     * 强制更新报表中所有公式
-     * @param workbook 公式所在workbook
-     * @param sheet 公式所在sheet页
-     * @param rowIndex 公式所在行号
+     * 公式模板：公式文本与解析结果（解析结果在单元格间共享，不得修改），普通公式另存更新结果
      */
-    private void updateFormula(Workbook workbook, Sheet sheet, int rowIndex) {
-        Row row = sheet.getRow(rowIndex);
-        Cell cell;
-        FormulaEvaluator eval = new XSSFFormulaEvaluator((XSSFWorkbook) workbook);
-        if (null != row) {
-            for (int columnIndex = row.getFirstCellNum(); columnIndex < row.getLastCellNum(); columnIndex++) {
-                cell = row.getCell(columnIndex);
-                if (null != cell && cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-                    eval.evaluateFormulaCell(cell);
+    private static final class FormulaTemplate {
+        private final String formula;
+        private final Ptg[] ptgs;
+        /**
+         * 共享公式模板所在行；普通公式为-1（取各单元格所在行）
+         */
+        private final int rowIndex;
+        /**
+         * 是否含有单元格或区域引用（整列区域除外），不含时公式移动后不变
+         */
+        private final boolean rowReferenced;
+        /**
+         * 是否含有相对行引用
+         */
+        private final boolean rowRelative;
+        /**
+         * 是否只引用所在sheet页
+         */
+        private final boolean sheetLocal;
+        /**
+         * 普通公式的更新结果是否已生成及其结果（未变化时为null）
+         */
+        private boolean moved;
+        private String movedFormula;
+
+        FormulaTemplate(String formula, Ptg[] ptgs, int rowIndex, boolean rowReferenced, boolean rowRelative, boolean sheetLocal) {
+            this.formula = formula;
+            this.ptgs = ptgs;
+            this.rowIndex = rowIndex;
+            this.rowReferenced = rowReferenced;
+            this.rowRelative = rowRelative;
+            this.sheetLocal = sheetLocal;
+        }
+    }
+
+    /**
+     * @return 解析结果，无法解析时返回null
+     */
+    private Ptg[] parseFormula(XSSFEvaluationWorkbook evaluationWorkbook, String formula, int formulaSheetIndex) {
+        try {
+            return FormulaParser.parse(formula, evaluationWorkbook, FormulaType.CELL, formulaSheetIndex);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按已解析的公式更新引用，ptgs本身不被修改（需要更新的引用先复制），可在多个单元格间复用：
+     * 相对行引用先平移rowOffset行（展开共享公式，与所引用的sheet页无关），引用拆分sheet页的行再按行号映射更新
+     * @param rowOffset 共享公式成员与模板的行距，普通公式为0
+     * @return 更新后的公式；公式未变化时返回null
+     */
+    private String rewriteFormula(XSSFEvaluationWorkbook evaluationWorkbook, Ptg[] ptgs, int formulaSheetIndex, int sheetIndex,
+                                  ExcelRowRemap rowRemap, int rowOffset) {
+        int maxRowIndex = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+        Ptg[] rewrittenPtgs = null;
+        for (int i = 0; i < ptgs.length; i++) {
+            Ptg ptg = ptgs[i];
+            int referencedSheetIndex = formulaSheetIndex;
+            if (ptg instanceof Ref3DPtg) {
+                referencedSheetIndex = evaluationWorkbook.convertFromExternSheetIndex(((Ref3DPtg) ptg).getExternSheetIndex());
+            } else if (ptg instanceof Area3DPtg) {
+                referencedSheetIndex = evaluationWorkbook.convertFromExternSheetIndex(((Area3DPtg) ptg).getExternSheetIndex());
+            }
+            boolean remapped = referencedSheetIndex == sheetIndex;
+            if (ptg instanceof RefPtgBase) {
+                RefPtgBase ref = (RefPtgBase) ptg;
+                int row = ref.isRowRelative() ? ref.getRow() + rowOffset : ref.getRow();
+                if (remapped && row >= 0) {
+                    row = rowRemap.getRow(row);
+                }
+                if (row == ref.getRow()) {
+                    continue;
+                }
+                if (rewrittenPtgs == null) {
+                    rewrittenPtgs = ptgs.clone();
+                }
+                if (row < 0 || row > maxRowIndex) {
+                    rewrittenPtgs[i] = ptg instanceof Ref3DPtg ? new DeletedRef3DPtg(((Ref3DPtg) ptg).getExternSheetIndex()) : new RefErrorPtg();
+                } else {
+                    RefPtgBase rewrittenRef = (RefPtgBase) ref.copy();
+                    rewrittenRef.setRow(row);
+                    rewrittenPtgs[i] = rewrittenRef;
+                }
+            } else if (ptg instanceof AreaPtgBase) {
+                AreaPtgBase area = (AreaPtgBase) ptg;
+                if (area.getFirstRow() == 0 && area.getLastRow() == maxRowIndex) {
+                    continue;
+                }
+                int firstRow = area.isFirstRowRelative() ? area.getFirstRow() + rowOffset : area.getFirstRow();
+                int lastRow = area.isLastRowRelative() ? area.getLastRow() + rowOffset : area.getLastRow();
+                if (remapped && firstRow >= 0 && lastRow >= firstRow) {
+                    firstRow = rowRemap.getFirstRow(firstRow);
+                    lastRow = rowRemap.getLastRow(lastRow);
+                }
+                if (firstRow == area.getFirstRow() && lastRow == area.getLastRow()) {
+                    continue;
+                }
+                if (rewrittenPtgs == null) {
+                    rewrittenPtgs = ptgs.clone();
+                }
+                if (firstRow < 0 || lastRow > maxRowIndex || firstRow > lastRow) {
+                    rewrittenPtgs[i] = ptg instanceof Area3DPtg ? new DeletedArea3DPtg(((Area3DPtg) ptg).getExternSheetIndex()) : new AreaErrPtg();
+                } else {
+                    AreaPtgBase rewrittenArea = (AreaPtgBase) area.copy();
+                    rewrittenArea.setFirstRow(firstRow);
+                    rewrittenArea.setLastRow(lastRow);
+                    rewrittenPtgs[i] = rewrittenArea;
                 }
             }
         }
+        return rewrittenPtgs == null ? null : FormulaRenderer.toFormulaString(evaluationWorkbook, rewrittenPtgs);
     }
 
+    private Cell getOrCreateCell(Row row, int columnIndex) {
+        Cell cell = row.getCell(columnIndex);
+        return cell == null ? row.createCell(columnIndex) : cell;
+    }
+
+    private Row getOrCreateRow(Sheet sheet, int rowIndex) {
+        Row row = sheet.getRow(rowIndex);
+        return row == null ? sheet.createRow(rowIndex) : row;
+    }
+
+    /**
+     * 在结果sheet页中重建批注
+     * @param workbook 批注所在workbook
+     * @param patriarch 结果sheet页的绘图对象
+     * @param sourceComment 原批注
+     * @param targetCell 批注所在单元格
+     */
+    private void copyComment(Workbook workbook, Drawing patriarch, Comment sourceComment, Cell targetCell) {
+        ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+        anchor.setCol1(targetCell.getColumnIndex() + 1);
+        anchor.setCol2(targetCell.getColumnIndex() + 3);
+        anchor.setRow1(targetCell.getRowIndex());
+        anchor.setRow2(targetCell.getRowIndex() + 3);
+        Comment targetComment = patriarch.createCellComment(anchor);
+        targetComment.setString(sourceComment.getString());
+        targetComment.setAuthor(sourceComment.getAuthor());
+        targetComment.setVisible(sourceComment.isVisible());
+        targetCell.setCellComment(targetComment);
+    }
+
+    /**
+     * 以结果sheet页替换原sheet页，保持sheet页名称、位置、激活状态与sheet页级名称定义不变
+     * @apiNote 其他sheet页的公式与名称定义按sheet页名称引用拆分sheet页，结果sheet页直接在workbook.xml中改名即由其承接这些引用；
+     * 不调用setSheetName（其按新名称重新生成全部公式，引用已删除的原sheet页的公式无法生成）。
+     * removeSheetAt会删除原sheet页的sheet页级名称定义、setSheetOrder不更新其他sheet页级名称定义的sheet页序号，均在此按sheet页重新指定；
+     * removeSheetAt只删除原sheet页部件，其关联部件中未由结果sheet页承接的（批注表、批注VML绘图、原绘图部件、被删除的表格）在此一并删除
+     * @param workbook sheet页所在workbook
+     * @param sheet 原sheet页
+     * @param resultSheet 结果sheet页
+     */
+    private void replaceSheet(XSSFWorkbook workbook, XSSFSheet sheet, XSSFSheet resultSheet) {
+        int sheetIndex = workbook.getSheetIndex(sheet);
+        boolean isActive = workbook.getActiveSheetIndex() == sheetIndex;
+        Map<Name, Sheet> localNames = new LinkedHashMap<Name, Sheet>();
+        for (int nameIndex = 0; nameIndex < workbook.getNumberOfNames(); nameIndex++) {
+            Name name = workbook.getNameAt(nameIndex);
+            if (name.getSheetIndex() >= 0) {
+                Sheet nameSheet = workbook.getSheetAt(name.getSheetIndex());
+                localNames.put(name, nameSheet == sheet ? resultSheet : nameSheet);
+            }
+        }
+        for (Map.Entry<Name, Sheet> localName : localNames.entrySet()) {
+            localName.getKey().setSheetIndex(workbook.getSheetIndex(localName.getValue()));
+        }
+
+        workbook.removeSheetAt(sheetIndex);
+        List<POIXMLDocumentPart> resultRelations = resultSheet.getRelations();
+        for (POIXMLDocumentPart relation : sheet.getRelations()) {
+            if (!resultRelations.contains(relation)) {
+                workbook.getPackage().removePart(relation.getPackagePart());
+            }
+        }
+        workbook.getCTWorkbook().getSheets().getSheetArray(workbook.getSheetIndex(resultSheet)).setName(sheetName);
+        workbook.setSheetOrder(sheetName, sheetIndex);
+        for (Map.Entry<Name, Sheet> localName : localNames.entrySet()) {
+            localName.getKey().setSheetIndex(workbook.getSheetIndex(localName.getValue()));
+        }
+        if (isActive) {
+            workbook.setActiveSheet(sheetIndex);
+        }
+    }
+
+
     public static void main(String[] args) {}
 }
@@ -0,0 +1,402 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 报表拆分的行筛选条件：支持多列的相等、IN列表、数值与日期区间、前缀、正则及AND/OR/NOT组合，
+ * 可通过静态方法构造，也可由文本表达式解析（见parse）
+ * @apiNote 条件对象不可变，可重复使用；求值前须经compile针对具体workbook编译为ExcelRowMatcher。
+ * 列号均从1开始；字符串条件只匹配文本（数值单元格按ExcelReaderImpl.getCellValue的规则格式化后比较），
+ * 数值与日期条件只匹配数值单元格；公式单元格取缓存的计算结果
+ * @author yinfelix
+ */
+public abstract class ExcelSplitPredicate {
+
+    ExcelSplitPredicate() {
+    }
+
+    /**
+     * 针对指定workbook编译条件
+     * @param workbook 待筛选的workbook
+     * @return 已编译的行筛选条件
+     */
+    public ExcelRowMatcher compile(Workbook workbook) {
+        return new ExcelRowMatcher(compile(ExcelSharedStrings.getLookup(workbook), new ExcelCellFormatter()));
+    }
+
+    /**
+     * 针对流式读取的文件编译条件：文本相等、前缀与空值条件直接比较共享字符串的UTF-8字节，不生成String对象
+     * @param streamReader 流式读取工具类
+     * @return 已编译的行筛选条件
+     */
+    public ExcelRowMatcher compile(ExcelStreamReaderImpl streamReader) {
+        return new ExcelRowMatcher(compile(streamReader.getSharedStrings(), streamReader.getFormatter()));
+    }
+
+    abstract ExcelRowMatcher.Node compile(ExcelRowMatcher.SharedStringLookup sharedStrings, ExcelCellFormatter formatter);
+
+    /**
+     * 解析文本表达式，语法示例：{@code A = 'U1' AND (C IN ('X', 'Y') OR D BETWEEN 10 AND 20) AND NOT E LIKE 'TMP%'}
+     * <ul>
+     *     <li>列以字母列号表示；关键字不区分大小写</li>
+     *     <li>比较运算符：=、&lt;&gt;、!=、&lt;、&lt;=、&gt;、&gt;=，以及IN、BETWEEN ... AND ...、LIKE 'prefix%'、MATCHES 'regex'、IS BLANK</li>
+     *     <li>取值：'文本'（单引号转义为两个单引号）、数值、DATE 'yyyy-MM-dd[ HH:mm:ss]'</li>
+     *     <li>优先级：NOT高于AND高于OR，可用括号改变</li>
+     * </ul>
+     * @param expression 文本表达式
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate parse(String expression) {
+        return new ExcelSplitPredicateParser(expression).parse();
+    }
+
+    /**
+     * 文本相等
+     * @param columnIndex 列号（从1开始）
+     * @param value 取值
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate equalTo(int columnIndex, String value) {
+        return in(columnIndex, value);
+    }
+
+    /**
+     * 数值相等
+     * @param columnIndex 列号（从1开始）
+     * @param value 取值
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate equalTo(int columnIndex, double value) {
+        return in(columnIndex, new double[]{value});
+    }
+
+    /**
+     * 文本属于取值列表
+     * @param columnIndex 列号（从1开始）
+     * @param values 取值列表
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate in(int columnIndex, String... values) {
+        return new ColumnPredicate(columnIndex, new TextInCondition(new HashSet<String>(Arrays.asList(values))));
+    }
+
+    /**
+     * 数值属于取值列表
+     * @param columnIndex 列号（从1开始）
+     * @param values 取值列表
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate in(int columnIndex, double... values) {
+        double[] sortedValues = values.clone();
+        Arrays.sort(sortedValues);
+        return new ColumnPredicate(columnIndex, new NumberInCondition(sortedValues));
+    }
+
+    /**
+     * 数值位于闭区间[minValue, maxValue]
+     * @param columnIndex 列号（从1开始）
+     * @param minValue 下限
+     * @param maxValue 上限
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate between(int columnIndex, double minValue, double maxValue) {
+        return range(columnIndex, minValue, true, maxValue, true);
+    }
+
+    /**
+     * 日期位于闭区间[fromDate, toDate]（与单元格中的Excel日期序列值比较）
+     * @param columnIndex 列号（从1开始）
+     * @param fromDate 起始日期
+     * @param toDate 截止日期
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate dateBetween(int columnIndex, Date fromDate, Date toDate) {
+        return between(columnIndex, DateUtil.getExcelDate(fromDate), DateUtil.getExcelDate(toDate));
+    }
+
+    /**
+     * 数值位于区间，上下限为null时不限
+     * @param columnIndex 列号（从1开始）
+     * @param minValue 下限
+     * @param minInclusive 是否包含下限
+     * @param maxValue 上限
+     * @param maxInclusive 是否包含上限
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate range(int columnIndex, Double minValue, boolean minInclusive, Double maxValue, boolean maxInclusive) {
+        return new ColumnPredicate(columnIndex, new RangeCondition(
+                minValue == null ? Double.NEGATIVE_INFINITY : minValue, minValue == null || minInclusive,
+                maxValue == null ? Double.POSITIVE_INFINITY : maxValue, maxValue == null || maxInclusive));
+    }
+
+    /**
+     * 文本以指定前缀开头
+     * @param columnIndex 列号（从1开始）
+     * @param prefix 前缀
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate startsWith(int columnIndex, String prefix) {
+        return new ColumnPredicate(columnIndex, new PrefixCondition(prefix));
+    }
+
+    /**
+     * 文本完全匹配正则表达式
+     * @param columnIndex 列号（从1开始）
+     * @param regex 正则表达式
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate matches(int columnIndex, String regex) {
+        return new ColumnPredicate(columnIndex, new RegexCondition(Pattern.compile(regex)));
+    }
+
+    /**
+     * 单元格为空（不存在、空白或空字符串）
+     * @param columnIndex 列号（从1开始）
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate isBlank(int columnIndex) {
+        return new ColumnPredicate(columnIndex, new BlankCondition());
+    }
+
+    /**
+     * 各条件均满足
+     * @param predicates 条件
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate and(ExcelSplitPredicate... predicates) {
+        return new CompositePredicate(true, Arrays.asList(predicates));
+    }
+
+    /**
+     * 任一条件满足
+     * @param predicates 条件
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate or(ExcelSplitPredicate... predicates) {
+        return new CompositePredicate(false, Arrays.asList(predicates));
+    }
+
+    /**
+     * 条件不满足
+     * @param predicate 条件
+     * @return 行筛选条件
+     */
+    public static ExcelSplitPredicate not(final ExcelSplitPredicate predicate) {
+        return new ExcelSplitPredicate() {
+            @Override
+            ExcelRowMatcher.Node compile(ExcelRowMatcher.SharedStringLookup sharedStrings, ExcelCellFormatter formatter) {
+                return new ExcelRowMatcher.NotNode(predicate.compile(sharedStrings, formatter));
+            }
+        };
+    }
+
+    private static class ColumnPredicate extends ExcelSplitPredicate {
+        private final int columnIndex;
+        private final ColumnCondition condition;
+
+        private ColumnPredicate(int columnIndex, ColumnCondition condition) {
+            if (columnIndex < 1) {
+                throw new IllegalArgumentException("列号须从1开始：" + columnIndex);
+            }
+            this.columnIndex = columnIndex;
+            this.condition = condition;
+        }
+
+        @Override
+        ExcelRowMatcher.Node compile(ExcelRowMatcher.SharedStringLookup sharedStrings, ExcelCellFormatter formatter) {
+            return new ExcelRowMatcher.ColumnNode(columnIndex, condition, sharedStrings, formatter);
+        }
+    }
+
+    private static class CompositePredicate extends ExcelSplitPredicate {
+        private final boolean conjunction;
+        private final List<ExcelSplitPredicate> predicates;
+
+        private CompositePredicate(boolean conjunction, List<ExcelSplitPredicate> predicates) {
+            this.conjunction = conjunction;
+            this.predicates = new ArrayList<ExcelSplitPredicate>(predicates);
+        }
+
+        @Override
+        ExcelRowMatcher.Node compile(ExcelRowMatcher.SharedStringLookup sharedStrings, ExcelCellFormatter formatter) {
+            List<ExcelRowMatcher.Node> nodes = new ArrayList<ExcelRowMatcher.Node>(predicates.size());
+            for (ExcelSplitPredicate predicate : predicates) {
+                nodes.add(predicate.compile(sharedStrings, formatter));
+            }
+            return conjunction ? new ExcelRowMatcher.AndNode(nodes) : new ExcelRowMatcher.OrNode(nodes);
+        }
+    }
+
+    /**
+     * 单列条件：数值条件只判定数值，文本条件只判定文本
+     */
+    abstract static class ColumnCondition {
+        abstract boolean isNumeric();
+
+        boolean testNumber(double value) {
+            return false;
+        }
+
+        boolean testText(String value) {
+            return false;
+        }
+
+        boolean testSharedString(ExcelRowMatcher.SharedStringLookup sharedStrings, int index) {
+            return testText(sharedStrings.getString(index));
+        }
+    }
+
+    private static class TextInCondition extends ColumnCondition {
+        /**
+         * 取值不多于此数时逐个比较UTF-8字节，否则生成String后查找
+         */
+        private static final int MAX_BYTE_COMPARISONS = 8;
+
+        private final Set<String> values;
+        private final byte[][] utf8Values;
+
+        private TextInCondition(Set<String> values) {
+            this.values = values;
+            this.utf8Values = new byte[values.size()][];
+            int i = 0;
+            for (String value : values) {
+                utf8Values[i++] = ExcelSharedStrings.encode(value);
+            }
+        }
+
+        @Override
+        boolean testSharedString(ExcelRowMatcher.SharedStringLookup sharedStrings, int index) {
+            if (!(sharedStrings instanceof ExcelSharedStrings) || utf8Values.length > MAX_BYTE_COMPARISONS) {
+                return super.testSharedString(sharedStrings, index);
+            }
+            for (byte[] utf8Value : utf8Values) {
+                if (((ExcelSharedStrings) sharedStrings).equalsAt(index, utf8Value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        @Override
+        boolean testText(String value) {
+            return values.contains(value);
+        }
+    }
+
+    private static class NumberInCondition extends ColumnCondition {
+        private final double[] sortedValues;
+
+        private NumberInCondition(double[] sortedValues) {
+            this.sortedValues = sortedValues;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        boolean testNumber(double value) {
+            return Arrays.binarySearch(sortedValues, value) >= 0;
+        }
+    }
+
+    private static class RangeCondition extends ColumnCondition {
+        private final double minValue;
+        private final boolean minInclusive;
+        private final double maxValue;
+        private final boolean maxInclusive;
+
+        private RangeCondition(double minValue, boolean minInclusive, double maxValue, boolean maxInclusive) {
+            this.minValue = minValue;
+            this.minInclusive = minInclusive;
+            this.maxValue = maxValue;
+            this.maxInclusive = maxInclusive;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        boolean testNumber(double value) {
+            return (minInclusive ? value >= minValue : value > minValue) && (maxInclusive ? value <= maxValue : value < maxValue);
+        }
+    }
+
+    private static class PrefixCondition extends ColumnCondition {
+        private final String prefix;
+        private final byte[] utf8Prefix;
+
+        private PrefixCondition(String prefix) {
+            this.prefix = prefix;
+            this.utf8Prefix = ExcelSharedStrings.encode(prefix);
+        }
+
+        @Override
+        boolean testSharedString(ExcelRowMatcher.SharedStringLookup sharedStrings, int index) {
+            if (sharedStrings instanceof ExcelSharedStrings) {
+                return ((ExcelSharedStrings) sharedStrings).startsWith(index, utf8Prefix);
+            }
+            return super.testSharedString(sharedStrings, index);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        @Override
+        boolean testText(String value) {
+            return value.startsWith(prefix);
+        }
+    }
+
+    private static class RegexCondition extends ColumnCondition {
+        private final Pattern pattern;
+
+        private RegexCondition(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        @Override
+        boolean testText(String value) {
+            return pattern.matcher(value).matches();
+        }
+    }
+
+    private static class BlankCondition extends ColumnCondition {
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        @Override
+        boolean testSharedString(ExcelRowMatcher.SharedStringLookup sharedStrings, int index) {
+            if (sharedStrings instanceof ExcelSharedStrings) {
+                return ((ExcelSharedStrings) sharedStrings).isBlank(index);
+            }
+            return super.testSharedString(sharedStrings, index);
+        }
+
+        @Override
+        boolean testText(String value) {
+            return value.trim().isEmpty();
+        }
+    }
+}
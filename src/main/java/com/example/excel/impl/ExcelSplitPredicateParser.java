@@ -0,0 +1,307 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 行筛选条件文本表达式的解析工具类（递归下降），语法见ExcelSplitPredicate.parse
+ * @author yinfelix
+ */
+class ExcelSplitPredicateParser {
+
+    private static final Pattern COLUMN_LABEL_PATTERN = Pattern.compile("[A-Za-z]{1,3}");
+
+    private final String expression;
+    private final ExcelUtils utils = new ExcelUtils();
+    private int position;
+
+    ExcelSplitPredicateParser(String expression) {
+        this.expression = expression;
+    }
+
+    ExcelSplitPredicate parse() {
+        ExcelSplitPredicate predicate = parseOr();
+        skipWhitespace();
+        if (position < expression.length()) {
+            throw error("多余的内容");
+        }
+        return predicate;
+    }
+
+    private ExcelSplitPredicate parseOr() {
+        List<ExcelSplitPredicate> predicates = new ArrayList<ExcelSplitPredicate>();
+        predicates.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            predicates.add(parseAnd());
+        }
+        return predicates.size() == 1 ? predicates.get(0) : ExcelSplitPredicate.or(predicates.toArray(new ExcelSplitPredicate[0]));
+    }
+
+    private ExcelSplitPredicate parseAnd() {
+        List<ExcelSplitPredicate> predicates = new ArrayList<ExcelSplitPredicate>();
+        predicates.add(parseUnary());
+        while (acceptKeyword("AND")) {
+            predicates.add(parseUnary());
+        }
+        return predicates.size() == 1 ? predicates.get(0) : ExcelSplitPredicate.and(predicates.toArray(new ExcelSplitPredicate[0]));
+    }
+
+    private ExcelSplitPredicate parseUnary() {
+        if (acceptKeyword("NOT")) {
+            return ExcelSplitPredicate.not(parseUnary());
+        }
+        if (accept("(")) {
+            ExcelSplitPredicate predicate = parseOr();
+            expect(")");
+            return predicate;
+        }
+        return parseComparison();
+    }
+
+    private ExcelSplitPredicate parseComparison() {
+        String columnLabel = readWord();
+        if (columnLabel == null || !COLUMN_LABEL_PATTERN.matcher(columnLabel).matches()) {
+            throw error("应为字母列号");
+        }
+        int columnIndex = utils.getColIndexFromColLabel(columnLabel.toUpperCase()) + 1;
+
+        if (acceptKeyword("IS")) {
+            boolean negated = acceptKeyword("NOT");
+            expectKeyword("BLANK");
+            ExcelSplitPredicate predicate = ExcelSplitPredicate.isBlank(columnIndex);
+            return negated ? ExcelSplitPredicate.not(predicate) : predicate;
+        }
+        boolean negated = acceptKeyword("NOT");
+        ExcelSplitPredicate predicate;
+        if (acceptKeyword("IN")) {
+            predicate = parseIn(columnIndex);
+        } else if (acceptKeyword("BETWEEN")) {
+            double minValue = parseNumber();
+            expectKeyword("AND");
+            predicate = ExcelSplitPredicate.between(columnIndex, minValue, parseNumber());
+        } else if (acceptKeyword("LIKE")) {
+            predicate = parseLike(columnIndex, parseString());
+        } else if (acceptKeyword("MATCHES")) {
+            predicate = ExcelSplitPredicate.matches(columnIndex, parseString());
+        } else if (negated) {
+            throw error("NOT之后应为IN、BETWEEN、LIKE或MATCHES");
+        } else {
+            return parseOperator(columnIndex);
+        }
+        return negated ? ExcelSplitPredicate.not(predicate) : predicate;
+    }
+
+    private ExcelSplitPredicate parseOperator(int columnIndex) {
+        String operator;
+        if (accept("<=") || accept(">=") || accept("<>") || accept("!=")) {
+            operator = expression.substring(position - 2, position);
+        } else if (accept("=") || accept("<") || accept(">")) {
+            operator = expression.substring(position - 1, position);
+        } else {
+            throw error("应为比较运算符");
+        }
+
+        Object value = parseValue();
+        if (value instanceof String) {
+            if ("=".equals(operator)) {
+                return ExcelSplitPredicate.equalTo(columnIndex, (String) value);
+            } else if ("<>".equals(operator) || "!=".equals(operator)) {
+                return ExcelSplitPredicate.not(ExcelSplitPredicate.equalTo(columnIndex, (String) value));
+            }
+            throw error("文本不支持" + operator + "比较");
+        }
+        double number = (Double) value;
+        if ("=".equals(operator)) {
+            return ExcelSplitPredicate.equalTo(columnIndex, number);
+        } else if ("<>".equals(operator) || "!=".equals(operator)) {
+            return ExcelSplitPredicate.not(ExcelSplitPredicate.equalTo(columnIndex, number));
+        } else if ("<".equals(operator)) {
+            return ExcelSplitPredicate.range(columnIndex, null, false, number, false);
+        } else if ("<=".equals(operator)) {
+            return ExcelSplitPredicate.range(columnIndex, null, false, number, true);
+        } else if (">".equals(operator)) {
+            return ExcelSplitPredicate.range(columnIndex, number, false, null, false);
+        }
+        return ExcelSplitPredicate.range(columnIndex, number, true, null, false);
+    }
+
+    private ExcelSplitPredicate parseIn(int columnIndex) {
+        expect("(");
+        List<Object> values = new ArrayList<Object>();
+        do {
+            values.add(parseValue());
+        } while (accept(","));
+        expect(")");
+
+        if (values.get(0) instanceof String) {
+            String[] texts = new String[values.size()];
+            for (int i = 0; i < texts.length; i++) {
+                if (!(values.get(i) instanceof String)) {
+                    throw error("IN列表中不能混用文本与数值");
+                }
+                texts[i] = (String) values.get(i);
+            }
+            return ExcelSplitPredicate.in(columnIndex, texts);
+        }
+        double[] numbers = new double[values.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            if (!(values.get(i) instanceof Double)) {
+                throw error("IN列表中不能混用文本与数值");
+            }
+            numbers[i] = (Double) values.get(i);
+        }
+        return ExcelSplitPredicate.in(columnIndex, numbers);
+    }
+
+    /**
+     * LIKE模式：%匹配任意多个字符，_匹配单个字符；只有末尾含%时按前缀匹配
+     */
+    private ExcelSplitPredicate parseLike(int columnIndex, String pattern) {
+        String body = pattern.endsWith("%") ? pattern.substring(0, pattern.length() - 1) : null;
+        if (body != null && body.indexOf('%') < 0 && body.indexOf('_') < 0) {
+            return ExcelSplitPredicate.startsWith(columnIndex, body);
+        }
+        if (pattern.indexOf('%') < 0 && pattern.indexOf('_') < 0) {
+            return ExcelSplitPredicate.equalTo(columnIndex, pattern);
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return ExcelSplitPredicate.matches(columnIndex, regex.toString());
+    }
+
+    /**
+     * 读取取值：文本返回String，数值与日期返回Double（日期为Excel日期序列值）
+     */
+    private Object parseValue() {
+        skipWhitespace();
+        if (position < expression.length() && expression.charAt(position) == '\'') {
+            return parseString();
+        }
+        return parseNumber();
+    }
+
+    private double parseNumber() {
+        if (acceptKeyword("DATE")) {
+            return parseDate(parseString());
+        }
+        skipWhitespace();
+        int start = position;
+        if (position < expression.length() && (expression.charAt(position) == '-' || expression.charAt(position) == '+')) {
+            position++;
+        }
+        while (position < expression.length() && (Character.isDigit(expression.charAt(position)) || expression.charAt(position) == '.'
+                || expression.charAt(position) == 'e' || expression.charAt(position) == 'E'
+                || ((expression.charAt(position) == '-' || expression.charAt(position) == '+')
+                && (expression.charAt(position - 1) == 'e' || expression.charAt(position - 1) == 'E')))) {
+            position++;
+        }
+        try {
+            return Double.parseDouble(expression.substring(start, position));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("应为数值、文本或日期");
+        }
+    }
+
+    private double parseDate(String text) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(text.trim().length() > 10 ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd");
+        dateFormat.setLenient(false);
+        try {
+            return DateUtil.getExcelDate(dateFormat.parse(text.trim()));
+        } catch (ParseException e) {
+            throw error("日期格式应为yyyy-MM-dd或yyyy-MM-dd HH:mm:ss");
+        }
+    }
+
+    private String parseString() {
+        skipWhitespace();
+        if (position >= expression.length() || expression.charAt(position) != '\'') {
+            throw error("应为单引号括起的文本");
+        }
+        StringBuilder text = new StringBuilder();
+        for (position++; position < expression.length(); position++) {
+            char c = expression.charAt(position);
+            if (c == '\'') {
+                if (position + 1 < expression.length() && expression.charAt(position + 1) == '\'') {
+                    text.append('\'');
+                    position++;
+                } else {
+                    position++;
+                    return text.toString();
+                }
+            } else {
+                text.append(c);
+            }
+        }
+        throw error("文本缺少结束的单引号");
+    }
+
+    private String readWord() {
+        skipWhitespace();
+        int start = position;
+        while (position < expression.length() && Character.isLetter(expression.charAt(position))) {
+            position++;
+        }
+        return start == position ? null : expression.substring(start, position);
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        int start = position;
+        String word = readWord();
+        if (word != null && word.equalsIgnoreCase(keyword)) {
+            return true;
+        }
+        position = start;
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error("应为" + keyword);
+        }
+    }
+
+    private boolean accept(String token) {
+        skipWhitespace();
+        if (expression.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("应为" + token);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("筛选条件语法错误（位置" + position + "）：" + message + "，表达式：" + expression);
+    }
+}
@@ -0,0 +1,548 @@
+package com.example.excel.impl;
+
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于XSSF事件模型（SAX）的流式读取工具类：逐行推送sheet页数据，内存占用与sheet页行数无关
+ * @apiNote 单元格数值的格式化规则（日期、小数、空白单元格返回" "）与ExcelReaderImpl.getCellValue一致；
+ * 线程安全约定：同一实例不得由多个线程同时读取，加载完成的共享字符串表（getSharedStrings）只读，可在线程间共享
+ * @author yinfelix
+ */
+public class ExcelStreamReaderImpl {
+
+    private OPCPackage opcPackage;
+    private XSSFReader xssfReader;
+    private ExcelSharedStrings sharedStrings;
+    private StylesTable styles;
+
+    private ExcelCellFormatter formatter;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    private static final String XSSF_SUFFIX = ".xlsx";
+    private static final String METRICS_OPERATION = "streamReader";
+
+    /**
+     * 共享公式中的单元格引用（不含行列绝对引用标记$的部分随公式所在位置平移）
+     */
+    private static final Pattern CELL_REFERENCE_PATTERN = Pattern.compile("(\\$?)([A-Za-z]{1,3})(\\$?)([0-9]+)");
+
+    public ExcelStreamReaderImpl(String inputFile) throws IOException {
+        this(inputFile, false);
+    }
+
+    /**
+     * @param inputFile 报表文件路径
+     * @param offHeapSharedStrings 共享字符串表是否保存于堆外（直接内存，受-XX:MaxDirectMemorySize限制）
+     * @throws IOException IO操作
+     */
+    public ExcelStreamReaderImpl(String inputFile, boolean offHeapSharedStrings) throws IOException {
+        this.formatter = new ExcelCellFormatter();
+        this.loadFileAsPackage(inputFile, offHeapSharedStrings);
+    }
+
+    /**
+     * 以只读方式打开指定文件，仅加载共享字符串与样式表，sheet页数据在读取时逐行解析
+     * @param file 报表文件路径
+     * @param offHeapSharedStrings 共享字符串表是否保存于堆外
+     * @throws IOException IO操作
+     */
+    private void loadFileAsPackage(String file, boolean offHeapSharedStrings) throws IOException {
+        if (!file.endsWith(XSSF_SUFFIX)) {
+            throw new RuntimeException("文件格式错误！");
+        }
+        long startNanos = System.nanoTime();
+        try {
+            this.opcPackage = OPCPackage.open(file, PackageAccess.READ);
+            this.xssfReader = new XSSFReader(opcPackage);
+            this.sharedStrings = ExcelSharedStrings.load(opcPackage, offHeapSharedStrings);
+            this.styles = xssfReader.getStylesTable();
+            ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.OPEN, startNanos, 0, 0);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 获取共享字符串表，可按索引或UTF-8字节比较单元格文本而不生成String对象
+     * @return 共享字符串表
+     */
+    public ExcelSharedStrings getSharedStrings() {
+        return sharedStrings;
+    }
+
+    public ExcelCellFormatter getFormatter() {
+        return formatter;
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 获取各sheet页名称（按sheet页顺序）
+     * @return sheet页名称
+     * @throws IOException IO操作
+     */
+    public List<String> getSheetNames() throws IOException {
+        List<String> sheetNames = new ArrayList<String>();
+        try {
+            XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (sheetIterator.hasNext()) {
+                sheetIterator.next().close();
+                sheetNames.add(sheetIterator.getSheetName());
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+        return sheetNames;
+    }
+
+    /**
+     * 获取指定样式ID的单元格样式
+     * @param styleIndex 单元格样式ID
+     * @return 单元格样式，文件不含样式表时返回null
+     */
+    XSSFCellStyle getCellStyle(int styleIndex) {
+        return styles == null || styles.getNumCellStyles() == 0 ? null : styles.getStyleAt(styleIndex);
+    }
+
+    /**
+     * 逐行读取指定名称的sheet页
+     * @param sheetName sheet页名称
+     * @param handler 行回调
+     * @throws IOException IO操作
+     */
+    public void readSheet(String sheetName, ExcelRowHandler handler) throws IOException {
+        readSheet(sheetName, -1, handler);
+    }
+
+    /**
+     * 逐行读取指定ID的sheet页
+     * @param sheetIndex sheet页ID（从1开始）
+     * @param handler 行回调
+     * @throws IOException IO操作
+     */
+    public void readSheet(int sheetIndex, ExcelRowHandler handler) throws IOException {
+        readSheet(null, sheetIndex, handler);
+    }
+
+    /**
+     * 一次流式读取指定sheet页指定行区间内的若干列，结果与ExcelReaderImpl.getColumns一致，但无需加载整个workbook；
+     * 文本按共享字符串索引编码，同一共享字符串只生成一次String对象
+     * @param sheetName sheet页名称
+     * @param firstRowIndex 首行行号（从1开始）
+     * @param lastRowIndex 末行行号（从1开始，含）
+     * @param columnIndices 列号（从1开始）
+     * @return 各列的列式缓冲区，顺序与columnIndices一致
+     * @throws IOException IO操作
+     */
+    public ExcelColumnData[] readColumns(String sheetName, final int firstRowIndex, final int lastRowIndex, final int... columnIndices) throws IOException {
+        int rowCount = Math.max(0, lastRowIndex - firstRowIndex + 1);
+        final ExcelColumnData[] columns = new ExcelColumnData[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; i++) {
+            columns[i] = new ExcelColumnData(columnIndices[i], firstRowIndex, rowCount, formatter);
+        }
+        readSheet(sheetName, new ExcelRowHandler() {
+            @Override
+            public void handleRow(ExcelStreamRow row) {
+                int rowIndex = row.getRowIndex();
+                if (rowIndex < firstRowIndex || rowIndex > lastRowIndex) {
+                    return;
+                }
+                for (int i = 0; i < columnIndices.length; i++) {
+                    readColumnCell(row, columnIndices[i], columns[i], rowIndex - firstRowIndex);
+                }
+            }
+        });
+        return columns;
+    }
+
+    private void readColumnCell(ExcelStreamRow row, int columnIndex, ExcelColumnData column, int offset) {
+        int cellType = row.getCellType(columnIndex);
+        boolean isFormula = cellType == Cell.CELL_TYPE_FORMULA;
+        if (isFormula) {
+//            尚未计算（无缓存值）的公式与XSSFCell一致，按数值0处理
+            cellType = row.getCachedFormulaResultType(columnIndex) == Cell.CELL_TYPE_BLANK
+                    ? Cell.CELL_TYPE_NUMERIC : row.getCachedFormulaResultType(columnIndex);
+        }
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                double numericValue = row.getNumericCellValue(columnIndex);
+                column.setNumeric(offset, numericValue, isDateFormatted(numericValue, row.getStyleIndex(columnIndex)));
+                break;
+            case Cell.CELL_TYPE_STRING:
+                int sharedStringIndex = row.getSharedStringIndex(columnIndex);
+                if (sharedStringIndex >= 0) {
+                    column.setSharedString(offset, sharedStringIndex, sharedStrings);
+                } else {
+                    column.setString(offset, isFormula ? row.getCachedFormulaStringValue(columnIndex) : row.getStringCellValue(columnIndex));
+                }
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                column.setBoolean(offset, row.getNumericCellValue(columnIndex) != 0);
+                break;
+            case Cell.CELL_TYPE_BLANK:
+                column.setBlank(offset);
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                column.setError(offset);
+                break;
+            default:break;
+        }
+    }
+
+    private void readSheet(String sheetName, int sheetIndex, ExcelRowHandler handler) throws IOException {
+        try {
+            XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            int currentIndex = 0;
+            while (sheetIterator.hasNext()) {
+                InputStream sheetStream = sheetIterator.next();
+                ++currentIndex;
+                try {
+                    if (currentIndex == sheetIndex || sheetIterator.getSheetName().equals(sheetName)) {
+                        parseSheet(sheetStream, handler);
+                        return;
+                    }
+                } finally {
+                    sheetStream.close();
+                }
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+        throw new RuntimeException("sheet页不存在！");
+    }
+
+    /**
+     * 创建解析工作簿XML部件的SAX工厂：禁止DOCTYPE声明与外部实体（防范XXE及实体膨胀）
+     */
+    static SAXParserFactory newSaxParserFactory() throws ParserConfigurationException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        return factory;
+    }
+
+    private void parseSheet(InputStream sheetStream, ExcelRowHandler handler) throws IOException {
+        try {
+            XMLReader xmlReader = newSaxParserFactory().newSAXParser().getXMLReader();
+            long startNanos = System.nanoTime();
+            SheetHandler sheetHandler = new SheetHandler(new ExcelStreamRow(this), handler);
+            xmlReader.setContentHandler(sheetHandler);
+            xmlReader.parse(new InputSource(sheetStream));
+            ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SCAN, startNanos, sheetHandler.rowCount, sheetHandler.cellCount);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    String getSharedString(int index) {
+        return sharedStrings.getString(index);
+    }
+
+    /**
+     * 判断数值单元格是否应按日期格式化，规则与HSSFDateUtil.isCellDateFormatted一致
+     * @param value 单元格数值
+     * @param styleIndex 单元格样式ID
+     * @return 是否按日期格式化
+     */
+    boolean isDateFormatted(double value, int styleIndex) {
+        if (styles == null || styles.getNumCellStyles() == 0) {
+            return false;
+        }
+        Boolean cached = formatter.getCachedDateFormatted(styleIndex);
+        if (cached != null) {
+            return cached && HSSFDateUtil.isValidExcelDate(value);
+        }
+        return formatter.isDateFormatted(value, styles.getStyleAt(styleIndex));
+    }
+
+    /**
+     * 关闭文件包
+     * @throws IOException IO操作
+     */
+    public void close() throws IOException {
+        opcPackage.revert();
+    }
+
+    /**
+     * 将共享公式主单元格的公式平移至从属单元格所在位置
+     * @param formula 主单元格公式
+     * @param rowOffset 行偏移量
+     * @param columnOffset 列偏移量
+     * @return 从属单元格公式
+     */
+    static String shiftSharedFormula(String formula, int rowOffset, int columnOffset) {
+        StringBuilder result = new StringBuilder(formula.length() + 8);
+        ExcelUtils utils = new ExcelUtils();
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            char c = formula.charAt(i);
+            if (c == '"' || c == '\'') {
+                // 字符串常量与带引号的sheet页名称原样保留
+                int end = formula.indexOf(c, i + 1);
+                while (end >= 0 && end + 1 < length && formula.charAt(end + 1) == c) {
+                    end = formula.indexOf(c, end + 2);
+                }
+                end = end < 0 ? length : end + 1;
+                result.append(formula, i, end);
+                i = end;
+                continue;
+            }
+            boolean tokenStart = i == 0 || !isIdentifierPart(formula.charAt(i - 1));
+            Matcher matcher = CELL_REFERENCE_PATTERN.matcher(formula).region(i, length);
+            if (tokenStart && matcher.lookingAt()
+                    && (matcher.end() == length || !isIdentifierPart(formula.charAt(matcher.end())) && formula.charAt(matcher.end()) != '(')) {
+                String columnLabel = matcher.group(2).toUpperCase();
+                int columnIndex = utils.getColIndexFromColLabel(columnLabel);
+                int rowIndex = Integer.parseInt(matcher.group(4));
+                if (matcher.group(1).isEmpty()) {
+                    columnLabel = utils.getColLabelFromColIndex(columnIndex + columnOffset);
+                }
+                if (matcher.group(3).isEmpty()) {
+                    rowIndex += rowOffset;
+                }
+                result.append(matcher.group(1)).append(columnLabel).append(matcher.group(3)).append(rowIndex);
+                i = matcher.end();
+                continue;
+            }
+            result.append(c);
+            ++i;
+        }
+        return result.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+    /**
+     * 解析单元格引用中的列号（从0开始）
+     */
+    static int parseColumnIndex(String cellReference) {
+        int columnIndex = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            columnIndex = columnIndex * 26 + (c - 'A' + 1);
+        }
+        return columnIndex - 1;
+    }
+
+    /**
+     * sheet页XML的SAX解析器，将&lt;row&gt;/&lt;c&gt;元素还原为ExcelStreamRow并逐行回调
+     */
+    private class SheetHandler extends DefaultHandler {
+
+        private final ExcelStreamRow row;
+        private final ExcelRowHandler handler;
+
+        private final Map<String, String> sharedFormulas = new HashMap<String, String>();
+        private final Map<String, int[]> sharedFormulaOrigins = new HashMap<String, int[]>();
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private final StringBuilder inlineString = new StringBuilder();
+
+        private long rowCount;
+        private long cellCount;
+
+        private int rowIndex;
+        private int columnIndex;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasValue;
+        private boolean hasFormula;
+        private String sharedFormulaIndex;
+        private boolean isSharedFormulaMaster;
+
+        private boolean inValue;
+        private boolean inFormula;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+
+        SheetHandler(ExcelStreamRow row, ExcelRowHandler handler) {
+            this.row = row;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("row".equals(localName)) {
+                String r = attributes.getValue("r");
+                rowIndex = r == null ? rowIndex + 1 : Integer.parseInt(r);
+                columnIndex = -1;
+                row.reset(rowIndex);
+            } else if ("c".equals(localName)) {
+                String r = attributes.getValue("r");
+                columnIndex = r == null ? columnIndex + 1 : parseColumnIndex(r);
+                cellType = attributes.getValue("t");
+                String s = attributes.getValue("s");
+                styleIndex = s == null ? 0 : Integer.parseInt(s);
+                value.setLength(0);
+                formula.setLength(0);
+                inlineString.setLength(0);
+                hasValue = false;
+                hasFormula = false;
+                sharedFormulaIndex = null;
+                isSharedFormulaMaster = false;
+            } else if ("v".equals(localName)) {
+                inValue = true;
+                hasValue = true;
+            } else if ("f".equals(localName)) {
+                inFormula = true;
+                hasFormula = true;
+                if ("shared".equals(attributes.getValue("t"))) {
+                    sharedFormulaIndex = attributes.getValue("si");
+                    isSharedFormulaMaster = attributes.getValue("ref") != null;
+                }
+            } else if ("is".equals(localName)) {
+                inInlineString = true;
+                hasValue = true;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("row".equals(localName)) {
+                ++rowCount;
+                handler.handleRow(row);
+            } else if ("c".equals(localName)) {
+                ++cellCount;
+                endCell();
+            } else if ("v".equals(localName)) {
+                inValue = false;
+            } else if ("f".equals(localName)) {
+                inFormula = false;
+            } else if ("is".equals(localName)) {
+                inInlineString = false;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = false;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            } else if (inFormula) {
+                formula.append(ch, start, length);
+            } else if (inInlineString && !inPhonetic) {
+                inlineString.append(ch, start, length);
+            }
+        }
+
+        private void endCell() {
+            if (hasFormula) {
+                row.setFormulaCell(columnIndex, resolveFormula(), getCachedResultType(), getCachedNumber(), getCachedString(), styleIndex);
+            } else if ("s".equals(cellType)) {
+                int index = value.length() == 0 ? -1 : Integer.parseInt(value.toString().trim());
+                row.setCell(columnIndex, Cell.CELL_TYPE_STRING, 0, index, index < 0 ? "" : null, styleIndex);
+            } else if ("inlineStr".equals(cellType)) {
+                row.setCell(columnIndex, Cell.CELL_TYPE_STRING, 0, -1, inlineString.toString(), styleIndex);
+            } else if ("str".equals(cellType)) {
+                row.setCell(columnIndex, Cell.CELL_TYPE_STRING, 0, -1, value.toString(), styleIndex);
+            } else if ("b".equals(cellType)) {
+                row.setCell(columnIndex, Cell.CELL_TYPE_BOOLEAN, "1".equals(value.toString().trim()) ? 1 : 0, -1, null, styleIndex);
+            } else if ("e".equals(cellType)) {
+                row.setCell(columnIndex, Cell.CELL_TYPE_ERROR, 0, -1, value.toString(), styleIndex);
+            } else if (!hasValue || value.length() == 0) {
+                row.setCell(columnIndex, Cell.CELL_TYPE_BLANK, 0, -1, null, styleIndex);
+            } else {
+                row.setCell(columnIndex, Cell.CELL_TYPE_NUMERIC, Double.parseDouble(value.toString()), -1, null, styleIndex);
+            }
+        }
+
+        private int getCachedResultType() {
+            if (!hasValue || value.length() == 0) {
+                return Cell.CELL_TYPE_BLANK;
+            } else if ("str".equals(cellType) || "s".equals(cellType) || "inlineStr".equals(cellType)) {
+                return Cell.CELL_TYPE_STRING;
+            } else if ("b".equals(cellType)) {
+                return Cell.CELL_TYPE_BOOLEAN;
+            } else if ("e".equals(cellType)) {
+                return Cell.CELL_TYPE_ERROR;
+            }
+            return Cell.CELL_TYPE_NUMERIC;
+        }
+
+        private String getCachedString() {
+            if (getCachedResultType() != Cell.CELL_TYPE_STRING) {
+                return null;
+            }
+            if ("s".equals(cellType)) {
+                return getSharedString(Integer.parseInt(value.toString().trim()));
+            }
+            return value.toString();
+        }
+
+        private double getCachedNumber() {
+            switch (getCachedResultType()) {
+                case Cell.CELL_TYPE_NUMERIC:
+                    return Double.parseDouble(value.toString());
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return "1".equals(value.toString().trim()) ? 1 : 0;
+                default:
+                    return 0;
+            }
+        }
+
+        private String resolveFormula() {
+            if (sharedFormulaIndex == null) {
+                return formula.toString();
+            }
+            if (isSharedFormulaMaster) {
+                sharedFormulas.put(sharedFormulaIndex, formula.toString());
+                sharedFormulaOrigins.put(sharedFormulaIndex, new int[]{rowIndex, columnIndex});
+                return formula.toString();
+            }
+            String masterFormula = sharedFormulas.get(sharedFormulaIndex);
+            if (masterFormula == null) {
+                return formula.toString();
+            }
+            int[] origin = sharedFormulaOrigins.get(sharedFormulaIndex);
+            return shiftSharedFormula(masterFormula, rowIndex - origin[0], columnIndex - origin[1]);
+        }
+    }
+}
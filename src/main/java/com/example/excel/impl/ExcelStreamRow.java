@@ -0,0 +1,226 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.util.Arrays;
+
+/**
+ * 流式读取的行游标：以基本类型数组保存当前行的原始单元格数据，并在各行之间复用，内存占用只与列数相关
+ * @author yinfelix
+ */
+public class ExcelStreamRow {
+
+    /**
+     * 单元格不存在时的类型标识
+     */
+    public static final int CELL_TYPE_NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ExcelStreamReaderImpl streamReader;
+
+    private int rowIndex;
+    private int cellCount;
+
+    private int[] types = new int[INITIAL_CAPACITY];
+    private double[] numbers = new double[INITIAL_CAPACITY];
+    private int[] sharedStringIndices = new int[INITIAL_CAPACITY];
+    private int[] styleIndices = new int[INITIAL_CAPACITY];
+    private String[] texts = new String[INITIAL_CAPACITY];
+    private int[] cachedResultTypes = new int[INITIAL_CAPACITY];
+    private String[] cachedStrings = new String[INITIAL_CAPACITY];
+
+    ExcelStreamRow(ExcelStreamReaderImpl streamReader) {
+        this.streamReader = streamReader;
+        Arrays.fill(types, CELL_TYPE_NONE);
+    }
+
+    /**
+     * 获取当前行行号（从1开始）
+     * @return 行号（从1开始）
+     */
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * 获取当前行最后一个单元格的列号（从1开始），空行返回0
+     * @return 最后一个单元格的列号（从1开始）
+     */
+    public int getLastColumnIndex() {
+        return cellCount;
+    }
+
+    /**
+     * 获取指定列单元格的类型
+     * @param columnIndex 列号（从1开始）
+     * @return Cell.CELL_TYPE_*常量，单元格不存在时返回CELL_TYPE_NONE
+     */
+    public int getCellType(int columnIndex) {
+        --columnIndex;
+        if (columnIndex < 0 || columnIndex >= cellCount) {
+            return CELL_TYPE_NONE;
+        }
+        return types[columnIndex];
+    }
+
+    /**
+     * 获取指定列单元格的原始数值（数值单元格、布尔单元格或公式单元格的缓存结果，布尔值以1/0表示）
+     * @param columnIndex 列号（从1开始）
+     * @return 原始数值
+     */
+    public double getNumericCellValue(int columnIndex) {
+        int type = getCellType(columnIndex);
+        return type == CELL_TYPE_NONE ? 0 : numbers[columnIndex - 1];
+    }
+
+    /**
+     * 获取指定列公式单元格缓存结果的类型，其数值结果（布尔值以1/0表示）可通过getNumericCellValue获取
+     * @param columnIndex 列号（从1开始）
+     * @return Cell.CELL_TYPE_*常量，没有缓存结果时返回Cell.CELL_TYPE_BLANK，非公式单元格返回CELL_TYPE_NONE
+     */
+    public int getCachedFormulaResultType(int columnIndex) {
+        int type = getCellType(columnIndex);
+        return type == Cell.CELL_TYPE_FORMULA ? cachedResultTypes[columnIndex - 1] : CELL_TYPE_NONE;
+    }
+
+    /**
+     * 获取指定列公式单元格缓存的字符串结果
+     * @param columnIndex 列号（从1开始）
+     * @return 字符串结果，缓存结果不是字符串或非公式单元格时返回null
+     */
+    public String getCachedFormulaStringValue(int columnIndex) {
+        return getCachedFormulaResultType(columnIndex) == Cell.CELL_TYPE_STRING ? cachedStrings[columnIndex - 1] : null;
+    }
+
+    /**
+     * 获取指定列单元格的共享字符串索引
+     * @param columnIndex 列号（从1开始）
+     * @return 共享字符串索引，非共享字符串单元格返回-1
+     */
+    public int getSharedStringIndex(int columnIndex) {
+        int type = getCellType(columnIndex);
+        return type == CELL_TYPE_NONE ? -1 : sharedStringIndices[columnIndex - 1];
+    }
+
+    /**
+     * 获取指定列单元格的样式ID
+     * @param columnIndex 列号（从1开始）
+     * @return 样式ID
+     */
+    public int getStyleIndex(int columnIndex) {
+        int type = getCellType(columnIndex);
+        return type == CELL_TYPE_NONE ? 0 : styleIndices[columnIndex - 1];
+    }
+
+    /**
+     * 获取指定列单元格的字符串值（字符串单元格）或公式字符串（公式单元格）
+     * @param columnIndex 列号（从1开始）
+     * @return 字符串值
+     */
+    public String getStringCellValue(int columnIndex) {
+        int type = getCellType(columnIndex);
+        if (type == Cell.CELL_TYPE_STRING || type == Cell.CELL_TYPE_FORMULA) {
+            --columnIndex;
+            if (texts[columnIndex] == null && sharedStringIndices[columnIndex] >= 0) {
+                return streamReader.getSharedString(sharedStringIndices[columnIndex]);
+            }
+            return texts[columnIndex] == null ? "" : texts[columnIndex];
+        }
+        return "";
+    }
+
+    /**
+     * 获取指定列错误单元格的错误值（如#DIV/0!）
+     * @param columnIndex 列号（从1开始）
+     * @return 错误值，非错误单元格返回null
+     */
+    String getErrorCellValue(int columnIndex) {
+        return getCellType(columnIndex) == Cell.CELL_TYPE_ERROR ? texts[columnIndex - 1] : null;
+    }
+
+    /**
+     * 获取指定列单元格的格式化数值，格式化规则与ExcelReaderImpl.getCellValue一致
+     * @param columnIndex 列号（从1开始）
+     * @return 指定列单元格的格式化数值
+     */
+    public String getCellValue(int columnIndex) {
+        String value = "";
+        switch (getCellType(columnIndex)) {
+            case Cell.CELL_TYPE_NUMERIC:
+                value = formatNumber(columnIndex, numbers[columnIndex - 1]);
+                break;
+            case Cell.CELL_TYPE_STRING:
+            case Cell.CELL_TYPE_FORMULA:
+                value = getStringCellValue(columnIndex);
+                break;
+            case Cell.CELL_TYPE_BLANK:
+                value = " ";
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                value = String.valueOf(numbers[columnIndex - 1] != 0);
+                break;
+            case Cell.CELL_TYPE_ERROR:
+            default:break;
+        }
+        return value;
+    }
+
+    /**
+     * 按指定列单元格的样式格式化数值，格式化规则与getCellValue一致
+     * @param columnIndex 列号（从1开始）
+     * @param value 数值
+     * @return 格式化数值
+     */
+    String formatNumber(int columnIndex, double value) {
+        return streamReader.getFormatter().formatNumeric(value, streamReader.isDateFormatted(value, getStyleIndex(columnIndex)));
+    }
+
+    void reset(int rowIndex) {
+        Arrays.fill(types, 0, cellCount, CELL_TYPE_NONE);
+        Arrays.fill(texts, 0, cellCount, null);
+        this.rowIndex = rowIndex;
+        this.cellCount = 0;
+    }
+
+    /**
+     * 写入当前行指定列的单元格数据
+     * @param columnIndex 列号（从0开始）
+     */
+    void setCell(int columnIndex, int type, double number, int sharedStringIndex, String text, int styleIndex) {
+        ensureCapacity(columnIndex + 1);
+        types[columnIndex] = type;
+        numbers[columnIndex] = number;
+        sharedStringIndices[columnIndex] = sharedStringIndex;
+        texts[columnIndex] = text;
+        styleIndices[columnIndex] = styleIndex;
+        if (columnIndex >= cellCount) {
+            cellCount = columnIndex + 1;
+        }
+    }
+
+    /**
+     * 写入当前行指定列的公式单元格
+     * @param columnIndex 列号（从0开始）
+     */
+    void setFormulaCell(int columnIndex, String formula, int cachedResultType, double cachedNumber, String cachedString, int styleIndex) {
+        setCell(columnIndex, Cell.CELL_TYPE_FORMULA, cachedNumber, -1, formula, styleIndex);
+        cachedResultTypes[columnIndex] = cachedResultType;
+        cachedStrings[columnIndex] = cachedString;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > types.length) {
+            int newCapacity = Math.max(capacity, types.length * 2);
+            int oldCapacity = types.length;
+            types = Arrays.copyOf(types, newCapacity);
+            Arrays.fill(types, oldCapacity, newCapacity, CELL_TYPE_NONE);
+            numbers = Arrays.copyOf(numbers, newCapacity);
+            sharedStringIndices = Arrays.copyOf(sharedStringIndices, newCapacity);
+            styleIndices = Arrays.copyOf(styleIndices, newCapacity);
+            texts = Arrays.copyOf(texts, newCapacity);
+            cachedResultTypes = Arrays.copyOf(cachedResultTypes, newCapacity);
+            cachedStrings = Arrays.copyOf(cachedStrings, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式报表拆分工具类：逐行流式读取源报表，按条件筛选数据行后以流式写入生成目标报表，
+ * 堆内存占用与报表行数无关（只保留共享字符串表与写入窗口内的行），适用于无法整体加载的大报表
+ * @apiNote 与ExcelSplitByRowProcessorImpl的差异：只复制单元格的值、公式（含缓存结果）与样式，
+ * 不复制列宽、合并单元格、批注与数据验证；数据区域公式随所在行平移相对引用，打开文件时重新计算
+ * @author yinfelix
+ */
+public class ExcelStreamingSplitProcessorImpl {
+
+    private static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = 1000;
+    private static final String METRICS_OPERATION = "streamingSplit";
+
+    private String sourceFile;
+    private String destFile;
+    private String sheetName;
+    private int rowStart;
+
+    private int rowAccessWindowSize = DEFAULT_ROW_ACCESS_WINDOW_SIZE;
+    private boolean offHeapSharedStrings = false;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    private ExcelUtils utils;
+
+    public ExcelStreamingSplitProcessorImpl(String sourceFile, String destFile, String sheetName, int rowStart) {
+        this.sourceFile = sourceFile;
+        this.destFile = destFile;
+        this.sheetName = sheetName;
+        this.rowStart = rowStart;
+        this.utils = new ExcelUtils();
+    }
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    /**
+     * 设置写入时内存中保留的行数
+     * @param rowAccessWindowSize 内存中保留的行数
+     */
+    public void setRowAccessWindowSize(int rowAccessWindowSize) {
+        this.rowAccessWindowSize = Math.max(1, rowAccessWindowSize);
+    }
+
+    public boolean isOffHeapSharedStrings() {
+        return offHeapSharedStrings;
+    }
+
+    /**
+     * 设置源报表的共享字符串表是否保存于堆外
+     * @param offHeapSharedStrings 是否保存于堆外
+     */
+    public void setOffHeapSharedStrings(boolean offHeapSharedStrings) {
+        this.offHeapSharedStrings = offHeapSharedStrings;
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 报表拆分入口方法（列号为字母），判定规则与ExcelSplitByRowProcessorImpl.doExcelRowSplit一致
+     * @param splitCondition 拆分条件
+     * @param targetColumnLabel 拆分列号（字母）
+     * @throws IOException IO操作
+     */
+    public void doExcelRowSplit(final String splitCondition, String targetColumnLabel) throws IOException {
+        final int targetColumnIndex = utils.getColIndexFromColLabel(targetColumnLabel) + 1;
+        doExcelRowSplit(new RowFilter() {
+            @Override
+            boolean accept(ExcelStreamRow row) {
+                return splitCondition.equals(row.getCellValue(targetColumnIndex));
+            }
+        });
+    }
+
+    /**
+     * 报表拆分入口方法（多列组合条件），保留满足条件的数据行
+     * @param predicate 行筛选条件
+     * @throws IOException IO操作
+     */
+    public void doExcelRowSplit(final ExcelSplitPredicate predicate) throws IOException {
+        doExcelRowSplit(new RowFilter() {
+            private ExcelRowMatcher matcher;
+
+            @Override
+            boolean accept(ExcelStreamRow row) {
+                return matcher.matches(row);
+            }
+
+            @Override
+            void init(ExcelStreamReaderImpl streamReader) {
+                matcher = predicate.compile(streamReader);
+            }
+        });
+    }
+
+    /**
+     * 数据行保留判定
+     */
+    private abstract static class RowFilter {
+        abstract boolean accept(ExcelStreamRow row);
+
+        void init(ExcelStreamReaderImpl streamReader) {
+        }
+    }
+
+    private void doExcelRowSplit(RowFilter rowFilter) throws IOException {
+        ExcelStreamReaderImpl streamReader = new ExcelStreamReaderImpl(sourceFile, offHeapSharedStrings);
+        streamReader.setMetricsListener(metricsListener);
+        ExcelWriterImpl writer = new ExcelWriterImpl(destFile, rowAccessWindowSize, false);
+        writer.setMetricsListener(metricsListener);
+        try {
+            rowFilter.init(streamReader);
+            Workbook workbook = writer.getWorkbook();
+            Map<Integer, CellStyle> styleMapping = new HashMap<Integer, CellStyle>();
+            List<String> sheetNames = streamReader.getSheetNames();
+            if (!sheetNames.contains(sheetName)) {
+                throw new RuntimeException("sheet页不存在！");
+            }
+            for (int sheetIndex = 0; sheetIndex < sheetNames.size(); sheetIndex++) {
+                Sheet targetSheet;
+                if (sheetIndex == 0) {
+                    targetSheet = writer.getSheet();
+                    workbook.setSheetName(0, sheetNames.get(0));
+                } else {
+                    targetSheet = workbook.createSheet(sheetNames.get(sheetIndex));
+                }
+                long startNanos = System.nanoTime();
+                SheetCopier copier = new SheetCopier(streamReader, writer, targetSheet, styleMapping,
+                        sheetNames.get(sheetIndex).equals(sheetName) ? rowFilter : null);
+                streamReader.readSheet(sheetIndex + 1, copier);
+                ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.FILTER, startNanos, copier.sourceRowCount, copier.writtenCellCount);
+            }
+//            表头等处的汇总公式引用了被剔除的行，缓存结果已失效，打开文件时重新计算
+            workbook.setForceFormulaRecalculation(true);
+            writer.commitWorkbook();
+        } finally {
+            writer.close();
+            streamReader.close();
+        }
+    }
+
+    /**
+     * 逐行复制sheet页；rowFilter不为null时按条件筛选数据行（rowStart之前的行与空行始终保留），保留行依次上移
+     */
+    private class SheetCopier implements ExcelRowHandler {
+
+        private final ExcelStreamReaderImpl streamReader;
+        private final ExcelWriterImpl writer;
+        private final Sheet targetSheet;
+        private final Map<Integer, CellStyle> styleMapping;
+        private final RowFilter rowFilter;
+
+        private int lastSourceRowIndex = 0;
+        private int targetRowIndex = 0;
+
+        private long sourceRowCount;
+        private long writtenCellCount;
+
+        SheetCopier(ExcelStreamReaderImpl streamReader, ExcelWriterImpl writer, Sheet targetSheet, Map<Integer, CellStyle> styleMapping, RowFilter rowFilter) {
+            this.streamReader = streamReader;
+            this.writer = writer;
+            this.targetSheet = targetSheet;
+            this.styleMapping = styleMapping;
+            this.rowFilter = rowFilter;
+        }
+
+        @Override
+        public void handleRow(ExcelStreamRow row) {
+            int sourceRowIndex = row.getRowIndex();
+            ++sourceRowCount;
+//            源文件中不存在的行视为空行，与ExcelSplitByRowProcessorImpl一致予以保留
+            targetRowIndex += sourceRowIndex - lastSourceRowIndex - 1;
+            lastSourceRowIndex = sourceRowIndex;
+            if (rowFilter != null && sourceRowIndex >= rowStart && !rowFilter.accept(row)) {
+                return;
+            }
+            ++targetRowIndex;
+
+            Row targetRow = targetSheet.createRow(targetRowIndex - 1);
+            for (int columnIndex = 1; columnIndex <= row.getLastColumnIndex(); columnIndex++) {
+                if (row.getCellType(columnIndex) != ExcelStreamRow.CELL_TYPE_NONE) {
+                    copyCell(row, columnIndex, targetRow.createCell(columnIndex - 1), targetRowIndex - sourceRowIndex);
+                    ++writtenCellCount;
+                }
+            }
+        }
+
+        private void copyCell(ExcelStreamRow row, int columnIndex, Cell cell, int rowOffset) {
+            switch (row.getCellType(columnIndex)) {
+                case Cell.CELL_TYPE_NUMERIC:
+                    cell.setCellValue(row.getNumericCellValue(columnIndex));
+                    break;
+                case Cell.CELL_TYPE_STRING:
+                    cell.setCellValue(row.getStringCellValue(columnIndex));
+                    break;
+                case Cell.CELL_TYPE_BOOLEAN:
+                    cell.setCellValue(row.getNumericCellValue(columnIndex) != 0);
+                    break;
+                case Cell.CELL_TYPE_ERROR:
+                    String errorValue = row.getErrorCellValue(columnIndex);
+                    try {
+                        cell.setCellErrorValue(FormulaError.forString(errorValue).getCode());
+                    } catch (IllegalArgumentException e) {
+                        cell.setCellValue(errorValue);
+                    }
+                    break;
+                case Cell.CELL_TYPE_FORMULA:
+                    String formula = row.getStringCellValue(columnIndex);
+                    cell.setCellFormula(rowOffset == 0 ? formula : ExcelStreamReaderImpl.shiftSharedFormula(formula, rowOffset, 0));
+                    switch (row.getCachedFormulaResultType(columnIndex)) {
+                        case Cell.CELL_TYPE_NUMERIC:
+                            cell.setCellValue(row.getNumericCellValue(columnIndex));
+                            break;
+                        case Cell.CELL_TYPE_STRING:
+                            cell.setCellValue(row.getCachedFormulaStringValue(columnIndex));
+                            break;
+                        case Cell.CELL_TYPE_BOOLEAN:
+                            cell.setCellValue(row.getNumericCellValue(columnIndex) != 0);
+                            break;
+                        default:break;
+                    }
+                    break;
+                default:break;
+            }
+            CellStyle cellStyle = getTargetStyle(row.getStyleIndex(columnIndex));
+            if (cellStyle != null) {
+                cell.setCellStyle(cellStyle);
+            }
+        }
+
+        private CellStyle getTargetStyle(int styleIndex) {
+            if (styleIndex == 0) {
+                return null;
+            }
+            CellStyle cellStyle = styleMapping.get(styleIndex);
+            if (cellStyle == null) {
+                XSSFCellStyle sourceCellStyle = streamReader.getCellStyle(styleIndex);
+                if (sourceCellStyle == null) {
+                    return null;
+                }
+                cellStyle = writer.getCellStyle(writer.getWorkbook(), sourceCellStyle);
+                styleMapping.put(styleIndex, cellStyle);
+            }
+            return cellStyle;
+        }
+    }
+}
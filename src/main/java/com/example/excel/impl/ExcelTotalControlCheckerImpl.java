@@ -0,0 +1,95 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.io.IOException;
+
+/**
+ * 总额控制预校验工具类：在服务端一次流式读取sheet页，计算整列合计与分组合计，
+ * 在文件交付用户之前识别超出阈值的分组与行（数据验证只在用户打开文件时才圈注）
+ * @apiNote 内存占用与sheet页行数无关，只随分组值的个数增长；整列合计与SUM($X:$X)一致（只累加数值及公式的数值结果），
+ * 分组合计与无效数据行只统计总额控制区域（rowStart及以下各行）
+ * @author yinfelix
+ */
+public class ExcelTotalControlCheckerImpl {
+
+    private ExcelUtils utils;
+
+    private String sourceFile;
+    private String sheetName;
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+
+    public ExcelTotalControlCheckerImpl(String sourceFile, String sheetName) {
+        this.utils = new ExcelUtils();
+        this.sourceFile = sourceFile;
+        this.sheetName = sheetName;
+    }
+
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()）
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+    }
+
+    /**
+     * 总额控制预校验入口方法
+     * @param rowStart 总额控制区域行首（从1开始）
+     * @param colLabel 总额控制列号（字母列号）
+     * @param thresholdValue 总额控制阈值
+     * @return 校验结果
+     * @throws IOException IO操作
+     */
+    public ExcelTotalControlResult checkTotalControl(int rowStart, String colLabel, double thresholdValue) throws IOException {
+        return checkTotalControl(rowStart, colLabel, null, thresholdValue);
+    }
+
+    /**
+     * 分组总额控制预校验入口方法：整列合计及按分组列取值分组后的各组合计均不得超出阈值
+     * @param rowStart 总额控制区域行首（从1开始）
+     * @param colLabel 总额控制列号（字母列号）
+     * @param groupColLabel 分组列号（字母列号），为null时不分组
+     * @param thresholdValue 总额控制阈值
+     * @return 校验结果
+     * @throws IOException IO操作
+     */
+    public ExcelTotalControlResult checkTotalControl(final int rowStart, String colLabel, String groupColLabel, double thresholdValue) throws IOException {
+        final int colIndex = utils.getColIndexFromColLabel(colLabel.toUpperCase()) + 1;
+        final int groupColIndex = groupColLabel == null ? -1 : utils.getColIndexFromColLabel(groupColLabel.toUpperCase()) + 1;
+        final ExcelTotalControlResult result = new ExcelTotalControlResult(colLabel.toUpperCase(),
+                groupColLabel == null ? null : groupColLabel.toUpperCase(), thresholdValue);
+
+        ExcelStreamReaderImpl streamReader = new ExcelStreamReaderImpl(sourceFile);
+        streamReader.setMetricsListener(metricsListener);
+        try {
+            streamReader.readSheet(sheetName, new ExcelRowHandler() {
+                @Override
+                public void handleRow(ExcelStreamRow row) {
+                    int rowIndex = row.getRowIndex();
+                    int cellType = row.getCellType(colIndex);
+                    if (cellType == Cell.CELL_TYPE_FORMULA) {
+                        cellType = row.getCachedFormulaResultType(colIndex);
+                    }
+                    if (cellType == Cell.CELL_TYPE_NUMERIC) {
+                        double value = row.getNumericCellValue(colIndex);
+                        result.addTotal(rowIndex, value);
+                        if (rowIndex >= rowStart) {
+                            result.addDataRow(rowIndex, groupColIndex < 0 ? null : row.getCellValue(groupColIndex), value);
+                        }
+                    } else if (rowIndex >= rowStart && (cellType == Cell.CELL_TYPE_STRING || cellType == Cell.CELL_TYPE_ERROR)) {
+                        result.addInvalidRow(rowIndex);
+                    }
+                }
+            });
+        } finally {
+            streamReader.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.excel.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 总额控制预校验结果：整列合计、分组合计及超出阈值的分组与行
+ * @apiNote 行号均从1开始；未超出阈值时首个超限行号为-1
+ * @author yinfelix
+ */
+public class ExcelTotalControlResult {
+
+    /**
+     * 记录的无效数据行行号上限，超出部分只计数
+     */
+    public static final int MAX_INVALID_ROWS = 100;
+
+    private final String colLabel;
+    private final String groupColLabel;
+    private final double thresholdValue;
+
+    private double total;
+    private int dataRowCount;
+    private int firstExceedingRowIndex = -1;
+
+    private final Map<String, GroupResult> groups = new LinkedHashMap<String, GroupResult>();
+
+    private final List<Integer> invalidRowIndices = new ArrayList<Integer>();
+    private int invalidRowCount;
+
+    ExcelTotalControlResult(String colLabel, String groupColLabel, double thresholdValue) {
+        this.colLabel = colLabel;
+        this.groupColLabel = groupColLabel;
+        this.thresholdValue = thresholdValue;
+    }
+
+    /**
+     * 获取总额控制列号（字母列号）
+     * @return 字母列号
+     */
+    public String getColLabel() {
+        return colLabel;
+    }
+
+    /**
+     * 获取分组列号（字母列号），未分组时返回null
+     * @return 字母列号
+     */
+    public String getGroupColLabel() {
+        return groupColLabel;
+    }
+
+    /**
+     * 获取总额控制阈值
+     * @return 阈值
+     */
+    public double getThresholdValue() {
+        return thresholdValue;
+    }
+
+    /**
+     * 获取整列合计，与数据验证公式SUM($X:$X)的计算范围一致
+     * @return 整列合计
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * 获取总额控制区域内的数值行数
+     * @return 数值行数
+     */
+    public int getDataRowCount() {
+        return dataRowCount;
+    }
+
+    /**
+     * 获取整列累计值首次超出阈值的行号
+     * @return 行号（从1开始），未超出时返回-1
+     */
+    public int getFirstExceedingRowIndex() {
+        return firstExceedingRowIndex;
+    }
+
+    /**
+     * 整列合计及各分组合计是否均未超出阈值
+     * @return 是否通过校验
+     */
+    public boolean isPassed() {
+        return firstExceedingRowIndex < 0 && getViolatingGroups().isEmpty();
+    }
+
+    /**
+     * 获取全部分组结果，按分组首次出现的顺序排列
+     * @return 分组结果
+     */
+    public Collection<GroupResult> getGroups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    /**
+     * 获取指定分组的结果
+     * @param groupKey 分组值（分组列单元格的格式化数值）
+     * @return 分组结果，分组不存在时返回null
+     */
+    public GroupResult getGroup(String groupKey) {
+        return groups.get(groupKey);
+    }
+
+    /**
+     * 获取合计超出阈值的分组
+     * @return 超出阈值的分组
+     */
+    public List<GroupResult> getViolatingGroups() {
+        List<GroupResult> violatingGroups = new ArrayList<GroupResult>();
+        for (GroupResult group : groups.values()) {
+            if (group.isViolated()) {
+                violatingGroups.add(group);
+            }
+        }
+        return violatingGroups;
+    }
+
+    /**
+     * 获取总额控制区域内无法参与合计的行（文本或错误值）行号，至多记录MAX_INVALID_ROWS行
+     * @return 行号（从1开始）
+     */
+    public List<Integer> getInvalidRowIndices() {
+        return Collections.unmodifiableList(invalidRowIndices);
+    }
+
+    /**
+     * 获取总额控制区域内无法参与合计的行数
+     * @return 行数
+     */
+    public int getInvalidRowCount() {
+        return invalidRowCount;
+    }
+
+    void addTotal(int rowIndex, double value) {
+        total += value;
+        if (firstExceedingRowIndex < 0 && total > thresholdValue) {
+            firstExceedingRowIndex = rowIndex;
+        }
+    }
+
+    void addDataRow(int rowIndex, String groupKey, double value) {
+        ++dataRowCount;
+        if (groupKey == null) {
+            return;
+        }
+        GroupResult group = groups.get(groupKey);
+        if (group == null) {
+            group = new GroupResult(groupKey);
+            groups.put(groupKey, group);
+        }
+        group.add(rowIndex, value);
+    }
+
+    void addInvalidRow(int rowIndex) {
+        if (invalidRowIndices.size() < MAX_INVALID_ROWS) {
+            invalidRowIndices.add(rowIndex);
+        }
+        ++invalidRowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "总额控制列" + colLabel + "：合计" + total + "，阈值" + thresholdValue
+                + (firstExceedingRowIndex < 0 ? "，未超出" : "，自第" + firstExceedingRowIndex + "行起超出")
+                + "，超出阈值的分组" + getViolatingGroups().size() + "个，无效数据行" + invalidRowCount + "行";
+    }
+
+    /**
+     * 单个分组的合计结果
+     */
+    public class GroupResult {
+
+        private final String groupKey;
+        private double sum;
+        private int rowCount;
+        private int firstRowIndex = -1;
+        private int firstExceedingRowIndex = -1;
+
+        private GroupResult(String groupKey) {
+            this.groupKey = groupKey;
+        }
+
+        /**
+         * 获取分组值（分组列单元格的格式化数值）
+         * @return 分组值
+         */
+        public String getGroupKey() {
+            return groupKey;
+        }
+
+        /**
+         * 获取分组合计
+         * @return 分组合计
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * 获取分组内的数值行数
+         * @return 行数
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * 获取分组首行行号
+         * @return 行号（从1开始）
+         */
+        public int getFirstRowIndex() {
+            return firstRowIndex;
+        }
+
+        /**
+         * 获取分组累计值首次超出阈值的行号
+         * @return 行号（从1开始），未超出时返回-1
+         */
+        public int getFirstExceedingRowIndex() {
+            return firstExceedingRowIndex;
+        }
+
+        /**
+         * 分组合计是否超出阈值
+         * @return 是否超出阈值
+         */
+        public boolean isViolated() {
+            return firstExceedingRowIndex >= 0;
+        }
+
+        private void add(int rowIndex, double value) {
+            sum += value;
+            ++rowCount;
+            if (firstRowIndex < 0) {
+                firstRowIndex = rowIndex;
+            }
+            if (firstExceedingRowIndex < 0 && sum > thresholdValue) {
+                firstExceedingRowIndex = rowIndex;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return groupKey + "：合计" + sum + "，" + rowCount + "行" + (isViolated() ? "，自第" + firstExceedingRowIndex + "行起超出" : "");
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已解析工作簿缓存：按文件路径、文件大小与最后修改时间缓存解析结果，同一文件被反复读取时不再重新解析，
+ * 超出内存预算时按最近最少使用（LRU）顺序淘汰
+ * @apiNote 缓存的工作簿为只读快照，在各调用方之间共享，不得修改（需修改工作簿时应直接解析文件）；
+ * 同一文件同时未命中时可能重复解析，只保留先完成的解析结果
+ * @author yinfelix
+ */
+public class ExcelWorkbookCache {
+
+    /**
+     * 工作簿在内存中单个单元格的估算占用（字节），用于计算缓存的内存占用
+     */
+    private static final long ESTIMATED_BYTES_PER_CELL = 1024L;
+
+    private static final String XSSF_SUFFIX = ".xlsx";
+
+    private static final ExcelWorkbookCache DEFAULT_CACHE = new ExcelWorkbookCache(Runtime.getRuntime().maxMemory() / 4);
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    private long memoryBudget;
+    private long estimatedSize;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param memoryBudget 缓存的内存预算（字节）
+     */
+    public ExcelWorkbookCache(long memoryBudget) {
+        this.memoryBudget = Math.max(0, memoryBudget);
+    }
+
+    /**
+     * 获取进程内共享的缓存实例，内存预算默认为最大堆内存的1/4
+     * @return 共享缓存实例
+     */
+    public static ExcelWorkbookCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * 获取指定文件的工作簿只读快照，文件未缓存或缓存后已被修改时重新解析
+     * @param file 报表文件路径
+     * @return 工作簿只读快照
+     * @throws IOException IO操作
+     */
+    public Workbook getWorkbook(String file) throws IOException {
+        if (!file.endsWith(XSSF_SUFFIX)) {
+            throw new RuntimeException("文件格式错误！");
+        }
+        File sourceFile = new File(file);
+        String path = sourceFile.getCanonicalPath();
+        long length = sourceFile.length();
+        long lastModified = sourceFile.lastModified();
+
+        synchronized (this) {
+            CacheEntry entry = entries.get(path);
+            if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+                ++hitCount;
+                return entry.workbook;
+            }
+            if (entry != null) {
+                removeEntry(path);
+            }
+            ++missCount;
+        }
+
+        Workbook workbook;
+        InputStream inStream = new FileInputStream(sourceFile);
+        try {
+            workbook = new XSSFWorkbook(inStream);
+        } finally {
+            inStream.close();
+        }
+        return putEntry(path, new CacheEntry(workbook, length, lastModified, estimateSize(workbook)));
+    }
+
+    /**
+     * 移除指定文件的缓存
+     * @param file 报表文件路径
+     * @throws IOException IO操作
+     */
+    public synchronized void invalidate(String file) throws IOException {
+        removeEntry(new File(file).getCanonicalPath());
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        estimatedSize = 0;
+    }
+
+    /**
+     * 获取缓存命中次数
+     * @return 命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取缓存未命中（重新解析）次数
+     * @return 未命中次数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取因超出内存预算而淘汰的工作簿数量
+     * @return 淘汰数量
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取当前缓存的工作簿数量
+     * @return 工作簿数量
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * 获取当前缓存的估算内存占用（字节）
+     * @return 估算内存占用
+     */
+    public synchronized long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * 获取缓存的内存预算
+     * @return 内存预算（字节）
+     */
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * 设置缓存的内存预算，超出部分立即按LRU顺序淘汰
+     * @param memoryBudget 内存预算（字节）
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = Math.max(0, memoryBudget);
+        evict();
+    }
+
+    private synchronized Workbook putEntry(String path, CacheEntry entry) {
+        CacheEntry existing = entries.get(path);
+        if (existing != null && existing.length == entry.length && existing.lastModified == entry.lastModified) {
+            return existing.workbook;
+        }
+        if (existing != null) {
+            removeEntry(path);
+        }
+//        单个工作簿超出内存预算时不缓存
+        if (entry.estimatedSize <= memoryBudget) {
+            entries.put(path, entry);
+            estimatedSize += entry.estimatedSize;
+            evict();
+        }
+        return entry.workbook;
+    }
+
+    private void removeEntry(String path) {
+        CacheEntry entry = entries.remove(path);
+        if (entry != null) {
+            estimatedSize -= entry.estimatedSize;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (estimatedSize > memoryBudget && iterator.hasNext()) {
+            estimatedSize -= iterator.next().getValue().estimatedSize;
+            iterator.remove();
+            ++evictionCount;
+        }
+    }
+
+    private long estimateSize(Workbook workbook) {
+        long cellCount = 0;
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            Sheet sheet = workbook.getSheetAt(sheetIndex);
+            for (Row row : sheet) {
+                cellCount += Math.max(0, row.getPhysicalNumberOfCells());
+            }
+        }
+        return Math.max(1, cellCount) * ESTIMATED_BYTES_PER_CELL;
+    }
+
+    private static class CacheEntry {
+        private final Workbook workbook;
+        private final long length;
+        private final long lastModified;
+        private final long estimatedSize;
+
+        private CacheEntry(Workbook workbook, long length, long lastModified, long estimatedSize) {
+            this.workbook = workbook;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.estimatedSize = estimatedSize;
+        }
+    }
+}
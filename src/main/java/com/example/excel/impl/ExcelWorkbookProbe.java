@@ -0,0 +1,436 @@
+package com.example.excel.impl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 报表元数据探测：只读取zip目录、workbook.xml与各sheet页XML开头的dimension元素，
+ * 不创建OPCPackage与XSSFWorkbook，用于在调度前快速获取sheet页名称、数据区域与文件大小
+ * @apiNote 文件未记录dimension或只记录为A1时（POI 3.8写出的文件均为A1），以StAX流式扫描该sheet页的行与单元格引用得出数据区域，
+ * 耗时与sheet页大小成正比；不需要精确数据区域时可调用probe(file, false)跳过扫描。实例只读，可在线程间共享
+ * @author yinfelix
+ */
+public class ExcelWorkbookProbe {
+
+    private static final String PACKAGE_RELATIONSHIPS_ENTRY = "_rels/.rels";
+    private static final String DEFAULT_WORKBOOK_ENTRY = "xl/workbook.xml";
+    private static final String OFFICE_DOCUMENT_TYPE_SUFFIX = "/officeDocument";
+    private static final String SHARED_STRINGS_TYPE_SUFFIX = "/sharedStrings";
+    private static final String STYLES_TYPE_SUFFIX = "/styles";
+    private static final String UNRECORDED_DIMENSION = "A1";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final String file;
+    private final long fileSize;
+    private final List<ExcelSheetInfo> sheets;
+    private final String sharedStringsPart;
+    private final long sharedStringsSize;
+    private final long stylesSize;
+    private final List<String[]> definedNames;
+
+    private ExcelWorkbookProbe(String file, long fileSize, List<ExcelSheetInfo> sheets, String sharedStringsPart, long sharedStringsSize, long stylesSize, List<String[]> definedNames) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.sheets = Collections.unmodifiableList(sheets);
+        this.sharedStringsPart = sharedStringsPart;
+        this.sharedStringsSize = sharedStringsSize;
+        this.stylesSize = stylesSize;
+        this.definedNames = Collections.unmodifiableList(definedNames);
+    }
+
+    /**
+     * 探测报表元数据，文件未记录有效数据区域的sheet页经扫描得出
+     * @param file 报表文件路径
+     * @return 报表元数据
+     * @throws IOException IO操作
+     */
+    public static ExcelWorkbookProbe probe(String file) throws IOException {
+        return probe(file, true);
+    }
+
+    /**
+     * 探测报表元数据
+     * @param file 报表文件路径
+     * @param scanWhenUnrecorded 文件未记录有效数据区域时是否扫描sheet页（否则行列范围为ExcelSheetInfo.UNKNOWN）
+     * @return 报表元数据
+     * @throws IOException IO操作
+     */
+    public static ExcelWorkbookProbe probe(String file, boolean scanWhenUnrecorded) throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            String workbookEntry = DEFAULT_WORKBOOK_ENTRY;
+            for (String[] relationship : readRelationships(zipFile, PACKAGE_RELATIONSHIPS_ENTRY)) {
+                if (relationship[1].endsWith(OFFICE_DOCUMENT_TYPE_SUFFIX)) {
+                    workbookEntry = resolveTarget("", relationship[2]);
+                }
+            }
+            String workbookDirectory = workbookEntry.substring(0, workbookEntry.lastIndexOf('/') + 1);
+            String workbookRelationshipsEntry = workbookDirectory + "_rels/" + workbookEntry.substring(workbookDirectory.length()) + ".rels";
+
+            Map<String, String> targets = new HashMap<String, String>();
+            String sharedStringsPart = null;
+            long sharedStringsSize = 0;
+            long stylesSize = 0;
+            for (String[] relationship : readRelationships(zipFile, workbookRelationshipsEntry)) {
+                String target = resolveTarget(workbookDirectory, relationship[2]);
+                targets.put(relationship[0], target);
+                if (relationship[1].endsWith(SHARED_STRINGS_TYPE_SUFFIX) && zipFile.getEntry(target) != null) {
+                    sharedStringsPart = target;
+                    sharedStringsSize = getSize(zipFile.getEntry(target));
+                } else if (relationship[1].endsWith(STYLES_TYPE_SUFFIX)) {
+                    stylesSize = getSize(zipFile.getEntry(target));
+                }
+            }
+
+            List<ExcelSheetInfo> sheets = new ArrayList<ExcelSheetInfo>();
+            List<String[]> definedNames = new ArrayList<String[]>();
+            for (String[] sheet : readSheets(zipFile, workbookEntry, definedNames)) {
+                String partName = targets.get(sheet[2]);
+                ZipEntry sheetEntry = partName == null ? null : zipFile.getEntry(partName);
+                if (sheetEntry == null) {
+                    throw new RuntimeException("文件格式错误！");
+                }
+                ExcelSheetInfo sheetInfo = new ExcelSheetInfo(sheets.size() + 1, sheet[0], sheet[1], partName, getSize(sheetEntry), sheetEntry.getCompressedSize());
+                readExtent(zipFile, sheetEntry, sheetInfo, scanWhenUnrecorded);
+                sheets.add(sheetInfo);
+            }
+            return new ExcelWorkbookProbe(file, new File(file).length(), sheets, sharedStringsPart, sharedStringsSize, stylesSize, definedNames);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * 扫描单个sheet页的数据区域（用于probe(file, false)之后只扫描所需的sheet页），文件记录了有效数据区域时直接读取
+     * @param sheetInfo 探测得到的sheet页元数据（不修改）
+     * @return 含数据区域的sheet页元数据
+     * @throws IOException IO操作
+     */
+    ExcelSheetInfo scanSheet(ExcelSheetInfo sheetInfo) throws IOException {
+        ExcelSheetInfo scannedSheetInfo = new ExcelSheetInfo(sheetInfo.getSheetIndex(), sheetInfo.getSheetName(), sheetInfo.getState(),
+                sheetInfo.getPartName(), sheetInfo.getSize(), sheetInfo.getCompressedSize());
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            readExtent(zipFile, zipFile.getEntry(sheetInfo.getPartName()), scannedSheetInfo, true);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            zipFile.close();
+        }
+        return scannedSheetInfo;
+    }
+
+    /**
+     * 读取关系部件
+     * @return 各关系的Id、Type与Target，部件不存在时为空
+     */
+    private static List<String[]> readRelationships(ZipFile zipFile, String entryName) throws IOException, XMLStreamException {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            return new ArrayList<String[]>();
+        }
+        return readRelationships(zipFile.getInputStream(entry));
+    }
+
+    /**
+     * 读取关系部件（读取完毕后关闭输入流）
+     * @return 各关系的Id、Type与Target（不含外部链接）
+     */
+    static List<String[]> readRelationships(InputStream inStream) throws IOException, XMLStreamException {
+        List<String[]> relationships = new ArrayList<String[]>();
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inStream);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "Relationship".equals(reader.getLocalName())) {
+                    String targetMode = reader.getAttributeValue(null, "TargetMode");
+                    if (!"External".equals(targetMode)) {
+                        relationships.add(new String[]{reader.getAttributeValue(null, "Id"), reader.getAttributeValue(null, "Type"), reader.getAttributeValue(null, "Target")});
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+            inStream.close();
+        }
+        return relationships;
+    }
+
+    /**
+     * 读取workbook.xml中的sheet页列表与定义名称
+     * @param definedNames 读出的各定义名称的名称与引用公式
+     * @return 各sheet页的名称、可见性与关系Id（按sheet页顺序）
+     */
+    private static List<String[]> readSheets(ZipFile zipFile, String workbookEntry, List<String[]> definedNames) throws IOException, XMLStreamException {
+        ZipEntry entry = zipFile.getEntry(workbookEntry);
+        if (entry == null) {
+            throw new RuntimeException("文件格式错误！");
+        }
+        List<String[]> sheets = new ArrayList<String[]>();
+        InputStream inStream = zipFile.getInputStream(entry);
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inStream);
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "sheet".equals(reader.getLocalName())) {
+                    String state = reader.getAttributeValue(null, "state");
+                    String relationshipId = null;
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        if ("id".equals(reader.getAttributeLocalName(i)) && !reader.getAttributeNamespace(i).isEmpty()) {
+                            relationshipId = reader.getAttributeValue(i);
+                        }
+                    }
+                    sheets.add(new String[]{reader.getAttributeValue(null, "name"), state == null ? "visible" : state, relationshipId});
+                } else if (event == XMLStreamConstants.START_ELEMENT && "definedName".equals(reader.getLocalName())) {
+                    String name = reader.getAttributeValue(null, "name");
+                    definedNames.add(new String[]{name, reader.getElementText()});
+                } else if (event == XMLStreamConstants.END_ELEMENT && ("definedNames".equals(reader.getLocalName()) || "calcPr".equals(reader.getLocalName()))) {
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+            inStream.close();
+        }
+        return sheets;
+    }
+
+    /**
+     * 读取sheet页的数据区域：dimension元素位于sheetData之前，读到有效的dimension即停止，
+     * 否则自sheetData起扫描各行与单元格引用（r属性缺省时依次递增）
+     */
+    private static void readExtent(ZipFile zipFile, ZipEntry sheetEntry, ExcelSheetInfo sheetInfo, boolean scanWhenUnrecorded) throws IOException, XMLStreamException {
+        InputStream inStream = zipFile.getInputStream(sheetEntry);
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inStream);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String localName = reader.getLocalName();
+                if ("dimension".equals(localName)) {
+                    String dimension = reader.getAttributeValue(null, "ref");
+                    sheetInfo.setDimension(dimension);
+                    if (dimension != null && !UNRECORDED_DIMENSION.equals(dimension)) {
+                        int separator = dimension.indexOf(':');
+                        String first = separator < 0 ? dimension : dimension.substring(0, separator);
+                        String last = separator < 0 ? dimension : dimension.substring(separator + 1);
+                        sheetInfo.setExtent(parseRowNumber(first), parseRowNumber(last),
+                                ExcelStreamReaderImpl.parseColumnIndex(first) + 1, ExcelStreamReaderImpl.parseColumnIndex(last) + 1, false);
+                        return;
+                    }
+                } else if ("sheetData".equals(localName)) {
+                    if (scanWhenUnrecorded) {
+                        scanSheetData(reader, sheetInfo);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            reader.close();
+            inStream.close();
+        }
+    }
+
+    private static void scanSheetData(XMLStreamReader reader, ExcelSheetInfo sheetInfo) throws XMLStreamException {
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = 0;
+        int firstColumn = Integer.MAX_VALUE;
+        int lastColumn = 0;
+        int rowNumber = 0;
+        int columnNumber = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String localName = reader.getLocalName();
+                if ("row".equals(localName)) {
+                    String reference = reader.getAttributeValue(null, "r");
+                    rowNumber = reference == null ? rowNumber + 1 : Integer.parseInt(reference);
+                    columnNumber = 0;
+                    firstRow = Math.min(firstRow, rowNumber);
+                    lastRow = Math.max(lastRow, rowNumber);
+                } else if ("c".equals(localName)) {
+                    String reference = reader.getAttributeValue(null, "r");
+                    columnNumber = reference == null ? columnNumber + 1 : ExcelStreamReaderImpl.parseColumnIndex(reference) + 1;
+                    firstColumn = Math.min(firstColumn, columnNumber);
+                    lastColumn = Math.max(lastColumn, columnNumber);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        sheetInfo.setExtent(lastRow == 0 ? 0 : firstRow, lastRow, lastColumn == 0 ? 0 : firstColumn, lastColumn, true);
+    }
+
+    private static int parseRowNumber(String cellReference) {
+        int rowNumber = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c >= '0' && c <= '9') {
+                rowNumber = rowNumber * 10 + (c - '0');
+            }
+        }
+        return rowNumber;
+    }
+
+    /**
+     * 将关系的Target解析为zip条目名（相对于来源部件所在目录，以/开头时为绝对路径）
+     */
+    static String resolveTarget(String directory, String target) {
+        String path = target.startsWith("/") ? target.substring(1) : directory + target;
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) {
+            if ("..".equals(segment)) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else if (!segment.isEmpty() && !".".equals(segment)) {
+                segments.add(segment);
+            }
+        }
+        StringBuilder resolved = new StringBuilder();
+        for (String segment : segments) {
+            if (resolved.length() > 0) {
+                resolved.append('/');
+            }
+            resolved.append(segment);
+        }
+        return resolved.toString();
+    }
+
+    private static long getSize(ZipEntry entry) {
+        return entry == null ? 0 : entry.getSize();
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * 获取文件大小
+     * @return 字节数
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 获取各sheet页元数据（按sheet页顺序）
+     * @return sheet页元数据
+     */
+    public List<ExcelSheetInfo> getSheets() {
+        return sheets;
+    }
+
+    public int getNumberOfSheets() {
+        return sheets.size();
+    }
+
+    /**
+     * 获取sheet页元数据
+     * @param sheetIndex sheet页ID（从1开始）
+     * @return sheet页元数据
+     */
+    public ExcelSheetInfo getSheet(int sheetIndex) {
+        return sheets.get(sheetIndex - 1);
+    }
+
+    /**
+     * 获取sheet页元数据
+     * @param sheetName sheet页名称
+     * @return sheet页元数据，不存在时返回null
+     */
+    public ExcelSheetInfo getSheet(String sheetName) {
+        for (ExcelSheetInfo sheet : sheets) {
+            if (sheet.getSheetName().equals(sheetName)) {
+                return sheet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 由sheet页名称获取sheet页ID
+     * @param sheetName sheet页名称
+     * @return sheet页ID（从1开始），不存在时返回-1
+     */
+    public int getSheetIndexFromName(String sheetName) {
+        ExcelSheetInfo sheet = getSheet(sheetName);
+        return sheet == null ? -1 : sheet.getSheetIndex();
+    }
+
+    /**
+     * 获取各sheet页名称（按sheet页顺序）
+     * @return sheet页名称
+     */
+    public List<String> getSheetNames() {
+        List<String> sheetNames = new ArrayList<String>();
+        for (ExcelSheetInfo sheet : sheets) {
+            sheetNames.add(sheet.getSheetName());
+        }
+        return sheetNames;
+    }
+
+    /**
+     * 获取定义名称（workbook.xml中的definedName元素，含sheet页范围的名称）
+     * @return 各定义名称的名称与引用公式
+     */
+    List<String[]> getDefinedNames() {
+        return definedNames;
+    }
+
+    /**
+     * 获取共享字符串表部件在文件包中的路径
+     * @return 部件路径，不含共享字符串表时返回null
+     */
+    String getSharedStringsPart() {
+        return sharedStringsPart;
+    }
+
+    /**
+     * 获取共享字符串表XML解压后的大小
+     * @return 字节数，不含共享字符串表时为0
+     */
+    public long getSharedStringsSize() {
+        return sharedStringsSize;
+    }
+
+    /**
+     * 获取样式表XML解压后的大小
+     * @return 字节数
+     */
+    public long getStylesSize() {
+        return stylesSize;
+    }
+
+    /**
+     * 获取sheet页、共享字符串表与样式表XML解压后的大小合计（整体加载时堆内存占用的主要决定因素）
+     * @return 字节数
+     */
+    public long getXmlSize() {
+        long xmlSize = sharedStringsSize + stylesSize;
+        for (ExcelSheetInfo sheet : sheets) {
+            xmlSize += Math.max(0, sheet.getSize());
+        }
+        return xmlSize;
+    }
+}
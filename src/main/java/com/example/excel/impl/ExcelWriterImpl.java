@@ -1,33 +1,57 @@
 package com.example.excel.impl;
 
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
 
 import java.io.*;
+import java.lang.reflect.Field;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
+ * @apiNote 线程安全约定：全部状态（输出流、工作簿、样式缓存）均属于实例，不同实例可在不同线程中并发使用，
+ * 同一实例不得由多个线程同时调用
  * @author yinfelix
  */
 public class ExcelWriterImpl {
 
     private String dateFormat;
     private String doubleFormat;
-    private long startTimeMillis;
 
     private Workbook workbook;
     private Sheet sheet;
-    private Row row;
 
     private static final String DEFAULT_SHEETNAME = "sheet";
+    private static final String METRICS_OPERATION = "writer";
 
     private ExcelReaderImpl excelReader = null;
 
-    private CellStyle newCellStyle = null;
+    private Map<Workbook, Map<String, CellStyle>> styleCache = new IdentityHashMap<Workbook, Map<String, CellStyle>>();
+    private Map<Workbook, Map<CTXf, CellStyle>> sourceStyleCache = new IdentityHashMap<Workbook, Map<CTXf, CellStyle>>();
 
-    private static FileOutputStream outStream = null;
+    private String outputFilePath = null;
+    private FileOutputStream outStream = null;
+
+    private int rowAccessWindowSize = 0;
+    private boolean compressTempFiles = false;
+    private boolean tempFilesDisposed = false;
+
+    private int compressionLevel = ExcelZipOutputStream.DEFAULT;
+    private int compressionThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private ExcelMetricsListener metricsListener = ExcelMetrics.getDefaultListener();
+    private long writtenCellCount = 0;
 
     public ExcelWriterImpl(String file, String outputFilePath) {
         try {
@@ -40,10 +64,69 @@ public class ExcelWriterImpl {
         }
     }
 
-    public ExcelWriterImpl(String outputFilePath) {}
+    /**
+     * 读取源报表时只加载操作所需的sheet页（见ExcelReaderImpl(String, Collection)）
+     * @param file 源报表文件路径
+     * @param outputFilePath 输出文件路径
+     * @param sheetNames 操作所需的sheet页名称
+     */
+    public ExcelWriterImpl(String file, String outputFilePath, Collection<String> sheetNames) {
+        try {
+            this.excelReader = new ExcelReaderImpl(file, sheetNames);
+            generateWorkbook(outputFilePath);
+            this.dateFormat = "yyyy-MM-dd HH:mm:ss";
+            this.doubleFormat = "0.000000";
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public ExcelWriterImpl(String outputFilePath) {
+        try {
+            generateWorkbook(outputFilePath);
+            this.dateFormat = "yyyy-MM-dd HH:mm:ss";
+            this.doubleFormat = "0.000000";
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 以流式写入模式创建输出报表：内存中只保留最近rowAccessWindowSize行，窗口之外的行写出至临时文件，
+     * 堆内存占用与报表总行数无关；窗口内的行仍可通过createCellWithValue写入
+     * @apiNote 已写出至临时文件的行不能再读取或修改，须按行号递增的顺序写入；
+     * 临时文件由File.createTempFile创建于java.io.tmpdir，可通过JVM参数-Djava.io.tmpdir指向tmpfs等目录，
+     * 在commitWorkbook或close时删除（见disposeTempFiles）
+     * @param outputFilePath 输出文件路径
+     * @param rowAccessWindowSize 内存中保留的行数
+     * @param compressTempFiles 是否以gzip压缩临时文件（减少磁盘占用，写出时略增CPU开销）
+     */
+    public ExcelWriterImpl(String outputFilePath, int rowAccessWindowSize, boolean compressTempFiles) {
+        try {
+            this.rowAccessWindowSize = rowAccessWindowSize;
+            this.compressTempFiles = compressTempFiles;
+            generateWorkbook(outputFilePath);
+            this.dateFormat = "yyyy-MM-dd HH:mm:ss";
+            this.doubleFormat = "0.000000";
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
     public ExcelWriterImpl() {}
 
+    /**
+     * 是否为流式写入模式
+     * @return 是否为流式写入模式
+     */
+    public boolean isStreaming() {
+        return rowAccessWindowSize > 0;
+    }
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
     public ExcelReaderImpl getExcelReader() {
         return excelReader;
     }
@@ -56,21 +139,62 @@ public class ExcelWriterImpl {
         return sheet;
     }
 
+    public ExcelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置指标回调（默认取创建时的ExcelMetrics.getDefaultListener()），同时作用于模板报表的读取
+     * @param metricsListener 指标回调
+     */
+    public void setMetricsListener(ExcelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? ExcelMetricsListener.NO_OP : metricsListener;
+        if (excelReader != null) {
+            excelReader.setMetricsListener(this.metricsListener);
+        }
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 设置写出文件的压缩级别，默认为ExcelZipOutputStream.DEFAULT；只在本机或内网间传递的中间文件可取STORED或FASTEST
+     * @param compressionLevel 压缩级别（0~9或ExcelZipOutputStream.DEFAULT）
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = ExcelZipOutputStream.checkLevel(compressionLevel);
+    }
+
+    public int getCompressionThreadCount() {
+        return compressionThreadCount;
+    }
+
+    /**
+     * 设置写出文件时的并行压缩线程数，默认为可用处理器数
+     * @param compressionThreadCount 线程数（不小于1）
+     */
+    public void setCompressionThreadCount(int compressionThreadCount) {
+        this.compressionThreadCount = Math.max(1, compressionThreadCount);
+    }
+
+    /**
+     * 创建输出工作簿：只记录输出文件路径，输出文件在commitWorkbook时才创建，未写出的实例不会留下空文件
+     * @param outputFilePath 输出文件路径
+     */
     private void generateWorkbook(String outputFilePath) throws IOException {
-        outStream = new FileOutputStream(outputFilePath);
-        workbook = new XSSFWorkbook();
+        this.outputFilePath = outputFilePath;
+        workbook = isStreaming() ? new SXSSFWorkbook(null, rowAccessWindowSize, compressTempFiles) : new XSSFWorkbook();
 
         int i = 1;
         while ((sheet = workbook.getSheet(DEFAULT_SHEETNAME + i)) != null) {
             sheet = workbook.getSheet(DEFAULT_SHEETNAME + ++i);
         }
         sheet = workbook.createSheet(DEFAULT_SHEETNAME + i);
-
-        startTimeMillis = System.currentTimeMillis();
     }
 
     private void generateSheetHeader(Sheet sheet, int headerRowIndex, Map<Integer, Object> values) {
-        row = sheet.createRow(headerRowIndex);
+        Row row = sheet.createRow(headerRowIndex);
 
         for (Integer cellIndex : values.keySet()) {
             Cell cell = row.createCell(cellIndex);
@@ -87,11 +211,7 @@ public class ExcelWriterImpl {
      * @param value 待插入数据的数值
      */
     public void createCellWithValue(Sheet sheet, int rowIndex, int columnIndex, Object value) {
-        if ((row = sheet.getRow(rowIndex)) == null) {
-            row = sheet.createRow(rowIndex);
-        }
-        Cell cell = row.createCell(columnIndex);
-        setValueWithinCell(value, cell);
+        createCell(sheet, rowIndex, columnIndex, value);
     }
 
     /**
@@ -103,12 +223,70 @@ public class ExcelWriterImpl {
      * @param targetCellStyle 待生成单元格的样式
      */
     public void createCellWithValue(Sheet sheet, int rowIndex, int columnIndex, Object value, CellStyle targetCellStyle) {
+        createCell(sheet, rowIndex, columnIndex, value).setCellStyle(getCellStyle(sheet.getWorkbook(), targetCellStyle));
+    }
+
+    private Cell createCell(Sheet sheet, int rowIndex, int columnIndex, Object value) {
+        Row row = sheet.getRow(rowIndex);
+        if (row == null) {
+            row = sheet.createRow(rowIndex);
+        }
+        Cell cell = row.createCell(columnIndex);
+        setValueWithinCell(value, cell);
+        return cell;
+    }
+
+    /**
+     * 获取目标workbook内与源样式等价的样式：按样式指纹（字体、填充、边框、颜色、数据格式与对齐方式）去重，
+     * 同一指纹在每个目标workbook内只创建一次，styles.xml的大小与单元格数量无关
+     * @apiNote 指纹含字体与颜色的XML文本，生成开销较大：XSSF源样式先按其样式记录（CTXf，源workbook内每个样式ID对应唯一实例，
+     * 每次getCellStyle返回的XSSFCellStyle虽为新对象，其样式记录不变）在IdentityHashMap中查找，未命中时才生成指纹；
+     * 源样式在查找后不应再修改
+     * @param targetWorkbook 目标workbook
+     * @param sourceCellStyle 源样式
+     * @return 目标workbook内的样式
+     */
+    public CellStyle getCellStyle(Workbook targetWorkbook, CellStyle sourceCellStyle) {
+        Map<CTXf, CellStyle> sourceStyles = null;
+        CTXf sourceXf = null;
+        if (sourceCellStyle instanceof XSSFCellStyle) {
+            sourceStyles = sourceStyleCache.get(targetWorkbook);
+            if (sourceStyles == null) {
+                sourceStyles = new IdentityHashMap<CTXf, CellStyle>();
+                sourceStyleCache.put(targetWorkbook, sourceStyles);
+            }
+            sourceXf = ((XSSFCellStyle) sourceCellStyle).getCoreXf();
+            CellStyle cachedCellStyle = sourceStyles.get(sourceXf);
+            if (cachedCellStyle != null) {
+                return cachedCellStyle;
+            }
+        }
+
+        Map<String, CellStyle> workbookStyles = styleCache.get(targetWorkbook);
+        if (workbookStyles == null) {
+            workbookStyles = new HashMap<String, CellStyle>();
+            styleCache.put(targetWorkbook, workbookStyles);
+        }
+        String fingerprint = getStyleFingerprint(sourceCellStyle);
+        CellStyle newCellStyle = workbookStyles.get(fingerprint);
         if (newCellStyle == null) {
-            newCellStyle = sheet.getWorkbook().createCellStyle();
+            newCellStyle = createCellStyle(targetWorkbook, sourceCellStyle);
+            workbookStyles.put(fingerprint, newCellStyle);
+        }
+        if (sourceStyles != null) {
+            sourceStyles.put(sourceXf, newCellStyle);
         }
-        createCellWithValue(sheet, rowIndex, columnIndex, value);
+        return newCellStyle;
+    }
 
+    private CellStyle createCellStyle(Workbook targetWorkbook, CellStyle targetCellStyle) {
+        CellStyle newCellStyle = targetWorkbook.createCellStyle();
         newCellStyle.cloneStyleFrom(targetCellStyle);
+        if (newCellStyle instanceof XSSFCellStyle && targetCellStyle instanceof XSSFCellStyle) {
+            copyFillAndBorder((XSSFCellStyle) targetCellStyle, (XSSFCellStyle) newCellStyle);
+            return newCellStyle;
+        }
+
         newCellStyle.setAlignment(targetCellStyle.getAlignment());
         newCellStyle.setFillForegroundColor(targetCellStyle.getFillForegroundColor());
         newCellStyle.setFillBackgroundColor(targetCellStyle.getFillBackgroundColor());
@@ -129,10 +307,96 @@ public class ExcelWriterImpl {
         newCellStyle.setLeftBorderColor(targetCellStyle.getLeftBorderColor());
         newCellStyle.setRightBorderColor(targetCellStyle.getRightBorderColor());
         newCellStyle.setTopBorderColor(targetCellStyle.getTopBorderColor());
-        sheet.getRow(rowIndex).getCell(columnIndex).setCellStyle(newCellStyle);
+        return newCellStyle;
+    }
+
+    /**
+     * 复制填充与边框：cloneStyleFrom复制的填充与边框ID指向源workbook（颜色无法正确写入的原因），
+     * 先复位为目标workbook的默认填充与边框，再按源样式的颜色逐项设置
+     */
+    private void copyFillAndBorder(XSSFCellStyle sourceStyle, XSSFCellStyle newCellStyle) {
+        newCellStyle.getCoreXf().setFillId(0);
+        newCellStyle.getCoreXf().setBorderId(0);
+
+        if (sourceStyle.getFillPattern() != CellStyle.NO_FILL) {
+            newCellStyle.setFillPattern(sourceStyle.getFillPattern());
+        }
+        if (sourceStyle.getFillForegroundXSSFColor() != null) {
+            newCellStyle.setFillForegroundColor(sourceStyle.getFillForegroundXSSFColor());
+        }
+        if (sourceStyle.getFillBackgroundXSSFColor() != null) {
+            newCellStyle.setFillBackgroundColor(sourceStyle.getFillBackgroundXSSFColor());
+        }
+
+        for (XSSFCellBorder.BorderSide side : XSSFCellBorder.BorderSide.values()) {
+            short border = getBorder(sourceStyle, side);
+            if (border != CellStyle.BORDER_NONE) {
+                setBorder(newCellStyle, side, border);
+            }
+            if (sourceStyle.getBorderColor(side) != null) {
+                newCellStyle.setBorderColor(side, sourceStyle.getBorderColor(side));
+            }
+        }
+    }
+
+    private short getBorder(CellStyle cellStyle, XSSFCellBorder.BorderSide side) {
+        switch (side) {
+            case TOP: return cellStyle.getBorderTop();
+            case RIGHT: return cellStyle.getBorderRight();
+            case BOTTOM: return cellStyle.getBorderBottom();
+            default: return cellStyle.getBorderLeft();
+        }
+    }
+
+    private void setBorder(CellStyle cellStyle, XSSFCellBorder.BorderSide side, short border) {
+        switch (side) {
+            case TOP: cellStyle.setBorderTop(border); break;
+            case RIGHT: cellStyle.setBorderRight(border); break;
+            case BOTTOM: cellStyle.setBorderBottom(border); break;
+            default: cellStyle.setBorderLeft(border); break;
+        }
+    }
+
+    /**
+     * 生成样式指纹：取值相同的样式在目标workbook内视为同一样式
+     */
+    private String getStyleFingerprint(CellStyle cellStyle) {
+        StringBuilder fingerprint = new StringBuilder(256);
+        fingerprint.append(cellStyle.getAlignment()).append('|')
+                .append(cellStyle.getVerticalAlignment()).append('|')
+                .append(cellStyle.getWrapText()).append('|')
+                .append(cellStyle.getIndention()).append('|')
+                .append(cellStyle.getRotation()).append('|')
+                .append(cellStyle.getHidden()).append('|')
+                .append(cellStyle.getLocked()).append('|')
+                .append(cellStyle.getDataFormatString()).append('|')
+                .append(cellStyle.getFillPattern()).append('|')
+                .append(cellStyle.getBorderTop()).append(cellStyle.getBorderRight())
+                .append(cellStyle.getBorderBottom()).append(cellStyle.getBorderLeft()).append('|');
+        if (cellStyle instanceof XSSFCellStyle) {
+            XSSFCellStyle xssfCellStyle = (XSSFCellStyle) cellStyle;
+            fingerprint.append(xssfCellStyle.getFont().getCTFont().xmlText()).append('|');
+            appendColor(fingerprint, xssfCellStyle.getFillForegroundXSSFColor());
+            appendColor(fingerprint, xssfCellStyle.getFillBackgroundXSSFColor());
+            for (XSSFCellBorder.BorderSide side : XSSFCellBorder.BorderSide.values()) {
+                appendColor(fingerprint, xssfCellStyle.getBorderColor(side));
+            }
+        } else {
+            fingerprint.append(cellStyle.getFontIndex()).append('|')
+                    .append(cellStyle.getFillForegroundColor()).append('|')
+                    .append(cellStyle.getFillBackgroundColor()).append('|')
+                    .append(cellStyle.getTopBorderColor()).append(cellStyle.getRightBorderColor())
+                    .append(cellStyle.getBottomBorderColor()).append(cellStyle.getLeftBorderColor());
+        }
+        return fingerprint.toString();
+    }
+
+    private void appendColor(StringBuilder fingerprint, XSSFColor color) {
+        fingerprint.append(color == null ? "" : color.getCTColor().xmlText()).append('|');
     }
 
     private void setValueWithinCell(Object value, Cell cell) {
+        ++writtenCellCount;
         if (value instanceof String) {
             cell.setCellValue((String) value);
         } else if (value instanceof Boolean) {
@@ -149,22 +413,75 @@ public class ExcelWriterImpl {
     }
 
     /**
-     * 将工作簿写入输出文件
+     * 将工作簿写入输出文件（经ExcelZipOutputStream分块并行压缩），输出流于此时打开，写出后即关闭；
+     * 流式写入模式的临时文件在写出后删除，工作簿不能再次写出
      * @throws IOException IO操作
      */
     public void commitWorkbook() throws IOException {
         if (workbook != null) {
-            workbook.write(outStream);
+            long startNanos = System.nanoTime();
+            try {
+                outStream = new FileOutputStream(outputFilePath);
+                ExcelZipOutputStream.write(workbook, outStream, compressionLevel, compressionThreadCount);
+            } finally {
+                disposeTempFiles();
+            }
+            long rowCount = 0;
+            for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+                Sheet currentSheet = workbook.getSheetAt(sheetIndex);
+                rowCount += currentSheet.getLastRowNum() > 0 || currentSheet.getRow(0) != null ? currentSheet.getLastRowNum() + 1 : 0;
+            }
+            ExcelPhaseMetrics.report(metricsListener, METRICS_OPERATION, ExcelMetricsPhase.SERIALIZE, startNanos, rowCount, writtenCellCount);
         }
     }
 
     /**
-     * 关闭输出流成员
+     * 关闭输出流成员（未调用commitWorkbook时输出流尚未打开，无需关闭），并删除流式写入模式的临时文件
      * @throws IOException IO操作
      */
     public void close() throws IOException {
-        outStream.close();
-        System.out.println("文件生成时间：" + (System.currentTimeMillis() - this.startTimeMillis) + "毫秒，约等于" + String.format("%.1f", (System.currentTimeMillis() - this.startTimeMillis) / 1000.0f) + "秒");
+        disposeTempFiles();
+        if (outStream != null) {
+            outStream.close();
+        }
+    }
+
+    /**
+     * 删除流式写入模式下各sheet页的临时文件：POI 3.8的SXSSFWorkbook没有dispose方法，临时文件只登记deleteOnExit
+     * （或待写入器被垃圾回收时删除），长期运行的批量任务中随报表数量在java.io.tmpdir中累积
+     * @apiNote 临时文件只由SXSSFSheet的包内成员持有（_writer及其_fd），经反射关闭写入器后删除；
+     * java.io.tmpdir在JVM内只读取一次，无法按任务指定临时目录。反射失败时保留POI原有的删除方式
+     */
+    private void disposeTempFiles() {
+        if (!(workbook instanceof SXSSFWorkbook) || tempFilesDisposed) {
+            return;
+        }
+        tempFilesDisposed = true;
+        try {
+            Field writerField = SXSSFSheet.class.getDeclaredField("_writer");
+            Field fileField = SheetDataWriter.class.getDeclaredField("_fd");
+            writerField.setAccessible(true);
+            fileField.setAccessible(true);
+            for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+                SheetDataWriter writer = (SheetDataWriter) writerField.get(workbook.getSheetAt(sheetIndex));
+                if (writer == null) {
+                    continue;
+                }
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // 写入器已关闭（写出时读取临时文件前已关闭），直接删除临时文件
+                }
+                File tempFile = (File) fileField.get(writer);
+                if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                    tempFile.deleteOnExit();
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
     }
 
     public static void main(String[] args) {}
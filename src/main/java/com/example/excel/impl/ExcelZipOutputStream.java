@@ -0,0 +1,714 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 并行压缩的zip输出流：每个条目按128KB分块，各块以前一块末尾32KB为预设字典在线程池中独立DEFLATE压缩，
+ * 块间以同步刷新对齐字节边界后按顺序拼接（与pigz相同），生成的文件为标准zip格式，压缩耗时随处理器数线性下降
+ * @apiNote 只实现POI写出报表所需的ZipOutputStream方法（putNextEntry、write、closeEntry、finish、close），
+ * 条目一律以DEFLATE方法写出（压缩级别0时为不压缩的DEFLATE存储块，任何解压程序均可读取），不支持Zip64（单个条目或文件不超过4GB）；
+ * POI保存XSSFWorkbook时直接使用传入的ZipOutputStream，SXSSFWorkbook则经write方法按相同的模板注入流程写出
+ * @author yinfelix
+ */
+public class ExcelZipOutputStream extends ZipOutputStream {
+
+    /**
+     * 不压缩（DEFLATE存储块），适用于只在本机或内网间传递的中间文件
+     */
+    public static final int STORED = Deflater.NO_COMPRESSION;
+    /**
+     * 最快压缩
+     */
+    public static final int FASTEST = Deflater.BEST_SPEED;
+    /**
+     * 默认压缩级别（与POI写出的文件大小相当）
+     */
+    public static final int DEFAULT = Deflater.DEFAULT_COMPRESSION;
+    /**
+     * 最高压缩
+     */
+    public static final int SMALLEST = Deflater.BEST_COMPRESSION;
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_ZIP32_VALUE = 0xFFFFFFFFL;
+    private static final int MAX_ZIP32_ENTRIES = 0xFFFF;
+    /**
+     * 早于1980年的时间在zip格式中均记为1980-01-01 00:00（zip格式可表示的最早时间）
+     */
+    private static final long EARLIEST_ENTRY_TIME = 0L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SHEET_DATA_START = "<sheetData>";
+    private static final String SHEET_DATA_END = "</sheetData>";
+    private static final String SHEET_DATA_EMPTY = "<sheetData/>";
+
+    private final OutputStream target;
+    private final int threadCount;
+    private int level;
+    private long entryTime = System.currentTimeMillis();
+    private ExecutorService executor;
+
+    private final List<EntryRecord> entries = new ArrayList<EntryRecord>();
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+    private EntryRecord currentEntry;
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private byte[] dictionary;
+
+    private long written;
+    private boolean finished;
+    private boolean closed;
+
+    private ExcelRawZipFile rawSource;
+    private Set<String> pendingRawEntries = Collections.emptySet();
+    private boolean discarding;
+
+    /**
+     * @param out 目标输出流
+     * @param level 压缩级别（0~9或DEFAULT）
+     * @param threadCount 压缩线程数，为1时在调用线程中压缩
+     */
+    public ExcelZipOutputStream(OutputStream out, int level, int threadCount) {
+        super(out);
+        this.target = out;
+        this.threadCount = Math.max(1, threadCount);
+        setLevel(level);
+    }
+
+    /**
+     * 以并行压缩写出报表（XSSFWorkbook或SXSSFWorkbook），写出完成后关闭输出流
+     * @apiNote 各条目的修改时间取工作簿的创建时间，相同的工作簿以任意压缩线程数写出的字节均相同
+     * @param workbook 工作簿
+     * @param out 目标输出流
+     * @param level 压缩级别（0~9或DEFAULT）
+     * @param threadCount 压缩线程数
+     * @throws IOException IO操作
+     */
+    public static void write(Workbook workbook, OutputStream out, int level, int threadCount) throws IOException {
+        write(workbook, out, level, threadCount, null, Collections.<String>emptySet());
+    }
+
+    /**
+     * 以并行压缩写出报表，指定条目从源文件原样复制（用于部分加载的工作簿中未加载的sheet页）
+     * @param rawSource 源文件
+     * @param rawEntries 原样复制的条目名
+     */
+    static void write(Workbook workbook, OutputStream out, int level, int threadCount, ExcelRawZipFile rawSource, Collection<String> rawEntries) throws IOException {
+        if (!(workbook instanceof XSSFWorkbook) && !(workbook instanceof SXSSFWorkbook)) {
+            workbook.write(out);
+            return;
+        }
+        ExcelZipOutputStream zipOut = new ExcelZipOutputStream(out, level, threadCount);
+        zipOut.setEntryTime(getCreatedTime(workbook));
+        if (rawSource != null) {
+            zipOut.setRawEntries(rawSource, rawEntries);
+        }
+        boolean completed = false;
+        try {
+//            XSSFWorkbook保存时直接写入传入的ZipOutputStream并在完成后关闭，SXSSFWorkbook在close时写出中央目录
+            if (workbook instanceof SXSSFWorkbook) {
+                writeStreaming((SXSSFWorkbook) workbook, zipOut);
+            } else {
+                updateDimensions((XSSFWorkbook) workbook);
+                workbook.write(zipOut);
+            }
+            completed = true;
+        } finally {
+            if (completed) {
+                zipOut.close();
+            } else {
+                zipOut.abort();
+            }
+        }
+    }
+
+    /**
+     * 获取工作簿的创建时间（docProps/core.xml），用作各条目的修改时间，使写出的字节只取决于工作簿内容，
+     * 与写出时刻及压缩线程数无关
+     * @return 创建时间，未记录时为EARLIEST_ENTRY_TIME
+     */
+    private static long getCreatedTime(Workbook workbook) {
+        XSSFWorkbook xssfWorkbook = workbook instanceof SXSSFWorkbook ? ((SXSSFWorkbook) workbook).getXSSFWorkbook() : (XSSFWorkbook) workbook;
+        Date created = xssfWorkbook.getProperties().getCoreProperties().getCreated();
+        return created == null ? EARLIEST_ENTRY_TIME : created.getTime();
+    }
+
+    /**
+     * 按实际数据区域更新各sheet页的dimension元素（POI新建sheet页时固定为A1且写出时不更新，拆分后的源文件记录也已失效），
+     * 使ExcelWorkbookProbe无需扫描即可获取数据区域
+     */
+    private static void updateDimensions(XSSFWorkbook workbook) {
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            XSSFSheet sheet = workbook.getSheetAt(sheetIndex);
+            int firstColumnIndex = Integer.MAX_VALUE;
+            int lastColumnIndex = -1;
+            for (Row row : sheet) {
+                if (row.getFirstCellNum() >= 0) {
+                    firstColumnIndex = Math.min(firstColumnIndex, row.getFirstCellNum());
+                    lastColumnIndex = Math.max(lastColumnIndex, row.getLastCellNum() - 1);
+                }
+            }
+            String dimension = "A1";
+            if (sheet.getPhysicalNumberOfRows() > 0 && lastColumnIndex >= 0) {
+                dimension = new CellReference(sheet.getFirstRowNum(), firstColumnIndex).formatAsString()
+                        + ":" + new CellReference(sheet.getLastRowNum(), lastColumnIndex).formatAsString();
+            }
+            CTWorksheet worksheet = sheet.getCTWorksheet();
+            if (worksheet.isSetDimension()) {
+                worksheet.getDimension().setRef(dimension);
+            } else {
+                worksheet.addNewDimension().setRef(dimension);
+            }
+        }
+    }
+
+    /**
+     * 与SXSSFWorkbook.write相同的流程：先写出不含行数据的模板，再逐个复制模板条目，
+     * 并将各sheet页临时文件中的行数据注入至对应sheet页XML的sheetData元素
+     */
+    private static void writeStreaming(SXSSFWorkbook workbook, ExcelZipOutputStream zipOut) throws IOException {
+        for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
+            ((SXSSFSheet) workbook.getSheetAt(sheetIndex)).flushRows();
+        }
+        XSSFWorkbook template = workbook.getXSSFWorkbook();
+        ByteArrayOutputStream templateBytes = new ByteArrayOutputStream();
+        template.write(templateBytes);
+        Map<String, SXSSFSheet> sheetEntries = new HashMap<String, SXSSFSheet>();
+        for (int sheetIndex = 0; sheetIndex < template.getNumberOfSheets(); sheetIndex++) {
+            XSSFSheet templateSheet = template.getSheetAt(sheetIndex);
+            sheetEntries.put(templateSheet.getPackagePart().getPartName().getName().substring(1), (SXSSFSheet) workbook.getSheetAt(sheetIndex));
+        }
+
+        ZipInputStream templateIn = new ZipInputStream(new ByteArrayInputStream(templateBytes.toByteArray()));
+        try {
+            ZipEntry templateEntry;
+            while ((templateEntry = templateIn.getNextEntry()) != null) {
+                zipOut.putNextEntry(new ZipEntry(templateEntry.getName()));
+                SXSSFSheet sheet = sheetEntries.get(templateEntry.getName());
+                if (sheet == null) {
+                    copyStream(templateIn, zipOut);
+                } else {
+                    ByteArrayOutputStream sheetTemplate = new ByteArrayOutputStream();
+                    copyStream(templateIn, sheetTemplate);
+                    injectSheetData(sheetTemplate.toString("UTF-8"), sheet, zipOut);
+                }
+                zipOut.closeEntry();
+            }
+        } finally {
+            templateIn.close();
+        }
+    }
+
+    private static void injectSheetData(String sheetTemplate, SXSSFSheet sheet, OutputStream out) throws IOException {
+        int start = sheetTemplate.indexOf(SHEET_DATA_EMPTY);
+        int end = start + SHEET_DATA_EMPTY.length();
+        if (start < 0) {
+            start = sheetTemplate.indexOf(SHEET_DATA_START);
+            end = sheetTemplate.indexOf(SHEET_DATA_END, start) + SHEET_DATA_END.length();
+            if (start < 0 || end < SHEET_DATA_END.length()) {
+                throw new RuntimeException("文件格式错误！");
+            }
+        }
+        out.write(sheetTemplate.substring(0, start).getBytes(UTF_8));
+        out.write(SHEET_DATA_START.getBytes(UTF_8));
+        InputStream sheetData = sheet.getWorksheetXMLInputStream();
+        try {
+            copyStream(sheetData, out);
+        } finally {
+            sheetData.close();
+        }
+        out.write(SHEET_DATA_END.getBytes(UTF_8));
+        out.write(sheetTemplate.substring(end).getBytes(UTF_8));
+    }
+
+    private static void copyStream(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        int length;
+        while ((length = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, length);
+        }
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getEntryTime() {
+        return entryTime;
+    }
+
+    /**
+     * 设置未指定修改时间的条目（POI写出的条目均未指定）所用的修改时间，默认为创建输出流的时刻
+     * @param entryTime 修改时间（毫秒）
+     */
+    public void setEntryTime(long entryTime) {
+        this.entryTime = entryTime;
+    }
+
+    /**
+     * 设置后续条目的压缩级别
+     * @param level 压缩级别（0~9或DEFAULT）
+     */
+    @Override
+    public void setLevel(int level) {
+        this.level = checkLevel(level);
+    }
+
+    static int checkLevel(int level) {
+        if ((level < STORED || level > SMALLEST) && level != DEFAULT) {
+            throw new IllegalArgumentException("压缩级别无效：" + level);
+        }
+        return level;
+    }
+
+    /**
+     * 只支持DEFLATE方法（不压缩时以压缩级别0写出）
+     * @param method 压缩方法
+     */
+    @Override
+    public void setMethod(int method) {
+        if (method != DEFLATED) {
+            throw new IllegalArgumentException("只支持DEFLATE方法，不压缩时请将压缩级别设置为STORED");
+        }
+    }
+
+    /**
+     * 指定以原始字节复制的条目：写出同名条目时改为从源文件复制原始（压缩后）字节并忽略写入的内容，
+     * 至finish时仍未写出的条目追加在最后
+     * @param source 源文件
+     * @param entryNames 条目名
+     */
+    void setRawEntries(ExcelRawZipFile source, Collection<String> entryNames) {
+        this.rawSource = source;
+        this.pendingRawEntries = new LinkedHashSet<String>(entryNames);
+    }
+
+    /**
+     * 以原始字节复制条目（不解压与重新压缩，保留源条目的压缩方法、CRC与修改时间）
+     * @param source 源文件
+     * @param entry 源条目
+     * @throws IOException IO操作
+     */
+    void putRawEntry(ExcelRawZipFile source, ExcelRawZipFile.Entry entry) throws IOException {
+        ensureOpen();
+        if (currentEntry != null || discarding) {
+            closeEntry();
+        }
+        if (entries.size() >= MAX_ZIP32_ENTRIES) {
+            throw new ZipException("条目数超出zip格式上限（不支持Zip64）");
+        }
+        EntryRecord record = new EntryRecord(entry, written);
+        writeRaw(newLocalHeader(record, record.crc, record.compressedSize, record.size));
+        InputStream rawData = source.getRawInputStream(entry);
+        try {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            int length;
+            while ((length = rawData.read(buffer)) >= 0) {
+                target.write(buffer, 0, length);
+                written += length;
+            }
+        } finally {
+            rawData.close();
+        }
+        entries.add(record);
+    }
+
+    @Override
+    public void putNextEntry(ZipEntry entry) throws IOException {
+        ensureOpen();
+        if (currentEntry != null || discarding) {
+            closeEntry();
+        }
+        if (pendingRawEntries.remove(entry.getName())) {
+            putRawEntry(rawSource, rawSource.getEntry(entry.getName()));
+            discarding = true;
+            return;
+        }
+        if (entries.size() >= MAX_ZIP32_ENTRIES) {
+            throw new ZipException("条目数超出zip格式上限（不支持Zip64）");
+        }
+        currentEntry = new EntryRecord(entry.getName(), entry.getTime() == -1 ? entryTime : entry.getTime(), written);
+        crc.reset();
+        blockLength = 0;
+        dictionary = null;
+
+        writeRaw(newLocalHeader(currentEntry, 0, 0, 0));
+    }
+
+    private static ByteBuffer newLocalHeader(EntryRecord entry, long crc, long compressedSize, long size) {
+        ByteBuffer header = newBuffer(30 + entry.name.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+        header.put(entry.name);
+        return header;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (discarding) {
+            return;
+        }
+        if (currentEntry == null) {
+            throw new ZipException("没有打开的zip条目");
+        }
+        crc.update(b, off, len);
+        currentEntry.size += len;
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        ensureOpen();
+        discarding = false;
+        if (currentEntry == null) {
+            return;
+        }
+        submitBlock(true);
+        while (!pendingBlocks.isEmpty()) {
+            writeCompleted(pendingBlocks.poll());
+        }
+        currentEntry.crc = crc.getValue();
+        if (currentEntry.size > MAX_ZIP32_VALUE || currentEntry.compressedSize > MAX_ZIP32_VALUE) {
+            throw new ZipException("条目超出4GB（不支持Zip64）：" + new String(currentEntry.name, UTF_8));
+        }
+        ByteBuffer descriptor = newBuffer(16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) currentEntry.crc);
+        descriptor.putInt((int) currentEntry.compressedSize);
+        descriptor.putInt((int) currentEntry.size);
+        writeRaw(descriptor);
+        entries.add(currentEntry);
+        currentEntry = null;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        ensureOpen();
+        if (finished) {
+            return;
+        }
+        if (currentEntry != null || discarding) {
+            closeEntry();
+        }
+        for (String entryName : new ArrayList<String>(pendingRawEntries)) {
+            putRawEntry(rawSource, rawSource.getEntry(entryName));
+        }
+        pendingRawEntries.clear();
+        long centralDirectoryOffset = written;
+        for (EntryRecord entry : entries) {
+            ByteBuffer header = newBuffer(46 + entry.name.length);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) VERSION);
+            header.putShort((short) VERSION);
+            header.putShort((short) entry.flags);
+            header.putShort((short) entry.method);
+            header.putInt((int) entry.dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            writeRaw(header);
+        }
+        if (written > MAX_ZIP32_VALUE) {
+            throw new ZipException("文件超出4GB（不支持Zip64）");
+        }
+        ByteBuffer end = newBuffer(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entries.size());
+        end.putShort((short) entries.size());
+        end.putInt((int) (written - centralDirectoryOffset));
+        end.putInt((int) centralDirectoryOffset);
+        end.putShort((short) 0);
+        writeRaw(end);
+        target.flush();
+        finished = true;
+        shutdownExecutor();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    /**
+     * 结束当前条目、写出中央目录并关闭目标输出流
+     * @throws IOException IO操作
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            abort();
+        }
+    }
+
+    /**
+     * 放弃未完成的条目与中央目录，直接关闭目标输出流（写出失败时使用，文件不完整）
+     * @throws IOException IO操作
+     */
+    void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        shutdownExecutor();
+        def.end();
+        target.close();
+    }
+
+    /**
+     * 提交当前块压缩；未完成的块数达到线程数的2倍时先写出最早的块，限制内存占用
+     */
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] input = block;
+        final int inputLength = blockLength;
+        final byte[] presetDictionary = dictionary;
+        final boolean finish = last;
+        final int blockLevel = level;
+        Callable<byte[]> task = new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return deflateBlock(input, inputLength, presetDictionary, blockLevel, finish);
+            }
+        };
+        if (!last) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        }
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+
+        if (threadCount == 1 || (last && pendingBlocks.isEmpty())) {
+            FutureTask<byte[]> inline = new FutureTask<byte[]>(task);
+            inline.run();
+            pendingBlocks.add(inline);
+        } else {
+            pendingBlocks.add(getExecutor().submit(task));
+        }
+        while (pendingBlocks.size() > threadCount * 2) {
+            writeCompleted(pendingBlocks.poll());
+        }
+    }
+
+    private static byte[] deflateBlock(byte[] input, int inputLength, byte[] presetDictionary, int level, boolean finish) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (presetDictionary != null) {
+                deflater.setDictionary(presetDictionary);
+            }
+            deflater.setInput(input, 0, inputLength);
+            byte[] output = new byte[inputLength / 2 + 1024];
+            int outputLength = 0;
+            if (finish) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (outputLength == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+                }
+            } else {
+//                同步刷新：输出全部已输入数据并以空存储块对齐字节边界，输出缓冲区写满时须继续刷新
+                int count;
+                do {
+                    if (outputLength == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    count = deflater.deflate(output, outputLength, output.length - outputLength, Deflater.SYNC_FLUSH);
+                    outputLength += count;
+                } while (outputLength == output.length);
+            }
+            return Arrays.copyOf(output, outputLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeCompleted(Future<byte[]> pendingBlock) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pendingBlock.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        target.write(compressed);
+        written += compressed.length;
+        currentEntry.compressedSize += compressed.length;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "excel-zip-deflate");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private void shutdownExecutor() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void writeRaw(ByteBuffer buffer) throws IOException {
+        target.write(buffer.array(), 0, buffer.position());
+        written += buffer.position();
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("输出流已关闭");
+        }
+    }
+
+    /**
+     * 已写出条目的中央目录信息
+     */
+    private static class EntryRecord {
+        final byte[] name;
+        final int flags;
+        final int method;
+        final long dosTime;
+        final long offset;
+        long crc;
+        long size;
+        long compressedSize;
+
+        EntryRecord(String name, long time, long offset) {
+            this.name = name.getBytes(UTF_8);
+            this.flags = FLAG_DATA_DESCRIPTOR | (this.name.length == name.length() ? 0 : FLAG_UTF8);
+            this.method = METHOD_DEFLATED;
+            this.dosTime = toDosTime(time);
+            this.offset = offset;
+        }
+
+        EntryRecord(ExcelRawZipFile.Entry entry, long offset) {
+            this.name = entry.name.getBytes(UTF_8);
+            this.flags = this.name.length == entry.name.length() ? 0 : FLAG_UTF8;
+            this.method = entry.method;
+            this.dosTime = entry.dosTime & 0xFFFFFFFFL;
+            this.offset = offset;
+            this.crc = entry.crc;
+            this.size = entry.size;
+            this.compressedSize = entry.compressedSize;
+        }
+
+        private static long toDosTime(long time) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(time);
+            int year = calendar.get(Calendar.YEAR);
+            if (year < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                    | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yinfelix
+ */
+public class ExcelRowAppenderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SHARED_STRINGS_ENTRY = "xl/sharedStrings.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 源文件含共享字符串表：新字符串追加到表末尾，追加的行可由XSSFWorkbook读回，原有的行不变
+     */
+    @Test
+    public void appendWithSharedStrings() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeSourceWorkbook(source);
+
+        appendRows(source, dest);
+
+        assertAppendedRows(readWorkbook(dest).getSheet("Data"));
+        assertUniqueCount(readEntry(dest, SHARED_STRINGS_ENTRY));
+    }
+
+    /**
+     * 源文件不含共享字符串表：文本写为内联字符串
+     */
+    @Test
+    public void appendWithoutSharedStrings() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeSourceWorkbook(source);
+        Map<String, String> entries = readEntries(source);
+        entries.remove(SHARED_STRINGS_ENTRY);
+        entries.put("[Content_Types].xml", entries.get("[Content_Types].xml").replaceAll("<Override[^>]*sharedStrings[^>]*/>", ""));
+        entries.put("xl/_rels/workbook.xml.rels", entries.get("xl/_rels/workbook.xml.rels").replaceAll("<Relationship[^>]*sharedStrings[^>]*/>", ""));
+        String sheet = entries.get("xl/worksheets/sheet1.xml");
+        sheet = sheet.replace("t=\"s\"><v>0</v>", "t=\"inlineStr\"><is><t>名称</t></is>")
+                .replace("t=\"s\"><v>1</v>", "t=\"inlineStr\"><is><t>数量</t></is>")
+                .replace("t=\"s\"><v>2</v>", "t=\"inlineStr\"><is><t>a</t></is>");
+        assertFalse(sheet.contains("t=\"s\""));
+        entries.put("xl/worksheets/sheet1.xml", sheet);
+        writeEntries(source, entries);
+
+        appendRows(source, dest);
+
+        assertAppendedRows(readWorkbook(dest).getSheet("Data"));
+        assertNull(readEntry(dest, SHARED_STRINGS_ENTRY));
+        assertTrue(readEntry(dest, "xl/worksheets/sheet1.xml").contains("t=\"inlineStr\"><is><t>b</t></is>"));
+    }
+
+    /**
+     * sst元素的uniqueCount小于实际字符串数量时，新字符串的序号仍接在实际的最后一个字符串之后
+     */
+    @Test
+    public void appendIgnoresStaleUniqueCount() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeSourceWorkbook(source);
+        Map<String, String> entries = readEntries(source);
+        entries.put(SHARED_STRINGS_ENTRY, entries.get(SHARED_STRINGS_ENTRY).replaceFirst("uniqueCount=\"\\d+\"", "uniqueCount=\"1\""));
+        writeEntries(source, entries);
+
+        appendRows(source, dest);
+
+        assertAppendedRows(readWorkbook(dest).getSheet("Data"));
+        assertUniqueCount(readEntry(dest, SHARED_STRINGS_ENTRY));
+    }
+
+    /**
+     * 源文件：表头与一行数据，共享字符串表含"名称"、"数量"、"a"
+     */
+    private void writeSourceWorkbook(File file) throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet data = workbook.createSheet("Data");
+        Row header = data.createRow(0);
+        header.createCell(0).setCellValue("名称");
+        header.createCell(1).setCellValue("数量");
+        Row row = data.createRow(1);
+        row.createCell(0).setCellValue("a");
+        row.createCell(1).setCellValue(1);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void appendRows(File source, File dest) throws IOException {
+        ExcelRowAppender appender = new ExcelRowAppender(source.getPath(), dest.getPath(), "Data");
+        try {
+            assertEquals(2, appender.getFirstRowIndex());
+            assertEquals(2, appender.appendRow("b", 2.5));
+            assertEquals(3, appender.appendRow("x & <y>", true));
+            assertEquals(4, appender.appendRow("  前后空白  ", null, "b"));
+            assertEquals(5, appender.appendRow("a", -1));
+            appender.commit();
+        } finally {
+            appender.close();
+        }
+    }
+
+    private void assertAppendedRows(Sheet data) {
+        assertEquals(5, data.getLastRowNum());
+        assertEquals("名称", data.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("a", data.getRow(1).getCell(0).getStringCellValue());
+        assertEquals(1.0, data.getRow(1).getCell(1).getNumericCellValue(), 0);
+
+        assertEquals("b", data.getRow(2).getCell(0).getStringCellValue());
+        assertEquals(2.5, data.getRow(2).getCell(1).getNumericCellValue(), 0);
+        assertEquals("x & <y>", data.getRow(3).getCell(0).getStringCellValue());
+        assertEquals(Cell.CELL_TYPE_BOOLEAN, data.getRow(3).getCell(1).getCellType());
+        assertTrue(data.getRow(3).getCell(1).getBooleanCellValue());
+        assertEquals("  前后空白  ", data.getRow(4).getCell(0).getStringCellValue());
+        assertNull(data.getRow(4).getCell(1));
+        assertEquals("b", data.getRow(4).getCell(2).getStringCellValue());
+        assertEquals("a", data.getRow(5).getCell(0).getStringCellValue());
+        assertEquals(-1.0, data.getRow(5).getCell(1).getNumericCellValue(), 0);
+    }
+
+    /**
+     * 共享字符串表的uniqueCount与si元素个数一致
+     */
+    private static void assertUniqueCount(String sharedStrings) {
+        int count = 0;
+        for (int i = sharedStrings.indexOf("<si>"); i >= 0; i = sharedStrings.indexOf("<si>", i + 1)) {
+            ++count;
+        }
+        assertTrue(sharedStrings.contains("uniqueCount=\"" + count + "\""));
+    }
+
+    private Workbook readWorkbook(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return new XSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 读取zip条目的文本，条目不存在时返回null
+     */
+    private String readEntry(File file, String entryName) throws IOException {
+        return readEntries(file).get(entryName);
+    }
+
+    private Map<String, String> readEntries(File file) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                InputStream in = zipFile.getInputStream(entry);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = in.read(buffer)) >= 0) {
+                    content.write(buffer, 0, length);
+                }
+                entries.put(entry.getName(), new String(content.toByteArray(), UTF_8));
+            }
+        } finally {
+            zipFile.close();
+        }
+        return entries;
+    }
+
+    private void writeEntries(File file, Map<String, String> entries) throws IOException {
+        ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zipOut.putNextEntry(new ZipEntry(entry.getKey()));
+                zipOut.write(entry.getValue().getBytes(UTF_8));
+                zipOut.closeEntry();
+            }
+        } finally {
+            zipOut.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.excel.impl;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author yinfelix
+ */
+public class ExcelSharedStringsTest {
+
+    /**
+     * 随机字符取自ASCII、两字节与三字节UTF-8字符及补充平面字符（代理对），使字节比较覆盖多字节编码的边界
+     */
+    private static final String[] ALPHABET = {"a", "b", " ", "é", "ß", "中", "文", "😀", "𠮷"};
+
+    /**
+     * equalsAt与startsWith按字节比较，结果与String.equals、String.startsWith一致（堆内与堆外缓冲区，含扩容）
+     */
+    @Test
+    public void byteComparisonsAgreeWithString() {
+        Random random = new Random(20240117);
+        List<String> values = new ArrayList<String>();
+        values.add("");
+        for (int i = 0; i < 300; i++) {
+            values.add(randomString(random, random.nextInt(6)));
+        }
+        List<String> probes = new ArrayList<String>(values);
+        for (String value : values) {
+            for (int end = 0; end < value.length(); end++) {
+                if (!Character.isLowSurrogate(value.charAt(end))) {
+                    probes.add(value.substring(0, end));
+                }
+            }
+            probes.add(value + "a");
+            probes.add(randomString(random, value.codePointCount(0, value.length())));
+        }
+//        超出初始容量（64KB）的长字符串，使字符串缓冲区扩容
+        String longValue = randomString(random, 30000);
+        values.add(longValue);
+        probes.add(longValue);
+        probes.add(longValue.substring(0, longValue.length() - 2));
+        probes.add(longValue + "a");
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ExcelSharedStrings sharedStrings = newSharedStrings(offHeap, values);
+            assertEquals(values.size(), sharedStrings.size());
+            for (int index = 0; index < values.size(); index++) {
+                String value = values.get(index);
+                assertEquals(value, sharedStrings.getString(index));
+                assertEquals(ExcelSharedStrings.encode(value).length, sharedStrings.getByteLength(index));
+                assertEquals(value.trim().isEmpty(), sharedStrings.isBlank(index));
+                for (String probe : probes) {
+                    byte[] utf8Probe = ExcelSharedStrings.encode(probe);
+                    assertEquals(value + " = " + probe, value.equals(probe), sharedStrings.equalsAt(index, utf8Probe));
+                    assertEquals(value + " ^ " + probe, value.startsWith(probe), sharedStrings.startsWith(index, utf8Probe));
+                }
+            }
+        }
+    }
+
+    /**
+     * findAll返回全部相等字符串的索引（共享字符串表可含重复项）
+     */
+    @Test
+    public void findAllReturnsDuplicates() {
+        List<String> values = new ArrayList<String>();
+        values.add("中文");
+        values.add("中");
+        values.add("中文");
+        values.add("中文 ");
+        ExcelSharedStrings sharedStrings = newSharedStrings(false, values);
+
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        assertEquals(expected, sharedStrings.findAll("中文"));
+        assertEquals(new BitSet(), sharedStrings.findAll("文"));
+    }
+
+    /**
+     * 由文件包加载的字符串与XSSFWorkbook读取的一致（富文本按各段拼接）
+     */
+    @Test
+    public void loadMatchesWorkbookStrings() throws IOException, InvalidFormatException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet("Data");
+        sheet.createRow(0).createCell(0).setCellValue("plain");
+        sheet.createRow(1).createCell(0).setCellValue("  前后空白  ");
+        sheet.createRow(2).createCell(0).setCellValue("a & <b>");
+        XSSFRichTextString richText = new XSSFRichTextString("粗体plain");
+        richText.applyFont(0, 2, workbook.createFont());
+        sheet.createRow(3).createCell(0).setCellValue(richText);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+
+        OPCPackage opcPackage = OPCPackage.open(new ByteArrayInputStream(out.toByteArray()));
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ExcelSharedStrings sharedStrings = ExcelSharedStrings.load(opcPackage, offHeap);
+            assertEquals(4, sharedStrings.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(sheet.getRow(i).getCell(0).getStringCellValue(), sharedStrings.getString(i));
+            }
+        }
+    }
+
+    private static ExcelSharedStrings newSharedStrings(boolean offHeap, List<String> values) {
+//        预估数量为0，逐个添加时缓冲区与偏移数组均需扩容
+        ExcelSharedStrings sharedStrings = new ExcelSharedStrings(offHeap, 0);
+        for (String value : values) {
+            sharedStrings.add(value);
+        }
+        sharedStrings.trimToSize();
+        return sharedStrings;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            value.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return value.toString();
+    }
+}
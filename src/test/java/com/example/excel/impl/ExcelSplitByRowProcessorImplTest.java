@@ -0,0 +1,406 @@
+package com.example.excel.impl;
+
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.openxml4j.util.Nullable;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTTable;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTTableColumns;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author yinfelix
+ */
+public class ExcelSplitByRowProcessorImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 其他sheet页的公式与名称定义引用拆分sheet页时，拆分后引用随行号映射更新，sheet页级名称定义保持原作用范围
+     */
+    @Test
+    public void splitRemapsCrossSheetReferencesAndNames() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeCrossSheetWorkbook(source);
+
+        new ExcelSplitByRowProcessorImpl(source.getPath(), dest.getPath(), "Data", 2).doExcelRowSplit("A", "A");
+
+        Workbook workbook = readWorkbook(dest);
+        assertEquals("Ref", workbook.getSheetName(0));
+        assertEquals("Data", workbook.getSheetName(1));
+        assertEquals("Other", workbook.getSheetName(2));
+        assertEquals(10, workbook.getSheet("Data").getLastRowNum());
+
+        Row refRow = workbook.getSheet("Ref").getRow(0);
+        assertEquals("Data!B2", refRow.getCell(0).getCellFormula());
+        assertEquals(2.0, refRow.getCell(0).getNumericCellValue(), 0);
+        assertEquals("SUM(Data!B2:B11)", refRow.getCell(1).getCellFormula());
+        assertEquals(110.0, refRow.getCell(1).getNumericCellValue(), 0);
+        assertEquals(110.0, refRow.getCell(2).getNumericCellValue(), 0);
+        assertEquals("Data!#REF!+1", workbook.getSheet("Other").getRow(0).getCell(0).getCellFormula());
+
+        Name total = workbook.getName("Total");
+        assertEquals(-1, total.getSheetIndex());
+        assertEquals("Data!$B$2:$B$11", total.getRefersToFormula());
+        assertEquals(1, getName(workbook, "Local").getSheetIndex());
+        assertEquals("Data!$A$2:$A$11", getName(workbook, "Local").getRefersToFormula());
+        assertEquals(2, getName(workbook, "OtherLocal").getSheetIndex());
+    }
+
+    /**
+     * 数据区域的公式随所在行移动时与Excel删除行一致：引用其他sheet页的引用不变，
+     * 引用拆分sheet页的引用按行号映射更新（引用被剔除行的变为#REF!），计算结果不变
+     */
+    @Test
+    public void splitKeepsDataFormulaReferencesLikeDeletingRows() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeDataFormulaWorkbook(source);
+
+        new ExcelSplitByRowProcessorImpl(source.getPath(), dest.getPath(), "Data", 2).doExcelRowSplit("A", "A");
+
+        Sheet data = readWorkbook(dest).getSheet("Data");
+        assertEquals(9, data.getLastRowNum());
+        for (int rowIndex = 1; rowIndex <= data.getLastRowNum(); rowIndex++) {
+            Row row = data.getRow(rowIndex);
+            int sourceRow = (int) row.getCell(1).getNumericCellValue();
+            assertEquals("Rates!A" + sourceRow, row.getCell(2).getCellFormula());
+            assertEquals(sourceRow * 10.0, row.getCell(2).getNumericCellValue(), 0);
+            if (sourceRow + 1 == 5 || sourceRow + 1 == 9) {
+                assertEquals("#REF!*2+B3", row.getCell(3).getCellFormula());
+            } else {
+                int movedRow = sourceRow + 1 - (sourceRow + 1 > 9 ? 2 : sourceRow + 1 > 5 ? 1 : 0);
+                assertEquals("B" + movedRow + "*2+B3", row.getCell(3).getCellFormula());
+                assertEquals((sourceRow + 1 <= 12 ? sourceRow + 1 : 0) * 2 + 3.0, row.getCell(3).getNumericCellValue(), 0);
+            }
+        }
+    }
+
+    /**
+     * 拆分后图片、表格与批注随结果sheet页保留，不留下原sheet页的部件；筛选、条件格式与表格区域按行号映射收缩，
+     * 区域内的行全部被剔除的条件格式随之删除
+     */
+    @Test
+    public void splitKeepsSheetPartsAndRemapsRanges() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        File dest = new File(folder.getRoot(), "dest.xlsx");
+        writeSheetPartsWorkbook(source);
+
+        new ExcelSplitByRowProcessorImpl(source.getPath(), dest.getPath(), "Data", 2).doExcelRowSplit("A", "A");
+
+        XSSFWorkbook workbook = (XSSFWorkbook) readWorkbook(dest);
+        XSSFSheet data = workbook.getSheet("Data");
+        assertEquals(10, data.getLastRowNum());
+        assertEquals("A1:B11", data.getCTWorksheet().getAutoFilter().getRef());
+        assertEquals(1, data.getSheetConditionalFormatting().getNumConditionalFormattings());
+        assertEquals("B2:B11", data.getSheetConditionalFormatting().getConditionalFormattingAt(0).getFormattingRanges()[0].formatAsString());
+
+        assertEquals(1, data.getTables().size());
+        assertEquals("D1:E11", data.getTables().get(0).getCTTable().getRef());
+        assertEquals("D1:E11", data.getTables().get(0).getCTTable().getAutoFilter().getRef());
+        assertEquals(1, workbook.getAllPictures().size());
+        XSSFDrawing drawing = null;
+        for (POIXMLDocumentPart relation : data.getRelations()) {
+            if (relation instanceof XSSFDrawing) {
+                drawing = (XSSFDrawing) relation;
+            }
+        }
+        assertEquals(1, drawing.getCTDrawing().sizeOfTwoCellAnchorArray());
+        assertTrue(drawing.getRelations().get(0) instanceof XSSFPictureData);
+        assertEquals("kept", data.getCellComment(2, 0).getString().getString());
+
+        ZipFile zipFile = new ZipFile(dest);
+        try {
+            int drawingCount = 0, commentsCount = 0, tableCount = 0;
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                String entryName = entries.nextElement().getName();
+                drawingCount += entryName.startsWith("xl/drawings/drawing") ? 1 : 0;
+                commentsCount += entryName.startsWith("xl/comments") ? 1 : 0;
+                tableCount += entryName.startsWith("xl/tables/table") ? 1 : 0;
+            }
+            assertEquals(1, drawingCount);
+            assertEquals(1, commentsCount);
+            assertEquals(1, tableCount);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Data页第1行为表头，第2~21行A列交替为B、A，B列为1~20，D、E列为表格（D1:E21）；
+     * 筛选A1:B21，条件格式B2:B21与B4，图片一张，A5（保留行）有批注
+     */
+    private void writeSheetPartsWorkbook(File file) throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet data = workbook.createSheet("Data");
+        Row header = data.createRow(0);
+        header.createCell(0).setCellValue("unit");
+        header.createCell(1).setCellValue("amount");
+        header.createCell(3).setCellValue("key");
+        header.createCell(4).setCellValue("value");
+        for (int rowIndex = 1; rowIndex <= 20; rowIndex++) {
+            Row row = data.createRow(rowIndex);
+            row.createCell(0).setCellValue(rowIndex % 2 == 0 ? "A" : "B");
+            row.createCell(1).setCellValue(rowIndex);
+            row.createCell(3).setCellValue("k" + rowIndex);
+            row.createCell(4).setCellValue(rowIndex * 10);
+        }
+        data.setAutoFilter(CellRangeAddress.valueOf("A1:B21"));
+
+        SheetConditionalFormatting conditionalFormatting = data.getSheetConditionalFormatting();
+        ConditionalFormattingRule rule = conditionalFormatting.createConditionalFormattingRule(ComparisonOperator.GT, "10");
+        rule.createFontFormatting().setFontColorIndex(IndexedColors.RED.getIndex());
+        conditionalFormatting.addConditionalFormatting(new CellRangeAddress[] {CellRangeAddress.valueOf("B2:B21")}, rule);
+        conditionalFormatting.addConditionalFormatting(new CellRangeAddress[] {CellRangeAddress.valueOf("B4")}, rule);
+
+        CTTable table = data.createTable().getCTTable();
+        table.setId(1);
+        table.setName("Values");
+        table.setDisplayName("Values");
+        table.setRef("D1:E21");
+        table.addNewAutoFilter().setRef("D1:E21");
+        CTTableColumns columns = table.addNewTableColumns();
+        columns.addNewTableColumn().setName("key");
+        columns.getTableColumnArray(0).setId(1);
+        columns.addNewTableColumn().setName("value");
+        columns.getTableColumnArray(1).setId(2);
+        columns.setCount(2);
+
+        XSSFDrawing drawing = data.createDrawingPatriarch();
+        int pictureIndex = workbook.addPicture(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}, Workbook.PICTURE_TYPE_PNG);
+        drawing.createPicture(new XSSFClientAnchor(0, 0, 0, 0, 6, 1, 8, 4), pictureIndex);
+        Comment comment = drawing.createCellComment(new XSSFClientAnchor(0, 0, 0, 0, 1, 4, 3, 7));
+        comment.setString(new XSSFRichTextString("kept"));
+        data.getRow(4).getCell(0).setCellComment(comment);
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 分区报表的字节与线程数无关，zip条目的修改时间取源报表的创建时间
+     */
+    @Test
+    public void partitionBytesDoNotDependOnThreadCount() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        Calendar created = Calendar.getInstance();
+        created.clear();
+        created.set(2020, Calendar.JANUARY, 2, 3, 4, 6);
+        writePartitionWorkbook(source, created.getTime());
+
+        Map<String, String> singleThreaded = partition(source, folder.newFolder("single"), 1);
+        Map<String, String> multiThreaded = partition(source, folder.newFolder("multi"), 4);
+        assertEquals(3, singleThreaded.size());
+        assertEquals(singleThreaded.keySet(), multiThreaded.keySet());
+        for (String value : singleThreaded.keySet()) {
+            byte[] expected = Files.readAllBytes(new File(singleThreaded.get(value)).toPath());
+            assertArrayEquals(value, expected, Files.readAllBytes(new File(multiThreaded.get(value)).toPath()));
+            ZipFile zipFile = new ZipFile(singleThreaded.get(value));
+            try {
+                for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                    assertEquals(created.getTimeInMillis(), entries.nextElement().getTime());
+                }
+            } finally {
+                zipFile.close();
+            }
+        }
+    }
+
+    private Map<String, String> partition(File source, File directory, int threadCount) {
+        ExcelSplitByRowProcessorImpl processor = new ExcelSplitByRowProcessorImpl(source.getPath(), new File(directory, "dest.xlsx").getPath(), "Data", 2);
+        processor.setPartitionThreadCount(threadCount);
+        return processor.doExcelRowPartition("A");
+    }
+
+    /**
+     * Data页第1行为表头，第2~3001行A列依次为A、B、C，B列为行号，C列为B列的两倍（公式）
+     */
+    private void writePartitionWorkbook(File file, Date created) throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        workbook.getProperties().getCoreProperties().setCreated(new Nullable<Date>(created));
+        Sheet data = workbook.createSheet("Data");
+        data.createRow(0).createCell(0).setCellValue("unit");
+        for (int rowIndex = 1; rowIndex <= 3000; rowIndex++) {
+            Row row = data.createRow(rowIndex);
+            row.createCell(0).setCellValue(String.valueOf((char) ('A' + rowIndex % 3)));
+            row.createCell(1).setCellValue(rowIndex + 1);
+            row.createCell(2).setCellFormula("B" + (rowIndex + 1) + "*2");
+        }
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 分区报表仅包含拆分sheet页：引用其他sheet页的公式写入缓存的计算结果，只引用拆分sheet页的公式仍为公式
+     */
+    @Test
+    public void partitionWritesCachedValuesForOtherSheetReferences() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        writeDataFormulaWorkbook(source);
+
+        Map<String, String> partitionFiles = new ExcelSplitByRowProcessorImpl(source.getPath(), new File(folder.getRoot(), "dest.xlsx").getPath(), "Data", 2)
+                .doExcelRowPartition("A");
+
+        Workbook workbook = readWorkbook(new File(partitionFiles.get("A")));
+        assertEquals(1, workbook.getNumberOfSheets());
+        Sheet data = workbook.getSheet("Data");
+        assertEquals(Cell.CELL_TYPE_NUMERIC, data.getRow(0).getCell(1).getCellType());
+        assertEquals(12.0, data.getRow(0).getCell(1).getNumericCellValue(), 0);
+        assertEquals(9, data.getLastRowNum());
+        for (int rowIndex = 1; rowIndex <= data.getLastRowNum(); rowIndex++) {
+            Row row = data.getRow(rowIndex);
+            assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(2).getCellType());
+            assertEquals(row.getCell(1).getNumericCellValue() * 10, row.getCell(2).getNumericCellValue(), 0);
+            assertEquals(Cell.CELL_TYPE_FORMULA, row.getCell(3).getCellType());
+        }
+    }
+
+    /**
+     * 任一分区报表写出失败时抛出异常且不留下其他分区报表（分区A的输出路径被同名目录占用）
+     */
+    @Test
+    public void partitionFailureIsPropagated() throws IOException {
+        File source = folder.newFile("source.xlsx");
+        writeCrossSheetWorkbook(source);
+        File blocked = folder.newFolder("dest_A.xlsx");
+
+        try {
+            new ExcelSplitByRowProcessorImpl(source.getPath(), new File(folder.getRoot(), "dest.xlsx").getPath(), "Data", 2).doExcelRowPartition("A");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("分区报表生成失败：A", e.getMessage());
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertFalse(new File(folder.getRoot(), "dest_B.xlsx").exists());
+        assertFalse(new File(folder.getRoot(), "dest.xlsx").exists());
+        assertTrue(blocked.isDirectory());
+    }
+
+    /**
+     * Ref!A1=Data!B3、Ref!B1=SUM(Data!B2:B21)、Ref!C1=SUM(Total)、Other!A1=Data!B4+1；
+     * Data页第1行为表头，第2~21行A列交替为B、A，B列为1~20
+     */
+    private void writeCrossSheetWorkbook(File file) throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet ref = workbook.createSheet("Ref");
+        Sheet data = workbook.createSheet("Data");
+        Sheet other = workbook.createSheet("Other");
+        Row header = data.createRow(0);
+        header.createCell(0).setCellValue("unit");
+        header.createCell(1).setCellValue("amount");
+        for (int rowIndex = 1; rowIndex <= 20; rowIndex++) {
+            Row row = data.createRow(rowIndex);
+            row.createCell(0).setCellValue(rowIndex % 2 == 0 ? "A" : "B");
+            row.createCell(1).setCellValue(rowIndex);
+        }
+        Name total = workbook.createName();
+        total.setNameName("Total");
+        total.setRefersToFormula("Data!$B$2:$B$21");
+        Name local = workbook.createName();
+        local.setNameName("Local");
+        local.setSheetIndex(1);
+        local.setRefersToFormula("Data!$A$2:$A$21");
+        Name otherLocal = workbook.createName();
+        otherLocal.setNameName("OtherLocal");
+        otherLocal.setSheetIndex(2);
+        otherLocal.setRefersToFormula("Other!$A$1");
+
+        Row refRow = ref.createRow(0);
+        refRow.createCell(0).setCellFormula("Data!B3");
+        refRow.createCell(1).setCellFormula("SUM(Data!B2:B21)");
+        refRow.createCell(2).setCellFormula("SUM(Total)");
+        other.createRow(0).createCell(0).setCellFormula("Data!B4+1");
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Data页第1行为表头（B1=Rates!A1+B2），第2~12行A列除第5、9行为B外均为A，B列为行号，C{r}=Rates!A{r}，D{r}=B{r+1}*2+B3；
+     * Rates页A{r}=r*10
+     */
+    private void writeDataFormulaWorkbook(File file) throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet data = workbook.createSheet("Data");
+        Sheet rates = workbook.createSheet("Rates");
+        Row header = data.createRow(0);
+        header.createCell(0).setCellValue("unit");
+        header.createCell(1).setCellFormula("Rates!A1+B2");
+        for (int rowNumber = 1; rowNumber <= 12; rowNumber++) {
+            rates.createRow(rowNumber - 1).createCell(0).setCellValue(rowNumber * 10);
+        }
+        for (int rowNumber = 2; rowNumber <= 12; rowNumber++) {
+            Row row = data.createRow(rowNumber - 1);
+            row.createCell(0).setCellValue(rowNumber == 5 || rowNumber == 9 ? "B" : "A");
+            row.createCell(1).setCellValue(rowNumber);
+            row.createCell(2).setCellFormula("Rates!A" + rowNumber);
+            row.createCell(3).setCellFormula("B" + (rowNumber + 1) + "*2+B3");
+        }
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Workbook readWorkbook(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return new XSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private Name getName(Workbook workbook, String nameName) {
+        for (int nameIndex = 0; nameIndex < workbook.getNumberOfNames(); nameIndex++) {
+            if (workbook.getNameAt(nameIndex).getNameName().equals(nameName)) {
+                return workbook.getNameAt(nameIndex);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author yinfelix
+ */
+public class ExcelSplitPredicateTest {
+
+    private final XSSFWorkbook workbook = new XSSFWorkbook();
+    private final Sheet sheet = workbook.createSheet("Data");
+
+    /**
+     * 优先级：NOT高于AND高于OR，括号改变结合
+     */
+    @Test
+    public void parseAppliesOperatorPrecedence() {
+        ExcelRowMatcher orOfAnd = compile("A = 'x' OR B = 1 AND C = 2");
+        assertTrue(orOfAnd.matches(row("x", 0, 0)));
+        assertTrue(orOfAnd.matches(row("y", 1, 2)));
+        assertFalse(orOfAnd.matches(row("y", 1, 0)));
+
+        ExcelRowMatcher grouped = compile("(A = 'x' OR B = 1) AND C = 2");
+        assertFalse(grouped.matches(row("x", 0, 0)));
+        assertTrue(grouped.matches(row("x", 0, 2)));
+        assertTrue(grouped.matches(row("y", 1, 2)));
+
+        ExcelRowMatcher notThenAnd = compile("NOT A = 'x' AND B = 1");
+        assertTrue(notThenAnd.matches(row("y", 1, 0)));
+        assertFalse(notThenAnd.matches(row("x", 1, 0)));
+        assertFalse(notThenAnd.matches(row("y", 0, 0)));
+
+        ExcelRowMatcher notGroup = compile("NOT (A = 'x' AND B = 1)");
+        assertTrue(notGroup.matches(row("y", 0, 0)));
+        assertFalse(notGroup.matches(row("x", 1, 0)));
+    }
+
+    /**
+     * BETWEEN ... AND ...中的AND不作为逻辑运算符；关键字不区分大小写
+     */
+    @Test
+    public void parseKeepsBetweenAndInsideComparison() {
+        ExcelRowMatcher matcher = compile("a = 'x' and b between 1 and 2 or c = 3");
+        assertTrue(matcher.matches(row("x", 1.5, 0)));
+        assertTrue(matcher.matches(row("y", 0, 3)));
+        assertFalse(matcher.matches(row("x", 3, 0)));
+        assertFalse(matcher.matches(row("y", 1.5, 0)));
+    }
+
+    /**
+     * 文本中的两个单引号转义为一个单引号，关键字、括号与通配符以外的字符原样匹配
+     */
+    @Test
+    public void parseUnquotesStrings() {
+        ExcelRowMatcher escaped = compile("A = 'it''s'");
+        assertTrue(escaped.matches(row("it's")));
+        assertFalse(escaped.matches(row("it")));
+
+        ExcelRowMatcher keywordsInText = compile("A = 'a AND b' OR A = ')'");
+        assertTrue(keywordsInText.matches(row("a AND b")));
+        assertTrue(keywordsInText.matches(row(")")));
+        assertFalse(keywordsInText.matches(row("a")));
+
+        ExcelRowMatcher in = compile("A IN ('x', 'y''z')");
+        assertTrue(in.matches(row("y'z")));
+        assertFalse(in.matches(row("y")));
+
+        ExcelRowMatcher notIn = compile("A NOT IN ('x')");
+        assertTrue(notIn.matches(row("y")));
+        assertFalse(notIn.matches(row("x")));
+    }
+
+    /**
+     * LIKE：末尾%按前缀匹配，其余位置的%与_为通配符，正则元字符按原义匹配
+     */
+    @Test
+    public void parseTranslatesLikePatterns() {
+        ExcelRowMatcher prefix = compile("A LIKE 'TMP%'");
+        assertTrue(prefix.matches(row("TMP1")));
+        assertTrue(prefix.matches(row("TMP")));
+        assertFalse(prefix.matches(row("tmp1")));
+
+        ExcelRowMatcher wildcard = compile("A LIKE 'a.c_'");
+        assertTrue(wildcard.matches(row("a.cd")));
+        assertFalse(wildcard.matches(row("abcd")));
+        assertFalse(wildcard.matches(row("a.c")));
+
+        ExcelRowMatcher notLike = compile("A NOT LIKE '%x%'");
+        assertTrue(notLike.matches(row("abc")));
+        assertFalse(notLike.matches(row("axc")));
+    }
+
+    @Test
+    public void parseRejectsInvalidExpressions() {
+        assertParseError("A = 'x", "文本缺少结束的单引号");
+        assertParseError("A = 1 )", "（位置6）：多余的内容");
+        assertParseError("(A = 1", "应为)");
+        assertParseError("A 'x'", "应为比较运算符");
+        assertParseError("A < 'x'", "文本不支持<比较");
+        assertParseError("A IN ('x', 1)", "IN列表中不能混用文本与数值");
+        assertParseError("A NOT = 1", "NOT之后应为IN、BETWEEN、LIKE或MATCHES");
+        assertParseError("1 = 1", "应为字母列号");
+        assertParseError("ABCD = 1", "应为字母列号");
+        assertParseError("A BETWEEN 1 2", "应为AND");
+        assertParseError("A = 1 AND", "应为字母列号");
+        assertParseError("", "应为字母列号");
+    }
+
+    private ExcelRowMatcher compile(String expression) {
+        return ExcelSplitPredicate.parse(expression).compile(workbook);
+    }
+
+    /**
+     * 追加一行：String写为文本，Number写为数值，null为空单元格
+     */
+    private Row row(Object... values) {
+        Row row = sheet.createRow(sheet.getPhysicalNumberOfRows());
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof String) {
+                row.createCell(i).setCellValue((String) values[i]);
+            } else if (values[i] instanceof Number) {
+                row.createCell(i).setCellValue(((Number) values[i]).doubleValue());
+            }
+        }
+        return row;
+    }
+
+    private static void assertParseError(String expression, String message) {
+        try {
+            ExcelSplitPredicate.parse(expression);
+            fail("应抛出语法错误：" + expression);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+}
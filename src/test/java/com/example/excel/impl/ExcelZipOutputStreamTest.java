@@ -0,0 +1,185 @@
+package com.example.excel.impl;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author yinfelix
+ */
+public class ExcelZipOutputStreamTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int[] LEVELS = {ExcelZipOutputStream.STORED, ExcelZipOutputStream.FASTEST, ExcelZipOutputStream.SMALLEST};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 各压缩级别以单线程与多线程写出的文件均可由ZipFile与ZipInputStream读回原内容，且两者写出的字节相同
+     */
+    @Test
+    public void entriesRoundTripThroughZipFile() throws IOException {
+        Map<String, byte[]> entries = newEntries();
+        for (int level : LEVELS) {
+            byte[] singleThreaded = writeEntries(entries, level, 1);
+            byte[] multiThreaded = writeEntries(entries, level, 4);
+            assertArrayEquals("level " + level, singleThreaded, multiThreaded);
+
+            File file = folder.newFile("level" + level + ".zip");
+            Files.write(file.toPath(), multiThreaded);
+            assertZipFileEntries(file, entries);
+            assertZipStreamEntries(multiThreaded, entries);
+        }
+    }
+
+    /**
+     * 以并行压缩写出的报表可由XSSFWorkbook读回
+     */
+    @Test
+    public void workbookRoundTrip() throws IOException {
+        for (int level : LEVELS) {
+            for (int threadCount : new int[]{1, 4}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ExcelZipOutputStream.write(newWorkbook(), out, level, threadCount);
+
+                Workbook readBack = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+                assertEquals(4999, readBack.getSheet("Data").getLastRowNum());
+                assertEquals("行1234", readBack.getSheet("Data").getRow(1234).getCell(0).getStringCellValue());
+                assertEquals(617.0, readBack.getSheet("Data").getRow(1234).getCell(1).getNumericCellValue(), 0);
+            }
+        }
+    }
+
+    /**
+     * POI 3.8的XSSFWorkbook只能写出一次，每次写出均新建
+     */
+    private static XSSFWorkbook newWorkbook() {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet("Data");
+        for (int i = 0; i < 5000; i++) {
+            sheet.createRow(i).createCell(0).setCellValue("行" + i);
+            sheet.getRow(i).createCell(1).setCellValue(i * 0.5);
+        }
+        return workbook;
+    }
+
+    /**
+     * 测试条目：空条目、短文本、跨越多个128KB压缩块的可压缩文本与不可压缩的随机字节
+     */
+    private static Map<String, byte[]> newEntries() {
+        Random random = new Random(20240120);
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("empty.txt", new byte[0]);
+        entries.put("xl/small.xml", "<a>中文</a>".getBytes(UTF_8));
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; rows.length() < 1024 * 1024; i++) {
+            rows.append("<row r=\"").append(i + 1).append("\"><c><v>").append(random.nextInt(1000)).append("</v></c></row>");
+        }
+        entries.put("xl/worksheets/sheet1.xml", rows.toString().getBytes(UTF_8));
+        byte[] randomBytes = new byte[300 * 1024 + 17];
+        random.nextBytes(randomBytes);
+        entries.put("xl/media/random.bin", randomBytes);
+        return entries;
+    }
+
+    /**
+     * 以不对齐压缩块的长度分段写出各条目
+     */
+    private static byte[] writeEntries(Map<String, byte[]> entries, int level, int threadCount) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExcelZipOutputStream zipOut = new ExcelZipOutputStream(out, level, threadCount);
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zipOut.putNextEntry(new ZipEntry(entry.getKey()));
+                byte[] data = entry.getValue();
+                if (data.length > 0) {
+                    zipOut.write(data[0]);
+                }
+                for (int offset = 1; offset < data.length; offset += 7777) {
+                    zipOut.write(data, offset, Math.min(7777, data.length - offset));
+                }
+                zipOut.closeEntry();
+            }
+        } finally {
+            zipOut.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertZipFileEntries(File file, Map<String, byte[]> entries) throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            List<String> names = new ArrayList<String>();
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+                ZipEntry zipEntry = e.nextElement();
+                names.add(zipEntry.getName());
+                byte[] expected = entries.get(zipEntry.getName());
+                assertEquals(expected.length, zipEntry.getSize());
+                assertEquals(crc(expected), zipEntry.getCrc());
+                assertArrayEquals(zipEntry.getName(), expected, readFully(zipFile.getInputStream(zipEntry)));
+            }
+            assertEquals(new ArrayList<String>(entries.keySet()), names);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * ZipInputStream按本地文件头与数据描述符顺序读取，并校验CRC
+     */
+    private static void assertZipStreamEntries(byte[] zip, Map<String, byte[]> entries) throws IOException {
+        ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(zip));
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = zipIn.getNextEntry();
+                assertEquals(entry.getKey(), zipEntry.getName());
+                assertArrayEquals(entry.getKey(), entry.getValue(), readFully(zipIn));
+            }
+            assertNull(zipIn.getNextEntry());
+        } finally {
+            zipIn.close();
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+}